@@ -0,0 +1,137 @@
+package ca.uhn.fhir.model.api;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Utility methods for creating {@link IBinaryContentSource} instances
+ */
+public class BinaryContentSources {
+
+	/** Non instantiable */
+	private BinaryContentSources() {
+		// nothing
+	}
+
+	/**
+	 * Creates a source which supplies the given bytes. The array is not copied.
+	 */
+	public static IBinaryContentSource fromBytes(final byte[] theContent) {
+		Validate.notNull(theContent, "Content can not be null");
+		return new IBinaryContentSource() {
+			@Override
+			public long getLength() {
+				return theContent.length;
+			}
+
+			@Override
+			public InputStream openStream() {
+				return new ByteArrayInputStream(theContent);
+			}
+
+			@Override
+			public InputStream openStream(long theOffset) {
+				Validate.isTrue(theOffset >= 0 && theOffset <= theContent.length, "Offset is outside of the content");
+				return new ByteArrayInputStream(theContent, (int) theOffset, theContent.length - (int) theOffset);
+			}
+		};
+	}
+
+	/**
+	 * Creates a source which reads the given file each time it is opened
+	 */
+	public static IBinaryContentSource fromFile(final File theFile) {
+		Validate.notNull(theFile, "File can not be null");
+		return new IBinaryContentSource() {
+			@Override
+			public long getLength() {
+				return theFile.length();
+			}
+
+			@Override
+			public InputStream openStream() throws IOException {
+				return new FileInputStream(theFile);
+			}
+
+			@Override
+			public InputStream openStream(long theOffset) throws IOException {
+				Validate.isTrue(theOffset >= 0, "Offset must not be negative");
+				FileInputStream retVal = new FileInputStream(theFile);
+				try {
+					// Moves the position of the stream itself, without reading the skipped bytes
+					retVal.getChannel().position(theOffset);
+				} catch (IOException e) {
+					IOUtils.closeQuietly(retVal);
+					throw e;
+				}
+				return retVal;
+			}
+		};
+	}
+
+	/**
+	 * Creates a source which supplies the contents of the given stream. Since a stream can only be read once, the
+	 * returned source may only be opened once.
+	 * 
+	 * @param theStream
+	 *            The stream. It is closed when the stream returned by {@link IBinaryContentSource#openStream()} is closed.
+	 * @param theLength
+	 *            The number of bytes the stream will supply, or <code>-1</code> if this is not known
+	 */
+	public static IBinaryContentSource fromStream(final InputStream theStream, final long theLength) {
+		Validate.notNull(theStream, "Stream can not be null");
+		return new IBinaryContentSource() {
+			private boolean myOpened;
+
+			@Override
+			public long getLength() {
+				return theLength;
+			}
+
+			@Override
+			public synchronized InputStream openStream() throws IOException {
+				if (myOpened) {
+					throw new IOException("Binary content stream has already been read");
+				}
+				myOpened = true;
+				return theStream;
+			}
+
+			@Override
+			public InputStream openStream(long theOffset) throws IOException {
+				Validate.isTrue(theOffset >= 0, "Offset must not be negative");
+				InputStream retVal = openStream();
+				// A plain stream can only be positioned by reading up to the offset
+				IOUtils.skipFully(retVal, theOffset);
+				return retVal;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,53 @@
+package ca.uhn.fhir.model.api;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Supplies the content of a {@link ca.uhn.fhir.model.dstu.resource.Binary} as a stream, so that large binaries do not
+ * need to be held in memory. See {@link BinaryContentSources} for common implementations.
+ */
+public interface IBinaryContentSource {
+
+	/**
+	 * Returns the length of the content in bytes, or <code>-1</code> if it is not known
+	 */
+	long getLength();
+
+	/**
+	 * Opens a stream over the content. The caller is responsible for closing the returned stream. Sources which are
+	 * backed by a stream (e.g. an incoming request body) may only be opened once.
+	 */
+	InputStream openStream() throws IOException;
+
+	/**
+	 * Opens a stream over the content, starting at the given offset. Sources which support random access (such as
+	 * files) position the stream without reading the content before the offset, which matters when serving a byte
+	 * range near the end of a large binary. The same restrictions as for {@link #openStream()} apply.
+	 * 
+	 * @param theOffset
+	 *            The number of bytes to skip, which must not be greater than the {@link #getLength() length}
+	 */
+	InputStream openStream(long theOffset) throws IOException;
+
+}
@@ -20,17 +20,24 @@ package ca.uhn.fhir.model.dstu.resource;
  * #L%
  */
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.List;
 
+import org.apache.commons.io.IOUtils;
+
 import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.model.api.BaseResource;
+import ca.uhn.fhir.model.api.BinaryContentSources;
+import ca.uhn.fhir.model.api.IBinaryContentSource;
 import ca.uhn.fhir.model.api.IElement;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.annotation.Child;
 import ca.uhn.fhir.model.api.annotation.ResourceDef;
 import ca.uhn.fhir.model.primitive.Base64BinaryDt;
 import ca.uhn.fhir.model.primitive.StringDt;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.util.ElementUtil;
 
 @ResourceDef(name = "Binary", profile = "http://hl7.org/fhir/profiles/Binary", id = "binary")
@@ -39,6 +46,8 @@ public class Binary extends BaseResource implements IResource {
 	@Child(name = "content", order = 1)
 	private Base64BinaryDt myContent = new Base64BinaryDt();
 
+	private IBinaryContentSource myContentSource;
+
 	@Child(name = "contentType", order = 0)
 	private StringDt myContentType;
 
@@ -67,14 +76,47 @@ public class Binary extends BaseResource implements IResource {
 		return Collections.emptyList();
 	}
 
+	/**
+	 * Returns the binary contents. If the contents are supplied by a {@link #setContentSource(IBinaryContentSource)
+	 * content source}, calling this method reads them fully into memory, so code which may be dealing with large
+	 * binaries should use {@link #getContentSource()} instead.
+	 */
 	public byte[] getContent() {
+		if (myContentSource != null) {
+			InputStream stream = null;
+			try {
+				stream = myContentSource.openStream();
+				myContent.setValue(IOUtils.toByteArray(stream));
+			} catch (IOException e) {
+				throw new InternalErrorException("Failed to read binary content", e);
+			} finally {
+				IOUtils.closeQuietly(stream);
+			}
+			myContentSource = null;
+		}
 		return myContent.getValue();
 	}
 
 	public String getContentAsBase64() {
+		getContent();
 		return myContent.getValueAsString();
 	}
 
+	/**
+	 * Returns a source which supplies the binary contents as a stream, or <code>null</code> if this resource has no
+	 * contents. If the contents were set as a byte array, a source wrapping that array is returned.
+	 */
+	public IBinaryContentSource getContentSource() {
+		if (myContentSource != null) {
+			return myContentSource;
+		}
+		byte[] content = myContent.getValue();
+		if (content == null) {
+			return null;
+		}
+		return BinaryContentSources.fromBytes(content);
+	}
+
 	public String getContentType() {
 		if (myContentType == null) {
 			return null;
@@ -84,17 +126,30 @@ public class Binary extends BaseResource implements IResource {
 
 	@Override
 	public boolean isEmpty() {
-		return (myContent.isEmpty()) && ElementUtil.isEmpty(myContentType);
+		return (myContent.isEmpty()) && myContentSource == null && ElementUtil.isEmpty(myContentType);
 	}
 
 	public void setContent(byte[] theContent) {
+		myContentSource = null;
 		myContent.setValue(theContent);
 	}
 
 	public void setContentAsBase64(String theContent) {
+		myContentSource = null;
 		myContent.setValueAsString(theContent);
 	}
 
+	/**
+	 * Sets a source which supplies the binary contents as a stream. This replaces any contents which were previously
+	 * set, and allows large binaries to be passed through a server or client without being held in memory.
+	 * 
+	 * @see ca.uhn.fhir.model.api.BinaryContentSources
+	 */
+	public void setContentSource(IBinaryContentSource theContentSource) {
+		myContentSource = theContentSource;
+		myContent.setValue(null);
+	}
+
 	public void setContentType(String theContentType) {
 		myContentType = new StringDt(theContentType);
 	}
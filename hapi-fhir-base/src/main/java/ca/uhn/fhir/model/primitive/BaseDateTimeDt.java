@@ -30,7 +30,6 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.TimeZone;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.time.DateUtils;
@@ -47,12 +46,9 @@ public abstract class BaseDateTimeDt extends BasePrimitive<Date> {
 	 */
 	private static final List<FastDateFormat> ourFormatters;
 
-	private static final Pattern ourYearDashMonthDashDayPattern = Pattern.compile("[0-9]{4}-[0-9]{2}-[0-9]{2}");
-	private static final Pattern ourYearDashMonthPattern = Pattern.compile("[0-9]{4}-[0-9]{2}");
 	private static final FastDateFormat ourYearFormat = FastDateFormat.getInstance("yyyy");
 	private static final FastDateFormat ourYearMonthDayFormat = FastDateFormat.getInstance("yyyy-MM-dd");
 	private static final FastDateFormat ourYearMonthDayNoDashesFormat = FastDateFormat.getInstance("yyyyMMdd");
-	private static final Pattern ourYearMonthDayPattern = Pattern.compile("[0-9]{4}[0-9]{2}[0-9]{2}");
 	private static final FastDateFormat ourYearMonthDayTimeFormat = FastDateFormat.getInstance("yyyy-MM-dd'T'HH:mm:ss");
 	private static final FastDateFormat ourYearMonthDayTimeMilliFormat = FastDateFormat.getInstance("yyyy-MM-dd'T'HH:mm:ss.SSS");
 	private static final FastDateFormat ourYearMonthDayTimeMilliUTCZFormat = FastDateFormat.getInstance("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", TimeZone.getTimeZone("UTC"));
@@ -61,8 +57,11 @@ public abstract class BaseDateTimeDt extends BasePrimitive<Date> {
 	private static final FastDateFormat ourYearMonthDayTimeZoneFormat = FastDateFormat.getInstance("yyyy-MM-dd'T'HH:mm:ssZZ");
 	private static final FastDateFormat ourYearMonthFormat = FastDateFormat.getInstance("yyyy-MM");
 	private static final FastDateFormat ourYearMonthNoDashesFormat = FastDateFormat.getInstance("yyyyMM");
-	private static final Pattern ourYearMonthPattern = Pattern.compile("[0-9]{4}[0-9]{2}");
-	private static final Pattern ourYearPattern = Pattern.compile("[0-9]{4}");
+
+	/**
+	 * The formatters above use the default time zone at the time they are created
+	 */
+	private static final TimeZone ourLocalTimeZone = TimeZone.getDefault();
 
 	static {
 		ArrayList<FastDateFormat> formatters = new ArrayList<FastDateFormat>();
@@ -137,6 +136,11 @@ public abstract class BaseDateTimeDt extends BasePrimitive<Date> {
 		if (theValue == null) {
 			return null;
 		} else {
+			String retVal = DateTimeFormatUtil.format(theValue, myPrecision, myTimeZone, myTimeZoneZulu, ourLocalTimeZone);
+			if (retVal != null) {
+				return retVal;
+			}
+
 			switch (myPrecision) {
 			case DAY:
 				return ourYearMonthDayFormat.format(theValue);
@@ -239,45 +243,45 @@ public abstract class BaseDateTimeDt extends BasePrimitive<Date> {
 	@Override
 	protected Date parse(String theValue) throws DataFormatException {
 		try {
-			if (theValue.length() == 4 && ourYearPattern.matcher(theValue).matches()) {
+			if (hasShape(theValue, "dddd")) {
 				if (!isPrecisionAllowed(YEAR)) {
 					ourLog.debug("Invalid date/time string (datatype " + getClass().getSimpleName() + " does not support YEAR precision): " + theValue);
 				}
 				setPrecision(YEAR);
 				clearTimeZone();
-				return ((ourYearFormat).parse(theValue));
-			} else if (theValue.length() == 6 && ourYearMonthPattern.matcher(theValue).matches()) {
+				return parseDate(theValue, ourYearFormat);
+			} else if (hasShape(theValue, "dddddd")) {
 				// Eg. 198401 (allow this just to be lenient)
 				if (!isPrecisionAllowed(MONTH)) {
 					ourLog.debug("Invalid date/time string (datatype " + getClass().getSimpleName() + " does not support DAY precision): " + theValue);
 				}
 				setPrecision(MONTH);
 				clearTimeZone();
-				return ((ourYearMonthNoDashesFormat).parse(theValue));
-			} else if (theValue.length() == 7 && ourYearDashMonthPattern.matcher(theValue).matches()) {
+				return parseDate(theValue, ourYearMonthNoDashesFormat);
+			} else if (hasShape(theValue, "dddd-dd")) {
 				// E.g. 1984-01 (this is valid according to the spec)
 				if (!isPrecisionAllowed(MONTH)) {
 					ourLog.debug("Invalid date/time string (datatype " + getClass().getSimpleName() + " does not support MONTH precision): " + theValue);
 				}
 				setPrecision(MONTH);
 				clearTimeZone();
-				return ((ourYearMonthFormat).parse(theValue));
-			} else if (theValue.length() == 8 && ourYearMonthDayPattern.matcher(theValue).matches()) {
+				return parseDate(theValue, ourYearMonthFormat);
+			} else if (hasShape(theValue, "dddddddd")) {
 				// Eg. 19840101 (allow this just to be lenient)
 				if (!isPrecisionAllowed(DAY)) {
 					ourLog.debug("Invalid date/time string (datatype " + getClass().getSimpleName() + " does not support DAY precision): " + theValue);
 				}
 				setPrecision(DAY);
 				clearTimeZone();
-				return ((ourYearMonthDayNoDashesFormat).parse(theValue));
-			} else if (theValue.length() == 10 && ourYearDashMonthDashDayPattern.matcher(theValue).matches()) {
+				return parseDate(theValue, ourYearMonthDayNoDashesFormat);
+			} else if (hasShape(theValue, "dddd-dd-dd")) {
 				// E.g. 1984-01-01 (this is valid according to the spec)
 				if (!isPrecisionAllowed(DAY)) {
 					ourLog.debug("Invalid date/time string (datatype " + getClass().getSimpleName() + " does not support DAY precision): " + theValue);
 				}
 				setPrecision(DAY);
 				clearTimeZone();
-				return ((ourYearMonthDayFormat).parse(theValue));
+				return parseDate(theValue, ourYearMonthDayFormat);
 			} else if (theValue.length() >= 18) { // date and time with possible time zone
 				int dotIndex = theValue.indexOf('.', 18);
 				boolean hasMillis = dotIndex > -1;
@@ -288,38 +292,14 @@ public abstract class BaseDateTimeDt extends BasePrimitive<Date> {
 					ourLog.debug("Invalid date/time string (data type " + getClass().getSimpleName() + " does not support MILLIS precision):" + theValue);
 				}
 
-				Date retVal;
-				if (hasMillis) {
-					try {
-						if (hasOffset(theValue)) {
-							retVal = ourYearMonthDayTimeMilliZoneFormat.parse(theValue);
-						} else if (theValue.endsWith("Z")) {
-							retVal = ourYearMonthDayTimeMilliUTCZFormat.parse(theValue);
-						} else {
-							retVal = ourYearMonthDayTimeMilliFormat.parse(theValue);
-						}
-					} catch (ParseException p2) {
-						throw new DataFormatException("Invalid data/time string (" + p2.getMessage() + "): " + theValue);
-					}
-					setTimeZone(theValue, hasMillis);
-					setPrecision(TemporalPrecisionEnum.MILLI);
-				} else {
-					try {
-						if (hasOffset(theValue)) {
-							retVal = ourYearMonthDayTimeZoneFormat.parse(theValue);
-						} else if (theValue.endsWith("Z")) {
-							retVal = ourYearMonthDayTimeUTCZFormat.parse(theValue);
-						} else {
-							retVal = ourYearMonthDayTimeFormat.parse(theValue);
-						}
-					} catch (ParseException p2) {
-						throw new DataFormatException("Invalid data/time string (" + p2.getMessage() + "): " + theValue);
-					}
-
-					setTimeZone(theValue, hasMillis);
-					setPrecision(TemporalPrecisionEnum.SECOND);
+				Date retVal = DateTimeFormatUtil.parseDateTime(theValue, ourLocalTimeZone);
+				if (retVal == null) {
+					retVal = parseDateTimeUsingFormatters(theValue, hasMillis);
 				}
 
+				setTimeZone(theValue, hasMillis);
+				setPrecision(hasMillis ? TemporalPrecisionEnum.MILLI : TemporalPrecisionEnum.SECOND);
+
 				return retVal;
 			} else {
 				throw new DataFormatException("Invalid date/time string (invalid length): " + theValue);
@@ -329,6 +309,63 @@ public abstract class BaseDateTimeDt extends BasePrimitive<Date> {
 		}
 	}
 
+	/**
+	 * Parses a value in one of the date-only forms, using the given formatter if it can not be parsed directly
+	 */
+	private static Date parseDate(String theValue, FastDateFormat theFormatter) throws ParseException {
+		Date retVal = DateTimeFormatUtil.parseDate(theValue, ourLocalTimeZone);
+		if (retVal == null) {
+			retVal = theFormatter.parse(theValue);
+		}
+		return retVal;
+	}
+
+	private Date parseDateTimeUsingFormatters(String theValue, boolean theHasMillis) {
+		try {
+			if (theHasMillis) {
+				if (hasOffset(theValue)) {
+					return ourYearMonthDayTimeMilliZoneFormat.parse(theValue);
+				} else if (theValue.endsWith("Z")) {
+					return ourYearMonthDayTimeMilliUTCZFormat.parse(theValue);
+				} else {
+					return ourYearMonthDayTimeMilliFormat.parse(theValue);
+				}
+			} else {
+				if (hasOffset(theValue)) {
+					return ourYearMonthDayTimeZoneFormat.parse(theValue);
+				} else if (theValue.endsWith("Z")) {
+					return ourYearMonthDayTimeUTCZFormat.parse(theValue);
+				} else {
+					return ourYearMonthDayTimeFormat.parse(theValue);
+				}
+			}
+		} catch (ParseException p2) {
+			throw new DataFormatException("Invalid data/time string (" + p2.getMessage() + "): " + theValue);
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the value has the given shape, where each <code>d</code> in the shape matches any
+	 * digit and any other character matches itself
+	 */
+	private static boolean hasShape(String theValue, String theShape) {
+		if (theValue.length() != theShape.length()) {
+			return false;
+		}
+		for (int i = 0; i < theShape.length(); i++) {
+			char next = theValue.charAt(i);
+			char expected = theShape.charAt(i);
+			if (expected == 'd') {
+				if (next < '0' || next > '9') {
+					return false;
+				}
+			} else if (next != expected) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Sets the precision for this datatype using field values from {@link Calendar}. Valid values are:
 	 * <ul>
@@ -0,0 +1,300 @@
+package ca.uhn.fhir.model.primitive;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Date;
+import java.util.TimeZone;
+
+import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
+
+/**
+ * Parses and formats the ISO-8601 forms used by FHIR date/time values directly, without creating a
+ * {@link java.util.Calendar} or going through {@link org.apache.commons.lang3.time.FastDateFormat}.
+ * <p>
+ * Only the canonical forms are handled here. The methods return <code>null</code> for anything else (e.g. fields
+ * which are out of range, years before the Gregorian cutover, or local times close to a daylight saving
+ * transition), in which case callers fall back to the formatters so that the existing (lenient) behaviour is kept.
+ * </p>
+ */
+final class DateTimeFormatUtil {
+
+	/**
+	 * GregorianCalendar uses the Julian calendar for dates before the cutover in October 1582
+	 */
+	private static final int MIN_YEAR = 1583;
+	private static final int MAX_YEAR = 9999;
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	private DateTimeFormatUtil() {
+		// non instantiable
+	}
+
+	/**
+	 * Formats the given value, or returns <code>null</code> if it can not be formatted by this class
+	 * 
+	 * @param theTimeZone
+	 *            The time zone to format a {@link TemporalPrecisionEnum#SECOND} or {@link TemporalPrecisionEnum#MILLI}
+	 *            value in, which is then appended as an offset. If <code>null</code>, the value is formatted in
+	 *            <code>theLocalTimeZone</code> without an offset.
+	 * @param theZulu
+	 *            If <code>true</code>, the value is formatted in UTC and a "Z" is appended (overrides
+	 *            <code>theTimeZone</code>)
+	 */
+	static String format(Date theValue, TemporalPrecisionEnum thePrecision, TimeZone theTimeZone, boolean theZulu, TimeZone theLocalTimeZone) {
+		long millis = theValue.getTime();
+		boolean appendOffset = false;
+		int offset;
+		switch (thePrecision) {
+		case SECOND:
+		case MILLI:
+			if (theZulu) {
+				offset = 0;
+			} else if (theTimeZone != null) {
+				offset = theTimeZone.getOffset(millis);
+				appendOffset = true;
+			} else {
+				offset = theLocalTimeZone.getOffset(millis);
+			}
+			break;
+		default:
+			offset = theLocalTimeZone.getOffset(millis);
+			break;
+		}
+
+		long localMillis = millis + offset;
+		long days = localMillis / MILLIS_PER_DAY;
+		if (localMillis % MILLIS_PER_DAY < 0) {
+			days--;
+		}
+		int millisOfDay = (int) (localMillis - days * MILLIS_PER_DAY);
+
+		// Civil date from days since the epoch (see http://howardhinnant.github.io/date_algorithms.html)
+		long z = days + 719468;
+		if (z < 0) {
+			return null;
+		}
+		long era = z / 146097;
+		int dayOfEra = (int) (z - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int shiftedMonth = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+		int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+		long year = era * 400 + yearOfEra + (month <= 2 ? 1 : 0);
+		if (year < MIN_YEAR || year > MAX_YEAR) {
+			return null;
+		}
+
+		char[] b = new char[29];
+		int len = 0;
+		len = appendDigits(b, len, (int) year, 4);
+		if (thePrecision == TemporalPrecisionEnum.YEAR) {
+			return new String(b, 0, len);
+		}
+		b[len++] = '-';
+		len = appendDigits(b, len, month, 2);
+		if (thePrecision == TemporalPrecisionEnum.MONTH) {
+			return new String(b, 0, len);
+		}
+		b[len++] = '-';
+		len = appendDigits(b, len, day, 2);
+		if (thePrecision == TemporalPrecisionEnum.DAY) {
+			return new String(b, 0, len);
+		}
+
+		b[len++] = 'T';
+		len = appendDigits(b, len, millisOfDay / 3600000, 2);
+		b[len++] = ':';
+		len = appendDigits(b, len, (millisOfDay / 60000) % 60, 2);
+		b[len++] = ':';
+		len = appendDigits(b, len, (millisOfDay / 1000) % 60, 2);
+		if (thePrecision == TemporalPrecisionEnum.MILLI) {
+			b[len++] = '.';
+			len = appendDigits(b, len, millisOfDay % 1000, 3);
+		}
+
+		if (theZulu) {
+			b[len++] = 'Z';
+		} else if (appendOffset) {
+			int absOffset = offset;
+			if (absOffset < 0) {
+				b[len++] = '-';
+				absOffset = -absOffset;
+			} else {
+				b[len++] = '+';
+			}
+			int hours = absOffset / 3600000;
+			len = appendDigits(b, len, hours, 2);
+			b[len++] = ':';
+			len = appendDigits(b, len, absOffset / 60000 - 60 * hours, 2);
+		}
+
+		return new String(b, 0, len);
+	}
+
+	/**
+	 * Parses a value in one of the forms <code>yyyy</code>, <code>yyyyMM</code>, <code>yyyy-MM</code>,
+	 * <code>yyyyMMdd</code> or <code>yyyy-MM-dd</code> as the start of that period in the given time zone, or
+	 * returns <code>null</code> if the value can not be parsed by this class
+	 */
+	static Date parseDate(String theValue, TimeZone theLocalTimeZone) {
+		int year = parseDigits(theValue, 0, 4);
+		int month = 1;
+		int day = 1;
+		switch (theValue.length()) {
+		case 4:
+			break;
+		case 6:
+			month = parseDigits(theValue, 4, 6);
+			break;
+		case 7:
+			if (theValue.charAt(4) != '-') {
+				return null;
+			}
+			month = parseDigits(theValue, 5, 7);
+			break;
+		case 8:
+			month = parseDigits(theValue, 4, 6);
+			day = parseDigits(theValue, 6, 8);
+			break;
+		case 10:
+			if (theValue.charAt(4) != '-' || theValue.charAt(7) != '-') {
+				return null;
+			}
+			month = parseDigits(theValue, 5, 7);
+			day = parseDigits(theValue, 8, 10);
+			break;
+		default:
+			return null;
+		}
+
+		if (year < MIN_YEAR || month < 1 || month > 12 || day < 1 || day > 31) {
+			return null;
+		}
+		return toDate(daysFromCivil(year, month, day) * MILLIS_PER_DAY, theLocalTimeZone);
+	}
+
+	/**
+	 * Parses a value in the form <code>yyyy-MM-ddTHH:mm:ss</code>, optionally followed by exactly three digits of
+	 * milliseconds (<code>.SSS</code>) and then optionally by <code>Z</code> or an offset in the form
+	 * <code>+HH:mm</code>. Values without a zone are interpreted in the given time zone. Returns <code>null</code> if
+	 * the value can not be parsed by this class.
+	 */
+	static Date parseDateTime(String theValue, TimeZone theLocalTimeZone) {
+		int len = theValue.length();
+		if (len < 19 || theValue.charAt(4) != '-' || theValue.charAt(7) != '-' || theValue.charAt(10) != 'T' || theValue.charAt(13) != ':' || theValue.charAt(16) != ':') {
+			return null;
+		}
+		int year = parseDigits(theValue, 0, 4);
+		int month = parseDigits(theValue, 5, 7);
+		int day = parseDigits(theValue, 8, 10);
+		int hour = parseDigits(theValue, 11, 13);
+		int minute = parseDigits(theValue, 14, 16);
+		int second = parseDigits(theValue, 17, 19);
+		if (year < MIN_YEAR || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+			return null;
+		}
+
+		int pos = 19;
+		int millis = 0;
+		if (pos < len && theValue.charAt(pos) == '.') {
+			if (len < pos + 4) {
+				return null;
+			}
+			millis = parseDigits(theValue, pos + 1, pos + 4);
+			if (millis < 0) {
+				return null;
+			}
+			pos += 4;
+		}
+
+		long localMillis = daysFromCivil(year, month, day) * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L + second * 1000L + millis;
+		if (pos == len) {
+			return toDate(localMillis, theLocalTimeZone);
+		}
+
+		char next = theValue.charAt(pos);
+		if (next == 'Z' && pos + 1 == len) {
+			return new Date(localMillis);
+		}
+		if ((next == '+' || next == '-') && pos + 6 == len && theValue.charAt(pos + 3) == ':') {
+			int offsetHours = parseDigits(theValue, pos + 1, pos + 3);
+			int offsetMinutes = parseDigits(theValue, pos + 4, pos + 6);
+			if (offsetHours < 0 || offsetHours > 23 || offsetMinutes < 0 || offsetMinutes > 59) {
+				return null;
+			}
+			int offset = (offsetHours * 60 + offsetMinutes) * 60000;
+			return new Date(next == '+' ? localMillis - offset : localMillis + offset);
+		}
+		return null;
+	}
+
+	private static int appendDigits(char[] theBuffer, int thePos, int theValue, int theDigits) {
+		int value = theValue;
+		for (int i = thePos + theDigits - 1; i >= thePos; i--) {
+			theBuffer[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		return thePos + theDigits;
+	}
+
+	/**
+	 * Days since the epoch of the given (proleptic Gregorian) date. Days and months past the end of the month or year
+	 * roll over into the next one, just like a lenient {@link java.util.Calendar}.
+	 */
+	private static long daysFromCivil(int theYear, int theMonth, int theDay) {
+		int year = theMonth <= 2 ? theYear - 1 : theYear;
+		int era = year / 400;
+		int yearOfEra = year - era * 400;
+		int dayOfYear = (153 * (theMonth > 2 ? theMonth - 3 : theMonth + 9) + 2) / 5 + theDay - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	/**
+	 * Returns the value of the given digits, or -1 if any of the characters is not a digit
+	 */
+	private static int parseDigits(String theValue, int theStart, int theEnd) {
+		if (theValue.length() < theEnd) {
+			return -1;
+		}
+		int retVal = 0;
+		for (int i = theStart; i < theEnd; i++) {
+			char next = theValue.charAt(i);
+			if (next < '0' || next > '9') {
+				return -1;
+			}
+			retVal = retVal * 10 + (next - '0');
+		}
+		return retVal;
+	}
+
+	private static Date toDate(long theLocalMillis, TimeZone theTimeZone) {
+		long standardMillis = theLocalMillis - theTimeZone.getRawOffset();
+		int offset = theTimeZone.getOffset(standardMillis - MILLIS_PER_DAY);
+		if (offset != theTimeZone.getOffset(standardMillis + MILLIS_PER_DAY)) {
+			// Close to a daylight saving transition, so leave resolving gaps and overlaps to the calendar
+			return null;
+		}
+		return new Date(theLocalMillis - offset);
+	}
+
+}
@@ -38,9 +38,24 @@ import ca.uhn.fhir.model.api.annotation.SimpleSetter;
 import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.util.XmlUtil;
 
+/**
+ * XHTML datatype, used for narratives.
+ * <p>
+ * The XHTML may be held as text, as a list of XML events, or both. Text which is supplied using
+ * {@link #setValueAsString(String)} (as the parsers do for JSON content) is only parsed into events the first time
+ * {@link #getValue()} is called, and events which are supplied using {@link #setValue(List)} are only converted to
+ * text the first time {@link #getValueAsString()} is called. Most narratives are never inspected, so this means that
+ * they are usually just copied through as text.
+ * </p>
+ */
 @DatatypeDef(name = "xhtml")
 public class XhtmlDt extends BasePrimitive<List<XMLEvent>> {
 
+	private List<XMLEvent> myEvents;
+	private boolean myEventsCurrent = true;
+	private String myText;
+	private boolean myTextCurrent = true;
+
 	/**
 	 * Constructor
 	 */
@@ -71,19 +86,71 @@ public class XhtmlDt extends BasePrimitive<List<XMLEvent>> {
 	 */
 	@Override
 	public void setValueAsString(String theValue) throws DataFormatException {
-		if (theValue == null || theValue.isEmpty()) {
-			super.setValueAsString(null);
-		} else {
-			String value = theValue.trim();
+		String value = null;
+		if (theValue != null && !theValue.isEmpty()) {
+			value = theValue.trim();
 			if (value.charAt(0) != '<') {
 				value = "<div>" + value + "</div>";
 			}
-			super.setValueAsString(value);
 		}
+		myText = value;
+		myTextCurrent = true;
+		myEvents = null;
+		myEventsCurrent = false;
+	}
+
+	/**
+	 * Returns the XHTML as a list of XML events, parsing it first if it was supplied as text
+	 * 
+	 * @throws DataFormatException
+	 *             If the XHTML was supplied as text which is not valid XML
+	 */
+	@Override
+	public List<XMLEvent> getValue() {
+		if (!myEventsCurrent) {
+			myEvents = myText != null ? parse(myText) : null;
+			myEventsCurrent = true;
+		}
+		return myEvents;
+	}
+
+	@Override
+	public String getValueAsString() throws DataFormatException {
+		if (!myTextCurrent) {
+			myText = myEvents != null ? encode(myEvents) : null;
+			myTextCurrent = true;
+		}
+		return myText;
+	}
+
+	@Override
+	public XhtmlDt setValue(List<XMLEvent> theValue) throws DataFormatException {
+		myEvents = theValue;
+		myEventsCurrent = true;
+		myText = null;
+		myTextCurrent = false;
+		return this;
 	}
 
 	public boolean hasContent() {
-		return getValue() != null && getValue().size() > 0;
+		if (!myEventsCurrent) {
+			return myText != null && !isOnlyProcessingInstruction(myText);
+		}
+		return myEvents != null && myEvents.size() > 0;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return isBaseEmpty() && !hasContent();
+	}
+
+	/**
+	 * Returns <code>true</code> if the XHTML is held as a list of XML events, meaning that {@link #setValue(List)}
+	 * or {@link #getValue()} has been called. If this returns <code>false</code> the XHTML has only been supplied as
+	 * text and has not been modified, so encoders may copy {@link #getValueAsString()} straight through.
+	 */
+	public boolean isValueParsed() {
+		return myEventsCurrent;
 	}
 
 	@Override
@@ -92,7 +159,7 @@ public class XhtmlDt extends BasePrimitive<List<XMLEvent>> {
 		if (!val.startsWith("<")) {
 			val = "<div>" + val + "</div>";
 		}
-		if (val.startsWith("<?") && val.endsWith("?>")) {
+		if (isOnlyProcessingInstruction(val)) {
 			return null;
 		}
 
@@ -126,12 +193,8 @@ public class XhtmlDt extends BasePrimitive<List<XMLEvent>> {
 		try {
 			StringWriter w = new StringWriter();
 			XMLEventWriter ew = XmlUtil.createXmlWriter(w);
-			for (XMLEvent next : getValue()) {
-				if (next.isCharacters()) {
-					ew.add(next);
-				} else {
-					ew.add(next);
-				}
+			for (XMLEvent next : theValue) {
+				ew.add(next);
 			}
 			ew.close();
 			return w.toString();
@@ -142,4 +205,8 @@ public class XhtmlDt extends BasePrimitive<List<XMLEvent>> {
 		}
 	}
 
+	private static boolean isOnlyProcessingInstruction(String theValue) {
+		return theValue.startsWith("<?") && theValue.endsWith("?>");
+	}
+
 }
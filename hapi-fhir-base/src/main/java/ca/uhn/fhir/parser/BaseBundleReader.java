@@ -0,0 +1,94 @@
+package ca.uhn.fhir.parser;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.NoSuchElementException;
+
+import ca.uhn.fhir.model.api.Bundle;
+import ca.uhn.fhir.model.api.BundleEntry;
+
+/**
+ * Base class for {@link IBundleReader} implementations. Subclasses feed the underlying stream into an incremental
+ * {@link ParserState} until it reports a completed entry or the end of the bundle.
+ */
+abstract class BaseBundleReader implements IBundleReader {
+
+	private boolean myClosed;
+	private final Reader myReader;
+	private boolean myStarted;
+	private final ParserState<Bundle> myState;
+
+	BaseBundleReader(Reader theReader, ParserState<Bundle> theState) {
+		myReader = theReader;
+		myState = theState;
+	}
+
+	@Override
+	public void close() throws IOException {
+		myClosed = true;
+		myReader.close();
+	}
+
+	@Override
+	public Bundle getBundle() throws DataFormatException {
+		if (!myStarted) {
+			hasNext();
+		}
+		return myState.getBundleInProgress();
+	}
+
+	@Override
+	public boolean hasNext() throws DataFormatException {
+		myStarted = true;
+		while (!myState.hasCompletedBundleEntry()) {
+			if (myClosed || myState.isComplete()) {
+				return false;
+			}
+			parseUntilNextEntry(myState);
+			if (!myState.hasCompletedBundleEntry() && !myState.isComplete()) {
+				throw new DataFormatException("Unexpected end of bundle content");
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public BundleEntry next() throws DataFormatException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return myState.pollCompletedBundleEntry();
+	}
+
+	/**
+	 * Parses from the underlying stream until at least one entry has been completed, the bundle is complete, or the
+	 * stream is exhausted
+	 */
+	protected abstract void parseUntilNextEntry(ParserState<Bundle> theState) throws DataFormatException;
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+}
@@ -23,6 +23,8 @@ package ca.uhn.fhir.parser;
 import static org.apache.commons.lang3.StringUtils.*;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -42,19 +44,30 @@ import org.hl7.fhir.instance.model.Resource;
 
 import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
 import ca.uhn.fhir.context.BaseRuntimeDeclaredChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition.ChildTypeEnum;
 import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.RuntimeChildChoiceDefinition;
+import ca.uhn.fhir.context.RuntimeChildDeclaredExtensionDefinition;
 import ca.uhn.fhir.model.api.Bundle;
+import ca.uhn.fhir.model.api.ExtensionDt;
 import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.api.ISupportsUndeclaredExtensions;
 import ca.uhn.fhir.model.api.TagList;
+import ca.uhn.fhir.model.dstu.composite.ContainedDt;
 import ca.uhn.fhir.model.dstu.composite.ResourceReferenceDt;
 import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.util.ElementUtil;
 
 public abstract class BaseParser implements IParser {
 
 	private ContainedResources myContainedResources;
 	private FhirContext myContext;
+	private IdentityHashMap<IBase, Boolean> myEmptyElements;
+	private Set<String> myEncodeElements;
+	private Set<String> myParseElements;
 	private boolean mySuppressNarratives;
 
 	public BaseParser(FhirContext theContext) {
@@ -91,10 +104,11 @@ public abstract class BaseParser implements IParser {
 			// no resources to contain
 		}
 
-		{
-			List<ResourceReferenceDt> allElements = myContext.newTerser().getAllPopulatedChildElementsOfType(theResource, ResourceReferenceDt.class);
-			for (ResourceReferenceDt next : allElements) {
-				IResource resource = next.getResource();
+		List<IBase> references = new ArrayList<IBase>();
+		scanForEncoding(theResource, myContext.getResourceDefinition(theResource), references);
+		for (IBase nextRef : references) {
+			if (nextRef instanceof ResourceReferenceDt) {
+				IResource resource = ((ResourceReferenceDt) nextRef).getResource();
 				if (resource != null) {
 					if (resource.getId().isEmpty() || resource.getId().isLocal()) {
 						theContained.addContained(resource);
@@ -104,13 +118,8 @@ public abstract class BaseParser implements IParser {
 
 					containResourcesForEncoding(theContained, resource, theTarget);
 				}
-			}
-		}
-
-		{
-			List<Reference> allElements = myContext.newTerser().getAllPopulatedChildElementsOfType(theResource, Reference.class);
-			for (Reference next : allElements) {
-				Resource resource = next.getResource();
+			} else if (nextRef instanceof Reference) {
+				Resource resource = ((Reference) nextRef).getResource();
 				if (resource != null) {
 					if (resource.getIdElement().isEmpty() || resource.getId().startsWith("#")) {
 						theContained.addContained(resource);
@@ -125,12 +134,26 @@ public abstract class BaseParser implements IParser {
 
 	}
 
+	/**
+	 * Prepares for encoding the given resource. This finds the resources which need to be contained, and records
+	 * whether each element of the resource is empty (see {@link #isElementEmpty(IBase)}) in the same walk.
+	 */
 	public void containResourcesForEncoding(IBaseResource theResource) {
 		ContainedResources contained = new ContainedResources();
+		myEmptyElements = new IdentityHashMap<IBase, Boolean>();
 		containResourcesForEncoding(contained, theResource, theResource);
 		myContainedResources = contained;
 	}
 
+	/**
+	 * Releases the state recorded by {@link #containResourcesForEncoding(IBaseResource)}, so that it is not retained
+	 * by the parser between top-level encodes
+	 */
+	protected void releaseEncodingState() {
+		myEmptyElements = null;
+		myContainedResources = null;
+	}
+
 	@Override
 	public String encodeBundleToString(Bundle theBundle) throws DataFormatException {
 		if (theBundle == null) {
@@ -180,11 +203,21 @@ public abstract class BaseParser implements IParser {
 		return mySuppressNarratives;
 	}
 
+	@Override
+	public void encodeBundleToOutputStream(Bundle theBundle, OutputStream theOutputStream) throws IOException, DataFormatException {
+		encodeBundleToOutputStream(theBundle, theBundle.getEntries(), theOutputStream);
+	}
+
 	@Override
 	public Bundle parseBundle(Reader theReader) {
 		return parseBundle(null, theReader);
 	}
 
+	@Override
+	public IBundleReader parseBundleIncrementally(Reader theReader) throws DataFormatException {
+		return parseBundleIncrementally(null, theReader);
+	}
+
 	@Override
 	public Bundle parseBundle(String theXml) throws ConfigurationException, DataFormatException {
 		StringReader reader = new StringReader(theXml);
@@ -198,6 +231,11 @@ public abstract class BaseParser implements IParser {
 		return (T) parseResource(theResourceType, reader);
 	}
 
+	@Override
+	public IResource parseResource(InputStream theInputStream) throws DataFormatException {
+		return parseResource(null, theInputStream);
+	}
+
 	@Override
 	public IResource parseResource(Reader theReader) throws ConfigurationException, DataFormatException {
 		return parseResource(null, theReader);
@@ -213,6 +251,176 @@ public abstract class BaseParser implements IParser {
 		return parseTagList(new StringReader(theString));
 	}
 
+	protected Set<String> getEncodeElements() {
+		return myEncodeElements;
+	}
+
+	protected Set<String> getParseElements() {
+		return myParseElements;
+	}
+
+	/**
+	 * Returns <code>true</code> if the given child of the given element should be encoded, given the elements
+	 * selected using {@link #setEncodeElements(Set)}. Only the children of the root resource itself are filtered.
+	 */
+	protected boolean isEncodeElementSelected(IBaseResource theResource, IBase theElement, boolean theIncludedResource, BaseRuntimeChildDefinition theChild) {
+		String elementName;
+		if (theChild instanceof RuntimeChildDeclaredExtensionDefinition) {
+			elementName = ((RuntimeChildDeclaredExtensionDefinition) theChild).isModifier() ? "modifierExtension" : "extension";
+		} else {
+			elementName = theChild.getElementName();
+		}
+		return isEncodeElementSelected(theResource, theElement, theIncludedResource, elementName);
+	}
+
+	/**
+	 * @see #isEncodeElementSelected(IBaseResource, IBase, boolean, BaseRuntimeChildDefinition)
+	 */
+	protected boolean isEncodeElementSelected(IBaseResource theResource, IBase theElement, boolean theIncludedResource, String theElementName) {
+		if (myEncodeElements == null || theIncludedResource || theElement != theResource) {
+			return true;
+		}
+		if ("contained".equals(theElementName) || "modifierExtension".equals(theElementName)) {
+			return true;
+		}
+		return isElementSelected(myEncodeElements, myContext.getResourceDefinition(theResource).getName(), theElementName);
+	}
+
+	/**
+	 * Returns <code>true</code> if the given element is empty. For elements of the resource currently being encoded
+	 * this uses the result of the walk in {@link #containResourcesForEncoding(IBaseResource)}, since
+	 * {@link IBase#isEmpty()} recurses through the descendants of the element each time it is called.
+	 */
+	protected boolean isElementEmpty(IBase theElement) {
+		if (myEmptyElements != null) {
+			Boolean retVal = myEmptyElements.get(theElement);
+			if (retVal != null) {
+				return retVal;
+			}
+		}
+		return theElement.isEmpty();
+	}
+
+	/**
+	 * Walks the given element and its descendants, recording whether each one is empty (computed bottom-up, so each
+	 * element is only visited once) and collecting the non-empty resource references in document order. Like
+	 * {@link ca.uhn.fhir.util.FhirTerser}, this descends into contained resources and into resources which are only
+	 * referenced locally.
+	 * 
+	 * @return Returns <code>true</code> if the element is empty
+	 */
+	private boolean scanForEncoding(IBase theElement, BaseRuntimeElementDefinition<?> theDefinition, List<IBase> theReferences) {
+		Boolean existing = myEmptyElements.get(theElement);
+		if (existing != null) {
+			return existing;
+		}
+
+		boolean empty;
+		switch (theDefinition.getChildType()) {
+		case RESOURCE_REF: {
+			empty = theElement.isEmpty();
+			if (!empty) {
+				theReferences.add(theElement);
+			}
+			scanUndeclaredExtensions(theElement, theReferences);
+			if (!empty) {
+				ResourceReferenceDt ref = (ResourceReferenceDt) theElement;
+				IResource resource = ref.getResource();
+				if (ref.getReference().getValue() == null && resource != null) {
+					if (resource.getId() == null || resource.getId().isEmpty() || resource.getId().isLocal()) {
+						scanForEncoding(resource, myContext.getResourceDefinition(resource), theReferences);
+					}
+				}
+			}
+			break;
+		}
+		case RESOURCE_BLOCK:
+		case COMPOSITE_DATATYPE:
+		case RESOURCE: {
+			// Guards against resources which reference each other
+			myEmptyElements.put(theElement, Boolean.FALSE);
+
+			boolean reference = theElement instanceof Reference;
+			if (reference && !theElement.isEmpty()) {
+				theReferences.add(theElement);
+			}
+
+			empty = true;
+			if (theElement instanceof ISupportsUndeclaredExtensions) {
+				ISupportsUndeclaredExtensions element = (ISupportsUndeclaredExtensions) theElement;
+				empty &= ElementUtil.isEmpty(element.getUndeclaredExtensions());
+				empty &= ElementUtil.isEmpty(element.getUndeclaredModifierExtensions());
+				scanUndeclaredExtensions(theElement, theReferences);
+			}
+
+			BaseRuntimeElementCompositeDefinition<?> def = (BaseRuntimeElementCompositeDefinition<?>) theDefinition;
+			for (BaseRuntimeChildDefinition nextChild : def.getChildrenAndExtension()) {
+				List<? extends IBase> values = nextChild.getAccessor().getValues(theElement);
+				if (values == null) {
+					continue;
+				}
+				for (IBase nextValue : values) {
+					if (nextValue == null) {
+						continue;
+					}
+					BaseRuntimeElementDefinition<?> childDef = nextChild.getChildElementDefinitionByDatatype(nextValue.getClass());
+					if (childDef == null) {
+						if (!nextValue.isEmpty()) {
+							throwExceptionForUnknownChildType(nextChild, nextValue.getClass());
+						}
+					} else {
+						empty &= scanForEncoding(nextValue, childDef, theReferences);
+					}
+				}
+			}
+
+			if (empty && (reference || theDefinition.getChildType() == ChildTypeEnum.RESOURCE)) {
+				// Resources and references also have state (e.g. the ID or the target) which is not a child
+				empty = theElement.isEmpty();
+			}
+			break;
+		}
+		case CONTAINED_RESOURCES: {
+			scanUndeclaredExtensions(theElement, theReferences);
+			for (IResource next : ((ContainedDt) theElement).getContainedResources()) {
+				scanForEncoding(next, myContext.getResourceDefinition(next), theReferences);
+			}
+			empty = theElement.isEmpty();
+			break;
+		}
+		default:
+			scanUndeclaredExtensions(theElement, theReferences);
+			empty = theElement.isEmpty();
+			break;
+		}
+
+		myEmptyElements.put(theElement, empty);
+		return empty;
+	}
+
+	private void scanUndeclaredExtensions(IBase theElement, List<IBase> theReferences) {
+		if (theElement instanceof ISupportsUndeclaredExtensions) {
+			for (ExtensionDt next : ((ISupportsUndeclaredExtensions) theElement).getUndeclaredExtensions()) {
+				if (next.getValue() instanceof ResourceReferenceDt) {
+					theReferences.add(next.getValue());
+				}
+				scanUndeclaredExtensions(next, theReferences);
+			}
+		}
+	}
+
+	@Override
+	public IParser setEncodeElements(Set<String> theEncodeElements) {
+		myEncodeElements = theEncodeElements;
+		return this;
+	}
+
+	@Override
+	public IParser setParseElements(Set<String> theParseElements) {
+		myParseElements = theParseElements;
+		return this;
+	}
+
 	@Override
 	public IParser setSuppressNarratives(boolean theSuppressNarratives) {
 		mySuppressNarratives = theSuppressNarratives;
@@ -294,4 +502,8 @@ public abstract class BaseParser implements IParser {
 
 	}
 
+	static boolean isElementSelected(Set<String> theElements, String theResourceName, String theElementName) {
+		return theElements.contains(theElementName) || theElements.contains(theResourceName + '.' + theElementName);
+	}
+
 }
@@ -0,0 +1,76 @@
+package ca.uhn.fhir.parser;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+import ca.uhn.fhir.model.api.Bundle;
+import ca.uhn.fhir.model.api.BundleEntry;
+
+/**
+ * Reads the entries of a bundle one at a time, as they are parsed from the underlying stream. This can be used to
+ * process bundles which are too large to comfortably hold in memory, since each entry becomes eligible for garbage
+ * collection as soon as the caller is done with it.
+ * <p>
+ * Instances are obtained from {@link IParser#parseBundleIncrementally(java.io.Reader)}. The reader must be closed when it
+ * is no longer needed, which also closes the underlying Reader.
+ * </p>
+ * <p>
+ * Note that unlike {@link IParser#parseBundle(java.io.Reader)}, references between resources in different entries are not
+ * resolved to the resource instances (i.e. {@link ca.uhn.fhir.model.dstu.composite.ResourceReferenceDt#getResource()}
+ * will not be populated).
+ * </p>
+ * 
+ * @see IParser#parseBundleIncrementally(Class, java.io.Reader)
+ */
+public interface IBundleReader extends Iterator<BundleEntry>, Closeable {
+
+	/**
+	 * Returns the bundle being read. The returned bundle contains all of the bundle level metadata (ID, links, total
+	 * results, etc.) which appears before the first entry in the stream, but does not contain any entries. Any
+	 * metadata which appears after the entries is available once {@link #hasNext()} has returned
+	 * <code>false</code>.
+	 * 
+	 * @throws DataFormatException
+	 *             If the bundle can not be parsed
+	 */
+	Bundle getBundle() throws DataFormatException;
+
+	/**
+	 * Returns <code>true</code> if there is another entry, parsing the next entry from the stream if needed
+	 * 
+	 * @throws DataFormatException
+	 *             If the next entry can not be parsed
+	 */
+	@Override
+	boolean hasNext() throws DataFormatException;
+
+	/**
+	 * Not supported, entries can not be removed
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             Always
+	 */
+	@Override
+	void remove();
+
+}
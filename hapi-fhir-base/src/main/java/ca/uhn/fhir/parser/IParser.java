@@ -21,13 +21,17 @@ package ca.uhn.fhir.parser;
  */
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.Set;
 
 import org.hl7.fhir.instance.model.IBaseResource;
 
 import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.model.api.Bundle;
+import ca.uhn.fhir.model.api.BundleEntry;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.TagList;
 
@@ -39,10 +43,61 @@ import ca.uhn.fhir.model.api.TagList;
  */
 public interface IParser {
 
+	/**
+	 * Encodes a bundle as UTF-8 bytes, written directly to the given stream. The stream is flushed but not closed.
+	 * 
+	 * @param theBundle
+	 *            The bundle to encode
+	 * @param theOutputStream
+	 *            The stream to encode to
+	 */
+	void encodeBundleToOutputStream(Bundle theBundle, OutputStream theOutputStream) throws IOException, DataFormatException;
+
+	/**
+	 * Encodes a bundle whose entries are supplied separately as UTF-8 bytes, written directly to the given stream. The
+	 * stream is flushed but not closed.
+	 * 
+	 * @param theBundle
+	 *            The bundle metadata to encode
+	 * @param theEntries
+	 *            The entries to encode
+	 * @param theOutputStream
+	 *            The stream to encode to
+	 * @see #encodeBundleToWriter(Bundle, Iterable, Writer)
+	 */
+	void encodeBundleToOutputStream(Bundle theBundle, Iterable<BundleEntry> theEntries, OutputStream theOutputStream) throws IOException, DataFormatException;
+
 	String encodeBundleToString(Bundle theBundle) throws DataFormatException;
 
 	void encodeBundleToWriter(Bundle theBundle, Writer theWriter) throws IOException, DataFormatException;
 
+	/**
+	 * Encodes a bundle whose entries are supplied separately. The bundle level metadata (ID, links, total results,
+	 * etc.) is taken from <code>theBundle</code>, and any entries it contains are ignored. Entries are requested from
+	 * <code>theEntries</code> one at a time as they are encoded, so they may be produced lazily (e.g. loaded in chunks
+	 * from a database) and need not all be held in memory at once.
+	 * 
+	 * @param theBundle
+	 *            The bundle metadata to encode
+	 * @param theEntries
+	 *            The entries to encode
+	 * @param theWriter
+	 *            The writer to encode to
+	 */
+	void encodeBundleToWriter(Bundle theBundle, Iterable<BundleEntry> theEntries, Writer theWriter) throws IOException, DataFormatException;
+
+	/**
+	 * Encodes a resource as UTF-8 bytes, written directly to the given stream. This avoids the cost of converting
+	 * between characters and bytes when the destination is a byte stream (e.g. a servlet response or a database
+	 * column). The stream is flushed but not closed.
+	 * 
+	 * @param theResource
+	 *            The resource to encode
+	 * @param theOutputStream
+	 *            The stream to encode to
+	 */
+	void encodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream) throws IOException, DataFormatException;
+
 	String encodeResourceToString(IBaseResource theResource) throws DataFormatException;
 
 	void encodeResourceToWriter(IBaseResource theResource, Writer theWriter) throws IOException, DataFormatException;
@@ -66,12 +121,55 @@ public interface IParser {
 	 */
 	void encodeTagListToWriter(TagList theTagList, Writer theWriter) throws IOException;
 
+	/**
+	 * Parses a bundle from bytes. The character encoding is detected from the content (UTF-8 is assumed unless a byte
+	 * order mark or XML declaration indicates otherwise).
+	 * 
+	 * @param theResourceType
+	 *            The resource type to use for entries which contain a resource of this type, or <code>null</code>
+	 * @param theInputStream
+	 *            The stream to parse input from. Note that the stream will not be closed by the parser upon completion.
+	 * @return A parsed bundle
+	 * @throws DataFormatException
+	 *             If the bundle can not be parsed
+	 */
+	<T extends IBaseResource> Bundle parseBundle(Class<T> theResourceType, InputStream theInputStream) throws DataFormatException;
+
 	<T extends IBaseResource> Bundle parseBundle(Class<T> theResourceType, Reader theReader);
 
 	Bundle parseBundle(Reader theReader);
 
 	Bundle parseBundle(String theMessageString) throws ConfigurationException, DataFormatException;
 
+	/**
+	 * Parses a bundle incrementally, returning a reader which exposes the bundle metadata and then parses and returns
+	 * the entries one at a time as they are requested. This allows very large bundles (e.g. bulk exports or long
+	 * history feeds) to be processed without holding the whole bundle in memory.
+	 * 
+	 * @param theResourceType
+	 *            The resource type to use for entries which contain a resource of this type, or <code>null</code>
+	 * @param theReader
+	 *            The reader to parse input from. This reader is closed when the returned bundle reader is closed.
+	 * @return A bundle reader, which must be closed by the caller
+	 * @throws DataFormatException
+	 *             If the bundle can not be parsed
+	 * @see IBundleReader
+	 */
+	<T extends IBaseResource> IBundleReader parseBundleIncrementally(Class<T> theResourceType, Reader theReader) throws DataFormatException;
+
+	/**
+	 * Parses a bundle incrementally, returning a reader which exposes the bundle metadata and then parses and returns
+	 * the entries one at a time as they are requested.
+	 * 
+	 * @param theReader
+	 *            The reader to parse input from. This reader is closed when the returned bundle reader is closed.
+	 * @return A bundle reader, which must be closed by the caller
+	 * @throws DataFormatException
+	 *             If the bundle can not be parsed
+	 * @see #parseBundleIncrementally(Class, Reader)
+	 */
+	IBundleReader parseBundleIncrementally(Reader theReader) throws DataFormatException;
+
 	/**
 	 * Parses a resource
 	 * 
@@ -85,6 +183,32 @@ public interface IParser {
 	 */
 	<T extends IBaseResource> T parseResource(Class<T> theResourceType, Reader theReader) throws DataFormatException;
 
+	/**
+	 * Parses a resource from bytes. The character encoding is detected from the content (UTF-8 is assumed unless a
+	 * byte order mark or XML declaration indicates otherwise).
+	 * 
+	 * @param theResourceType
+	 *            The resource type to use, or <code>null</code> to determine the type from the content
+	 * @param theInputStream
+	 *            The stream to parse input from. Note that the stream will not be closed by the parser upon completion.
+	 * @return A parsed resource
+	 * @throws DataFormatException
+	 *             If the resource can not be parsed because the data is not recognized or invalid for any reason
+	 */
+	<T extends IBaseResource> T parseResource(Class<T> theResourceType, InputStream theInputStream) throws DataFormatException;
+
+	/**
+	 * Parses a resource from bytes
+	 * 
+	 * @param theInputStream
+	 *            The stream to parse input from. Note that the stream will not be closed by the parser upon completion.
+	 * @return A parsed resource
+	 * @throws DataFormatException
+	 *             If the resource can not be parsed because the data is not recognized or invalid for any reason
+	 * @see #parseResource(Class, InputStream)
+	 */
+	IResource parseResource(InputStream theInputStream) throws DataFormatException;
+
 	/**
 	 * Parses a resource
 	 * 
@@ -138,6 +262,34 @@ public interface IParser {
 	 */
 	TagList parseTagList(String theString);
 
+	/**
+	 * If set, only the given children of the root resource (or of each resource in a bundle) are encoded. Each value
+	 * is either the name of a child (e.g. <code>name</code>), which applies to any resource type, or a resource
+	 * type and child name separated by a period (e.g. <code>Patient.name</code>), which applies only to that
+	 * resource type. Choice elements are selected using their name without a type suffix (e.g. <code>value</code>).
+	 * <p>
+	 * The resource ID, metadata and contained resources are always encoded. Undeclared extensions on the resource
+	 * are only encoded if <code>extension</code> is selected, but modifier extensions are always encoded.
+	 * </p>
+	 * 
+	 * @param theEncodeElements
+	 *            The elements to encode, or <code>null</code> (the default) to encode all elements
+	 * @return Returns an instance of <code>this</code> parser so that method calls can be conveniently chained
+	 */
+	IParser setEncodeElements(Set<String> theEncodeElements);
+
+	/**
+	 * If set, only the given children of the root resource (or of each resource in a bundle) are parsed, and the
+	 * content of any other children is skipped without creating model objects for it. This is useful when only a
+	 * few elements of large resources are needed. The format of the element names is the same as for
+	 * {@link #setEncodeElements(Set)}.
+	 * 
+	 * @param theParseElements
+	 *            The elements to parse, or <code>null</code> (the default) to parse all elements
+	 * @return Returns an instance of <code>this</code> parser so that method calls can be conveniently chained
+	 */
+	IParser setParseElements(Set<String> theParseElements);
+
 	/**
 	 * Sets the "pretty print" flag, meaning that the parser will encode resources with human-readable spacing and newlines between elements instead of condensing output as much as possible.
 	 * 
@@ -23,14 +23,17 @@ package ca.uhn.fhir.parser;
 import static org.apache.commons.lang3.StringUtils.*;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -38,14 +41,17 @@ import java.util.Set;
 
 import javax.json.Json;
 import javax.json.JsonArray;
-import javax.json.JsonNumber;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
 import javax.json.JsonObject;
-import javax.json.JsonReader;
+import javax.json.JsonObjectBuilder;
 import javax.json.JsonString;
 import javax.json.JsonValue;
 import javax.json.JsonValue.ValueType;
 import javax.json.stream.JsonGenerator;
 import javax.json.stream.JsonGeneratorFactory;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
 import javax.json.stream.JsonParsingException;
 
 import org.apache.commons.lang3.StringUtils;
@@ -96,6 +102,16 @@ public class JsonParser extends BaseParser implements IParser {
 
 	private static final Set<String> BUNDLE_TEXTNODE_CHILDREN_DSTU1;
 	private static final Set<String> BUNDLE_TEXTNODE_CHILDREN_DSTU2;
+	private static final JsonBuilderFactory ourJsonBuilderFactory = Json.createBuilderFactory(Collections.<String, Object> emptyMap());
+	private static final JsonParserFactory ourJsonParserFactory = Json.createParserFactory(Collections.<String, Object> emptyMap());
+
+	/*
+	 * Generator factories hold a pool of buffers which are reused by the generators they create, so they are shared
+	 * instead of being created for every message
+	 */
+	private static final JsonGeneratorFactory ourJsonGeneratorFactory = Json.createGeneratorFactory(Collections.<String, Object> emptyMap());
+	private static final JsonGeneratorFactory ourPrettyJsonGeneratorFactory = Json.createGeneratorFactory(Collections.<String, Object> singletonMap(JsonGenerator.PRETTY_PRINTING, Boolean.TRUE));
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(JsonParser.HeldExtension.class);
 
 	static {
@@ -149,28 +165,49 @@ public class JsonParser extends BaseParser implements IParser {
 		}
 	}
 
+	private JsonGenerator createJsonGenerator(OutputStream theOutputStream) {
+		return getJsonGeneratorFactory().createGenerator(theOutputStream, UTF_8);
+	}
+
 	private JsonGenerator createJsonGenerator(Writer theWriter) {
-		Map<String, Object> properties = new HashMap<String, Object>(1);
-		if (myPrettyPrint) {
-			properties.put(JsonGenerator.PRETTY_PRINTING, myPrettyPrint);
-		}
-		JsonGeneratorFactory jgf = Json.createGeneratorFactory(properties);
-		JsonGenerator eventWriter = jgf.createGenerator(theWriter);
-		return eventWriter;
+		return getJsonGeneratorFactory().createGenerator(theWriter);
+	}
+
+	private JsonGeneratorFactory getJsonGeneratorFactory() {
+		return myPrettyPrint ? ourPrettyJsonGeneratorFactory : ourJsonGeneratorFactory;
+	}
+
+	@Override
+	public void encodeBundleToOutputStream(Bundle theBundle, Iterable<BundleEntry> theEntries, OutputStream theOutputStream) throws IOException {
+		JsonGenerator eventWriter = createJsonGenerator(theOutputStream);
+		encodeBundleToJsonGenerator(theBundle, theEntries, eventWriter);
 	}
 
 	@Override
 	public void encodeBundleToWriter(Bundle theBundle, Writer theWriter) throws IOException {
+		encodeBundleToWriter(theBundle, theBundle.getEntries(), theWriter);
+	}
+
+	@Override
+	public void encodeBundleToWriter(Bundle theBundle, Iterable<BundleEntry> theEntries, Writer theWriter) throws IOException {
 		JsonGenerator eventWriter = createJsonGenerator(theWriter);
-		if (myContext.getVersion().getVersion().isNewerThan(FhirVersionEnum.DSTU1)) {
-			encodeBundleToWriterInDstu2Format(theBundle, eventWriter);
-		} else {
-			encodeBundleToWriterInDstu1Format(theBundle, eventWriter);
+		encodeBundleToJsonGenerator(theBundle, theEntries, eventWriter);
+	}
+
+	private void encodeBundleToJsonGenerator(Bundle theBundle, Iterable<BundleEntry> theEntries, JsonGenerator eventWriter) throws IOException {
+		try {
+			if (myContext.getVersion().getVersion().isNewerThan(FhirVersionEnum.DSTU1)) {
+				encodeBundleToWriterInDstu2Format(theBundle, theEntries, eventWriter);
+			} else {
+				encodeBundleToWriterInDstu1Format(theBundle, theEntries, eventWriter);
+			}
+			eventWriter.flush();
+		} finally {
+			releaseEncodingState();
 		}
-		eventWriter.flush();
 	}
 
-	private void encodeBundleToWriterInDstu1Format(Bundle theBundle, JsonGenerator eventWriter) throws IOException {
+	private void encodeBundleToWriterInDstu1Format(Bundle theBundle, Iterable<BundleEntry> theEntries, JsonGenerator eventWriter) throws IOException {
 		eventWriter.writeStartObject();
 
 		eventWriter.write("resourceType", "Bundle");
@@ -198,7 +235,7 @@ public class JsonParser extends BaseParser implements IParser {
 		writeAuthor(theBundle, eventWriter);
 
 		eventWriter.writeStartArray("entry");
-		for (BundleEntry nextEntry : theBundle.getEntries()) {
+		for (BundleEntry nextEntry : theEntries) {
 			eventWriter.writeStartObject();
 
 			boolean deleted = nextEntry.getDeletedAt() != null && nextEntry.getDeletedAt().isEmpty() == false;
@@ -240,7 +277,7 @@ public class JsonParser extends BaseParser implements IParser {
 		eventWriter.writeEnd();
 	}
 
-	private void encodeBundleToWriterInDstu2Format(Bundle theBundle, JsonGenerator theEventWriter) throws IOException {
+	private void encodeBundleToWriterInDstu2Format(Bundle theBundle, Iterable<BundleEntry> theEntries, JsonGenerator theEventWriter) throws IOException {
 		theEventWriter.writeStartObject();
 
 		theEventWriter.write("resourceType", "Bundle");
@@ -269,7 +306,7 @@ public class JsonParser extends BaseParser implements IParser {
 		}
 
 		theEventWriter.writeStartArray("entry");
-		for (BundleEntry nextEntry : theBundle.getEntries()) {
+		for (BundleEntry nextEntry : theEntries) {
 			theEventWriter.writeStartObject();
 
 			writeOptionalTagWithTextNode(theEventWriter, "base", nextEntry.getLinkBase());
@@ -435,6 +472,9 @@ public class JsonParser extends BaseParser implements IParser {
 	private void encodeCompositeElementChildrenToStreamWriter(RuntimeResourceDefinition theResDef, IBaseResource theResource, IBase theNextValue, JsonGenerator theEventWriter,
 			List<? extends BaseRuntimeChildDefinition> theChildren, boolean theIsSubElementWithinResource) throws IOException {
 		for (BaseRuntimeChildDefinition nextChild : theChildren) {
+			if (!isEncodeElementSelected(theResource, theNextValue, theIsSubElementWithinResource, nextChild)) {
+				continue;
+			}
 			if (nextChild instanceof RuntimeChildNarrativeDefinition) {
 
 				INarrativeGenerator gen = myContext.getNarrativeGenerator();
@@ -463,7 +503,7 @@ public class JsonParser extends BaseParser implements IParser {
 
 			int valueIdx = 0;
 			for (IBase nextValue : values) {
-				if (nextValue == null || nextValue.isEmpty()) {
+				if (nextValue == null || isElementEmpty(nextValue)) {
 					if (nextValue instanceof ContainedDt) {
 						if (theIsSubElementWithinResource || getContainedResources().isEmpty()) {
 							continue;
@@ -574,7 +614,15 @@ public class JsonParser extends BaseParser implements IParser {
 
 	private void encodeCompositeElementToStreamWriter(RuntimeResourceDefinition theResDef, IBaseResource theResource, IBase theNextValue, JsonGenerator theEventWriter,
 			BaseRuntimeElementCompositeDefinition<?> resDef, boolean theIsSubElementWithinResource) throws IOException, DataFormatException {
-		extractAndWriteExtensionsAsDirectChild(theNextValue, theEventWriter, resDef, theResDef, theResource, null);
+		if (isEncodeElementSelected(theResource, theNextValue, theIsSubElementWithinResource, "extension")) {
+			extractAndWriteExtensionsAsDirectChild(theNextValue, theEventWriter, resDef, theResDef, theResource, null);
+		} else {
+			// Modifier extensions are always written
+			List<HeldExtension> modifierExtensions = new ArrayList<HeldExtension>(0);
+			extractUndeclaredExtensions(theNextValue, new ArrayList<HeldExtension>(0), modifierExtensions);
+			extractDeclaredExtensions(theNextValue, resDef, new ArrayList<HeldExtension>(0), modifierExtensions);
+			writeExtensionsAsDirectChild(theResource, theEventWriter, theResDef, new ArrayList<HeldExtension>(0), modifierExtensions, null);
+		}
 		encodeCompositeElementChildrenToStreamWriter(theResDef, theResource, theNextValue, theEventWriter, resDef.getExtensions(), theIsSubElementWithinResource);
 		encodeCompositeElementChildrenToStreamWriter(theResDef, theResource, theNextValue, theEventWriter, resDef.getChildren(), theIsSubElementWithinResource);
 	}
@@ -640,6 +688,21 @@ public class JsonParser extends BaseParser implements IParser {
 		theEventWriter.writeEnd();
 	}
 
+	@Override
+	public void encodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream) throws IOException {
+		Validate.notNull(theResource, "Resource can not be null");
+
+		JsonGenerator eventWriter = createJsonGenerator(theOutputStream);
+
+		RuntimeResourceDefinition resDef = myContext.getResourceDefinition(theResource);
+		try {
+			encodeResourceToJsonStreamWriter(resDef, theResource, eventWriter, null, false);
+			eventWriter.flush();
+		} finally {
+			releaseEncodingState();
+		}
+	}
+
 	@Override
 	public void encodeResourceToWriter(IBaseResource theResource, Writer theWriter) throws IOException {
 		Validate.notNull(theResource, "Resource can not be null");
@@ -647,8 +710,12 @@ public class JsonParser extends BaseParser implements IParser {
 		JsonGenerator eventWriter = createJsonGenerator(theWriter);
 
 		RuntimeResourceDefinition resDef = myContext.getResourceDefinition(theResource);
-		encodeResourceToJsonStreamWriter(resDef, theResource, eventWriter, null, false);
-		eventWriter.flush();
+		try {
+			encodeResourceToJsonStreamWriter(resDef, theResource, eventWriter, null, false);
+			eventWriter.flush();
+		} finally {
+			releaseEncodingState();
+		}
 	}
 
 	@Override
@@ -705,7 +772,7 @@ public class JsonParser extends BaseParser implements IParser {
 		for (RuntimeChildDeclaredExtensionDefinition nextDef : resDef.getExtensionsNonModifier()) {
 			for (IBase nextValue : nextDef.getAccessor().getValues(theResource)) {
 				if (nextValue != null) {
-					if (nextValue == null || nextValue.isEmpty()) {
+					if (nextValue == null || isElementEmpty(nextValue)) {
 						continue;
 					}
 					extensions.add(new HeldExtension(nextDef, nextValue));
@@ -715,7 +782,7 @@ public class JsonParser extends BaseParser implements IParser {
 		for (RuntimeChildDeclaredExtensionDefinition nextDef : resDef.getExtensionsModifier()) {
 			for (IBase nextValue : nextDef.getAccessor().getValues(theResource)) {
 				if (nextValue != null) {
-					if (nextValue == null || nextValue.isEmpty()) {
+					if (nextValue == null || isElementEmpty(nextValue)) {
 						continue;
 					}
 					modifierExtensions.add(new HeldExtension(nextDef, nextValue));
@@ -728,7 +795,7 @@ public class JsonParser extends BaseParser implements IParser {
 		if (theResource instanceof ISupportsUndeclaredExtensions) {
 			List<ExtensionDt> ext = ((ISupportsUndeclaredExtensions) theResource).getUndeclaredExtensions();
 			for (ExtensionDt next : ext) {
-				if (next == null || next.isEmpty()) {
+				if (next == null || isElementEmpty(next)) {
 					continue;
 				}
 				extensions.add(new HeldExtension(next));
@@ -736,7 +803,7 @@ public class JsonParser extends BaseParser implements IParser {
 
 			ext = ((ISupportsUndeclaredExtensions) theResource).getUndeclaredModifierExtensions();
 			for (ExtensionDt next : ext) {
-				if (next == null || next.isEmpty()) {
+				if (next == null || isElementEmpty(next)) {
 					continue;
 				}
 				modifierExtensions.add(new HeldExtension(next));
@@ -744,7 +811,35 @@ public class JsonParser extends BaseParser implements IParser {
 		}
 	}
 
-	private void parseAlternates(JsonValue theAlternateVal, ParserState<?> theState, String theElementName) {
+	private PushbackJsonParser createJsonParser(InputStream theInputStream) {
+		// The factory detects the character encoding, defaulting to UTF-8
+		return new PushbackJsonParser(ourJsonParserFactory.createParser(theInputStream));
+	}
+
+	private PushbackJsonParser createJsonParser(Reader theReader) {
+		return new PushbackJsonParser(ourJsonParserFactory.createParser(theReader));
+	}
+
+	private void expectEvent(PushbackJsonParser theParser, Event theExpected, String thePosition) {
+		Event event = theParser.next();
+		if (event != theExpected) {
+			throw new DataFormatException("Invalid content of element " + thePosition + ", expected " + theExpected + " but found " + event);
+		}
+	}
+
+	private DataFormatException newDataFormatException(JsonParsingException theException) {
+		if (theException.getMessage().startsWith("Unexpected char 39")) {
+			return new DataFormatException("Failed to parse JSON encoded FHIR content: " + theException.getMessage()
+					+ " - This may indicate that single quotes are being used as JSON escapes where double quotes are required", theException);
+		}
+		return new DataFormatException("Failed to parse JSON encoded FHIR content: " + theException.getMessage(), theException);
+	}
+
+	/**
+	 * Alternates (the "_name" properties holding the ID and extensions of primitive elements) are small, so they are
+	 * buffered as a JSON object. Any extensions they contain are then replayed through the streaming methods.
+	 */
+	private void parseAlternates(PushbackJsonParser theParser, JsonValue theAlternateVal, ParserState<?> theState, String theElementName) {
 		if (theAlternateVal == null || theAlternateVal.getValueType() == ValueType.NULL) {
 			return;
 		}
@@ -757,201 +852,314 @@ public class JsonParser extends BaseParser implements IParser {
 			if (array.size() == 0) {
 				return;
 			}
-			parseAlternates(array.getJsonObject(0), theState, theElementName);
+			parseAlternates(theParser, array.get(0), theState, theElementName);
 			return;
 		}
 
+		if (!(theAlternateVal instanceof JsonObject)) {
+			throw new DataFormatException("Unexpected " + theAlternateVal.getValueType() + " (expected object) for element: " + theElementName);
+		}
+
 		boolean newerThanDstu1 = myContext.getVersion().getVersion().isNewerThan(FhirVersionEnum.DSTU1);
 		JsonObject alternate = (JsonObject) theAlternateVal;
 		for (Entry<String, JsonValue> nextEntry : alternate.entrySet()) {
 			String nextKey = nextEntry.getKey();
 			JsonValue nextVal = nextEntry.getValue();
 			if (!newerThanDstu1 && "extension".equals(nextKey)) {
-				boolean isModifier = false;
-				JsonArray array = (JsonArray) nextEntry.getValue();
-				parseExtension(theState, array, isModifier);
+				replay(theParser, nextVal);
+				parseExtension(theParser, theState, false);
 			} else if (!newerThanDstu1 && "modifierExtension".equals(nextKey)) {
-				boolean isModifier = true;
-				JsonArray array = (JsonArray) nextEntry.getValue();
-				parseExtension(theState, array, isModifier);
+				replay(theParser, nextVal);
+				parseExtension(theParser, theState, true);
 			} else if ("id".equals(nextKey)) {
-				switch (nextVal.getValueType()) {
-				case STRING:
+				if (nextVal.getValueType() == ValueType.STRING) {
 					theState.attributeValue("id", ((JsonString) nextVal).getString());
-					break;
-				case NULL:
-					break;
-				default:
-					break;
-				}
-			} else if (newerThanDstu1) {
-				if (nextKey.indexOf(':') > -1 && newerThanDstu1) {
-					JsonArray array = (JsonArray) nextEntry.getValue();
-					parseExtensionInDstu2Style(false, theState, null, nextKey, array);
-					continue;
 				}
+			} else if (newerThanDstu1 && nextKey.indexOf(':') > -1) {
+				replay(theParser, nextVal);
+				parseExtensionInDstu2Style(false, theParser, theState, null, nextKey);
+			}
+		}
+	}
+
+	/**
+	 * Handles the items of an array whose START_ARRAY has already been consumed, up to and including the END_ARRAY
+	 */
+	private void parseArrayItems(PushbackJsonParser theParser, ParserState<?> theState, String theName, JsonValue theAlternateVal) {
+		int index = 0;
+		for (Event event = theParser.next(); event != Event.END_ARRAY; event = theParser.next(), index++) {
+			JsonValue alternate = alternateAt(theAlternateVal, index);
+			switch (event) {
+			case START_OBJECT:
+				parseObject(theParser, theState, theName, alternate);
+				break;
+			case START_ARRAY:
+				throw new DataFormatException("Unexpected nested array for element: " + theName);
+			default:
+				parsePrimitive(theParser, theState, theName, scalarValue(theParser, event), alternate);
+				break;
 			}
 		}
 	}
 
+	@Override
+	public <T extends IBaseResource> Bundle parseBundle(Class<T> theResourceType, InputStream theInputStream) {
+		return parseBundle(theResourceType, createJsonParser(theInputStream));
+	}
+
 	@Override
 	public <T extends IBaseResource> Bundle parseBundle(Class<T> theResourceType, Reader theReader) {
-		JsonReader reader;
-		JsonObject object;
+		return parseBundle(theResourceType, createJsonParser(theReader));
+	}
 
+	private <T extends IBaseResource> Bundle parseBundle(Class<T> theResourceType, PushbackJsonParser parser) {
 		try {
-			reader = Json.createReader(theReader);
-			object = reader.readObject();
+			ParserState<Bundle> state = parseBundleStart(parser, theResourceType, false);
+
+			parseBundleChildren(parser, state);
+
+			state.endingElement();
+
+			return state.getObject();
 		} catch (JsonParsingException e) {
-			if (e.getMessage().startsWith("Unexpected char 39")) {
-				throw new DataFormatException("Failed to parse JSON encoded FHIR content: " + e.getMessage()
-						+ " - This may indicate that single quotes are being used as JSON escapes where double quotes are required", e);
-			}
-			throw new DataFormatException("Failed to parse JSON encoded FHIR content: " + e.getMessage(), e);
-		}
-		JsonValue resourceTypeObj = object.get("resourceType");
-		assertObjectOfType(resourceTypeObj, JsonValue.ValueType.STRING, "resourceType");
-		String resourceType = ((JsonString) resourceTypeObj).getString();
-		if (!"Bundle".equals(resourceType)) {
-			throw new DataFormatException("Trying to parse bundle but found resourceType other than 'Bundle'. Found: '" + resourceType + "'");
+			throw newDataFormatException(e);
 		}
+	}
 
-		ParserState<Bundle> state = ParserState.getPreAtomInstance(myContext, theResourceType, true);
-		if (myContext.getVersion().getVersion().isNewerThan(FhirVersionEnum.DSTU1)) {
-			state.enteringNewElement(null, "Bundle");
-		} else {
-			state.enteringNewElement(null, "feed");
+	/**
+	 * Handles the properties of a bundle or bundle entry whose START_OBJECT has already been consumed, up to and
+	 * including the END_OBJECT. Entries are handed to the parser state one at a time as they are read.
+	 */
+	private void parseBundleChildren(PushbackJsonParser theParser, ParserState<?> theState) {
+		for (Event event = theParser.next(); event != Event.END_OBJECT; event = theParser.next()) {
+			String nextName = theParser.getString();
+			if ("entry".equals(nextName)) {
+				expectEvent(theParser, Event.START_ARRAY, "entry");
+				for (Event nextEntry = theParser.next(); nextEntry != Event.END_ARRAY; nextEntry = theParser.next()) {
+					parseBundleEntry(theParser, theState, nextEntry);
+				}
+			} else {
+				parseBundleProperty(theParser, theState, nextName);
+			}
 		}
+	}
 
-		parseBundleChildren(object, state);
-
-		state.endingElement();
-
-		Bundle retVal = state.getObject();
+	/**
+	 * Handles a single item of the "entry" array, whose first event has already been consumed
+	 */
+	private void parseBundleEntry(PushbackJsonParser theParser, ParserState<?> theState, Event theEvent) {
+		if (theEvent != Event.START_OBJECT) {
+			throw new DataFormatException("Invalid content of element entry, expected " + Event.START_OBJECT + " but found " + theEvent);
+		}
+		theState.enteringNewElement(null, "entry");
+		parseBundleChildren(theParser, theState);
+		theState.endingElement();
+	}
 
-		return retVal;
+	@Override
+	public <T extends IBaseResource> IBundleReader parseBundleIncrementally(Class<T> theResourceType, Reader theReader) {
+		PushbackJsonParser parser = createJsonParser(theReader);
+		try {
+			ParserState<Bundle> state = parseBundleStart(parser, theResourceType, true);
+			return new JsonBundleReader(theReader, parser, state);
+		} catch (JsonParsingException e) {
+			throw newDataFormatException(e);
+		}
 	}
 
-	private void parseBundleChildren(JsonObject theObject, ParserState<?> theState) {
-		for (String nextName : theObject.keySet()) {
-			if ("resourceType".equals(nextName)) {
-				continue;
-			} else if ("entry".equals(nextName)) {
-				JsonArray entries = theObject.getJsonArray(nextName);
+	/**
+	 * Handles a property (other than "entry") of a bundle or bundle entry, whose name has already been consumed
+	 */
+	private void parseBundleProperty(PushbackJsonParser theParser, ParserState<?> theState, String theName) {
+		if ("resourceType".equals(theName)) {
+			skipValue(theParser);
+			return;
+		} else if (myContext.getVersion().getVersion() == FhirVersionEnum.DSTU1) {
+			if ("link".equals(theName)) {
+				JsonArray entries = (JsonArray) readValue(theParser);
 				for (JsonValue jsonValue : entries) {
-					theState.enteringNewElement(null, "entry");
-					parseBundleChildren((JsonObject) jsonValue, theState);
+					theState.enteringNewElement(null, "link");
+					JsonObject linkObj = (JsonObject) jsonValue;
+					String rel = linkObj.getString("rel", null);
+					String href = linkObj.getString("href", null);
+					theState.attributeValue("rel", rel);
+					theState.attributeValue("href", href);
 					theState.endingElement();
 				}
-				continue;
-			} else if (myContext.getVersion().getVersion() == FhirVersionEnum.DSTU1) {
-				if ("link".equals(nextName)) {
-					JsonArray entries = theObject.getJsonArray(nextName);
-					for (JsonValue jsonValue : entries) {
-						theState.enteringNewElement(null, "link");
-						JsonObject linkObj = (JsonObject) jsonValue;
-						String rel = linkObj.getString("rel", null);
-						String href = linkObj.getString("href", null);
-						theState.attributeValue("rel", rel);
-						theState.attributeValue("href", href);
-						theState.endingElement();
-					}
-					continue;
-				} else if (BUNDLE_TEXTNODE_CHILDREN_DSTU1.contains(nextName)) {
-					theState.enteringNewElement(null, nextName);
-					theState.string(theObject.getString(nextName, null));
-					theState.endingElement();
-					continue;
+				return;
+			} else if (BUNDLE_TEXTNODE_CHILDREN_DSTU1.contains(theName)) {
+				Event valueEvent = theParser.peek();
+				String value = null;
+				if (valueEvent == Event.VALUE_STRING) {
+					theParser.next();
+					value = theParser.getString();
+				} else {
+					skipValue(theParser);
 				}
-			} else {
-				if ("link".equals(nextName)) {
-					JsonArray entries = theObject.getJsonArray(nextName);
-					for (JsonValue jsonValue : entries) {
-						theState.enteringNewElement(null, "link");
-						JsonObject linkObj = (JsonObject) jsonValue;
-						String rel = linkObj.getString("relation", null);
-						String href = linkObj.getString("url", null);
-						theState.enteringNewElement(null, "relation");
-						theState.attributeValue("value", rel);
-						theState.endingElement();
-						theState.enteringNewElement(null, "url");
-						theState.attributeValue("value", href);
-						theState.endingElement();
-						theState.endingElement();
-					}
-					continue;
-				} else if (BUNDLE_TEXTNODE_CHILDREN_DSTU2.contains(nextName)) {
-					theState.enteringNewElement(null, nextName);
-					// String obj = theObject.getString(nextName, null);
-
-					JsonValue obj = theObject.get(nextName);
-					if (obj == null) {
-						theState.attributeValue("value", null);
-					} else if (obj instanceof JsonString) {
-						theState.attributeValue("value", theObject.getString(nextName, null));
-					} else if (obj instanceof JsonNumber) {
-						theState.attributeValue("value", obj.toString());
-					} else {
-						throw new DataFormatException("Unexpected JSON object for entry '" + nextName + "'");
-					}
-
+				theState.enteringNewElement(null, theName);
+				theState.string(value);
+				theState.endingElement();
+				return;
+			}
+		} else {
+			if ("link".equals(theName)) {
+				JsonArray entries = (JsonArray) readValue(theParser);
+				for (JsonValue jsonValue : entries) {
+					theState.enteringNewElement(null, "link");
+					JsonObject linkObj = (JsonObject) jsonValue;
+					String rel = linkObj.getString("relation", null);
+					String href = linkObj.getString("url", null);
+					theState.enteringNewElement(null, "relation");
+					theState.attributeValue("value", rel);
+					theState.endingElement();
+					theState.enteringNewElement(null, "url");
+					theState.attributeValue("value", href);
+					theState.endingElement();
 					theState.endingElement();
-					continue;
 				}
+				return;
+			} else if (BUNDLE_TEXTNODE_CHILDREN_DSTU2.contains(theName)) {
+				Event valueEvent = theParser.next();
+				theState.enteringNewElement(null, theName);
+				if (valueEvent == Event.VALUE_STRING) {
+					theState.attributeValue("value", theParser.getString());
+				} else if (valueEvent == Event.VALUE_NUMBER) {
+					theState.attributeValue("value", theParser.getBigDecimal().toString());
+				} else {
+					throw new DataFormatException("Unexpected JSON object for entry '" + theName + "'");
+				}
+				theState.endingElement();
+				return;
 			}
+		}
 
-			JsonValue nextVal = theObject.get(nextName);
-			parseChildren(theState, nextName, nextVal, null, null);
+		parseValue(theParser, theState, theName, null);
+	}
 
+	/**
+	 * Reads the start of a bundle up to and including the "resourceType" property, and returns a parser state which
+	 * has entered the bundle
+	 */
+	private ParserState<Bundle> parseBundleStart(PushbackJsonParser theParser, Class<? extends IBaseResource> theResourceType, boolean theIncremental) {
+		expectEvent(theParser, Event.START_OBJECT, "Bundle");
+		String resourceType = readResourceType(theParser);
+		if (resourceType == null) {
+			throw new DataFormatException("Invalid JSON content detected, missing required element: 'resourceType'");
+		}
+		if (!"Bundle".equals(resourceType)) {
+			throw new DataFormatException("Trying to parse bundle but found resourceType other than 'Bundle'. Found: '" + resourceType + "'");
 		}
+
+		ParserState<Bundle> state = ParserState.getPreAtomInstance(myContext, theResourceType, true, theIncremental);
+		state.setParseElements(getParseElements());
+		if (myContext.getVersion().getVersion().isNewerThan(FhirVersionEnum.DSTU1)) {
+			state.enteringNewElement(null, "Bundle");
+		} else {
+			state.enteringNewElement(null, "feed");
+		}
+		return state;
 	}
 
-	private void parseChildren(JsonObject theObject, ParserState<?> theState) {
+	/**
+	 * Handles the properties of an element whose START_OBJECT has already been consumed, up to and including the
+	 * END_OBJECT.
+	 * <p>
+	 * Complex children are handed to the parser state as they are read. Primitive children may have an alternate
+	 * ("_name") property holding their ID and extensions, which may appear anywhere in the object. If the alternate
+	 * has already been seen, or immediately follows the primitive (which is how this parser encodes it), the primitive
+	 * is handled right away. Otherwise the primitive value is held until its alternate is found or the end of the
+	 * object is reached.
+	 * </p>
+	 */
+	private void parseChildren(PushbackJsonParser theParser, ParserState<?> theState) {
 		String elementId = null;
 		boolean newerThanDstu1 = myContext.getVersion().getVersion().isNewerThan(FhirVersionEnum.DSTU1);
-		for (String nextName : theObject.keySet()) {
+		Map<String, JsonValue> alternates = null;
+		Map<String, List<String>> heldPrimitives = null;
+
+		for (Event event = theParser.next(); event != Event.END_OBJECT; event = theParser.next()) {
+			String nextName = theParser.getString();
 			if ("resourceType".equals(nextName)) {
+				skipValue(theParser);
 				continue;
 			} else if ("id".equals(nextName)) {
-				elementId = theObject.getString(nextName);
+				if (theParser.peek() == Event.VALUE_STRING) {
+					elementId = theParser.getPeekedString();
+				}
 				if (myContext.getVersion().getVersion() == FhirVersionEnum.DSTU1) {
+					skipValue(theParser);
 					continue;
 				}
 			} else if ("_id".equals(nextName)) {
 				// _id is incorrect, but some early examples in the FHIR spec used it
-				elementId = theObject.getString(nextName);
+				if (theParser.peek() == Event.VALUE_STRING) {
+					elementId = theParser.getPeekedString();
+				}
+				skipValue(theParser);
 				continue;
 			} else if (!newerThanDstu1 && "extension".equals(nextName)) {
-				JsonArray array = theObject.getJsonArray(nextName);
-				parseExtension(theState, array, false);
+				parseExtension(theParser, theState, false);
 				continue;
 			} else if (!newerThanDstu1 && "modifierExtension".equals(nextName)) {
-				JsonArray array = theObject.getJsonArray(nextName);
-				parseExtension(theState, array, true);
+				parseExtension(theParser, theState, true);
 				continue;
 			} else if (newerThanDstu1 && "modifier".equals(nextName)) {
-				JsonObject obj = theObject.getJsonObject(nextName);
-				for (String nextUrl : obj.keySet()) {
-					JsonArray array = obj.getJsonArray(nextUrl);
-					parseExtensionInDstu2Style(true, theState, null, nextUrl, array);
+				expectEvent(theParser, Event.START_OBJECT, nextName);
+				for (Event nextUrl = theParser.next(); nextUrl != Event.END_OBJECT; nextUrl = theParser.next()) {
+					parseExtensionInDstu2Style(true, theParser, theState, null, theParser.getString());
 				}
 				continue;
 			} else if (nextName.charAt(0) == '_') {
+				String primitiveName = nextName.substring(1);
+				JsonValue alternate = readValue(theParser);
+				List<String> held = heldPrimitives != null ? heldPrimitives.remove(primitiveName) : null;
+				if (held != null) {
+					parsePrimitives(theParser, theState, primitiveName, held, alternate);
+				} else {
+					if (alternates == null) {
+						alternates = new HashMap<String, JsonValue>();
+					}
+					alternates.put(primitiveName, alternate);
+				}
 				continue;
-			} else {
-				if (newerThanDstu1 && nextName.indexOf(':') > -1) {
-					JsonArray array = theObject.getJsonArray(nextName);
-					parseExtensionInDstu2Style(false, theState, null, nextName, array);
+			} else if (newerThanDstu1 && nextName.indexOf(':') > -1) {
+				parseExtensionInDstu2Style(false, theParser, theState, null, nextName);
+				continue;
+			}
+
+			JsonValue alternate = alternates != null ? alternates.remove(nextName) : null;
+			Event valueEvent = theParser.peek();
+			List<String> primitives;
+			if (valueEvent == Event.START_OBJECT || alternate != null) {
+				parseValue(theParser, theState, nextName, alternate);
+				continue;
+			} else if (valueEvent == Event.START_ARRAY) {
+				theParser.next();
+				if (theParser.peek() == Event.START_OBJECT) {
+					parseArrayItems(theParser, theState, nextName, null);
 					continue;
 				}
+				primitives = readPrimitiveArray(theParser, nextName);
+			} else {
+				theParser.next();
+				primitives = Collections.singletonList(scalarValue(theParser, valueEvent));
 			}
 
-			JsonValue nextVal = theObject.get(nextName);
-			String alternateName = '_' + nextName;
-			JsonValue alternateVal = theObject.get(alternateName);
-
-			parseChildren(theState, nextName, nextVal, alternateVal, alternateName);
+			if (theParser.peek() == Event.KEY_NAME && theParser.getPeekedString().equals('_' + nextName)) {
+				theParser.next();
+				parsePrimitives(theParser, theState, nextName, primitives, readValue(theParser));
+			} else {
+				if (heldPrimitives == null) {
+					heldPrimitives = new LinkedHashMap<String, List<String>>();
+				}
+				heldPrimitives.put(nextName, primitives);
+			}
+		}
 
+		if (heldPrimitives != null) {
+			for (Entry<String, List<String>> next : heldPrimitives.entrySet()) {
+				parsePrimitives(theParser, theState, next.getKey(), next.getValue(), null);
+			}
 		}
 
 		if (elementId != null) {
@@ -964,104 +1172,72 @@ public class JsonParser extends BaseParser implements IParser {
 		}
 	}
 
-	private void parseChildren(ParserState<?> theState, String theName, JsonValue theJsonVal, JsonValue theAlternateVal, String theAlternateName) {
-		switch (theJsonVal.getValueType()) {
-		case ARRAY: {
-			JsonArray nextArray = (JsonArray) theJsonVal;
-			JsonArray nextAlternateArray = (JsonArray) theAlternateVal;
-			for (int i = 0; i < nextArray.size(); i++) {
-				JsonValue nextObject = nextArray.get(i);
-				JsonValue nextAlternate = null;
-				if (nextAlternateArray != null) {
-					nextAlternate = nextAlternateArray.get(i);
-				}
-				parseChildren(theState, theName, nextObject, nextAlternate, theAlternateName);
+	/**
+	 * Handles an array of extensions in DSTU1 style, where each extension is an object with a "url" property. The
+	 * START_ARRAY has not yet been consumed.
+	 */
+	private void parseExtension(PushbackJsonParser theParser, ParserState<?> theState, boolean theIsModifier) {
+		expectEvent(theParser, Event.START_ARRAY, theIsModifier ? "modifierExtension" : "extension");
+		for (Event event = theParser.next(); event != Event.END_ARRAY; event = theParser.next()) {
+			if (event != Event.START_OBJECT) {
+				throw new DataFormatException("Invalid content of element extension, expected " + Event.START_OBJECT + " but found " + event);
 			}
-			break;
-		}
-		case OBJECT: {
-			theState.enteringNewElement(null, theName);
-			parseAlternates(theAlternateVal, theState, theAlternateName);
-			JsonObject nextObject = (JsonObject) theJsonVal;
-			boolean preResource = false;
-			if (theState.isPreResource()) {
-				String resType = nextObject.getString("resourceType");
-				if (isBlank(resType)) {
-					throw new DataFormatException("Missing 'resourceType' from resource");
+
+			String url;
+			if (theParser.peek() == Event.KEY_NAME && "url".equals(theParser.getPeekedString())) {
+				theParser.next();
+				url = readString(theParser, "url");
+			} else {
+				// The URL is needed before anything else, so buffer the extension if it isn't the first property
+				JsonObject extension = readObject(theParser);
+				JsonValue urlValue = extension.get("url");
+				if (!(urlValue instanceof JsonString)) {
+					throw new DataFormatException("Invalid JSON content detected, missing required element: 'url'");
 				}
-				theState.enteringNewElement(null, resType);
-				preResource = true;
+				url = ((JsonString) urlValue).getString();
+				replay(theParser, extension);
+				theParser.next();
 			}
-			parseChildren(nextObject, theState);
-			if (preResource) {
-				theState.endingElement();
-			}
-			theState.endingElement();
-			break;
-		}
-		case STRING: {
-			JsonString nextValStr = (JsonString) theJsonVal;
-			theState.enteringNewElement(null, theName);
-			theState.attributeValue("value", nextValStr.getString());
-			parseAlternates(theAlternateVal, theState, theAlternateName);
-			theState.endingElement();
-			break;
-		}
-		case NUMBER:
-		case FALSE:
-		case TRUE:
-			theState.enteringNewElement(null, theName);
-			theState.attributeValue("value", theJsonVal.toString());
-			parseAlternates(theAlternateVal, theState, theAlternateName);
-			theState.endingElement();
-			break;
-		case NULL:
-			break;
-		}
-	}
 
-	private void parseExtension(ParserState<?> theState, JsonArray theValues, boolean theIsModifier) {
-		for (int i = 0; i < theValues.size(); i++) {
-			JsonObject nextExtObj = theValues.getJsonObject(i);
-			String url = nextExtObj.getString("url");
 			theState.enteringNewElementExtension(null, url, theIsModifier);
-			for (Iterator<String> iter = nextExtObj.keySet().iterator(); iter.hasNext();) {
-				String next = iter.next();
+			for (Event nextKey = theParser.next(); nextKey != Event.END_OBJECT; nextKey = theParser.next()) {
+				String next = theParser.getString();
 				if ("url".equals(next)) {
-					continue;
+					skipValue(theParser);
 				} else if ("extension".equals(next)) {
-					JsonArray jsonVal = (JsonArray) nextExtObj.get(next);
-					parseExtension(theState, jsonVal, false);
+					parseExtension(theParser, theState, false);
 				} else if ("modifierExtension".equals(next)) {
-					JsonArray jsonVal = (JsonArray) nextExtObj.get(next);
-					parseExtension(theState, jsonVal, true);
+					parseExtension(theParser, theState, true);
 				} else {
-					JsonValue jsonVal = nextExtObj.get(next);
-					parseChildren(theState, next, jsonVal, null, null);
+					parseValue(theParser, theState, next, null);
 				}
 			}
 			theState.endingElement();
 		}
 	}
 
-	private void parseExtensionInDstu2Style(boolean theModifier, ParserState<?> theState, String theParentExtensionUrl, String theExtensionUrl, JsonArray theValues) {
+	/**
+	 * Handles an extension in DSTU2 style, where the URL is the property name and the value is an array of objects.
+	 * The START_ARRAY has not yet been consumed.
+	 */
+	private void parseExtensionInDstu2Style(boolean theModifier, PushbackJsonParser theParser, ParserState<?> theState, String theParentExtensionUrl, String theExtensionUrl) {
 		String extUrl = UrlUtil.constructAbsoluteUrl(theParentExtensionUrl, theExtensionUrl);
 		theState.enteringNewElementExtension(null, extUrl, theModifier);
 
-		for (int extIdx = 0; extIdx < theValues.size(); extIdx++) {
-			JsonObject nextExt = theValues.getJsonObject(extIdx);
-			for (String nextKey : nextExt.keySet()) {
-				// if (nextKey.startsWith("value") && nextKey.length() > 5 &&
-				// myContext.getRuntimeChildUndeclaredExtensionDefinition().getChildByName(nextKey) != null) {
-				JsonValue jsonVal = nextExt.get(nextKey);
-				if (jsonVal.getValueType() == ValueType.ARRAY) {
+		expectEvent(theParser, Event.START_ARRAY, extUrl);
+		for (Event event = theParser.next(); event != Event.END_ARRAY; event = theParser.next()) {
+			if (event != Event.START_OBJECT) {
+				throw new DataFormatException("Invalid content of element " + extUrl + ", expected " + Event.START_OBJECT + " but found " + event);
+			}
+			for (Event nextKey = theParser.next(); nextKey != Event.END_OBJECT; nextKey = theParser.next()) {
+				String next = theParser.getString();
+				if (theParser.peek() == Event.START_ARRAY) {
 					/*
 					 * Extension children which are arrays are sub-extensions. Any other value type should be treated as a value.
 					 */
-					JsonArray arrayValue = (JsonArray) jsonVal;
-					parseExtensionInDstu2Style(theModifier, theState, extUrl, nextKey, arrayValue);
+					parseExtensionInDstu2Style(theModifier, theParser, theState, extUrl, next);
 				} else {
-					parseChildren(theState, nextKey, jsonVal, null, null);
+					parseValue(theParser, theState, next, null);
 				}
 			}
 		}
@@ -1069,33 +1245,84 @@ public class JsonParser extends BaseParser implements IParser {
 		theState.endingElement();
 	}
 
+	/**
+	 * Handles an element whose START_OBJECT has already been consumed, up to and including the END_OBJECT
+	 */
+	private void parseObject(PushbackJsonParser theParser, ParserState<?> theState, String theName, JsonValue theAlternateVal) {
+		theState.enteringNewElement(null, theName);
+		parseAlternates(theParser, theAlternateVal, theState, '_' + theName);
+		boolean preResource = false;
+		if (theState.isPreResource()) {
+			String resType = readResourceType(theParser);
+			if (isBlank(resType)) {
+				throw new DataFormatException("Missing 'resourceType' from resource");
+			}
+			theState.enteringNewElement(null, resType);
+			preResource = true;
+		}
+		parseChildren(theParser, theState);
+		if (preResource) {
+			theState.endingElement();
+		}
+		theState.endingElement();
+	}
+
+	private void parsePrimitive(PushbackJsonParser theParser, ParserState<?> theState, String theName, String theValue, JsonValue theAlternateVal) {
+		if (theValue == null) {
+			return;
+		}
+		theState.enteringNewElement(null, theName);
+		theState.attributeValue("value", theValue);
+		parseAlternates(theParser, theAlternateVal, theState, '_' + theName);
+		theState.endingElement();
+	}
+
+	private void parsePrimitives(PushbackJsonParser theParser, ParserState<?> theState, String theName, List<String> theValues, JsonValue theAlternateVal) {
+		for (int i = 0; i < theValues.size(); i++) {
+			parsePrimitive(theParser, theState, theName, theValues.get(i), alternateAt(theAlternateVal, i));
+		}
+	}
+
+	@Override
+	public <T extends IBaseResource> T parseResource(Class<T> theResourceType, InputStream theInputStream) {
+		return parseResource(theResourceType, createJsonParser(theInputStream));
+	}
+
 	@Override
 	public <T extends IBaseResource> T parseResource(Class<T> theResourceType, Reader theReader) {
-		JsonReader reader = Json.createReader(theReader);
-		JsonObject object = reader.readObject();
+		return parseResource(theResourceType, createJsonParser(theReader));
+	}
 
-		JsonValue resourceTypeObj = object.get("resourceType");
-		assertObjectOfType(resourceTypeObj, JsonValue.ValueType.STRING, "resourceType");
-		String resourceType = ((JsonString) resourceTypeObj).getString();
+	private <T extends IBaseResource> T parseResource(Class<T> theResourceType, PushbackJsonParser parser) {
+		try {
+			expectEvent(parser, Event.START_OBJECT, "resource");
+			String resourceType = readResourceType(parser);
+			if (resourceType == null) {
+				throw new DataFormatException("Invalid JSON content detected, missing required element: 'resourceType'");
+			}
 
-		RuntimeResourceDefinition def;
-		if (theResourceType != null) {
-			def = myContext.getResourceDefinition(theResourceType);
-		} else {
-			def = myContext.getResourceDefinition(resourceType);
-		}
+			RuntimeResourceDefinition def;
+			if (theResourceType != null) {
+				def = myContext.getResourceDefinition(theResourceType);
+			} else {
+				def = myContext.getResourceDefinition(resourceType);
+			}
 
-		ParserState<? extends IBaseResource> state = (ParserState<? extends IBaseResource>) ParserState.getPreResourceInstance(def.getImplementingClass(), myContext, true);
-		state.enteringNewElement(null, def.getName());
+			ParserState<? extends IBaseResource> state = (ParserState<? extends IBaseResource>) ParserState.getPreResourceInstance(def.getImplementingClass(), myContext, true);
+			state.setParseElements(getParseElements());
+			state.enteringNewElement(null, def.getName());
 
-		parseChildren(object, state);
+			parseChildren(parser, state);
 
-		state.endingElement();
+			state.endingElement();
 
-		@SuppressWarnings("unchecked")
-		T retVal = (T) state.getObject();
+			@SuppressWarnings("unchecked")
+			T retVal = (T) state.getObject();
 
-		return retVal;
+			return retVal;
+		} catch (JsonParsingException e) {
+			throw newDataFormatException(e);
+		}
 	}
 
 	@Override
@@ -1105,21 +1332,236 @@ public class JsonParser extends BaseParser implements IParser {
 
 	@Override
 	public TagList parseTagList(Reader theReader) {
-		JsonReader reader = Json.createReader(theReader);
-		JsonObject object = reader.readObject();
+		PushbackJsonParser parser = createJsonParser(theReader);
+		try {
+			expectEvent(parser, Event.START_OBJECT, "TagList");
+			String resourceType = readResourceType(parser);
+			if (resourceType == null) {
+				throw new DataFormatException("Invalid JSON content detected, missing required element: 'resourceType'");
+			}
+
+			ParserState<TagList> state = ParserState.getPreTagListInstance(myContext, true);
+			state.enteringNewElement(null, resourceType);
+
+			parseChildren(parser, state);
 
+			state.endingElement();
+
+			return state.getObject();
+		} catch (JsonParsingException e) {
+			throw newDataFormatException(e);
+		}
+	}
+
+	/**
+	 * Handles the value of a property whose name has already been consumed, without looking for an alternate
+	 */
+	private void parseValue(PushbackJsonParser theParser, ParserState<?> theState, String theName, JsonValue theAlternateVal) {
+		Event event = theParser.next();
+		switch (event) {
+		case START_OBJECT:
+			parseObject(theParser, theState, theName, theAlternateVal);
+			break;
+		case START_ARRAY:
+			parseArrayItems(theParser, theState, theName, theAlternateVal);
+			break;
+		default:
+			parsePrimitive(theParser, theState, theName, scalarValue(theParser, event), theAlternateVal);
+			break;
+		}
+	}
+
+	private JsonArray readArray(PushbackJsonParser theParser) {
+		JsonArrayBuilder builder = ourJsonBuilderFactory.createArrayBuilder();
+		for (Event event = theParser.next(); event != Event.END_ARRAY; event = theParser.next()) {
+			switch (event) {
+			case START_OBJECT:
+				builder.add(readObject(theParser));
+				break;
+			case START_ARRAY:
+				builder.add(readArray(theParser));
+				break;
+			case VALUE_STRING:
+				builder.add(theParser.getString());
+				break;
+			case VALUE_NUMBER:
+				builder.add(theParser.getBigDecimal());
+				break;
+			case VALUE_TRUE:
+				builder.add(true);
+				break;
+			case VALUE_FALSE:
+				builder.add(false);
+				break;
+			default:
+				builder.addNull();
+				break;
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Reads the remainder of an object whose START_OBJECT has already been consumed
+	 */
+	private JsonObject readObject(PushbackJsonParser theParser) {
+		JsonObjectBuilder builder = ourJsonBuilderFactory.createObjectBuilder();
+		for (Event event = theParser.next(); event != Event.END_OBJECT; event = theParser.next()) {
+			String name = theParser.getString();
+			Event valueEvent = theParser.next();
+			switch (valueEvent) {
+			case START_OBJECT:
+				builder.add(name, readObject(theParser));
+				break;
+			case START_ARRAY:
+				builder.add(name, readArray(theParser));
+				break;
+			case VALUE_STRING:
+				builder.add(name, theParser.getString());
+				break;
+			case VALUE_NUMBER:
+				builder.add(name, theParser.getBigDecimal());
+				break;
+			case VALUE_TRUE:
+				builder.add(name, true);
+				break;
+			case VALUE_FALSE:
+				builder.add(name, false);
+				break;
+			default:
+				builder.addNull(name);
+				break;
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Reads the remainder of an array whose START_ARRAY has already been consumed, which is expected to contain only
+	 * primitive values
+	 */
+	private List<String> readPrimitiveArray(PushbackJsonParser theParser, String theName) {
+		List<String> retVal = new ArrayList<String>();
+		for (Event event = theParser.next(); event != Event.END_ARRAY; event = theParser.next()) {
+			if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+				throw new DataFormatException("Unexpected " + event + " in array of primitive values for element: " + theName);
+			}
+			retVal.add(scalarValue(theParser, event));
+		}
+		return retVal;
+	}
+
+	/**
+	 * Called after the START_OBJECT of a resource has been consumed. If "resourceType" is the first property (which
+	 * is the case for anything encoded by this parser) it is consumed and returned. Otherwise the rest of the object
+	 * is buffered so that its type can be determined, and then replayed.
+	 *
+	 * @return The resource type, or <code>null</code> if the object has no resource type
+	 */
+	private String readResourceType(PushbackJsonParser theParser) {
+		if (theParser.peek() == Event.KEY_NAME && "resourceType".equals(theParser.getPeekedString())) {
+			theParser.next();
+			return readString(theParser, "resourceType");
+		}
+
+		JsonObject object = readObject(theParser);
 		JsonValue resourceTypeObj = object.get("resourceType");
-		assertObjectOfType(resourceTypeObj, JsonValue.ValueType.STRING, "resourceType");
-		String resourceType = ((JsonString) resourceTypeObj).getString();
+		replay(theParser, object);
+		theParser.next();
+		if (resourceTypeObj == null) {
+			return null;
+		}
+		if (resourceTypeObj.getValueType() != ValueType.STRING) {
+			throw new DataFormatException("Invalid content of element resourceType, expected " + ValueType.STRING);
+		}
+		return ((JsonString) resourceTypeObj).getString();
+	}
 
-		ParserState<TagList> state = ParserState.getPreTagListInstance(myContext, true);
-		state.enteringNewElement(null, resourceType);
+	private String readString(PushbackJsonParser theParser, String thePosition) {
+		if (theParser.next() != Event.VALUE_STRING) {
+			throw new DataFormatException("Invalid content of element " + thePosition + ", expected " + ValueType.STRING);
+		}
+		return theParser.getString();
+	}
 
-		parseChildren(object, state);
+	/**
+	 * Reads the next complete value (which is expected to be small) into memory
+	 */
+	private JsonValue readValue(PushbackJsonParser theParser) {
+		Event event = theParser.next();
+		switch (event) {
+		case START_OBJECT:
+			return readObject(theParser);
+		case START_ARRAY:
+			return readArray(theParser);
+		case VALUE_TRUE:
+			return JsonValue.TRUE;
+		case VALUE_FALSE:
+			return JsonValue.FALSE;
+		case VALUE_NULL:
+			return JsonValue.NULL;
+		case VALUE_STRING:
+			return ourJsonBuilderFactory.createArrayBuilder().add(theParser.getString()).build().get(0);
+		default:
+			return ourJsonBuilderFactory.createArrayBuilder().add(theParser.getBigDecimal()).build().get(0);
+		}
+	}
 
-		state.endingElement();
+	private void replay(PushbackJsonParser theParser, JsonValue theValue) {
+		if (theValue instanceof JsonObject) {
+			theParser.pushback(ourJsonParserFactory.createParser((JsonObject) theValue));
+		} else if (theValue instanceof JsonArray) {
+			theParser.pushback(ourJsonParserFactory.createParser((JsonArray) theValue));
+		} else {
+			throw new DataFormatException("Unexpected " + theValue.getValueType() + " (expected object or array)");
+		}
+	}
+
+	/**
+	 * Returns the value of a primitive event in the form passed to the parser state, or <code>null</code> for a JSON
+	 * null
+	 */
+	private String scalarValue(PushbackJsonParser theParser, Event theEvent) {
+		switch (theEvent) {
+		case VALUE_STRING:
+			return theParser.getString();
+		case VALUE_NUMBER:
+			return theParser.getBigDecimal().toString();
+		case VALUE_TRUE:
+			return "true";
+		case VALUE_FALSE:
+			return "false";
+		case VALUE_NULL:
+			return null;
+		default:
+			throw new DataFormatException("Unexpected JSON event: " + theEvent);
+		}
+	}
+
+	private void skipValue(PushbackJsonParser theParser) {
+		int depth = 0;
+		do {
+			switch (theParser.next()) {
+			case START_OBJECT:
+			case START_ARRAY:
+				depth++;
+				break;
+			case END_OBJECT:
+			case END_ARRAY:
+				depth--;
+				break;
+			default:
+				break;
+			}
+		} while (depth > 0);
+	}
 
-		return state.getObject();
+	private static JsonValue alternateAt(JsonValue theAlternateVal, int theIndex) {
+		if (theAlternateVal instanceof JsonArray) {
+			JsonArray array = (JsonArray) theAlternateVal;
+			return theIndex < array.size() ? array.get(theIndex) : null;
+		}
+		return theAlternateVal;
 	}
 
 	@Override
@@ -1436,4 +1878,54 @@ public class JsonParser extends BaseParser implements IParser {
 		}
 
 	}
+
+	/**
+	 * Reads the top level properties of a bundle one at a time, and the entries one entry at a time
+	 */
+	private class JsonBundleReader extends BaseBundleReader {
+
+		private boolean myInEntries;
+		private PushbackJsonParser myParser;
+
+		public JsonBundleReader(Reader theReader, PushbackJsonParser theParser, ParserState<Bundle> theState) {
+			super(theReader, theState);
+			myParser = theParser;
+		}
+
+		@Override
+		public void close() throws IOException {
+			myParser.close();
+			super.close();
+		}
+
+		@Override
+		protected void parseUntilNextEntry(ParserState<Bundle> theState) {
+			try {
+				while (!theState.hasCompletedBundleEntry() && !theState.isComplete()) {
+					Event event = myParser.next();
+					if (myInEntries) {
+						if (event == Event.END_ARRAY) {
+							myInEntries = false;
+						} else {
+							parseBundleEntry(myParser, theState, event);
+						}
+					} else if (event == Event.END_OBJECT) {
+						theState.endingElement();
+					} else {
+						String nextName = myParser.getString();
+						if ("entry".equals(nextName)) {
+							expectEvent(myParser, Event.START_ARRAY, "entry");
+							myInEntries = true;
+						} else {
+							parseBundleProperty(myParser, theState, nextName);
+						}
+					}
+				}
+			} catch (JsonParsingException e) {
+				throw newDataFormatException(e);
+			}
+		}
+
+	}
+
 }
@@ -22,13 +22,19 @@ package ca.uhn.fhir.parser;
 
 import static org.apache.commons.lang3.StringUtils.*;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
@@ -74,13 +80,17 @@ import ca.uhn.fhir.model.primitive.StringDt;
 import ca.uhn.fhir.model.primitive.XhtmlDt;
 import ca.uhn.fhir.rest.server.Constants;
 import ca.uhn.fhir.util.IModelVisitor;
+import ca.uhn.fhir.util.XmlUtil;
 
 class ParserState<T> {
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ParserState.class);
+	private Bundle myBundleInProgress;
+	private LinkedList<BundleEntry> myCompletedBundleEntries;
 	private FhirContext myContext;
 	private boolean myJsonMode;
 	private T myObject;
+	private Set<String> myParseElements;
 	private BaseState myState;
 
 	private ParserState(FhirContext theContext, boolean theJsonMode) {
@@ -92,6 +102,21 @@ class ParserState<T> {
 		myState.attributeValue(theName, theValue);
 	}
 
+	/**
+	 * Invoked by the bundle entry states when an entry has been completely parsed. When parsing incrementally, the
+	 * entry is removed from the bundle and queued for {@link #pollCompletedBundleEntry()} instead.
+	 */
+	private void bundleEntryCompleted(Bundle theBundle, BundleEntry theEntry) {
+		if (myCompletedBundleEntries == null) {
+			return;
+		}
+		List<BundleEntry> entries = theBundle.getEntries();
+		if (entries.size() > 0 && entries.get(entries.size() - 1) == theEntry) {
+			entries.remove(entries.size() - 1);
+		}
+		myCompletedBundleEntries.add(theEntry);
+	}
+
 	public void endingElement() throws DataFormatException {
 		myState.endingElement();
 	}
@@ -104,11 +129,35 @@ class ParserState<T> {
 		myState.enteringNewElementExtension(theElem, theUrlAttr, theIsModifier);
 	}
 
+	/**
+	 * Returns the bundle currently being parsed (which is only complete once {@link #isComplete()} returns
+	 * <code>true</code>), or <code>null</code> if the root element has not yet been seen
+	 */
+	public Bundle getBundleInProgress() {
+		return myBundleInProgress;
+	}
+
 	@SuppressWarnings("unchecked")
 	public T getObject() {
 		return (T) myState.getCurrentElement();
 	}
 
+	/**
+	 * Returns <code>true</code> if this is an incremental bundle parser state, and at least one entry has been parsed
+	 * which has not yet been retrieved using {@link #pollCompletedBundleEntry()}
+	 */
+	public boolean hasCompletedBundleEntry() {
+		return myCompletedBundleEntries != null && !myCompletedBundleEntries.isEmpty();
+	}
+
+	/**
+	 * Returns <code>true</code> if the current state needs to receive the individual XML events (via
+	 * {@link #xhtmlEvent(XMLStreamReader)}), which is only the case while inside embedded XHTML content
+	 */
+	public boolean isCapturingXhtml() {
+		return myState.isCapturingXhtml();
+	}
+
 	public boolean isComplete() {
 		return myObject != null;
 	}
@@ -117,6 +166,14 @@ class ParserState<T> {
 		return myState.isPreResource();
 	}
 
+	/**
+	 * Removes and returns the oldest entry which has been parsed by an incremental bundle parser state, or
+	 * <code>null</code> if there is none
+	 */
+	public BundleEntry pollCompletedBundleEntry() {
+		return myCompletedBundleEntries != null ? myCompletedBundleEntries.poll() : null;
+	}
+
 	private void pop() {
 		myState = myState.myStack;
 		myState.wereBack();
@@ -153,6 +210,18 @@ class ParserState<T> {
 		}
 	}
 
+	private void populateResourceIdFromBundleBase(Bundle theBundle, BundleEntry theEntry) {
+		IResource resource = theEntry.getResource();
+		if (resource == null) {
+			return;
+		}
+
+		String baseUrl = theBundle.getLinkBase().getValue();
+		String version = ResourceMetadataKeyEnum.VERSION.get(resource);
+		String resourceName = myContext.getResourceDefinition(resource).getName();
+		resource.setId(new IdDt(baseUrl, resourceName, resource.getId().getIdPart(), version));
+	}
+
 	public void string(String theData) {
 		myState.string(theData);
 	}
@@ -165,15 +234,38 @@ class ParserState<T> {
 	}
 
 	/**
-	 * Invoked after any new XML event is individually processed, containing a copy of the XML event. This is basically
-	 * intended for embedded XHTML content
+	 * If set, only the given children of the root resource (and of each bundle entry resource) are parsed, and any
+	 * other children are skipped without being populated. See {@link IParser#setParseElements(Set)} for the format of
+	 * the element names.
+	 */
+	public void setParseElements(Set<String> theParseElements) {
+		myParseElements = theParseElements;
+	}
+
+	/**
+	 * Invoked after any new XML event is individually processed while {@link #isCapturingXhtml()} returns
+	 * <code>true</code>, with the reader still positioned on the event. This is intended for embedded XHTML content,
+	 * which is retained as markup.
 	 */
-	public void xmlEvent(XMLEvent theNextEvent) {
-		myState.xmlEvent(theNextEvent);
+	public void xhtmlEvent(XMLStreamReader theReader) throws XMLStreamException {
+		myState.xhtmlEvent(theReader);
 	}
 
 	public static ParserState<Bundle> getPreAtomInstance(FhirContext theContext, Class<? extends IBaseResource> theResourceType, boolean theJsonMode) throws DataFormatException {
+		return getPreAtomInstance(theContext, theResourceType, theJsonMode, false);
+	}
+
+	/**
+	 * @param theIncremental
+	 *            If <code>true</code>, each entry is removed from the bundle as soon as it has been parsed, and is
+	 *            instead made available through {@link #pollCompletedBundleEntry()}. Note that in this mode, references
+	 *            between resources in different entries are not resolved.
+	 */
+	public static ParserState<Bundle> getPreAtomInstance(FhirContext theContext, Class<? extends IBaseResource> theResourceType, boolean theJsonMode, boolean theIncremental) throws DataFormatException {
 		ParserState<Bundle> retVal = new ParserState<Bundle>(theContext, theJsonMode);
+		if (theIncremental) {
+			retVal.myCompletedBundleEntries = new LinkedList<BundleEntry>();
+		}
 		if (theContext.getVersion().getVersion() == FhirVersionEnum.DSTU1) {
 			retVal.push(retVal.new PreAtomState(theResourceType));
 		} else {
@@ -401,11 +493,13 @@ class ParserState<T> {
 
 		private boolean myDeleted;
 		private BundleEntry myEntry;
+		private Bundle myInstance;
 		private Class<? extends IBaseResource> myResourceType;
 
 		public AtomEntryState(Bundle theInstance, Class<? extends IBaseResource> theResourceType) {
 			super(null);
 			myEntry = new BundleEntry();
+			myInstance = theInstance;
 			myResourceType = theResourceType;
 			theInstance.getEntries().add(myEntry);
 		}
@@ -418,6 +512,8 @@ class ParserState<T> {
 			if (myDeleted) {
 				putPlacerResourceInDeletedEntry(myEntry);
 			}
+
+			bundleEntryCompleted(myInstance, myEntry);
 		}
 
 		@Override
@@ -698,6 +794,7 @@ class ParserState<T> {
 
 		public void setInstance(Bundle theInstance) {
 			myInstance = theInstance;
+			myBundleInProgress = theInstance;
 		}
 
 		@SuppressWarnings("unchecked")
@@ -781,6 +878,10 @@ class ParserState<T> {
 			return myPreResourceState;
 		}
 
+		public boolean isCapturingXhtml() {
+			return false;
+		}
+
 		public boolean isPreResource() {
 			return false;
 		}
@@ -802,10 +903,10 @@ class ParserState<T> {
 		}
 
 		/**
-		 * @param theNextEvent
-		 *            The XML event
+		 * @param theReader
+		 *            The XML reader, positioned on the event
 		 */
-		public void xmlEvent(XMLEvent theNextEvent) {
+		public void xhtmlEvent(XMLStreamReader theReader) throws XMLStreamException {
 			// ignore
 		}
 
@@ -927,11 +1028,13 @@ class ParserState<T> {
 	public class BundleEntryState extends BaseState {
 
 		private BundleEntry myEntry;
+		private Bundle myInstance;
 		private Class<? extends IBaseResource> myResourceType;
 
 		public BundleEntryState(Bundle theInstance, Class<? extends IBaseResource> theResourceType) {
 			super(null);
 			myEntry = new BundleEntry();
+			myInstance = theInstance;
 			myResourceType = theResourceType;
 			theInstance.getEntries().add(myEntry);
 		}
@@ -939,6 +1042,14 @@ class ParserState<T> {
 		@Override
 		public void endingElement() throws DataFormatException {
 			populateResourceMetadata();
+			if (myCompletedBundleEntries != null) {
+				/*
+				 * The entry is handed off before the bundle ends, so BundleState#wereBack
+				 * won't see it. The base element comes before the entries, so we can apply it now.
+				 */
+				populateResourceIdFromBundleBase(myInstance, myEntry);
+			}
+			bundleEntryCompleted(myInstance, myEntry);
 			pop();
 		}
 
@@ -1110,12 +1221,7 @@ class ParserState<T> {
 		@Override
 		public void wereBack() {
 			for (BundleEntry nextEntry : myInstance.getEntries()) {
-				IResource nextResource = nextEntry.getResource();
-				
-				String baseUrl = myInstance.getLinkBase().getValue();
-				String version = ResourceMetadataKeyEnum.VERSION.get(nextResource);
-				String resourceName = myContext.getResourceDefinition(nextResource).getName();
-				nextResource.setId(new IdDt(baseUrl, resourceName, nextResource.getId().getIdPart(), version));
+				populateResourceIdFromBundleBase(myInstance, nextEntry);
 			}
 			
 			String bundleVersion = (String) myInstance.getResourceMetadata().get(ResourceMetadataKeyEnum.VERSION);
@@ -1606,8 +1712,13 @@ class ParserState<T> {
 	private class ResourceState extends ElementCompositeState<IResource>
 	{
 
-		public ResourceState(PreResourceState thePreResourceState, BaseRuntimeElementCompositeDefinition<?> theDef, IResource theInstance) {
+		private BaseRuntimeElementCompositeDefinition<?> myResourceDefinition;
+		private boolean myRoot;
+
+		public ResourceState(PreResourceState thePreResourceState, BaseRuntimeElementCompositeDefinition<?> theDef, IResource theInstance, boolean theRoot) {
 			super(thePreResourceState, theDef, theInstance);
+			myResourceDefinition = theDef;
+			myRoot = theRoot;
 		}
 
 		@Override
@@ -1616,12 +1727,34 @@ class ParserState<T> {
 				push(new PrimitiveState(getPreResourceState(), getCurrentElement().getId()));
 			} else if ("meta".equals(theChildName)) {
 				push(new MetaElementState(getPreResourceState(), getCurrentElement().getResourceMetadata()));
-			}else {
+			} else if (!isSelected(theChildName)) {
+				push(new SwallowChildrenWholeState(getPreResourceState()));
+			} else {
 				super.enteringNewElement(theNamespace, theChildName);
 			}
 		}
 
-		
+		@Override
+		public void enteringNewElementExtension(StartElement theElement, String theUrlAttr, boolean theIsModifier) {
+			if (!theIsModifier && !isSelected("extension")) {
+				push(new SwallowChildrenWholeState(getPreResourceState()));
+			} else {
+				super.enteringNewElementExtension(theElement, theUrlAttr, theIsModifier);
+			}
+		}
+
+		/**
+		 * Modifier extensions are always parsed, since skipping them could change the meaning of the resource
+		 */
+		private boolean isSelected(String theChildName) {
+			if (!myRoot || myParseElements == null || "modifierExtension".equals(theChildName)) {
+				return true;
+			}
+			BaseRuntimeChildDefinition child = myResourceDefinition.getChildByName(theChildName);
+			String elementName = child != null ? child.getElementName() : theChildName;
+			return BaseParser.isElementSelected(myParseElements, myResourceDefinition.getName(), elementName);
+		}
+
 	}
 	
 	
@@ -1685,7 +1818,7 @@ class ParserState<T> {
 			if ("Binary".equals(resourceName) && myContext.getVersion().getVersion() == FhirVersionEnum.DSTU1) {
 				push(new BinaryResourceStateForDstu1(getRootPreResourceState(), (Binary) myInstance));
 			} else {
-				push(new ResourceState(getRootPreResourceState(), def, myInstance));
+				push(new ResourceState(getRootPreResourceState(), def, myInstance, getPreResourceState() == null));
 			}
 		}
 
@@ -2046,8 +2179,9 @@ class ParserState<T> {
 	private class XhtmlState extends BaseState {
 		private int myDepth;
 		private XhtmlDt myDt;
-		private List<XMLEvent> myEvents = new ArrayList<XMLEvent>();
 		private boolean myIncludeOuterEvent;
+		private StringWriter myText;
+		private XMLStreamWriter myWriter;
 
 		private XhtmlState(PreResourceState thePreResourceState, XhtmlDt theXhtmlDt, boolean theIncludeOuterEvent) throws DataFormatException {
 			super(thePreResourceState);
@@ -2080,25 +2214,67 @@ class ParserState<T> {
 		}
 
 		@Override
-		public void xmlEvent(XMLEvent theEvent) {
-			if (theEvent.isEndElement()) {
+		public boolean isCapturingXhtml() {
+			return !myJsonMode;
+		}
+
+		/**
+		 * Copies the markup straight into a string, so that the XHTML is only parsed into events if something asks
+		 * for them (as is the case for JSON)
+		 */
+		@Override
+		public void xhtmlEvent(XMLStreamReader theReader) throws XMLStreamException {
+			int eventType = theReader.getEventType();
+			if (eventType == XMLStreamConstants.END_ELEMENT) {
 				myDepth--;
 			}
 
 			if (myIncludeOuterEvent || myDepth > 0) {
-				myEvents.add(theEvent);
+				if (myWriter == null) {
+					myText = new StringWriter();
+					myWriter = XmlUtil.createXmlStreamWriter(myText);
+				}
+				XmlUtil.copyXmlEvent(theReader, myWriter);
+				if (eventType == XMLStreamConstants.START_ELEMENT && myDepth == (myIncludeOuterEvent ? 0 : 1)) {
+					declareNamespaceIfInherited(theReader);
+				}
 			}
 
-			if (theEvent.isStartElement()) {
+			if (eventType == XMLStreamConstants.START_ELEMENT) {
 				myDepth++;
 			}
 
-			if (theEvent.isEndElement()) {
-				if (myDepth == 0) {
-					myDt.setValue(myEvents);
-					pop();
+			if (eventType == XMLStreamConstants.END_ELEMENT && myDepth == 0) {
+				String text = null;
+				if (myWriter != null) {
+					myWriter.close();
+					text = myText.toString();
+				}
+				myDt.setValueAsString(isNotBlank(text) ? text : null);
+				pop();
+			}
+		}
+
+		/**
+		 * The namespace of a top level element may have been declared on one of its ancestors, which are not part
+		 * of the captured markup
+		 */
+		private void declareNamespaceIfInherited(XMLStreamReader theReader) throws XMLStreamException {
+			String namespace = theReader.getNamespaceURI();
+			if (isBlank(namespace)) {
+				return;
+			}
+			String prefix = defaultString(theReader.getPrefix());
+			for (int i = 0; i < theReader.getNamespaceCount(); i++) {
+				if (prefix.equals(defaultString(theReader.getNamespacePrefix(i)))) {
+					return;
 				}
 			}
+			if (prefix.length() == 0) {
+				myWriter.writeDefaultNamespace(namespace);
+			} else {
+				myWriter.writeNamespace(prefix, namespace);
+			}
 		}
 
 	}
@@ -21,61 +21,141 @@ package ca.uhn.fhir.parser;
  */
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 
 import javax.json.stream.JsonLocation;
 import javax.json.stream.JsonParser;
 
+/**
+ * Wraps a {@link JsonParser} and adds a single event of lookahead ({@link #peek()}), as well as the ability to
+ * {@link #pushback(JsonParser) push back} a stream of events (e.g. from a buffered object) which will be returned
+ * before any further events from the wrapped parser.
+ * <p>
+ * The name, string or number value of the current event remains available through {@link #getString()} after
+ * peeking.
+ * </p>
+ */
 public class PushbackJsonParser implements JsonParser {
 
-	private JsonParser myWrap;
+	private Event myCurrent;
+	private String myCurrentString;
+	private Event myPeeked;
+	private String myPeekedString;
+	private final ArrayList<JsonParser> mySources = new ArrayList<JsonParser>(2);
 
 	public PushbackJsonParser(JsonParser theWrap) {
-		myWrap=theWrap;
+		mySources.add(theWrap);
 	}
-	
+
 	@Override
-	public boolean hasNext() {
-		return myWrap.hasNext();
+	public void close() {
+		mySources.get(0).close();
 	}
 
 	@Override
-	public Event next() {
-		return myWrap.next();
+	public BigDecimal getBigDecimal() {
+		return new BigDecimal(getString());
 	}
 
 	@Override
-	public String getString() {
-		return myWrap.getString();
+	public int getInt() {
+		return getBigDecimal().intValue();
 	}
 
 	@Override
-	public boolean isIntegralNumber() {
-		return myWrap.isIntegralNumber();
+	public JsonLocation getLocation() {
+		return mySources.get(0).getLocation();
 	}
 
 	@Override
-	public int getInt() {
-		return myWrap.getInt();
+	public long getLong() {
+		return getBigDecimal().longValue();
+	}
+
+	/**
+	 * Returns the value of the event returned by the last call to {@link #peek()}
+	 */
+	public String getPeekedString() {
+		if (myPeekedString == null) {
+			throw new IllegalStateException("Peeked event " + myPeeked + " has no value");
+		}
+		return myPeekedString;
 	}
 
 	@Override
-	public long getLong() {
-		return myWrap.getLong();
+	public String getString() {
+		if (myCurrentString == null) {
+			throw new IllegalStateException("Current event " + myCurrent + " has no value");
+		}
+		return myCurrentString;
 	}
 
 	@Override
-	public BigDecimal getBigDecimal() {
-		 return myWrap.getBigDecimal();
+	public boolean hasNext() {
+		if (myPeeked != null) {
+			return true;
+		}
+		for (int i = mySources.size() - 1; i >= 0; i--) {
+			if (mySources.get(i).hasNext()) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	@Override
-	public JsonLocation getLocation() {
-		return myWrap.getLocation();
+	public boolean isIntegralNumber() {
+		return getBigDecimal().scale() <= 0;
 	}
 
 	@Override
-	public void close() {
-			myWrap.close();
+	public Event next() {
+		if (myPeeked != null) {
+			myCurrent = myPeeked;
+			myCurrentString = myPeekedString;
+			myPeeked = null;
+			myPeekedString = null;
+			return myCurrent;
+		}
+
+		JsonParser source = currentSource();
+		myCurrent = source.next();
+		myCurrentString = hasValue(myCurrent) ? source.getString() : null;
+		return myCurrent;
+	}
+
+	/**
+	 * Returns the next event without consuming it. The following call to {@link #next()} will return the same event.
+	 */
+	public Event peek() {
+		if (myPeeked == null) {
+			JsonParser source = currentSource();
+			myPeeked = source.next();
+			myPeekedString = hasValue(myPeeked) ? source.getString() : null;
+		}
+		return myPeeked;
+	}
+
+	/**
+	 * Causes all remaining events of the given parser to be returned before any further events from the wrapped
+	 * parser. This may not be called while an event has been peeked but not yet consumed.
+	 */
+	public void pushback(JsonParser theEvents) {
+		if (myPeeked != null) {
+			throw new IllegalStateException("Can not push back events while an event has been peeked");
+		}
+		mySources.add(theEvents);
+	}
+
+	private JsonParser currentSource() {
+		while (mySources.size() > 1 && !mySources.get(mySources.size() - 1).hasNext()) {
+			mySources.remove(mySources.size() - 1);
+		}
+		return mySources.get(mySources.size() - 1);
+	}
+
+	private static boolean hasValue(Event theEvent) {
+		return theEvent == Event.KEY_NAME || theEvent == Event.VALUE_STRING || theEvent == Event.VALUE_NUMBER;
 	}
 
 }
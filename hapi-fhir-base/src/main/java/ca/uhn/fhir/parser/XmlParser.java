@@ -23,18 +23,20 @@ package ca.uhn.fhir.parser;
 import static org.apache.commons.lang3.StringUtils.*;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
-import javax.xml.namespace.QName;
 import javax.xml.stream.FactoryConfigurationError;
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.Characters;
@@ -118,19 +120,42 @@ public class XmlParser extends BaseParser implements IParser {
 
 	@Override
 	public void encodeBundleToWriter(Bundle theBundle, Writer theWriter) throws DataFormatException {
+		encodeBundleToWriter(theBundle, theBundle.getEntries(), theWriter);
+	}
+
+	@Override
+	public void encodeBundleToOutputStream(Bundle theBundle, Iterable<BundleEntry> theEntries, OutputStream theOutputStream) throws DataFormatException {
+		try {
+			XMLStreamWriter eventWriter = createXmlWriter(theOutputStream);
+			encodeBundleToXmlStreamWriter(theBundle, theEntries, eventWriter);
+		} catch (XMLStreamException e) {
+			throw new ConfigurationException("Failed to initialize STaX event factory", e);
+		}
+	}
+
+	@Override
+	public void encodeBundleToWriter(Bundle theBundle, Iterable<BundleEntry> theEntries, Writer theWriter) throws DataFormatException {
 		try {
 			XMLStreamWriter eventWriter = createXmlWriter(theWriter);
+			encodeBundleToXmlStreamWriter(theBundle, theEntries, eventWriter);
+		} catch (XMLStreamException e) {
+			throw new ConfigurationException("Failed to initialize STaX event factory", e);
+		}
+	}
+
+	private void encodeBundleToXmlStreamWriter(Bundle theBundle, Iterable<BundleEntry> theEntries, XMLStreamWriter theEventWriter) throws XMLStreamException {
+		try {
 			if (myContext.getVersion().getVersion().isNewerThan(FhirVersionEnum.DSTU1)) {
-				encodeBundleToWriterUsingBundleResource(theBundle, eventWriter);
+				encodeBundleToWriterUsingBundleResource(theBundle, theEntries, theEventWriter);
 			} else {
-				encodeBundleToWriterUsingAtom(theBundle, eventWriter);
+				encodeBundleToWriterUsingAtom(theBundle, theEntries, theEventWriter);
 			}
-		} catch (XMLStreamException e) {
-			throw new ConfigurationException("Failed to initialize STaX event factory", e);
+		} finally {
+			releaseEncodingState();
 		}
 	}
 
-	private void encodeBundleToWriterUsingAtom(Bundle theBundle, XMLStreamWriter eventWriter) throws XMLStreamException {
+	private void encodeBundleToWriterUsingAtom(Bundle theBundle, Iterable<BundleEntry> theEntries, XMLStreamWriter eventWriter) throws XMLStreamException {
 		eventWriter.writeStartElement("feed");
 		eventWriter.writeDefaultNamespace(ATOM_NS);
 
@@ -163,7 +188,7 @@ public class XmlParser extends BaseParser implements IParser {
 
 		writeCategories(eventWriter, theBundle.getCategories());
 
-		for (BundleEntry nextEntry : theBundle.getEntries()) {
+		for (BundleEntry nextEntry : theEntries) {
 			boolean deleted = false;
 			if (nextEntry.getDeletedAt() != null && nextEntry.getDeletedAt().isEmpty() == false) {
 				deleted = true;
@@ -239,7 +264,7 @@ public class XmlParser extends BaseParser implements IParser {
 		eventWriter.close();
 	}
 
-	private void encodeBundleToWriterUsingBundleResource(Bundle theBundle, XMLStreamWriter theEventWriter) throws XMLStreamException {
+	private void encodeBundleToWriterUsingBundleResource(Bundle theBundle, Iterable<BundleEntry> theEntries, XMLStreamWriter theEventWriter) throws XMLStreamException {
 		theEventWriter.writeStartElement("Bundle");
 		theEventWriter.writeDefaultNamespace(FHIR_NS);
 
@@ -265,7 +290,7 @@ public class XmlParser extends BaseParser implements IParser {
 		writeBundleResourceLink(theEventWriter, "last", theBundle.getLinkLast());
 		writeBundleResourceLink(theEventWriter, "self", theBundle.getLinkSelf());
 
-		for (BundleEntry nextEntry : theBundle.getEntries()) {
+		for (BundleEntry nextEntry : theEntries) {
 			theEventWriter.writeStartElement("entry");
 
 			IResource nextResource = nextEntry.getResource();
@@ -350,6 +375,21 @@ public class XmlParser extends BaseParser implements IParser {
 		return stringWriter.toString();
 	}
 
+	@Override
+	public void encodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream) throws DataFormatException {
+		XMLStreamWriter eventWriter;
+		try {
+			eventWriter = createXmlWriter(theOutputStream);
+
+			encodeResourceToXmlStreamWriter(theResource, eventWriter, false);
+			eventWriter.flush();
+		} catch (XMLStreamException e) {
+			throw new ConfigurationException("Failed to initialize STaX event factory", e);
+		} finally {
+			releaseEncodingState();
+		}
+	}
+
 	@Override
 	public void encodeResourceToWriter(IBaseResource theResource, Writer theWriter) throws DataFormatException {
 		XMLStreamWriter eventWriter;
@@ -360,9 +400,18 @@ public class XmlParser extends BaseParser implements IParser {
 			eventWriter.flush();
 		} catch (XMLStreamException e) {
 			throw new ConfigurationException("Failed to initialize STaX event factory", e);
+		} finally {
+			releaseEncodingState();
 		}
 	}
 
+	private XMLStreamWriter createXmlWriter(OutputStream theOutputStream) throws XMLStreamException {
+		XMLStreamWriter eventWriter;
+		eventWriter = XmlUtil.createXmlStreamWriter(theOutputStream);
+		eventWriter = decorateStreamWriter(eventWriter);
+		return eventWriter;
+	}
+
 	private XMLStreamWriter createXmlWriter(Writer theWriter) throws XMLStreamException {
 		XMLStreamWriter eventWriter;
 		eventWriter = XmlUtil.createXmlStreamWriter(theWriter);
@@ -401,23 +450,46 @@ public class XmlParser extends BaseParser implements IParser {
 		}
 	}
 
+	@Override
+	public <T extends IBaseResource> Bundle parseBundle(Class<T> theResourceType, InputStream theInputStream) {
+		XMLStreamReader streamReader = createStreamReader(theInputStream);
+
+		return parseBundle(streamReader, theResourceType);
+	}
+
 	@Override
 	public <T extends IBaseResource> Bundle parseBundle(Class<T> theResourceType, Reader theReader) {
-		XMLEventReader streamReader = createStreamReader(theReader);
+		XMLStreamReader streamReader = createStreamReader(theReader);
 
 		return parseBundle(streamReader, theResourceType);
 	}
 
+	@Override
+	public <T extends IBaseResource> IBundleReader parseBundleIncrementally(Class<T> theResourceType, Reader theReader) {
+		XMLStreamReader streamReader = createStreamReader(theReader);
+
+		ParserState<Bundle> parserState = ParserState.getPreAtomInstance(myContext, theResourceType, false, true);
+		parserState.setParseElements(getParseElements());
+		return new XmlBundleReader(theReader, streamReader, parserState);
+	}
+
+	@Override
+	public <T extends IBaseResource> T parseResource(Class<T> theResourceType, InputStream theInputStream) {
+		XMLStreamReader streamReader = createStreamReader(theInputStream);
+
+		return parseResource(theResourceType, streamReader);
+	}
+
 	@Override
 	public <T extends IBaseResource> T parseResource(Class<T> theResourceType, Reader theReader) {
-		XMLEventReader streamReader = createStreamReader(theReader);
+		XMLStreamReader streamReader = createStreamReader(theReader);
 
 		return parseResource(theResourceType, streamReader);
 	}
 
 	@Override
 	public TagList parseTagList(Reader theReader) {
-		XMLEventReader streamReader = createStreamReader(theReader);
+		XMLStreamReader streamReader = createStreamReader(theReader);
 
 		ParserState<TagList> parserState = ParserState.getPreTagListInstance(myContext, false);
 		return doXmlLoop(streamReader, parserState);
@@ -429,9 +501,19 @@ public class XmlParser extends BaseParser implements IParser {
 		return this;
 	}
 
-	private XMLEventReader createStreamReader(Reader theReader) {
+	private XMLStreamReader createStreamReader(InputStream theInputStream) {
 		try {
-			return XmlUtil.createXmlReader(theReader);
+			return XmlUtil.createXmlStreamReader(theInputStream);
+		} catch (FactoryConfigurationError e1) {
+			throw new ConfigurationException("Failed to initialize STaX event factory", e1);
+		} catch (XMLStreamException e1) {
+			throw new DataFormatException(e1);
+		}
+	}
+
+	private XMLStreamReader createStreamReader(Reader theReader) {
+		try {
+			return XmlUtil.createXmlStreamReader(theReader);
 		} catch (FactoryConfigurationError e1) {
 			throw new ConfigurationException("Failed to initialize STaX event factory", e1);
 		} catch (XMLStreamException e1) {
@@ -459,64 +541,60 @@ public class XmlParser extends BaseParser implements IParser {
 		}
 	}
 
-	private <T> T doXmlLoop(XMLEventReader streamReader, ParserState<T> parserState) {
+	private <T> T doXmlLoop(XMLStreamReader streamReader, ParserState<T> parserState) {
 		ourLog.trace("Entering XML parsing loop with state: {}", parserState);
 
 		try {
 			while (streamReader.hasNext()) {
-				XMLEvent nextEvent = streamReader.nextEvent();
+				int nextEventType = streamReader.next();
 				try {
-					if (nextEvent.isStartElement()) {
-						StartElement elem = nextEvent.asStartElement();
-
-						String namespaceURI = elem.getName().getNamespaceURI();
-
-						if ("extension".equals(elem.getName().getLocalPart())) {
-							Attribute urlAttr = elem.getAttributeByName(new QName("url"));
-							if (urlAttr == null || isBlank(urlAttr.getValue())) {
+					switch (nextEventType) {
+					case XMLStreamConstants.START_ELEMENT: {
+						String localName = streamReader.getLocalName();
+						if ("extension".equals(localName) || "modifierExtension".equals(localName)) {
+							String url = streamReader.getAttributeValue(null, "url");
+							if (isBlank(url)) {
 								throw new DataFormatException("Extension element has no 'url' attribute");
 							}
-							parserState.enteringNewElementExtension(elem, urlAttr.getValue(), false);
-						} else if ("modifierExtension".equals(elem.getName().getLocalPart())) {
-							Attribute urlAttr = elem.getAttributeByName(new QName("url"));
-							if (urlAttr == null || isBlank(urlAttr.getValue())) {
-								throw new DataFormatException("Extension element has no 'url' attribute");
-							}
-							parserState.enteringNewElementExtension(elem, urlAttr.getValue(), true);
-
+							parserState.enteringNewElementExtension(null, url, "modifierExtension".equals(localName));
 						} else {
-
-							String elementName = elem.getName().getLocalPart();
-							parserState.enteringNewElement(namespaceURI, elementName);
-
+							parserState.enteringNewElement(streamReader.getNamespaceURI(), localName);
 						}
 
-						for (@SuppressWarnings("unchecked")
-						Iterator<Attribute> iter = elem.getAttributes(); iter.hasNext();) {
-							Attribute next = iter.next();
-							// if
-							// (next.getName().getLocalPart().equals("value")) {
-							parserState.attributeValue(next.getName().getLocalPart(), next.getValue());
-							// }
+						int attributeCount = streamReader.getAttributeCount();
+						for (int i = 0; i < attributeCount; i++) {
+							parserState.attributeValue(streamReader.getAttributeLocalName(i), streamReader.getAttributeValue(i));
 						}
-
-					} else if (nextEvent.isAttribute()) {
-						Attribute elem = (Attribute) nextEvent;
-						String name = (elem.getName().getLocalPart());
-						parserState.attributeValue(name, elem.getValue());
-					} else if (nextEvent.isEndElement()) {
+						break;
+					}
+					case XMLStreamConstants.END_ELEMENT:
 						parserState.endingElement();
 						if (parserState.isComplete()) {
 							return parserState.getObject();
 						}
-					} else if (nextEvent.isCharacters()) {
-						parserState.string(nextEvent.asCharacters().getData());
+						if (parserState.hasCompletedBundleEntry()) {
+							// Parsing incrementally, so hand the entry back to the bundle reader
+							return null;
+						}
+						break;
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.CDATA:
+					case XMLStreamConstants.SPACE:
+						parserState.string(streamReader.getText());
+						break;
+					default:
+						break;
 					}
 
-					parserState.xmlEvent(nextEvent);
+					/*
+					 * Embedded XHTML is the only content which is retained as markup
+					 */
+					if (parserState.isCapturingXhtml()) {
+						parserState.xhtmlEvent(streamReader);
+					}
 
 				} catch (DataFormatException e) {
-					throw new DataFormatException("DataFormatException at [" + nextEvent.getLocation().toString() + "]: " + e.getMessage(), e);
+					throw new DataFormatException("DataFormatException at [" + streamReader.getLocation().toString() + "]: " + e.getMessage(), e);
 				}
 			}
 			return null;
@@ -527,7 +605,7 @@ public class XmlParser extends BaseParser implements IParser {
 
 	private void encodeChildElementToStreamWriter(RuntimeResourceDefinition theResDef, IBaseResource theResource, XMLStreamWriter theEventWriter, IBase nextValue, String childName,
 			BaseRuntimeElementDefinition<?> childDef, String theExtensionUrl, boolean theIncludedResource) throws XMLStreamException, DataFormatException {
-		if (nextValue.isEmpty()) {
+		if (isElementEmpty(nextValue)) {
 			if (childDef.getChildType() == ChildTypeEnum.CONTAINED_RESOURCES && getContainedResources().isEmpty() == false && theIncludedResource == false) {
 				// We still want to go in..
 			} else {
@@ -604,6 +682,9 @@ public class XmlParser extends BaseParser implements IParser {
 	private void encodeCompositeElementChildrenToStreamWriter(RuntimeResourceDefinition theResDef, IBaseResource theResource, IBase theElement, XMLStreamWriter theEventWriter,
 			List<? extends BaseRuntimeChildDefinition> children, boolean theIncludedResource) throws XMLStreamException, DataFormatException {
 		for (BaseRuntimeChildDefinition nextChild : children) {
+			if (!isEncodeElementSelected(theResource, theElement, theIncludedResource, nextChild)) {
+				continue;
+			}
 			if (nextChild instanceof RuntimeChildNarrativeDefinition && !theIncludedResource) {
 				INarrativeGenerator gen = myContext.getNarrativeGenerator();
 				if (theResource instanceof IResource) {
@@ -640,7 +721,7 @@ public class XmlParser extends BaseParser implements IParser {
 			}
 
 			for (IBase nextValue : values) {
-				if ((nextValue == null || nextValue.isEmpty()) && !(nextValue instanceof ContainedDt)) {
+				if ((nextValue == null || isElementEmpty(nextValue)) && !(nextValue instanceof ContainedDt)) {
 					continue;
 				}
 				Class<? extends IBase> type = nextValue.getClass();
@@ -716,7 +797,9 @@ public class XmlParser extends BaseParser implements IParser {
 			throws XMLStreamException, DataFormatException {
 		if (theElement instanceof ISupportsUndeclaredExtensions) {
 			ISupportsUndeclaredExtensions res = (ISupportsUndeclaredExtensions) theElement;
-			encodeUndeclaredExtensions(theResDef, theResource, theWriter, res.getUndeclaredExtensions(), "extension", theIncludedResource);
+			if (isEncodeElementSelected(theResource, theElement, theIncludedResource, "extension")) {
+				encodeUndeclaredExtensions(theResDef, theResource, theWriter, res.getUndeclaredExtensions(), "extension", theIncludedResource);
+			}
 			encodeUndeclaredExtensions(theResDef, theResource, theWriter, res.getUndeclaredModifierExtensions(), "modifierExtension", theIncludedResource);
 		}
 	}
@@ -855,7 +938,14 @@ public class XmlParser extends BaseParser implements IParser {
 	}
 
 	private void encodeXhtml(XhtmlDt theDt, XMLStreamWriter theEventWriter) throws XMLStreamException {
-		if (theDt == null || theDt.getValue() == null || getSuppressNarratives()) {
+		if (theDt == null || getSuppressNarratives()) {
+			return;
+		}
+		if (!theDt.isValueParsed()) {
+			encodeXhtmlText(theDt.getValueAsString(), theEventWriter);
+			return;
+		}
+		if (theDt.getValue() == null) {
 			return;
 		}
 
@@ -899,41 +989,14 @@ public class XmlParser extends BaseParser implements IParser {
 				break;
 			case XMLStreamConstants.START_ELEMENT:
 				StartElement se = event.asStartElement();
-				if (firstElement) {
-					if (StringUtils.isBlank(se.getName().getPrefix())) {
-						String namespaceURI = se.getName().getNamespaceURI();
-						if (StringUtils.isBlank(namespaceURI)) {
-							namespaceURI = "http://www.w3.org/1999/xhtml";
-						}
-						theEventWriter.writeStartElement(se.getName().getLocalPart());
-						theEventWriter.writeDefaultNamespace(namespaceURI);
-					} else {
-						String prefix = se.getName().getPrefix();
-						String namespaceURI = se.getName().getNamespaceURI();
-						theEventWriter.writeStartElement(prefix, se.getName().getLocalPart(), namespaceURI);
-						theEventWriter.writeNamespace(prefix, namespaceURI);
-					}
-					firstElement = false;
-				} else {
-					if (isBlank(se.getName().getPrefix())) {
-						if (isBlank(se.getName().getNamespaceURI())) {
-							theEventWriter.writeStartElement(se.getName().getLocalPart());
-						} else {
-							if (StringUtils.isBlank(se.getName().getPrefix())) {
-								theEventWriter.writeStartElement(se.getName().getLocalPart());
-								// theEventWriter.writeDefaultNamespace(se.getName().getNamespaceURI());
-							} else {
-								theEventWriter.writeStartElement(se.getName().getNamespaceURI(), se.getName().getLocalPart());
-							}
-						}
-					} else {
-						theEventWriter.writeStartElement(se.getName().getPrefix(), se.getName().getLocalPart(), se.getName().getNamespaceURI());
-					}
+				encodeXhtmlStartElement(se.getName().getPrefix(), se.getName().getLocalPart(), se.getName().getNamespaceURI(), firstElement, theEventWriter);
+				if (!firstElement) {
 					for (Iterator<?> attrIter = se.getAttributes(); attrIter.hasNext();) {
 						Attribute next = (Attribute) attrIter.next();
 						theEventWriter.writeAttribute(next.getName().getLocalPart(), next.getValue());
 					}
 				}
+				firstElement = false;
 				break;
 			case XMLStreamConstants.DTD:
 			case XMLStreamConstants.END_DOCUMENT:
@@ -947,13 +1010,93 @@ public class XmlParser extends BaseParser implements IParser {
 		}
 	}
 
-	private Bundle parseBundle(XMLEventReader theStreamReader, Class<? extends IBaseResource> theResourceType) {
+	private void encodeXhtmlStartElement(String thePrefix, String theLocalPart, String theNamespaceUri, boolean theFirstElement, XMLStreamWriter theEventWriter) throws XMLStreamException {
+		if (theFirstElement) {
+			if (StringUtils.isBlank(thePrefix)) {
+				String namespaceURI = theNamespaceUri;
+				if (StringUtils.isBlank(namespaceURI)) {
+					namespaceURI = "http://www.w3.org/1999/xhtml";
+				}
+				theEventWriter.writeStartElement(theLocalPart);
+				theEventWriter.writeDefaultNamespace(namespaceURI);
+			} else {
+				theEventWriter.writeStartElement(thePrefix, theLocalPart, theNamespaceUri);
+				theEventWriter.writeNamespace(thePrefix, theNamespaceUri);
+			}
+		} else {
+			if (isBlank(thePrefix)) {
+				theEventWriter.writeStartElement(theLocalPart);
+			} else {
+				theEventWriter.writeStartElement(thePrefix, theLocalPart, theNamespaceUri);
+			}
+		}
+	}
+
+	/**
+	 * Copies XHTML which is held as text to the writer, reading it with a stream reader so that no event objects
+	 * need to be created
+	 */
+	private void encodeXhtmlText(String theText, XMLStreamWriter theEventWriter) throws XMLStreamException {
+		XMLStreamReader reader;
+		try {
+			reader = XmlUtil.createXmlStreamReader(new StringReader(theText));
+		} catch (FactoryConfigurationError e) {
+			throw new ConfigurationException("Failed to initialize STaX event factory", e);
+		}
+
+		try {
+			boolean firstElement = true;
+			while (reader.hasNext()) {
+				int eventType;
+				try {
+					eventType = reader.next();
+				} catch (XMLStreamException e) {
+					throw new DataFormatException("Narrative does not appear to be valid XML/XHTML (error is \"" + e.getMessage() + "\"): " + theText, e);
+				}
+				switch (eventType) {
+				case XMLStreamConstants.CDATA:
+					theEventWriter.writeCData(reader.getText());
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					theEventWriter.writeCharacters(reader.getText());
+					break;
+				case XMLStreamConstants.COMMENT:
+					theEventWriter.writeComment(reader.getText());
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					theEventWriter.writeEndElement();
+					break;
+				case XMLStreamConstants.ENTITY_REFERENCE:
+					theEventWriter.writeEntityRef(reader.getLocalName());
+					break;
+				case XMLStreamConstants.START_ELEMENT:
+					encodeXhtmlStartElement(reader.getPrefix(), reader.getLocalName(), reader.getNamespaceURI(), firstElement, theEventWriter);
+					if (!firstElement) {
+						for (int i = 0; i < reader.getAttributeCount(); i++) {
+							theEventWriter.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+						}
+					}
+					firstElement = false;
+					break;
+				default:
+					break;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private Bundle parseBundle(XMLStreamReader theStreamReader, Class<? extends IBaseResource> theResourceType) {
 		ParserState<Bundle> parserState = ParserState.getPreAtomInstance(myContext, theResourceType, false);
+		parserState.setParseElements(getParseElements());
 		return doXmlLoop(theStreamReader, parserState);
 	}
 
-	private <T extends IBaseResource> T parseResource(Class<T> theResourceType, XMLEventReader theStreamReader) {
+	private <T extends IBaseResource> T parseResource(Class<T> theResourceType, XMLStreamReader theStreamReader) {
 		ParserState<T> parserState = ParserState.getPreResourceInstance(theResourceType, myContext, false);
+		parserState.setParseElements(getParseElements());
 		return doXmlLoop(theStreamReader, parserState);
 	}
 
@@ -997,4 +1140,31 @@ public class XmlParser extends BaseParser implements IParser {
 		}
 		theEventWriter.writeEndElement();
 	}
+
+	private class XmlBundleReader extends BaseBundleReader {
+
+		private XMLStreamReader myStreamReader;
+
+		public XmlBundleReader(Reader theReader, XMLStreamReader theStreamReader, ParserState<Bundle> theState) {
+			super(theReader, theState);
+			myStreamReader = theStreamReader;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				myStreamReader.close();
+			} catch (XMLStreamException e) {
+				ourLog.debug("Failed to close stream reader", e);
+			}
+			super.close();
+		}
+
+		@Override
+		protected void parseUntilNextEntry(ParserState<Bundle> theState) {
+			doXmlLoop(myStreamReader, theState);
+		}
+
+	}
+
 }
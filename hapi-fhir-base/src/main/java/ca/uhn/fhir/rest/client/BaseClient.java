@@ -21,6 +21,8 @@ package ca.uhn.fhir.rest.client;
  */
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -47,12 +49,15 @@ import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.ContentType;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.BinaryContentSources;
+import ca.uhn.fhir.model.api.IBinaryContentSource;
 import ca.uhn.fhir.model.base.resource.BaseOperationOutcome;
 import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
 import ca.uhn.fhir.rest.method.IClientResponseHandler;
 import ca.uhn.fhir.rest.method.IClientResponseHandlerHandlesBinary;
+import ca.uhn.fhir.rest.method.IClientResponseHandlerStreaming;
 import ca.uhn.fhir.rest.server.Constants;
 import ca.uhn.fhir.rest.server.EncodingEnum;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
@@ -67,6 +72,7 @@ public abstract class BaseClient {
 	private HttpResponse myLastResponse;
 	private String myLastResponseBody;
 	private Boolean myPrettyPrint = false;
+	private boolean myStreamBinaryResponses;
 
 	private final String myUrlBase;
 
@@ -181,6 +187,7 @@ public abstract class BaseClient {
 			throw new FhirClientConnectionException(e);
 		}
 
+		boolean keepResponseOpen = false;
 		try {
 			ContentType ct = ContentType.get(response.getEntity());
 			String mimeType = ct != null ? ct.getMimeType() : null;
@@ -245,6 +252,18 @@ public abstract class BaseClient {
 				IClientResponseHandlerHandlesBinary<T> handlesBinary = (IClientResponseHandlerHandlesBinary<T>) binding;
 				if (handlesBinary.isBinary()) {
 					InputStream reader = response.getEntity().getContent();
+
+					if (myStreamBinaryResponses && !(ourLog.isTraceEnabled() || myKeepResponses || theLogRequestAndResponse)) {
+						/*
+						 * The returned Binary keeps reading from the response, so it is released when the
+						 * content stream is closed instead of here
+						 */
+						IBinaryContentSource content = BinaryContentSources.fromStream(new ResponseClosingInputStream(reader, response), response.getEntity().getContentLength());
+						T retVal = handlesBinary.invokeClientStreaming(mimeType, content, response.getStatusLine().getStatusCode(), headers);
+						keepResponseOpen = true;
+						return retVal;
+					}
+
 					try {
 
 						if (ourLog.isTraceEnabled() || myKeepResponses || theLogRequestAndResponse) {
@@ -277,6 +296,16 @@ public abstract class BaseClient {
 				reader = new StringReader(responseString);
 			}
 
+			if (binding instanceof IClientResponseHandlerStreaming) {
+				/*
+				 * The returned object keeps reading from the response, so it is released when the
+				 * reader is closed instead of here
+				 */
+				T retVal = binding.invokeClient(mimeType, new ResponseClosingReader(reader, response), response.getStatusLine().getStatusCode(), headers);
+				keepResponseOpen = true;
+				return retVal;
+			}
+
 			try {
 				return binding.invokeClient(mimeType, reader, response.getStatusLine().getStatusCode(), headers);
 			} finally {
@@ -288,7 +317,7 @@ public abstract class BaseClient {
 		} catch (IOException e) {
 			throw new FhirClientConnectionException(e);
 		} finally {
-			if (response instanceof CloseableHttpResponse) {
+			if (!keepResponseOpen && response instanceof CloseableHttpResponse) {
 				try {
 					((CloseableHttpResponse) response).close();
 				} catch (IOException e) {
@@ -313,6 +342,13 @@ public abstract class BaseClient {
 		return Boolean.TRUE.equals(myPrettyPrint);
 	}
 
+	/**
+	 * See {@link ca.uhn.fhir.rest.client.api.IRestfulClient#setStreamBinaryResponses(boolean)}
+	 */
+	public boolean isStreamBinaryResponses() {
+		return myStreamBinaryResponses;
+	}
+
 	/**
 	 * Returns the pretty print flag, which is a request to the server for it to return "pretty printed" responses. Note that this is currently a non-standard flag (_pretty) which is supported only by
 	 * HAPI based servers (and any other servers which might implement it).
@@ -382,6 +418,13 @@ public abstract class BaseClient {
 		return this;
 	}
 
+	/**
+	 * See {@link ca.uhn.fhir.rest.client.api.IRestfulClient#setStreamBinaryResponses(boolean)}
+	 */
+	public void setStreamBinaryResponses(boolean theStreamBinaryResponses) {
+		myStreamBinaryResponses = theStreamBinaryResponses;
+	}
+
 	public void unregisterInterceptor(IClientInterceptor theInterceptor) {
 		Validate.notNull(theInterceptor, "Interceptor can not be null");
 		myInterceptors.remove(theInterceptor);
@@ -406,4 +449,56 @@ public abstract class BaseClient {
 		return reader;
 	}
 
+	/**
+	 * Closes the HTTP response when the stream is closed, for binary content which is streamed to the caller after
+	 * the client invocation has returned
+	 */
+	private static class ResponseClosingInputStream extends FilterInputStream {
+
+		private HttpResponse myResponse;
+
+		public ResponseClosingInputStream(InputStream theInputStream, HttpResponse theResponse) {
+			super(theInputStream);
+			myResponse = theResponse;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if (myResponse instanceof CloseableHttpResponse) {
+					((CloseableHttpResponse) myResponse).close();
+				}
+			} finally {
+				super.close();
+			}
+		}
+
+	}
+
+	/**
+	 * Closes the HTTP response when the reader is closed, for responses which are read by the caller after the
+	 * client invocation has returned
+	 */
+	private static class ResponseClosingReader extends FilterReader {
+
+		private HttpResponse myResponse;
+
+		public ResponseClosingReader(Reader theReader, HttpResponse theResponse) {
+			super(theReader);
+			myResponse = theResponse;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if (myResponse instanceof CloseableHttpResponse) {
+					((CloseableHttpResponse) myResponse).close();
+				}
+			} finally {
+				super.close();
+			}
+		}
+
+	}
+
 }
@@ -53,6 +53,7 @@ class ClientInvocationHandlerFactory {
 
 			myMethodToLambda.put(theClientType.getMethod("setEncoding", EncodingEnum.class), new SetEncodingLambda());
 			myMethodToLambda.put(theClientType.getMethod("setPrettyPrint", boolean.class), new SetPrettyPrintLambda());
+			myMethodToLambda.put(theClientType.getMethod("setStreamBinaryResponses", boolean.class), new SetStreamBinaryResponsesLambda());
 			myMethodToLambda.put(theClientType.getMethod("registerInterceptor", IClientInterceptor.class), new RegisterInterceptorLambda());
 			myMethodToLambda.put(theClientType.getMethod("unregisterInterceptor", IClientInterceptor.class), new UnregisterInterceptorLambda());
 
@@ -93,6 +94,15 @@ class ClientInvocationHandlerFactory {
 		}
 	}
 
+	class SetStreamBinaryResponsesLambda implements ILambda {
+		@Override
+		public Object handle(ClientInvocationHandler theTarget, Object[] theArgs) {
+			Boolean streamBinaryResponses = (Boolean) theArgs[0];
+			theTarget.setStreamBinaryResponses(streamBinaryResponses);
+			return null;
+		}
+	}
+
 	class UnregisterInterceptorLambda implements ILambda {
 		@Override
 		public Object handle(ClientInvocationHandler theTarget, Object[] theArgs) {
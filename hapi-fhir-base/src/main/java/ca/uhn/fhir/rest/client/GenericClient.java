@@ -50,6 +50,7 @@ import ca.uhn.fhir.model.primitive.DateTimeDt;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.model.primitive.UriDt;
 import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IBundleReader;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.client.exceptions.NonFhirResponseException;
@@ -82,6 +83,7 @@ import ca.uhn.fhir.rest.method.HttpDeleteClientInvocation;
 import ca.uhn.fhir.rest.method.HttpGetClientInvocation;
 import ca.uhn.fhir.rest.method.HttpSimpleGetClientInvocation;
 import ca.uhn.fhir.rest.method.IClientResponseHandler;
+import ca.uhn.fhir.rest.method.IClientResponseHandlerStreaming;
 import ca.uhn.fhir.rest.method.MethodUtil;
 import ca.uhn.fhir.rest.method.ReadMethodBinding;
 import ca.uhn.fhir.rest.method.SearchMethodBinding;
@@ -223,6 +225,19 @@ public class GenericClient extends BaseClient implements IGenericClient {
 
 	}
 
+	@Override
+	public <T extends IResource> IBundleReader historyIncrementally(final Class<T> theType, IdDt theIdDt, DateTimeDt theSince, Integer theLimit) {
+		String resourceName = theType != null ? toResourceName(theType) : null;
+		IdDt id = theIdDt != null && theIdDt.isEmpty() == false ? theIdDt : null;
+		HttpGetClientInvocation invocation = HistoryMethodBinding.createHistoryInvocation(resourceName, id, theSince, theLimit);
+		if (isKeepResponses()) {
+			myLastRequest = invocation.asHttpRequest(getServerBase(), createExtraParams(), getEncoding());
+		}
+
+		IncrementalBundleResponseHandler binding = new IncrementalBundleResponseHandler(theType);
+		return invokeClient(myContext, binding, invocation, myLogRequestAndResponse);
+	}
+
 	@Override
 	public <T extends IResource> Bundle history(Class<T> theType, String theId, DateTimeDt theSince, Integer theLimit) {
 		return history(theType, new IdDt(theId), theSince, theLimit);
@@ -574,6 +589,25 @@ public class GenericClient extends BaseClient implements IGenericClient {
 		}
 	}
 
+	private final class IncrementalBundleResponseHandler implements IClientResponseHandlerStreaming<IBundleReader> {
+
+		private Class<? extends IBaseResource> myType;
+
+		public IncrementalBundleResponseHandler(Class<? extends IBaseResource> theType) {
+			myType = theType;
+		}
+
+		@Override
+		public IBundleReader invokeClient(String theResponseMimeType, Reader theResponseReader, int theResponseStatusCode, Map<String, List<String>> theHeaders) throws IOException, BaseServerResponseException {
+			EncodingEnum respType = EncodingEnum.forContentType(theResponseMimeType);
+			if (respType == null) {
+				throw NonFhirResponseException.newInstance(theResponseStatusCode, theResponseMimeType, theResponseReader);
+			}
+			IParser parser = respType.newParser(myContext);
+			return parser.parseBundleIncrementally(myType, theResponseReader);
+		}
+	}
+
 	private class CreateInternal extends BaseClientExecutable<ICreateTyped, MethodOutcome> implements ICreate, ICreateTyped {
 
 		private String myId;
@@ -1017,8 +1051,21 @@ public class GenericClient extends BaseClient implements IGenericClient {
 
 		@Override
 		public Bundle execute() {
+			Map<String, List<String>> params = new LinkedHashMap<String, List<String>>();
+			BaseHttpClientInvocation invocation = createInvocation(params);
+			BundleResponseHandler binding = new BundleResponseHandler(myResourceType);
+			return invoke(params, binding, invocation);
+		}
 
+		@Override
+		public IBundleReader executeIncrementally() {
 			Map<String, List<String>> params = new LinkedHashMap<String, List<String>>();
+			BaseHttpClientInvocation invocation = createInvocation(params);
+			IncrementalBundleResponseHandler binding = new IncrementalBundleResponseHandler(myResourceType);
+			return invoke(params, binding, invocation);
+		}
+
+		private BaseHttpClientInvocation createInvocation(Map<String, List<String>> params) {
 			// Map<String, List<String>> initial = createExtraParams();
 			// if (initial != null) {
 			// params.putAll(initial);
@@ -1042,14 +1089,9 @@ public class GenericClient extends BaseClient implements IGenericClient {
 				addParam(params, Constants.PARAM_COUNT, Integer.toString(myParamLimit));
 			}
 
-			BundleResponseHandler binding = new BundleResponseHandler(myResourceType);
-
 			IdDt resourceId = myResourceId != null ? new IdDt(myResourceId) : null;
 
-			BaseHttpClientInvocation invocation = SearchMethodBinding.createSearchInvocation(myContext, myResourceName, params, resourceId, myCompartmentName, mySearchStyle);
-
-			return invoke(params, binding, invocation);
-
+			return SearchMethodBinding.createSearchInvocation(myContext, myResourceName, params, resourceId, myCompartmentName, mySearchStyle);
 		}
 
 		@Override
@@ -32,6 +32,7 @@ import ca.uhn.fhir.model.base.resource.BaseConformance;
 import ca.uhn.fhir.model.primitive.DateTimeDt;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.model.primitive.UriDt;
+import ca.uhn.fhir.parser.IBundleReader;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.client.api.IRestfulClient;
 import ca.uhn.fhir.rest.gclient.ICreate;
@@ -138,6 +139,26 @@ public interface IGenericClient {
 	 */
 	<T extends IResource> Bundle history(Class<T> theType, String theId, DateTimeDt theSince, Integer theLimit);
 
+	/**
+	 * Implementation of the "history instance" method, which returns a reader that parses the entries of the
+	 * response bundle one at a time as they are requested instead of loading the whole bundle into memory. The
+	 * returned reader holds the HTTP connection open, so it must be closed by the caller.
+	 * 
+	 * @param theType
+	 *            The type of resource to return the history for, or
+	 *            <code>null</code> to search for history across all resources
+	 * @param theId
+	 *            The ID of the resource to return the history for, or <code>null</code> to search for all resource
+	 *            instances. Note that if this param is not null, <code>theType</code> must also not be null
+	 * @param theSince
+	 *            If not null, request that the server only return resources updated since this time
+	 * @param theLimit
+	 *            If not null, request that the server return no more than this number of resources
+	 * @return A reader for the returned bundle
+	 * @see IBundleReader
+	 */
+	<T extends IResource> IBundleReader historyIncrementally(Class<T> theType, IdDt theId, DateTimeDt theSince, Integer theLimit);
+
 	/**
 	 * Loads the previous/next bundle of resources from a paged set, using the link specified in the "link type=next"
 	 * tag within the atom bundle.
@@ -59,6 +59,15 @@ public interface IRestfulClient {
 	 * @param thePrettyPrint The pretty print flag to use in the request (default is <code>false</code>)
 	 */
 	void setPrettyPrint(boolean thePrettyPrint);
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), Binary resources returned by this client are not read
+	 * into memory. Instead, the {@link ca.uhn.fhir.model.dstu.resource.Binary#getContentSource() content source} of the
+	 * returned Binary reads from the HTTP response as it is consumed. The underlying connection is only released once
+	 * the stream supplied by the content source (or {@link ca.uhn.fhir.model.dstu.resource.Binary#getContent()}) has
+	 * been read and closed, so callers must always consume the content.
+	 */
+	void setStreamBinaryResponses(boolean theStreamBinaryResponses);
 	
 	/**
 	 * Base URL for the server, with no trailing "/"
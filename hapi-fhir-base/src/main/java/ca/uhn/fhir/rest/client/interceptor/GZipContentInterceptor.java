@@ -0,0 +1,79 @@
+package ca.uhn.fhir.rest.client.interceptor;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+
+import ca.uhn.fhir.rest.client.IClientInterceptor;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.server.Constants;
+
+/**
+ * Client interceptor which compresses the body of outgoing requests (e.g. create, update and transaction) using GZip,
+ * and adds a <code>Content-Encoding: gzip</code> header to the request. This can greatly reduce the size of large
+ * requests, but should only be used against servers which support compressed request bodies (HAPI FHIR servers do).
+ */
+public class GZipContentInterceptor implements IClientInterceptor {
+
+	@Override
+	public void interceptRequest(HttpRequestBase theRequest) {
+		if (!(theRequest instanceof HttpEntityEnclosingRequest)) {
+			return;
+		}
+		HttpEntityEnclosingRequest request = (HttpEntityEnclosingRequest) theRequest;
+		HttpEntity entity = request.getEntity();
+		if (entity == null || theRequest.getFirstHeader(Constants.HEADER_CONTENT_ENCODING) != null) {
+			return;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			GZIPOutputStream gzipStream = new GZIPOutputStream(bytes);
+			entity.writeTo(gzipStream);
+			gzipStream.close();
+		} catch (IOException e) {
+			throw new FhirClientConnectionException(e);
+		}
+
+		ByteArrayEntity compressedEntity = new ByteArrayEntity(bytes.toByteArray());
+		Header contentType = entity.getContentType();
+		if (contentType != null) {
+			compressedEntity.setContentType(contentType);
+		}
+		request.setEntity(compressedEntity);
+		theRequest.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+	}
+
+	@Override
+	public void interceptResponse(HttpResponse theResponse) throws IOException {
+		// nothing
+	}
+
+}
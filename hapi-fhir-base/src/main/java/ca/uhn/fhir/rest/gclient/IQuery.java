@@ -22,6 +22,7 @@ package ca.uhn.fhir.rest.gclient;
 
 import ca.uhn.fhir.model.api.Bundle;
 import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.parser.IBundleReader;
 import ca.uhn.fhir.rest.method.SearchStyleEnum;
 
 public interface IQuery extends IClientExecutable<IQuery,Bundle> {
@@ -46,5 +47,14 @@ public interface IQuery extends IClientExecutable<IQuery,Bundle> {
 	IQuery usingStyle(SearchStyleEnum theStyle);
 
 	IQuery withIdAndCompartment(String theResourceId, String theCompartmentName);
+
+	/**
+	 * Performs the search, returning a reader which parses the entries of the response bundle one at a time as they
+	 * are requested instead of loading the whole bundle into memory. This is useful for searches which may return
+	 * very large bundles. The returned reader holds the HTTP connection open, so it must be closed by the caller.
+	 * 
+	 * @see IBundleReader
+	 */
+	IBundleReader executeIncrementally();
 	
 }
@@ -0,0 +1,58 @@
+package ca.uhn.fhir.rest.method;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.rest.server.DeferredResult;
+
+/**
+ * Thrown by a method binding when the server method has returned a {@link DeferredResult} which is not yet complete
+ * and the request can be processed asynchronously. {@link ca.uhn.fhir.rest.server.RestfulServer} catches this and
+ * suspends the request until the result is available.
+ * <p>
+ * This class is internal to HAPI - Use with caution as methods may change in future versions of the library
+ * </p>
+ */
+public class AsyncResultPendingException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Object[] myMethodParams;
+	private final DeferredResult<?> myResult;
+
+	public AsyncResultPendingException(DeferredResult<?> theResult, Object[] theMethodParams) {
+		super("Result is pending");
+		myResult = theResult;
+		myMethodParams = theMethodParams;
+	}
+
+	/**
+	 * Returns the parameters the server method was invoked with, so that they can be reused when the request is
+	 * resumed (at which point the request body has already been consumed)
+	 */
+	public Object[] getMethodParams() {
+		return myMethodParams;
+	}
+
+	public DeferredResult<?> getResult() {
+		return myResult;
+	}
+
+}
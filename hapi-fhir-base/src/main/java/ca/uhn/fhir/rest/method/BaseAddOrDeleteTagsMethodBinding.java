@@ -158,23 +158,29 @@ abstract class BaseAddOrDeleteTagsMethodBinding extends BaseMethodBinding<Void>
 
 	@Override
 	public void invokeServer(RestfulServer theServer, Request theRequest) throws BaseServerResponseException, IOException {
-		Object[] params = createParametersForServerRequest(theRequest, null);
+		// If the request is being resumed, the body has already been consumed
+		Object[] params = theRequest.getAsyncMethodParams();
+		if (params == null) {
+			long start = System.nanoTime();
+			params = createParametersForServerRequest(theRequest, null);
 
-		params[myIdParamIndex] = theRequest.getId();
+			params[myIdParamIndex] = theRequest.getId();
 
-		if (myVersionIdParamIndex != null) {
-			params[myVersionIdParamIndex] = theRequest.getId();
-		}
+			if (myVersionIdParamIndex != null) {
+				params[myVersionIdParamIndex] = theRequest.getId();
+			}
 
-		IParser parser = createAppropriateParserForParsingServerRequest(theRequest);
-		Reader reader = theRequest.getServletRequest().getReader();
-		try {
-			TagList tagList = parser.parseTagList(reader);
-			params[myTagListParamIndex] = tagList;
-		} finally {
-			reader.close();
+			IParser parser = createAppropriateParserForParsingServerRequest(theRequest);
+			Reader reader = theRequest.getServletRequest().getReader();
+			try {
+				TagList tagList = parser.parseTagList(reader);
+				params[myTagListParamIndex] = tagList;
+			} finally {
+				reader.close();
+			}
+			theRequest.addPhaseTimeNanos(RequestPhaseEnum.PARSE, System.nanoTime() - start);
 		}
-		invokeServerMethod(params);
+		invokeServerMethod(theRequest, params);
 
 		for (int i = theServer.getInterceptors().size() - 1; i >= 0; i--) {
 			IServerInterceptor next = theServer.getInterceptors().get(i);
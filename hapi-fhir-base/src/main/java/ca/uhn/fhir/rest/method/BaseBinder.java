@@ -32,6 +32,7 @@ import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 class BaseBinder<T> {
 	private List<Class<? extends IQueryParameterType>> myCompositeTypes;
 	private Constructor<? extends T> myConstructor;
+	private final Object[] myConstructorArgs;
 	private final Class<? extends T> myType;
 
 	public BaseBinder(Class<? extends T> theType, List<Class<? extends IQueryParameterType>> theCompositeTypes) {
@@ -53,16 +54,18 @@ class BaseBinder<T> {
 		} catch (NoSuchMethodException e) {
 			throw new ConfigurationException("Query parameter type " + theType.getName() + " has no constructor with types " + theCompositeTypes);
 		}
+
+		myConstructorArgs = myCompositeTypes.toArray();
+		try {
+			myConstructor.setAccessible(true);
+		} catch (SecurityException e) {
+			// Access checks will be performed on each call instead
+		}
 	}
 
 	public T newInstance() {
 		try {
-			final Object[] args = new Object[myCompositeTypes.size()];
-			for (int i = 0; i < myCompositeTypes.size();i++) {
-				args[i] = myCompositeTypes.get(i);//.newInstance();
-			}
-			
-			T dt = myConstructor.newInstance(args);
+			T dt = myConstructor.newInstance(myConstructorArgs);
 			return dt;
 		} catch (final InstantiationException e) {
 			throw new InternalErrorException(e);
@@ -20,6 +20,8 @@ package ca.uhn.fhir.rest.method;
  * #L%
  */
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
@@ -38,6 +40,7 @@ import org.apache.http.message.BasicNameValuePair;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.model.api.Bundle;
+import ca.uhn.fhir.model.api.IBinaryContentSource;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.TagList;
 import ca.uhn.fhir.model.dstu.resource.Binary;
@@ -156,7 +159,14 @@ abstract class BaseHttpClientInvocationWithContents extends BaseHttpClientInvoca
 
 		if (myResource != null && Binary.class.isAssignableFrom(myResource.getClass())) {
 			Binary binary = (Binary) myResource;
-			ByteArrayEntity entity = new ByteArrayEntity(binary.getContent(), ContentType.parse(binary.getContentType()));
+			ContentType contentType = ContentType.parse(binary.getContentType());
+			IBinaryContentSource source = binary.getContentSource();
+			AbstractHttpEntity entity;
+			if (source != null) {
+				entity = new BinaryContentSourceEntity(source, contentType);
+			} else {
+				entity = new ByteArrayEntity(new byte[0], contentType);
+			}
 			HttpRequestBase retVal = createRequest(url, entity);
 			return retVal;
 		}
@@ -193,29 +203,42 @@ abstract class BaseHttpClientInvocationWithContents extends BaseHttpClientInvoca
 				throw new InternalErrorException("Server does not support UTF-8 (should not happen)", e);
 			}
 		} else {
-			String contents;
-			if (myTagList != null) {
-				contents = parser.encodeTagListToString(myTagList);
-				contentType = encoding.getResourceContentType();
-			} else if (myBundle != null) {
-				contents = parser.encodeBundleToString(myBundle);
-				contentType = encoding.getBundleContentType();
-			} else if (myResources != null) {
-				Bundle bundle = RestfulServer.createBundleFromResourceList(myContext, "", myResources, "", "", myResources.size());
-				contents = parser.encodeBundleToString(bundle);
-				contentType = encoding.getBundleContentType();
-			} else if (myContents != null) {
-				contents = myContents;
-				if (myContentsIsBundle) {
+			/*
+			 * Resources and bundles are encoded straight to UTF-8 bytes, contents which are
+			 * already strings are sent as they are
+			 */
+			String contents = null;
+			ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+			try {
+				if (myTagList != null) {
+					contents = parser.encodeTagListToString(myTagList);
+					contentType = encoding.getResourceContentType();
+				} else if (myBundle != null) {
+					parser.encodeBundleToOutputStream(myBundle, encoded);
+					contentType = encoding.getBundleContentType();
+				} else if (myResources != null) {
+					Bundle bundle = RestfulServer.createBundleFromResourceList(myContext, "", myResources, "", "", myResources.size());
+					parser.encodeBundleToOutputStream(bundle, encoded);
 					contentType = encoding.getBundleContentType();
+				} else if (myContents != null) {
+					contents = myContents;
+					if (myContentsIsBundle) {
+						contentType = encoding.getBundleContentType();
+					} else {
+						contentType = encoding.getResourceContentType();
+					}
 				} else {
+					parser.encodeResourceToOutputStream(myResource, encoded);
 					contentType = encoding.getResourceContentType();
 				}
+			} catch (IOException e) {
+				throw new InternalErrorException("Failed to encode request contents", e);
+			}
+			if (contents != null) {
+				entity = new StringEntity(contents, ContentType.create(contentType, Constants.CHARSET_UTF_8));
 			} else {
-				contents = parser.encodeResourceToString(myResource);
-				contentType = encoding.getResourceContentType();
+				entity = new ByteArrayEntity(encoded.toByteArray(), ContentType.create(contentType, Constants.CHARSET_UTF_8));
 			}
-			entity = new StringEntity(contents, ContentType.create(contentType, Constants.CHARSET_UTF_8));
 		}
 
 		HttpRequestBase retVal = createRequest(url, entity);
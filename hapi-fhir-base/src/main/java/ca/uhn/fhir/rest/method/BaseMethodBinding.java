@@ -32,6 +32,11 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.servlet.http.HttpServletRequest;
 
 import ca.uhn.fhir.rest.annotation.*;
 
@@ -52,6 +57,7 @@ import ca.uhn.fhir.rest.client.BaseHttpClientInvocation;
 import ca.uhn.fhir.rest.client.exceptions.NonFhirResponseException;
 import ca.uhn.fhir.rest.server.BundleProviders;
 import ca.uhn.fhir.rest.server.Constants;
+import ca.uhn.fhir.rest.server.DeferredResult;
 import ca.uhn.fhir.rest.server.EncodingEnum;
 import ca.uhn.fhir.rest.server.IBundleProvider;
 import ca.uhn.fhir.rest.server.IDynamicSearchResourceProvider;
@@ -83,6 +89,16 @@ public abstract class BaseMethodBinding<T> implements IClientResponseHandler<T>
 		myMethod = theMethod;
 		myContext = theContext;
 		myProvider = theProvider;
+
+		/*
+		 * Provider methods are invoked on every request, so suppress the access check which Method#invoke would
+		 * otherwise perform each time (providers are often non-public classes, e.g. inner classes)
+		 */
+		try {
+			theMethod.setAccessible(true);
+		} catch (SecurityException e) {
+			ourLog.debug("Unable to suppress access checks for method {}", theMethod);
+		}
 		myParameters = MethodUtil.getResourceParameters(theMethod, theProvider);
 	}
 
@@ -186,6 +202,59 @@ public abstract class BaseMethodBinding<T> implements IClientResponseHandler<T>
 		return params;
 	}
 
+	/**
+	 * Invokes the server method and returns its result. If the server method returns a {@link Future}, the value it
+	 * produces is returned instead, unless the future is an incomplete {@link DeferredResult} and the request can be
+	 * processed asynchronously, in which case an {@link AsyncResultPendingException} is thrown. When the request is
+	 * later resumed, the value of that result is returned without invoking the server method again.
+	 */
+	protected Object invokeServerMethod(RequestDetails theRequest, Object[] theMethodParams) {
+		HttpServletRequest servletRequest = null;
+		if (theRequest instanceof Request) {
+			servletRequest = ((Request) theRequest).getServletRequest();
+		}
+
+		DeferredResult<?> resumed = Request.getAsyncResult(servletRequest);
+		if (resumed != null) {
+			return getFutureResult(resumed);
+		}
+
+		long start = System.nanoTime();
+		try {
+			Object retVal = invokeServerMethod(theMethodParams);
+			if (!(retVal instanceof Future<?>)) {
+				return retVal;
+			}
+
+			Future<?> future = (Future<?>) retVal;
+			if (future instanceof DeferredResult<?> && !future.isDone() && servletRequest != null && servletRequest.isAsyncSupported()) {
+				throw new AsyncResultPendingException((DeferredResult<?>) future, theMethodParams);
+			}
+			return getFutureResult(future);
+		} finally {
+			if (theRequest != null) {
+				theRequest.addPhaseTimeNanos(RequestPhaseEnum.INVOKE, System.nanoTime() - start);
+			}
+		}
+	}
+
+	private Object getFutureResult(Future<?> theFuture) {
+		try {
+			return theFuture.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof BaseServerResponseException) {
+				throw (BaseServerResponseException) e.getCause();
+			} else {
+				throw new InternalErrorException("Failed to call access method", e.getCause());
+			}
+		} catch (CancellationException e) {
+			throw new InternalErrorException("Result of access method was cancelled", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InternalErrorException("Interrupted while waiting for result of access method", e);
+		}
+	}
+
 	protected Object invokeServerMethod(Object[] theMethodParams) {
 		try {
 			Method method = getMethod();
@@ -264,7 +333,7 @@ public abstract class BaseMethodBinding<T> implements IClientResponseHandler<T>
 			}
 		}
 
-		Class<?> returnTypeFromMethod = theMethod.getReturnType();
+		Class<?> returnTypeFromMethod = ReflectionUtil.getMethodReturnType(theMethod);
 		if (getTags != null) {
 			if (!TagList.class.equals(returnTypeFromMethod)) {
 				throw new ConfigurationException("Method '" + theMethod.getName() + "' from type " + theMethod.getDeclaringClass().getCanonicalName() + " is annotated with @" + GetTags.class.getSimpleName() + " but does not return type " + TagList.class.getName());
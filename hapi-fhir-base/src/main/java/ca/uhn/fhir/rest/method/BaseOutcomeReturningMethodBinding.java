@@ -50,6 +50,7 @@ import ca.uhn.fhir.rest.server.RestfulServer;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor;
+import ca.uhn.fhir.util.ReflectionUtil;
 
 abstract class BaseOutcomeReturningMethodBinding extends BaseMethodBinding<MethodOutcome> {
 	static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BaseOutcomeReturningMethodBinding.class);
@@ -59,10 +60,10 @@ abstract class BaseOutcomeReturningMethodBinding extends BaseMethodBinding<Metho
 	public BaseOutcomeReturningMethodBinding(Method theMethod, FhirContext theContext, Class<?> theMethodAnnotation, Object theProvider) {
 		super(theMethod, theContext, theProvider);
 
-		if (!theMethod.getReturnType().equals(MethodOutcome.class)) {
+		if (!ReflectionUtil.getMethodReturnType(theMethod).equals(MethodOutcome.class)) {
 			if (!allowVoidReturnType()) {
 				throw new ConfigurationException("Method " + theMethod.getName() + " in type " + theMethod.getDeclaringClass().getCanonicalName() + " is a @" + theMethodAnnotation.getSimpleName() + " method but it does not return " + MethodOutcome.class);
-			} else if (theMethod.getReturnType() == void.class) {
+			} else if (ReflectionUtil.getMethodReturnType(theMethod) == void.class) {
 				myReturnVoid = true;
 			}
 		}
@@ -106,28 +107,37 @@ abstract class BaseOutcomeReturningMethodBinding extends BaseMethodBinding<Metho
 
 	@Override
 	public void invokeServer(RestfulServer theServer, Request theRequest) throws BaseServerResponseException, IOException {
-		IResource resource;
-		if (requestContainsResource()) {
-			resource = parseIncomingServerResource(theRequest);
-			TagList tagList = new TagList();
-			for (Enumeration<String> enumeration = theRequest.getServletRequest().getHeaders(Constants.HEADER_CATEGORY); enumeration.hasMoreElements();) {
-				String nextTagComplete = enumeration.nextElement();
-				MethodUtil.parseTagValue(tagList, nextTagComplete);
-			}
-			if (tagList.isEmpty() == false) {
-				resource.getResourceMetadata().put(ResourceMetadataKeyEnum.TAG_LIST, tagList);
+		// If the request is being resumed, the body has already been consumed
+		Object[] params = theRequest.getAsyncMethodParams();
+		if (params == null) {
+			long start = System.nanoTime();
+			IResource resource;
+			if (requestContainsResource()) {
+				resource = RestfulServer.getBatchEntryResource(theRequest.getServletRequest());
+				if (resource == null) {
+					resource = parseIncomingServerResource(theRequest);
+				}
+				TagList tagList = new TagList();
+				for (Enumeration<String> enumeration = theRequest.getServletRequest().getHeaders(Constants.HEADER_CATEGORY); enumeration.hasMoreElements();) {
+					String nextTagComplete = enumeration.nextElement();
+					MethodUtil.parseTagValue(tagList, nextTagComplete);
+				}
+				if (tagList.isEmpty() == false) {
+					resource.getResourceMetadata().put(ResourceMetadataKeyEnum.TAG_LIST, tagList);
+				}
+			} else {
+				resource = null;
 			}
-		} else {
-			resource = null;
-		}
 
-		Object[] params = createParametersForServerRequest(theRequest, resource);
-		addParametersForServerRequest(theRequest, params);
+			params = createParametersForServerRequest(theRequest, resource);
+			addParametersForServerRequest(theRequest, params);
+			theRequest.addPhaseTimeNanos(RequestPhaseEnum.PARSE, System.nanoTime() - start);
+		}
 
 		HttpServletResponse servletResponse = theRequest.getServletResponse();
 		MethodOutcome response;
 		try {
-			response = (MethodOutcome) invokeServerMethod(params);
+			response = (MethodOutcome) invokeServerMethod(theRequest, params);
 		} catch (InternalErrorException e) {
 			ourLog.error("Internal error during method invocation", e);
 			EncodingEnum encoding = RestfulServer.determineResponseEncoding(theRequest.getServletRequest());
@@ -200,7 +210,12 @@ abstract class BaseOutcomeReturningMethodBinding extends BaseMethodBinding<Metho
 
 		theServer.addHeadersToResponse(servletResponse);
 
+		if (outcome != null && RestfulServer.captureBatchEntryResponse(servletResponse, outcome)) {
+			return;
+		}
+
 		if (outcome != null) {
+			long encodeStart = System.nanoTime();
 			EncodingEnum encoding = RestfulServer.determineResponseEncoding(theRequest.getServletRequest());
 			servletResponse.setContentType(encoding.getResourceContentType());
 			Writer writer = servletResponse.getWriter();
@@ -211,6 +226,7 @@ abstract class BaseOutcomeReturningMethodBinding extends BaseMethodBinding<Metho
 			} finally {
 				writer.close();
 			}
+			theRequest.addPhaseTimeNanos(RequestPhaseEnum.ENCODE, System.nanoTime() - encodeStart);
 		} else {
 			servletResponse.setContentType(Constants.CT_TEXT);
 			Writer writer = servletResponse.getWriter();
@@ -313,6 +329,10 @@ abstract class BaseOutcomeReturningMethodBinding extends BaseMethodBinding<Metho
 
 		theServer.addHeadersToResponse(theResponse);
 
+		if (theE.getOperationOutcome() != null && RestfulServer.captureBatchEntryResponse(theResponse, theE.getOperationOutcome())) {
+			return;
+		}
+
 		if (theE.getOperationOutcome() != null) {
 			theResponse.setContentType(theEncoding.getResourceContentType());
 			IParser parser = theEncoding.newParser(theServer.getFhirContext());
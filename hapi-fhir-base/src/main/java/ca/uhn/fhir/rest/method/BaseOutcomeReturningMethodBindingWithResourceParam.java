@@ -23,10 +23,13 @@ package ca.uhn.fhir.rest.method;
 import java.io.IOException;
 import java.lang.reflect.Method;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.apache.commons.io.IOUtils;
 
 import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.BinaryContentSources;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.dstu.resource.Binary;
 import ca.uhn.fhir.model.dstu.valueset.RestfulOperationSystemEnum;
@@ -78,9 +81,21 @@ abstract class BaseOutcomeReturningMethodBindingWithResourceParam extends BaseOu
 	@Override
 	protected IResource parseIncomingServerResource(Request theRequest) throws IOException {
 		if (myBinary) {
-			String ct = theRequest.getServletRequest().getHeader(Constants.HEADER_CONTENT_TYPE);
-			byte[] contents = IOUtils.toByteArray(theRequest.getServletRequest().getInputStream());
-			return new Binary(ct, contents);
+			HttpServletRequest servletRequest = theRequest.getServletRequest();
+			String ct = servletRequest.getHeader(Constants.HEADER_CONTENT_TYPE);
+			int length = servletRequest.getContentLength();
+			if (length != -1 && length <= theRequest.getServer().getBinaryStreamingThreshold()) {
+				byte[] contents = IOUtils.toByteArray(servletRequest.getInputStream());
+				return new Binary(ct, contents);
+			}
+
+			/*
+			 * Large bodies are handed to the server method as a stream, so they are never held in memory
+			 */
+			Binary retVal = new Binary();
+			retVal.setContentType(ct);
+			retVal.setContentSource(BinaryContentSources.fromStream(servletRequest.getInputStream(), length));
+			return retVal;
 		} else {
 			return super.parseIncomingServerResource(theRequest);
 		}
@@ -61,6 +61,7 @@ abstract class BaseResourceReturningMethodBinding extends BaseMethodBinding<Obje
 
 	static {
 		HashSet<String> set = new HashSet<String>();
+		set.add(Constants.PARAM_ELEMENTS);
 		set.add(Constants.PARAM_FORMAT);
 		set.add(Constants.PARAM_NARRATIVE);
 		set.add(Constants.PARAM_PRETTY);
@@ -68,6 +69,7 @@ abstract class BaseResourceReturningMethodBinding extends BaseMethodBinding<Obje
 		set.add(Constants.PARAM_SORT_ASC);
 		set.add(Constants.PARAM_SORT_DESC);
 		set.add(Constants.PARAM_COUNT);
+		set.add(Constants.PARAM_SUMMARY);
 		ALLOWED_PARAMS = Collections.unmodifiableSet(set);
 	}
 	
@@ -80,7 +82,7 @@ abstract class BaseResourceReturningMethodBinding extends BaseMethodBinding<Obje
 	public BaseResourceReturningMethodBinding(Class<?> theReturnResourceType, Method theMethod, FhirContext theConetxt, Object theProvider) {
 		super(theMethod, theConetxt, theProvider);
 
-		Class<?> methodReturnType = theMethod.getReturnType();
+		Class<?> methodReturnType = ReflectionUtil.getMethodReturnType(theMethod);
 		if (Collection.class.isAssignableFrom(methodReturnType)) {
 
 			myMethodReturnType = MethodReturnTypeEnum.LIST_OF_RESOURCES;
@@ -212,6 +214,9 @@ abstract class BaseResourceReturningMethodBinding extends BaseMethodBinding<Obje
 		// Narrative mode
 		NarrativeModeEnum narrativeMode = RestfulServer.determineNarrativeMode(theRequest);
 
+		// Elements to include in the response (_elements)
+		Set<String> elements = RestfulServer.determineElements(theRequest.getServletRequest());
+
 		// Determine response encoding
 		EncodingEnum responseEncoding = RestfulServer.determineResponseEncoding(theRequest.getServletRequest());
 
@@ -222,15 +227,19 @@ abstract class BaseResourceReturningMethodBinding extends BaseMethodBinding<Obje
 			requestIsBrowser = true;
 		}
 
-		Object requestObject = parseRequestObject(theRequest);
-
-		// Method params
-		Object[] params = new Object[getParameters().size()];
-		for (int i = 0; i < getParameters().size(); i++) {
-			IParameter param = getParameters().get(i);
-			if (param != null) {
-				params[i] = param.translateQueryParametersIntoServerArgument(theRequest, requestObject);
+		// Method params (if the request is being resumed, the body has already been consumed)
+		Object[] params = theRequest.getAsyncMethodParams();
+		if (params == null) {
+			long start = System.nanoTime();
+			Object requestObject = parseRequestObject(theRequest);
+			params = new Object[getParameters().size()];
+			for (int i = 0; i < getParameters().size(); i++) {
+				IParameter param = getParameters().get(i);
+				if (param != null) {
+					params[i] = param.translateQueryParametersIntoServerArgument(theRequest, requestObject);
+				}
 			}
+			theRequest.addPhaseTimeNanos(RequestPhaseEnum.PARSE, System.nanoTime() - start);
 		}
 
 		Integer count = RestfulServer.extractCountParameter(theRequest.getServletRequest());
@@ -242,7 +251,19 @@ abstract class BaseResourceReturningMethodBinding extends BaseMethodBinding<Obje
 		switch (getReturnType()) {
 		case BUNDLE:
 
-			Bundle bundle = RestfulServer.createBundleFromBundleProvider(theServer, response, result, responseEncoding, theRequest.getFhirServerBase(), theRequest.getCompleteUrl(), prettyPrint, requestIsBrowser, narrativeMode, 0, count, null);
+			Bundle bundle;
+			long bundleStart = System.nanoTime();
+			if (RestfulServer.isCountOnlyRequest(theRequest.getServletRequest())) {
+				bundle = RestfulServer.createCountOnlyBundleFromBundleProvider(theServer, response, result, responseEncoding, theRequest.getFhirServerBase(), theRequest.getCompleteUrl(), requestIsBrowser, narrativeMode);
+			} else if (!theServer.isBundleInterceptorRegistered()) {
+				// No interceptor needs to see the complete bundle, so resources can be written as they are loaded
+				RestfulServer.streamResponseAsBundle(theServer, response, result, responseEncoding, theRequest.getFhirServerBase(), theRequest.getCompleteUrl(), prettyPrint, requestIsBrowser, narrativeMode, 0, count, null, respondGzip, elements);
+				theRequest.addPhaseTimeNanos(RequestPhaseEnum.ENCODE, System.nanoTime() - bundleStart);
+				break;
+			} else {
+				bundle = RestfulServer.createBundleFromBundleProvider(theServer, response, result, responseEncoding, theRequest.getFhirServerBase(), theRequest.getCompleteUrl(), prettyPrint, requestIsBrowser, narrativeMode, 0, count, null);
+			}
+			theRequest.addPhaseTimeNanos(RequestPhaseEnum.BUNDLE, System.nanoTime() - bundleStart);
 
 			for (int i = theServer.getInterceptors().size() - 1; i >= 0; i--) {
 				IServerInterceptor next = theServer.getInterceptors().get(i);
@@ -252,7 +273,9 @@ abstract class BaseResourceReturningMethodBinding extends BaseMethodBinding<Obje
 				}
 			}
 
-			RestfulServer.streamResponseAsBundle(theServer, response, bundle, responseEncoding, theRequest.getFhirServerBase(), prettyPrint, narrativeMode, respondGzip);
+			long bundleEncodeStart = System.nanoTime();
+			RestfulServer.streamResponseAsBundle(theServer, response, bundle, responseEncoding, theRequest.getFhirServerBase(), prettyPrint, narrativeMode, respondGzip, elements);
+			theRequest.addPhaseTimeNanos(RequestPhaseEnum.ENCODE, System.nanoTime() - bundleEncodeStart);
 			break;
 		case RESOURCE:
 			if (result.size() == 0) {
@@ -271,7 +294,9 @@ abstract class BaseResourceReturningMethodBinding extends BaseMethodBinding<Obje
 				}
 			}
 
-			RestfulServer.streamResponseAsResource(theServer, response, resource, responseEncoding, prettyPrint, requestIsBrowser, narrativeMode, respondGzip, theRequest.getFhirServerBase());
+			long encodeStart = System.nanoTime();
+			RestfulServer.streamResponseAsResource(theServer, theRequest.getServletRequest(), response, resource, responseEncoding, prettyPrint, requestIsBrowser, narrativeMode, respondGzip, theRequest.getFhirServerBase(), elements);
+			theRequest.addPhaseTimeNanos(RequestPhaseEnum.ENCODE, System.nanoTime() - encodeStart);
 			break;
 		}
 	}
@@ -0,0 +1,81 @@
+package ca.uhn.fhir.rest.method;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import ca.uhn.fhir.model.api.IBinaryContentSource;
+
+/**
+ * Request entity which streams the content of a Binary from its {@link IBinaryContentSource} as the request is sent,
+ * so that the content is never held in memory by the client
+ */
+class BinaryContentSourceEntity extends AbstractHttpEntity {
+
+	private final IBinaryContentSource mySource;
+
+	BinaryContentSourceEntity(IBinaryContentSource theSource, ContentType theContentType) {
+		mySource = theSource;
+		if (theContentType != null) {
+			setContentType(theContentType.toString());
+		}
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		return mySource.openStream();
+	}
+
+	@Override
+	public long getContentLength() {
+		return mySource.getLength();
+	}
+
+	/**
+	 * Sources which are backed by a stream can only be read once, so the entity is not treated as repeatable
+	 */
+	@Override
+	public boolean isRepeatable() {
+		return false;
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return true;
+	}
+
+	@Override
+	public void writeTo(OutputStream theOutputStream) throws IOException {
+		InputStream inputStream = mySource.openStream();
+		try {
+			IOUtils.copyLarge(inputStream, theOutputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+}
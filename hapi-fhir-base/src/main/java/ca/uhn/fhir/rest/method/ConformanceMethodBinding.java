@@ -69,7 +69,7 @@ public class ConformanceMethodBinding extends BaseResourceReturningMethodBinding
 
 	@Override
 	public IBundleProvider invokeServer(RequestDetails theRequest, Object[] theMethodParams) throws BaseServerResponseException {
-		IResource conf = (IResource) invokeServerMethod(theMethodParams);
+		IResource conf = (IResource) invokeServerMethod(theRequest, theMethodParams);
 		return new SimpleBundleProvider(conf);
 	}
 
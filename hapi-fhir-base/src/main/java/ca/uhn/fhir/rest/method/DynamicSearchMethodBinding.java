@@ -83,7 +83,7 @@ public class DynamicSearchMethodBinding extends BaseResourceReturningMethodBindi
 			theMethodParams[myIdParamIndex] = theRequest.getId();
 		}
 
-		Object response = invokeServerMethod(theMethodParams);
+		Object response = invokeServerMethod(theRequest, theMethodParams);
 		return toResourceList(response);
 	}
 
@@ -154,7 +154,7 @@ public class GetTagsMethodBinding extends BaseMethodBinding<TagList> {
 			params[myVersionIdParamIndex] = theRequest.getId();
 		}
 
-		TagList resp = (TagList) invokeServerMethod(params);
+		TagList resp = (TagList) invokeServerMethod(theRequest, params);
 
 		for (int i = theServer.getInterceptors().size() - 1; i >= 0; i--) {
 			IServerInterceptor next = theServer.getInterceptors().get(i);
@@ -175,12 +175,14 @@ public class GetTagsMethodBinding extends BaseMethodBinding<TagList> {
 
 		IParser parser = responseEncoding.newParser(getContext());
 		parser.setPrettyPrint(RestfulServer.prettyPrintResponse(theRequest));
+		long encodeStart = System.nanoTime();
 		PrintWriter writer = response.getWriter();
 		try {
 			parser.encodeTagListToWriter(resp, writer);
 		} finally {
 			writer.close();
 		}
+		theRequest.addPhaseTimeNanos(RequestPhaseEnum.ENCODE, System.nanoTime() - encodeStart);
 	}
 
 	@Override
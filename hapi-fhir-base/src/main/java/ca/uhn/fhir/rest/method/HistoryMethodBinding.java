@@ -159,7 +159,7 @@ public class HistoryMethodBinding extends BaseResourceReturningMethodBinding {
 			theMethodParams[myIdParamIndex] = theRequest.getId();
 		}
 
-		Object response = invokeServerMethod(theMethodParams);
+		Object response = invokeServerMethod(theRequest, theMethodParams);
 
 		final IBundleProvider resources = toResourceList(response);
 		
@@ -26,6 +26,7 @@ import java.io.Reader;
 import java.util.List;
 import java.util.Map;
 
+import ca.uhn.fhir.model.api.IBinaryContentSource;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 
 public interface IClientResponseHandlerHandlesBinary<T> extends IClientResponseHandler<T> {
@@ -37,4 +38,10 @@ public interface IClientResponseHandlerHandlesBinary<T> extends IClientResponseH
 	
 	T invokeClient(String theResponseMimeType, InputStream theResponseReader, int theResponseStatusCode, Map<String, List<String>> theHeaders) throws IOException, BaseServerResponseException;
 
+	/**
+	 * Invoked instead of {@link #invokeClient(String, InputStream, int, Map)} if the client streams binary responses.
+	 * The content source reads from the response, which remains open until the stream it supplies is closed.
+	 */
+	T invokeClientStreaming(String theResponseMimeType, IBinaryContentSource theContent, int theResponseStatusCode, Map<String, List<String>> theHeaders) throws IOException, BaseServerResponseException;
+
 }
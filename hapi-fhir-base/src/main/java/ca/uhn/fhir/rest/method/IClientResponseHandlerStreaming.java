@@ -0,0 +1,34 @@
+package ca.uhn.fhir.rest.method;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * A response handler whose return value continues to read from the response after
+ * {@link #invokeClient(String, java.io.Reader, int, java.util.Map)} has returned (e.g. an incremental bundle reader).
+ * <p>
+ * The client does not close the HTTP response when such a handler returns successfully. Instead, closing the
+ * Reader passed to the handler releases the response, and the handler (or the object it returns) is responsible
+ * for doing so.
+ * </p>
+ */
+public interface IClientResponseHandlerStreaming<T> extends IClientResponseHandler<T> {
+	// nothing
+}
@@ -25,27 +25,37 @@ import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.http.client.utils.DateUtils;
 
 import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.model.api.Bundle;
+import ca.uhn.fhir.model.api.IBinaryContentSource;
 import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.model.dstu.resource.Binary;
 import ca.uhn.fhir.model.dstu.valueset.RestfulOperationSystemEnum;
 import ca.uhn.fhir.model.dstu.valueset.RestfulOperationTypeEnum;
 import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.method.SearchMethodBinding.RequestType;
 import ca.uhn.fhir.rest.server.Constants;
 import ca.uhn.fhir.rest.server.ETagSupportEnum;
 import ca.uhn.fhir.rest.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.IResourceVersionProvider;
+import ca.uhn.fhir.rest.server.ResourceVersionInfo;
 import ca.uhn.fhir.rest.server.SimpleBundleProvider;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
@@ -168,7 +178,18 @@ public class ReadMethodBinding extends BaseResourceReturningMethodBinding implem
 	public Object invokeClient(String theResponseMimeType, InputStream theResponseReader, int theResponseStatusCode, Map<String, List<String>> theHeaders) throws IOException, BaseServerResponseException {
 		byte[] contents = IOUtils.toByteArray(theResponseReader);
 		Binary resource = new Binary(theResponseMimeType, contents);
+		return toReturnType(resource);
+	}
 
+	@Override
+	public Object invokeClientStreaming(String theResponseMimeType, IBinaryContentSource theContent, int theResponseStatusCode, Map<String, List<String>> theHeaders) throws IOException, BaseServerResponseException {
+		Binary resource = new Binary();
+		resource.setContentType(theResponseMimeType);
+		resource.setContentSource(theContent);
+		return toReturnType(resource);
+	}
+
+	private Object toReturnType(Binary resource) {
 		switch (getMethodReturnType()) {
 		case BUNDLE:
 			return Bundle.withSingleResource(resource);
@@ -190,28 +211,74 @@ public class ReadMethodBinding extends BaseResourceReturningMethodBinding implem
 			theMethodParams[myVersionIdIndex] = new IdDt(theRequest.getId().getVersionIdPart());
 		}
 
-		Object response = invokeServerMethod(theMethodParams);
+		HttpServletRequest servletRequest = ((Request) theRequest).getServletRequest();
+		String ifNoneMatch = null;
+		if (theRequest.getServer().getETagSupport() == ETagSupportEnum.ENABLED) {
+			String header = servletRequest.getHeader(Constants.HEADER_IF_NONE_MATCH_LC);
+			if (StringUtils.isNotBlank(header)) {
+				ifNoneMatch = MethodUtil.parseETagValue(header);
+			}
+		}
+
+		// If-Modified-Since is ignored if If-None-Match is present (RFC 7232 section 3.3)
+		Date ifModifiedSince = null;
+		if (ifNoneMatch == null) {
+			String header = servletRequest.getHeader(Constants.HEADER_IF_MODIFIED_SINCE_LC);
+			if (StringUtils.isNotBlank(header)) {
+				ifModifiedSince = DateUtils.parseDate(header);
+			}
+		}
+
+		boolean conditional = ifNoneMatch != null || ifModifiedSince != null;
+		if (conditional && getProvider() instanceof IResourceVersionProvider && !theRequest.getId().hasVersionIdPart()) {
+			ResourceVersionInfo current = ((IResourceVersionProvider) getProvider()).getCurrentVersion(theRequest.getId());
+			if (current != null) {
+				checkNotModified(theRequest, ifNoneMatch, ifModifiedSince, current.getVersionId(), current.getLastUpdated());
+			}
+		}
+
+		Object response = invokeServerMethod(theRequest, theMethodParams);
 		IBundleProvider retVal = toResourceList(response);
 
-		if (theRequest.getServer().getETagSupport() == ETagSupportEnum.ENABLED) {
-			String ifNoneMatch = ((Request)theRequest).getServletRequest().getHeader(Constants.HEADER_IF_NONE_MATCH_LC);
-			if (retVal.size() == 1 && StringUtils.isNotBlank(ifNoneMatch)) {
-				List<IResource> responseResources = retVal.getResources(0, 1);
-				IResource responseResource = responseResources.get(0);
-				
-				ifNoneMatch = MethodUtil.parseETagValue(ifNoneMatch);
-				if (responseResource.getId() != null && responseResource.getId().hasVersionIdPart()) {
-					if (responseResource.getId().getVersionIdPart().equals(ifNoneMatch)) {
-						ourLog.debug("Returning HTTP 301 because request specified {}={}", Constants.HEADER_IF_NONE_MATCH, ifNoneMatch);
-						throw new NotModifiedException("Not Modified");
-					}
-				}
+		if (conditional && retVal.size() == 1) {
+			List<IResource> responseResources = retVal.getResources(0, 1);
+			IResource responseResource = responseResources.get(0);
+
+			String versionId = null;
+			if (responseResource.getId() != null && responseResource.getId().hasVersionIdPart()) {
+				versionId = responseResource.getId().getVersionIdPart();
 			}
+			InstantDt lastUpdated = ResourceMetadataKeyEnum.UPDATED.get(responseResource);
+			checkNotModified(theRequest, ifNoneMatch, ifModifiedSince, versionId, lastUpdated != null ? lastUpdated.getValue() : null);
 		}
 
 		return retVal;
 	}
 
+	private void checkNotModified(RequestDetails theRequest, String theIfNoneMatch, Date theIfModifiedSince, String theVersionId, Date theLastUpdated) {
+		if (theIfNoneMatch != null) {
+			if (theVersionId == null || !theVersionId.equals(theIfNoneMatch)) {
+				return;
+			}
+			ourLog.debug("Returning HTTP 304 because request specified {}={}", Constants.HEADER_IF_NONE_MATCH, theIfNoneMatch);
+		} else {
+			// HTTP dates only have a precision of one second
+			if (theLastUpdated == null || (theLastUpdated.getTime() / 1000) > (theIfModifiedSince.getTime() / 1000)) {
+				return;
+			}
+			ourLog.debug("Returning HTTP 304 because request specified {}={}", Constants.HEADER_IF_MODIFIED_SINCE, theIfModifiedSince);
+		}
+
+		HttpServletResponse servletResponse = ((Request) theRequest).getServletResponse();
+		if (theVersionId != null && theRequest.getServer().getETagSupport() == ETagSupportEnum.ENABLED) {
+			servletResponse.addHeader(Constants.HEADER_ETAG, "W/\"" + theVersionId + '"');
+		}
+		if (theLastUpdated != null) {
+			servletResponse.addHeader(Constants.HEADER_LAST_MODIFIED, DateUtils.formatDate(theLastUpdated));
+		}
+		throw new NotModifiedException("Not Modified");
+	}
+
 	@Override
 	public boolean isBinary() {
 		return "Binary".equals(getResourceName());
@@ -31,12 +31,31 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import ca.uhn.fhir.rest.method.SearchMethodBinding.RequestType;
+import ca.uhn.fhir.rest.server.DeferredResult;
 
 /**
  * This class is internal to HAPI - Use with caution as methods may change in future versions of the library
  */
 public class Request extends RequestDetails {
 
+	/**
+	 * Servlet request attribute holding the method params of a request whose server method returned a pending
+	 * {@link ca.uhn.fhir.rest.server.DeferredResult}
+	 */
+	public static final String ATTR_ASYNC_METHOD_PARAMS = Request.class.getName() + ".ASYNC_METHOD_PARAMS";
+
+	/**
+	 * Servlet request attribute holding the {@link ca.uhn.fhir.rest.server.DeferredResult} returned by the server
+	 * method of a request which has been suspended
+	 */
+	public static final String ATTR_ASYNC_RESULT = Request.class.getName() + ".ASYNC_RESULT";
+
+	/**
+	 * Servlet request attribute holding the time (see {@link RequestDetails#getRequestStartNanos()}) at which
+	 * processing of a request which has been suspended started
+	 */
+	public static final String ATTR_ASYNC_START_NANOS = Request.class.getName() + ".ASYNC_START_NANOS";
+
 	private String myFhirServerBase;
 	private String myOperation;
 	private RequestType myRequestType;
@@ -71,10 +90,37 @@ public class Request extends RequestDetails {
 		return myServletResponse;
 	}
 
+	/**
+	 * Returns the method params stored when this request was suspended, or <code>null</code> if this request is not
+	 * being resumed
+	 */
+	public Object[] getAsyncMethodParams() {
+		if (!isAsyncResume()) {
+			return null;
+		}
+		return (Object[]) myServletRequest.getAttribute(ATTR_ASYNC_METHOD_PARAMS);
+	}
+
+	/**
+	 * Returns the result the server method returned before this request was suspended, or <code>null</code> if this
+	 * request is not being resumed
+	 */
+	public DeferredResult<?> getAsyncResult() {
+		return getAsyncResult(myServletRequest);
+	}
+
 	public Map<String, List<String>> getUnqualifiedToQualifiedNames() {
 		return myUnqualifiedToQualifiedNames;
 	}
 
+	/**
+	 * Returns <code>true</code> if this request is being resumed (dispatched again by the container) after its server
+	 * method returned a {@link ca.uhn.fhir.rest.server.DeferredResult} which has now been completed
+	 */
+	public boolean isAsyncResume() {
+		return getAsyncResult() != null;
+	}
+
 	public boolean isRespondGzip() {
 		return myRespondGzip;
 	}
@@ -137,6 +183,13 @@ public class Request extends RequestDetails {
 		myServletResponse = theServletResponse;
 	}
 
+	public static DeferredResult<?> getAsyncResult(HttpServletRequest theServletRequest) {
+		if (theServletRequest == null) {
+			return null;
+		}
+		return (DeferredResult<?>) theServletRequest.getAttribute(ATTR_ASYNC_RESULT);
+	}
+
 	public static Request withResourceAndParams(String theResourceName, RequestType theRequestType, Set<String> theParamNames) {
 		Request retVal = new Request();
 		retVal.setResourceName(theResourceName);
@@ -34,10 +34,21 @@ public class RequestDetails {
 	private IdDt myId;
 	private OtherOperationTypeEnum myOtherOperationType;
 	private Map<String, String[]> myParameters;
+	private final long[] myPhaseTimeNanos = new long[RequestPhaseEnum.values().length];
+	private long myRequestStartNanos = System.nanoTime();
 	private String myResourceName;
 	private RestfulOperationTypeEnum myResourceOperationType;
+	private long myResponseSize = -1;
 	private RestfulServer myServer;
 	private RestfulOperationSystemEnum mySystemOperationType;
+
+	/**
+	 * Adds to the time spent in the given phase of processing this request
+	 */
+	public void addPhaseTimeNanos(RequestPhaseEnum thePhase, long theNanos) {
+		myPhaseTimeNanos[thePhase.ordinal()] += theNanos;
+	}
+
 	public String getCompartmentName() {
 		return myCompartmentName;
 	}
@@ -53,10 +64,33 @@ public class RequestDetails {
 		return myOtherOperationType;
 	}
 
+	/**
+	 * Returns the time (in nanoseconds) elapsed since processing of this request started
+	 */
+	public long getElapsedTimeNanos() {
+		return System.nanoTime() - myRequestStartNanos;
+	}
+
 	public Map<String, String[]> getParameters() {
 		return myParameters;
 	}
 
+	/**
+	 * Returns the time (in nanoseconds) spent in the given phase of processing this request, or <code>0</code> if the
+	 * request did not go through that phase. Phases which took place before a request was suspended (because its
+	 * server method returned a {@link ca.uhn.fhir.rest.server.DeferredResult}) are not included once it is resumed.
+	 */
+	public long getPhaseTimeNanos(RequestPhaseEnum thePhase) {
+		return myPhaseTimeNanos[thePhase.ordinal()];
+	}
+
+	/**
+	 * Returns the value of {@link System#nanoTime()} when processing of this request started
+	 */
+	public long getRequestStartNanos() {
+		return myRequestStartNanos;
+	}
+
 	public String getResourceName() {
 		return myResourceName;
 	}
@@ -65,6 +99,14 @@ public class RequestDetails {
 		return myResourceOperationType;
 	}
 
+	/**
+	 * Returns the number of bytes written to the client in the response body (after any compression), or
+	 * <code>-1</code> if this is not known. This is only populated once the response has been completely written.
+	 */
+	public long getResponseSize() {
+		return myResponseSize;
+	}
+
 	public RestfulServer getServer() {
 		return myServer;
 	}
@@ -93,6 +135,10 @@ public class RequestDetails {
 		myParameters = theParams;
 	}
 
+	public void setRequestStartNanos(long theRequestStartNanos) {
+		myRequestStartNanos = theRequestStartNanos;
+	}
+
 	public void setResourceName(String theResourceName) {
 		myResourceName = theResourceName;
 	}
@@ -101,6 +147,10 @@ public class RequestDetails {
 		myResourceOperationType = theResourceOperationType;
 	}
 
+	public void setResponseSize(long theResponseSize) {
+		myResponseSize = theResponseSize;
+	}
+
 	public void setServer(RestfulServer theServer) {
 		myServer = theServer;
 	}
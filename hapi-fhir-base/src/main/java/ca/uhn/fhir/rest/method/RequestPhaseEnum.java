@@ -0,0 +1,50 @@
+package ca.uhn.fhir.rest.method;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * The phases of server request processing which are timed individually
+ * 
+ * @see RequestDetails#getPhaseTimeNanos(RequestPhaseEnum)
+ */
+public enum RequestPhaseEnum {
+
+	/**
+	 * Parsing the request body and binding the request to the server method's parameters
+	 */
+	PARSE,
+
+	/**
+	 * Invoking the server method (including waiting for any {@link java.util.concurrent.Future} it returns)
+	 */
+	INVOKE,
+
+	/**
+	 * Building the bundle returned to the client from the server method's results
+	 */
+	BUNDLE,
+
+	/**
+	 * Encoding the response and writing it to the client
+	 */
+	ENCODE
+
+}
@@ -49,6 +49,7 @@ import ca.uhn.fhir.rest.server.Constants;
 import ca.uhn.fhir.rest.server.IBundleProvider;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.ReflectionUtil;
 
 /**
  * Created by dsotnikov on 2/25/2014.
@@ -68,7 +69,7 @@ public class SearchMethodBinding extends BaseResourceReturningMethodBinding {
 		Search search = theMethod.getAnnotation(Search.class);
 		this.myQueryName = StringUtils.defaultIfBlank(search.queryName(), null);
 		this.myCompartmentName = StringUtils.defaultIfBlank(search.compartmentName(), null);
-		this.myDeclaredResourceType = (Class<? extends IResource>) theMethod.getReturnType();
+		this.myDeclaredResourceType = (Class<? extends IResource>) ReflectionUtil.getMethodReturnType(theMethod);
 		this.myIdParamIndex = MethodUtil.findIdParameterIndex(theMethod);
 
 		Description desc = theMethod.getAnnotation(Description.class);
@@ -281,7 +282,7 @@ public class SearchMethodBinding extends BaseResourceReturningMethodBinding {
 			theMethodParams[myIdParamIndex] = theRequest.getId();
 		}
 
-		Object response = invokeServerMethod(theMethodParams);
+		Object response = invokeServerMethod(theRequest, theMethodParams);
 
 		return toResourceList(response);
 
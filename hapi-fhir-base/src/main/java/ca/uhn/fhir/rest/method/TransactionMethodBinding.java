@@ -108,7 +108,7 @@ public class TransactionMethodBinding extends BaseResourceReturningMethodBinding
 		}
 
 		// Call the server implementation method
-		Object response = invokeServerMethod(theMethodParams);
+		Object response = invokeServerMethod(theRequest, theMethodParams);
 		IBundleProvider retVal = toResourceList(response);
 
 		/*
@@ -118,19 +118,24 @@ private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger
 	}
 
 	private void parseParams(RequestDetails theRequest, List<QualifiedParamList> paramList, String theQualifiedParamName, String theQualifier) {
-		QualifierDetails qualifiers = SearchMethodBinding.extractQualifiersFromParameterName(theQualifier);
-		if (!qualifiers.passes(getQualifierWhitelist(), getQualifierBlacklist())) {
+		String[] value = theRequest.getParameters().get(theQualifiedParamName);
+		if (value == null) {
 			return;
 		}
 
-		String[] value = theRequest.getParameters().get(theQualifiedParamName);
-		if (value != null) {
-			for (String nextParam : value) {
-				if (nextParam.contains(",") == false) {
-					paramList.add(QualifiedParamList.singleton(theQualifier, nextParam));
-				} else {
-					paramList.add(QualifiedParamList.splitQueryStringByCommasIgnoreEscape(theQualifier, nextParam));
-				}
+		// An unqualified parameter always passes if there is no whitelist or blacklist
+		if (theQualifier != null || getQualifierWhitelist() != null || getQualifierBlacklist() != null) {
+			QualifierDetails qualifiers = SearchMethodBinding.extractQualifiersFromParameterName(theQualifier);
+			if (!qualifiers.passes(getQualifierWhitelist(), getQualifierBlacklist())) {
+				return;
+			}
+		}
+
+		for (String nextParam : value) {
+			if (nextParam.contains(",") == false) {
+				paramList.add(QualifiedParamList.singleton(theQualifier, nextParam));
+			} else {
+				paramList.add(QualifiedParamList.splitQueryStringByCommasIgnoreEscape(theQualifier, nextParam));
 			}
 		}
 	}
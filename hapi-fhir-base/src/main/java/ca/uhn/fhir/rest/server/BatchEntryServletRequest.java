@@ -0,0 +1,309 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.apache.commons.lang3.StringUtils;
+
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.rest.method.SearchMethodBinding.RequestType;
+
+/**
+ * A request for a single entry within a batch, which is dispatched by {@link RestfulServer} exactly as though it had
+ * been received on its own. Headers which describe the body or affect the response encoding are supplied by the
+ * entry, while all others (e.g. <code>Authorization</code>) are inherited from the batch request. The entry's resource
+ * is handed to the method binding as is (see {@link RestfulServer#getBatchEntryResource(HttpServletRequest)}), so
+ * the request has no body.
+ */
+class BatchEntryServletRequest extends HttpServletRequestWrapper {
+
+	private static final Set<String> ENTRY_HEADERS;
+
+	static {
+		HashSet<String> entryHeaders = new HashSet<String>();
+		entryHeaders.add(Constants.HEADER_ACCEPT.toLowerCase());
+		entryHeaders.add(Constants.HEADER_ACCEPT_ENCODING.toLowerCase());
+		entryHeaders.add(Constants.HEADER_CATEGORY_LC);
+		entryHeaders.add(Constants.HEADER_CONTENT_ENCODING.toLowerCase());
+		entryHeaders.add(Constants.HEADER_CONTENT_LOCATION_LC);
+		entryHeaders.add("content-length");
+		entryHeaders.add(Constants.HEADER_CONTENT_TYPE.toLowerCase());
+		entryHeaders.add(Constants.HEADER_IF_MATCH_LC);
+		entryHeaders.add(Constants.HEADER_IF_MODIFIED_SINCE_LC);
+		entryHeaders.add(Constants.HEADER_IF_NONE_MATCH_LC);
+		ENTRY_HEADERS = Collections.unmodifiableSet(entryHeaders);
+	}
+
+	private final Map<String, Object> myAttributes = new HashMap<String, Object>();
+	private final Map<String, List<String>> myHeaders = new HashMap<String, List<String>>();
+	private final String myPath;
+	private final RequestType myRequestType;
+	private final IResource myResource;
+
+	/**
+	 * @param theBatchRequest
+	 *            The request containing the batch
+	 * @param theRequestType
+	 *            The method of this entry's request
+	 * @param thePath
+	 *            The path of this entry's request, relative to the server base (e.g. <code>Patient/123</code>)
+	 * @param theResource
+	 *            The resource to create or update, or <code>null</code> if this entry's request has none
+	 */
+	BatchEntryServletRequest(HttpServletRequest theBatchRequest, RequestType theRequestType, String thePath, IResource theResource) {
+		super(theBatchRequest);
+		myRequestType = theRequestType;
+		myPath = thePath;
+		myResource = theResource;
+	}
+
+	void addHeader(String theName, String theValue) {
+		String name = theName.toLowerCase();
+		List<String> values = myHeaders.get(name);
+		if (values == null) {
+			values = new ArrayList<String>();
+			myHeaders.put(name, values);
+		}
+		values.add(theValue);
+	}
+
+	@Override
+	public Object getAttribute(String theName) {
+		return myAttributes.get(theName);
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return Collections.enumeration(myAttributes.keySet());
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return Constants.CHARSET_UTF_8;
+	}
+
+	@Override
+	public int getContentLength() {
+		return 0;
+	}
+
+	@Override
+	public long getContentLengthLong() {
+		return 0;
+	}
+
+	@Override
+	public String getContentType() {
+		return getHeader(Constants.HEADER_CONTENT_TYPE);
+	}
+
+	@Override
+	public long getDateHeader(String theName) {
+		if (ENTRY_HEADERS.contains(theName.toLowerCase())) {
+			return -1;
+		}
+		return super.getDateHeader(theName);
+	}
+
+	@Override
+	public String getHeader(String theName) {
+		String name = theName.toLowerCase();
+		if (ENTRY_HEADERS.contains(name)) {
+			List<String> values = myHeaders.get(name);
+			return values != null ? values.get(0) : null;
+		}
+		return super.getHeader(theName);
+	}
+
+	@Override
+	public Enumeration<String> getHeaderNames() {
+		Set<String> retVal = new LinkedHashSet<String>();
+		for (Enumeration<String> names = super.getHeaderNames(); names != null && names.hasMoreElements();) {
+			String next = names.nextElement();
+			if (!ENTRY_HEADERS.contains(next.toLowerCase())) {
+				retVal.add(next);
+			}
+		}
+		retVal.addAll(myHeaders.keySet());
+		return Collections.enumeration(retVal);
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(String theName) {
+		String name = theName.toLowerCase();
+		if (ENTRY_HEADERS.contains(name)) {
+			List<String> values = myHeaders.get(name);
+			if (values == null) {
+				return Collections.enumeration(Collections.<String> emptyList());
+			}
+			return Collections.enumeration(values);
+		}
+		return super.getHeaders(theName);
+	}
+
+	@Override
+	public int getIntHeader(String theName) {
+		String value = getHeader(theName);
+		return value != null ? Integer.parseInt(value) : -1;
+	}
+
+	@Override
+	public ServletInputStream getInputStream() {
+		return new ServletInputStream() {
+
+			@Override
+			public boolean isFinished() {
+				return true;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public int read() {
+				return -1;
+			}
+
+			@Override
+			public void setReadListener(ReadListener theReadListener) {
+				throw new IllegalStateException("Batch entry requests are not asynchronous");
+			}
+		};
+	}
+
+	@Override
+	public String getMethod() {
+		return myRequestType.name();
+	}
+
+	@Override
+	public String getParameter(String theName) {
+		return null;
+	}
+
+	@Override
+	public Map<String, String[]> getParameterMap() {
+		return Collections.emptyMap();
+	}
+
+	@Override
+	public Enumeration<String> getParameterNames() {
+		return Collections.enumeration(Collections.<String> emptyList());
+	}
+
+	@Override
+	public String[] getParameterValues(String theName) {
+		return null;
+	}
+
+	@Override
+	public String getPathInfo() {
+		return "/" + myPath;
+	}
+
+	@Override
+	public String getQueryString() {
+		return null;
+	}
+
+	@Override
+	public BufferedReader getReader() throws IOException {
+		return new BufferedReader(new InputStreamReader(getInputStream(), Constants.CHARSET_UTF_8));
+	}
+
+	RequestType getRequestType() {
+		return myRequestType;
+	}
+
+	IResource getResource() {
+		return myResource;
+	}
+
+	@Override
+	public String getRequestURI() {
+		return StringUtils.defaultString(super.getContextPath()) + StringUtils.defaultString(super.getServletPath()) + "/" + myPath;
+	}
+
+	@Override
+	public StringBuffer getRequestURL() {
+		String batchUrl = super.getRequestURL().toString();
+		String batchUri = super.getRequestURI();
+		StringBuffer retVal = new StringBuffer();
+		if (batchUrl.endsWith(batchUri)) {
+			retVal.append(batchUrl, 0, batchUrl.length() - batchUri.length());
+		}
+		retVal.append(getRequestURI());
+		return retVal;
+	}
+
+	@Override
+	public boolean isAsyncStarted() {
+		return false;
+	}
+
+	@Override
+	public boolean isAsyncSupported() {
+		return false;
+	}
+
+	@Override
+	public void removeAttribute(String theName) {
+		myAttributes.remove(theName);
+	}
+
+	@Override
+	public void setAttribute(String theName, Object theValue) {
+		myAttributes.put(theName, theValue);
+	}
+
+	@Override
+	public AsyncContext startAsync() {
+		throw new IllegalStateException("Batch entry requests are not asynchronous");
+	}
+
+	@Override
+	public AsyncContext startAsync(ServletRequest theServletRequest, ServletResponse theServletResponse) {
+		throw new IllegalStateException("Batch entry requests are not asynchronous");
+	}
+
+}
@@ -0,0 +1,271 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.http.client.utils.DateUtils;
+
+import ca.uhn.fhir.model.api.IResource;
+
+/**
+ * Captures the response to a single entry within a batch, so that it can be added to the batch response instead of
+ * being written to the client. The resource which would have been encoded as the body is captured as is (see
+ * {@link RestfulServer#captureBatchEntryResponse(HttpServletResponse, IResource)}), and anything else written to the
+ * body is discarded.
+ */
+class BatchEntryServletResponse extends HttpServletResponseWrapper {
+
+	private String myCharacterEncoding = Constants.CHARSET_UTF_8;
+	private String myContentType;
+	private final Map<String, List<String>> myHeaders = new LinkedHashMap<String, List<String>>();
+	private IResource myResource;
+	private int myStatus = SC_OK;
+	private PrintWriter myWriter;
+
+	BatchEntryServletResponse(HttpServletResponse theBatchResponse) {
+		super(theBatchResponse);
+	}
+
+	@Override
+	public void addCookie(Cookie theCookie) {
+		// ignore
+	}
+
+	@Override
+	public void addDateHeader(String theName, long theDate) {
+		addHeader(theName, DateUtils.formatDate(new Date(theDate)));
+	}
+
+	@Override
+	public void addHeader(String theName, String theValue) {
+		String name = theName.toLowerCase();
+		List<String> values = myHeaders.get(name);
+		if (values == null) {
+			values = new ArrayList<String>();
+			myHeaders.put(name, values);
+		}
+		values.add(theValue);
+	}
+
+	@Override
+	public void addIntHeader(String theName, int theValue) {
+		addHeader(theName, Integer.toString(theValue));
+	}
+
+	@Override
+	public boolean containsHeader(String theName) {
+		return myHeaders.containsKey(theName.toLowerCase());
+	}
+
+	@Override
+	public void flushBuffer() {
+		if (myWriter != null) {
+			myWriter.flush();
+		}
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return myCharacterEncoding;
+	}
+
+	@Override
+	public String getContentType() {
+		return myContentType;
+	}
+
+	@Override
+	public String getHeader(String theName) {
+		List<String> values = myHeaders.get(theName.toLowerCase());
+		return values != null ? values.get(0) : null;
+	}
+
+	@Override
+	public Collection<String> getHeaderNames() {
+		return new ArrayList<String>(myHeaders.keySet());
+	}
+
+	@Override
+	public Collection<String> getHeaders(String theName) {
+		List<String> values = myHeaders.get(theName.toLowerCase());
+		return values != null ? new ArrayList<String>(values) : new ArrayList<String>();
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() {
+		return new ServletOutputStream() {
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener theWriteListener) {
+				throw new IllegalStateException("Batch entry responses are not asynchronous");
+			}
+
+			@Override
+			public void write(byte[] theBytes, int theOffset, int theLength) {
+				// discard
+			}
+
+			@Override
+			public void write(int theByte) {
+				// discard
+			}
+		};
+	}
+
+	/**
+	 * Returns the resource which was the body of this response, or <code>null</code> if there was none
+	 */
+	IResource getResource() {
+		return myResource;
+	}
+
+	@Override
+	public int getStatus() {
+		return myStatus;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws UnsupportedEncodingException {
+		if (myWriter == null) {
+			myWriter = new PrintWriter(new OutputStreamWriter(new NullOutputStream(), myCharacterEncoding));
+		}
+		return myWriter;
+	}
+
+	@Override
+	public boolean isCommitted() {
+		return false;
+	}
+
+	@Override
+	public void reset() {
+		resetBuffer();
+		myHeaders.clear();
+		myStatus = SC_OK;
+		myContentType = null;
+	}
+
+	@Override
+	public void resetBuffer() {
+		myResource = null;
+	}
+
+	@Override
+	public void sendError(int theStatusCode) {
+		myStatus = theStatusCode;
+	}
+
+	@Override
+	public void sendError(int theStatusCode, String theMessage) {
+		myStatus = theStatusCode;
+	}
+
+	@Override
+	public void sendRedirect(String theLocation) throws IOException {
+		myStatus = SC_FOUND;
+		setHeader(Constants.HEADER_LOCATION, theLocation);
+	}
+
+	@Override
+	public void setBufferSize(int theSize) {
+		// ignore
+	}
+
+	@Override
+	public void setCharacterEncoding(String theCharset) {
+		myCharacterEncoding = theCharset;
+	}
+
+	@Override
+	public void setContentLength(int theLength) {
+		// ignore
+	}
+
+	@Override
+	public void setContentLengthLong(long theLength) {
+		// ignore
+	}
+
+	@Override
+	public void setContentType(String theType) {
+		myContentType = theType;
+	}
+
+	@Override
+	public void setDateHeader(String theName, long theDate) {
+		setHeader(theName, DateUtils.formatDate(new Date(theDate)));
+	}
+
+	@Override
+	public void setHeader(String theName, String theValue) {
+		myHeaders.remove(theName.toLowerCase());
+		addHeader(theName, theValue);
+	}
+
+	@Override
+	public void setIntHeader(String theName, int theValue) {
+		setHeader(theName, Integer.toString(theValue));
+	}
+
+	@Override
+	public void setLocale(Locale theLocale) {
+		// ignore
+	}
+
+	void setResource(IResource theResource) {
+		myResource = theResource;
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public void setStatus(int theStatusCode, String theMessage) {
+		myStatus = theStatusCode;
+	}
+
+	@Override
+	public void setStatus(int theStatusCode) {
+		myStatus = theStatusCode;
+	}
+
+}
@@ -59,6 +59,31 @@ public class BundleProviders {
 		};
 	}
 
+	/**
+	 * Create a new resource list which reports the given number of matching resources, but does not actually
+	 * contain any resources. This is useful for responding to count-only searches (<code>_summary=count</code>),
+	 * where only the total is returned to the client.
+	 */
+	public static IBundleProvider newCountOnly(final int theCount) {
+		final InstantDt published = InstantDt.withCurrentTime();
+		return new IBundleProvider() {
+			@Override
+			public List<IResource> getResources(int theFromIndex, int theToIndex) {
+				return Collections.emptyList();
+			}
+
+			@Override
+			public int size() {
+				return theCount;
+			}
+
+			@Override
+			public InstantDt getPublished() {
+				return published;
+			}
+		};
+	}
+
 	public static IBundleProvider newList(IResource theResource) {
 		return new SimpleBundleProvider(theResource);
 	}
@@ -0,0 +1,262 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Compresses the response body using the content encoding negotiated with the client. Output is buffered until it
+ * reaches the minimum compression size, and a body smaller than that is written uncompressed since compressing it
+ * would cost more than it saves.
+ */
+class CompressingResponseWrapper extends HttpServletResponseWrapper {
+
+	private boolean myCompressionDisabled;
+	private final int myCompressionLevel;
+	private final String myContentEncoding;
+	private long myContentLength = -1;
+	private final int myMinimumCompressionSize;
+	private CompressingOutputStream myOutputStream;
+	private PrintWriter myWriter;
+
+	/**
+	 * @param theContentEncoding
+	 *            {@link Constants#ENCODING_GZIP} or {@link Constants#ENCODING_DEFLATE}
+	 */
+	CompressingResponseWrapper(HttpServletResponse theResponse, String theContentEncoding, int theCompressionLevel, int theMinimumCompressionSize) {
+		super(theResponse);
+		myContentEncoding = theContentEncoding;
+		myCompressionLevel = theCompressionLevel;
+		myMinimumCompressionSize = theMinimumCompressionSize;
+		addVaryHeader();
+	}
+
+	/**
+	 * Caches must not serve this response to clients which did not ask for the same content encoding
+	 */
+	private void addVaryHeader() {
+		super.addHeader(Constants.HEADER_VARY, Constants.HEADER_ACCEPT_ENCODING);
+	}
+
+	/**
+	 * Causes the response to be written uncompressed, e.g. because it is binary content which is unlikely to compress
+	 * well and which may be served in ranges. Must be called before any output is written.
+	 */
+	void disableCompression() {
+		if (myOutputStream != null) {
+			throw new IllegalStateException("Output has already been written to this response");
+		}
+		myCompressionDisabled = true;
+		if (myContentLength != -1) {
+			super.setHeader(Constants.HEADER_CONTENT_LENGTH, Long.toString(myContentLength));
+		}
+	}
+
+	/**
+	 * Writes any buffered output and completes the compressed stream. Must be called once the response is complete.
+	 */
+	void finish() throws IOException {
+		if (myWriter != null) {
+			myWriter.close();
+		} else if (myOutputStream != null) {
+			myOutputStream.close();
+		}
+	}
+
+	@Override
+	public void flushBuffer() throws IOException {
+		if (myCompressionDisabled) {
+			super.flushBuffer();
+		} else if (myWriter != null) {
+			myWriter.flush();
+		} else if (myOutputStream != null) {
+			myOutputStream.flush();
+		}
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (myCompressionDisabled) {
+			return super.getOutputStream();
+		}
+		if (myWriter != null) {
+			throw new IllegalStateException("getWriter() has already been called for this response");
+		}
+		if (myOutputStream == null) {
+			myOutputStream = new CompressingOutputStream();
+		}
+		return myOutputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (myCompressionDisabled) {
+			return super.getWriter();
+		}
+		if (myWriter == null) {
+			if (myOutputStream != null) {
+				throw new IllegalStateException("getOutputStream() has already been called for this response");
+			}
+			myOutputStream = new CompressingOutputStream();
+			myWriter = new PrintWriter(new OutputStreamWriter(myOutputStream, getCharacterEncoding()));
+		}
+		return myWriter;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		resetBuffer();
+		myContentLength = -1;
+		addVaryHeader();
+	}
+
+	@Override
+	public void resetBuffer() {
+		super.resetBuffer();
+		if (myOutputStream != null) {
+			myOutputStream.resetBuffer();
+		}
+	}
+
+	/**
+	 * The length is only passed on if the body ends up being written uncompressed
+	 */
+	@Override
+	public void setContentLength(int theLength) {
+		setContentLengthLong(theLength);
+	}
+
+	@Override
+	public void setContentLengthLong(long theLength) {
+		myContentLength = theLength;
+		if (myCompressionDisabled) {
+			super.setHeader(Constants.HEADER_CONTENT_LENGTH, Long.toString(theLength));
+		}
+	}
+
+	private class CompressingOutputStream extends ServletOutputStream {
+
+		private ByteArrayOutputStream myBuffer = new ByteArrayOutputStream();
+		private boolean myClosed;
+		private Deflater myDeflater;
+		private OutputStream myTarget;
+
+		@Override
+		public void close() throws IOException {
+			if (myClosed) {
+				return;
+			}
+			myClosed = true;
+
+			if (myTarget == null) {
+				if (myContentLength != -1) {
+					CompressingResponseWrapper.super.setContentLength(myBuffer.size());
+				}
+				ServletOutputStream outputStream = CompressingResponseWrapper.super.getOutputStream();
+				myBuffer.writeTo(outputStream);
+				outputStream.close();
+			} else {
+				try {
+					myTarget.close();
+				} finally {
+					if (myDeflater != null) {
+						myDeflater.end();
+					}
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (myTarget != null) {
+				myTarget.flush();
+			}
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		void resetBuffer() {
+			if (myTarget == null) {
+				myBuffer.reset();
+			}
+		}
+
+		@Override
+		public void setWriteListener(WriteListener theWriteListener) {
+			throw new IllegalStateException("Compressed responses can not be written asynchronously");
+		}
+
+		private void startCompressing() throws IOException {
+			CompressingResponseWrapper.super.setHeader(Constants.HEADER_CONTENT_ENCODING, myContentEncoding);
+			ServletOutputStream outputStream = CompressingResponseWrapper.super.getOutputStream();
+			if (Constants.ENCODING_DEFLATE.equals(myContentEncoding)) {
+				myDeflater = new Deflater(myCompressionLevel);
+				myTarget = new DeflaterOutputStream(outputStream, myDeflater);
+			} else {
+				myTarget = new GZIPOutputStream(outputStream) {
+					{
+						def.setLevel(myCompressionLevel);
+					}
+				};
+			}
+			myBuffer.writeTo(myTarget);
+			myBuffer = null;
+		}
+
+		@Override
+		public void write(byte[] theBytes, int theOffset, int theLength) throws IOException {
+			if (myClosed) {
+				throw new IOException("Stream is closed");
+			}
+			if (myTarget == null) {
+				if (myBuffer.size() + theLength < myMinimumCompressionSize) {
+					myBuffer.write(theBytes, theOffset, theLength);
+					return;
+				}
+				startCompressing();
+			}
+			myTarget.write(theBytes, theOffset, theLength);
+		}
+
+		@Override
+		public void write(int theByte) throws IOException {
+			write(new byte[] { (byte) theByte }, 0, 1);
+		}
+
+	}
+
+}
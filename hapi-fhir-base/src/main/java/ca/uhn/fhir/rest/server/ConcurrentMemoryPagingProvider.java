@@ -0,0 +1,400 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * In-memory paging provider which can safely be shared by many concurrent requests. Unlike
+ * {@link FifoMemoryPagingProvider}, retrieving a result list never blocks, and stored result lists are bounded by
+ * age as well as by number and total size:
+ * <ul>
+ * <li>A result list expires once it is older than the {@link #setTimeToLive(long, TimeUnit) time to live}, or once
+ * it has not been retrieved for longer than the {@link #setIdleTimeout(long, TimeUnit) idle timeout}</li>
+ * <li>Each result list is weighted by the number of resources it holds ({@link IBundleProvider#size()}). When more
+ * than the {@link #setMaximumEntries(int) maximum number} of result lists, or more than the
+ * {@link #setMaximumWeight(long) maximum total weight}, are stored, the result lists which have been idle the longest
+ * are evicted first. A single result list which is heavier than the maximum total weight is not stored at all, rather
+ * than evicting every other result list. {@link #storeResultList(IBundleProvider)} returns <code>null</code> in that
+ * case, so only the first page is returned and the response has no paging links (the server logs a warning when
+ * this happens).</li>
+ * </ul>
+ * <p>
+ * Result lists are held in a {@link ConcurrentHashMap}, so retrievals (which also update the time of last access) and
+ * stores only contend on the map's internal lock stripes. Each store and retrieval is also recorded in a queue, which
+ * is replayed into an access ordered map by whichever thread next holds the eviction lock, so that evicting the
+ * result lists which have been idle the longest only visits those which are evicted. Expired result lists are removed
+ * when they are retrieved, from the least recently accessed end of the access order whenever a result list is stored,
+ * and by a full sweep which runs at most once a minute. Only one thread replays, sweeps and evicts at a time, and
+ * other threads storing or retrieving a result list in the meantime do not wait for it.
+ * </p>
+ */
+public class ConcurrentMemoryPagingProvider implements IPagingProvider {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ConcurrentMemoryPagingProvider.class);
+
+	/**
+	 * Once this many retrievals have been recorded, a retrieving thread replays them if no other thread is doing so
+	 */
+	private static final int MAX_PENDING_ACCESSES = 1000;
+	private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	/**
+	 * Only accessed while holding the eviction lock
+	 */
+	private final LinkedHashMap<String, Entry> myAccessOrder = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private int myDefaultPageSize = 10;
+	private final ConcurrentHashMap<String, Entry> myEntries;
+	private final ReentrantLock myEvictionLock = new ReentrantLock();
+	private final AtomicLong myEvictionCount = new AtomicLong();
+	private final AtomicLong myExpiryCount = new AtomicLong();
+	private final AtomicLong myHitCount = new AtomicLong();
+	private long myIdleTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+	private long myLastSweep;
+	private int myMaximumEntries;
+	private int myMaximumPageSize = 50;
+	private long myMaximumWeight = 100000;
+	private final AtomicLong myMissCount = new AtomicLong();
+	private final ConcurrentLinkedQueue<String> myPendingAccesses = new ConcurrentLinkedQueue<String>();
+	private final AtomicInteger myPendingAccessCount = new AtomicInteger();
+	private final AtomicLong myRejectedCount = new AtomicLong();
+	private long myTimeToLiveMillis = TimeUnit.MINUTES.toMillis(60);
+	private final AtomicLong myWeight = new AtomicLong();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param theMaximumEntries
+	 *            The maximum number of result lists to store
+	 */
+	public ConcurrentMemoryPagingProvider(int theMaximumEntries) {
+		Validate.isTrue(theMaximumEntries > 0, "theMaximumEntries must be greater than 0");
+		myMaximumEntries = theMaximumEntries;
+		myEntries = new ConcurrentHashMap<String, Entry>();
+	}
+
+	/**
+	 * Removes all stored result lists
+	 */
+	public void clear() {
+		for (Map.Entry<String, Entry> next : myEntries.entrySet()) {
+			remove(next.getKey(), next.getValue());
+		}
+	}
+
+	@Override
+	public int getDefaultPageSize() {
+		return myDefaultPageSize;
+	}
+
+	/**
+	 * Returns the number of result lists which have been evicted to make room for others
+	 */
+	public long getEvictionCount() {
+		return myEvictionCount.get();
+	}
+
+	/**
+	 * Returns the number of result lists which have been removed because their time to live or idle timeout expired
+	 */
+	public long getExpiryCount() {
+		return myExpiryCount.get();
+	}
+
+	/**
+	 * Returns the number of retrievals which found the requested result list
+	 */
+	public long getHitCount() {
+		return myHitCount.get();
+	}
+
+	public long getIdleTimeout(TimeUnit theUnit) {
+		return theUnit.convert(myIdleTimeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public int getMaximumEntries() {
+		return myMaximumEntries;
+	}
+
+	@Override
+	public int getMaximumPageSize() {
+		return myMaximumPageSize;
+	}
+
+	public long getMaximumWeight() {
+		return myMaximumWeight;
+	}
+
+	/**
+	 * Returns the number of retrievals which did not find the requested result list (because it never existed, or
+	 * has expired or been evicted)
+	 */
+	public long getMissCount() {
+		return myMissCount.get();
+	}
+
+	/**
+	 * Returns the number of result lists which were not stored because they were heavier than the maximum weight
+	 */
+	public long getRejectedCount() {
+		return myRejectedCount.get();
+	}
+
+	/**
+	 * Returns the number of result lists currently stored
+	 */
+	public int getSize() {
+		return myEntries.size();
+	}
+
+	public long getTimeToLive(TimeUnit theUnit) {
+		return theUnit.convert(myTimeToLiveMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the total weight (number of resources) of the result lists currently stored
+	 */
+	public long getWeight() {
+		return myWeight.get();
+	}
+
+	/**
+	 * Returns the current time in milliseconds. Subclasses may override (e.g. for testing).
+	 */
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	@Override
+	public IBundleProvider retrieveResultList(String theId) {
+		Entry entry = myEntries.get(theId);
+		if (entry == null) {
+			myMissCount.incrementAndGet();
+			return null;
+		}
+
+		long now = now();
+		if (isExpired(entry, now)) {
+			if (remove(theId, entry)) {
+				myExpiryCount.incrementAndGet();
+			}
+			myMissCount.incrementAndGet();
+			return null;
+		}
+
+		entry.myLastAccessed = now;
+		myHitCount.incrementAndGet();
+		if (recordAccess(theId) > MAX_PENDING_ACCESSES) {
+			maintainIfUnlocked(now);
+		}
+		return entry.myBundleProvider;
+	}
+
+	public void setDefaultPageSize(int theDefaultPageSize) {
+		Validate.isTrue(theDefaultPageSize > 0, "size must be greater than 0");
+		myDefaultPageSize = theDefaultPageSize;
+	}
+
+	/**
+	 * Sets the time after which a result list which has not been retrieved expires. Defaults to 10 minutes. A value
+	 * of 0 means that result lists do not expire because they are idle.
+	 */
+	public void setIdleTimeout(long theIdleTimeout, TimeUnit theUnit) {
+		Validate.isTrue(theIdleTimeout >= 0, "theIdleTimeout must not be negative");
+		myIdleTimeoutMillis = theUnit.toMillis(theIdleTimeout);
+	}
+
+	/**
+	 * Sets the maximum number of result lists to store
+	 */
+	public void setMaximumEntries(int theMaximumEntries) {
+		Validate.isTrue(theMaximumEntries > 0, "theMaximumEntries must be greater than 0");
+		myMaximumEntries = theMaximumEntries;
+	}
+
+	public void setMaximumPageSize(int theMaximumPageSize) {
+		Validate.isTrue(theMaximumPageSize > 0, "size must be greater than 0");
+		myMaximumPageSize = theMaximumPageSize;
+	}
+
+	/**
+	 * Sets the maximum total weight (i.e. the total number of resources in all result lists) to store. Defaults to
+	 * 100000.
+	 */
+	public void setMaximumWeight(long theMaximumWeight) {
+		Validate.isTrue(theMaximumWeight > 0, "theMaximumWeight must be greater than 0");
+		myMaximumWeight = theMaximumWeight;
+	}
+
+	/**
+	 * Sets the time after which a stored result list expires, regardless of whether it is still being retrieved.
+	 * Defaults to 60 minutes. A value of 0 means that result lists do not expire because of their age.
+	 */
+	public void setTimeToLive(long theTimeToLive, TimeUnit theUnit) {
+		Validate.isTrue(theTimeToLive >= 0, "theTimeToLive must not be negative");
+		myTimeToLiveMillis = theUnit.toMillis(theTimeToLive);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return The ID of the stored result list, or <code>null</code> if the result list is heavier than the
+	 *         {@link #setMaximumWeight(long) maximum weight} and was not stored
+	 */
+	@Override
+	public String storeResultList(IBundleProvider theList) {
+		int weight = Math.max(1, theList.size());
+		if (weight > myMaximumWeight) {
+			ourLog.debug("Not storing result list with {} resources, which is more than the maximum weight of {}", weight, myMaximumWeight);
+			myRejectedCount.incrementAndGet();
+			return null;
+		}
+
+		String key = UUID.randomUUID().toString();
+		long now = now();
+		myEntries.put(key, new Entry(theList, weight, now));
+		myWeight.addAndGet(weight);
+		recordAccess(key);
+
+		maintainIfUnlocked(now);
+
+		return key;
+	}
+
+	private boolean isWithinLimits() {
+		return myEntries.size() <= myMaximumEntries && myWeight.get() <= myMaximumWeight;
+	}
+
+	private boolean isExpired(Entry theEntry, long theNow) {
+		if (myTimeToLiveMillis > 0 && theNow - theEntry.myCreated > myTimeToLiveMillis) {
+			return true;
+		}
+		if (myIdleTimeoutMillis > 0 && theNow - theEntry.myLastAccessed > myIdleTimeoutMillis) {
+			return true;
+		}
+		return false;
+	}
+
+	private void maintainIfUnlocked(long theNow) {
+		if (myEvictionLock.tryLock()) {
+			try {
+				replayAccesses();
+				sweepAndEvict(theNow);
+			} finally {
+				myEvictionLock.unlock();
+			}
+		}
+	}
+
+	private int recordAccess(String theKey) {
+		myPendingAccesses.add(theKey);
+		return myPendingAccessCount.incrementAndGet();
+	}
+
+	private boolean remove(String theKey, Entry theEntry) {
+		if (myEntries.remove(theKey, theEntry)) {
+			myWeight.addAndGet(-theEntry.myWeight);
+			recordAccess(theKey);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Moves each recorded result list to the most recently accessed end of the access order, or drops it from the
+	 * access order if it has been removed. Must be called while holding the eviction lock.
+	 */
+	private void replayAccesses() {
+		String next;
+		while ((next = myPendingAccesses.poll()) != null) {
+			myPendingAccessCount.decrementAndGet();
+			Entry entry = myEntries.get(next);
+			if (entry != null) {
+				myAccessOrder.put(next, entry);
+			} else {
+				myAccessOrder.remove(next);
+			}
+		}
+	}
+
+	/**
+	 * Removes expired result lists, and then evicts the result lists which have been idle the longest until the
+	 * number and weight of the stored result lists are within their limits. Must be called while holding the eviction
+	 * lock.
+	 */
+	private void sweepAndEvict(long theNow) {
+		if (theNow - myLastSweep >= SWEEP_INTERVAL_MILLIS) {
+			myLastSweep = theNow;
+			for (Iterator<Map.Entry<String, Entry>> iter = myAccessOrder.entrySet().iterator(); iter.hasNext();) {
+				Map.Entry<String, Entry> next = iter.next();
+				if (isExpired(next.getValue(), theNow)) {
+					iter.remove();
+					if (remove(next.getKey(), next.getValue())) {
+						myExpiryCount.incrementAndGet();
+					}
+				}
+			}
+		}
+
+		for (Iterator<Map.Entry<String, Entry>> iter = myAccessOrder.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry<String, Entry> next = iter.next();
+			if (isExpired(next.getValue(), theNow)) {
+				iter.remove();
+				if (remove(next.getKey(), next.getValue())) {
+					myExpiryCount.incrementAndGet();
+				}
+			} else if (!isWithinLimits()) {
+				iter.remove();
+				if (remove(next.getKey(), next.getValue())) {
+					myEvictionCount.incrementAndGet();
+				}
+			} else {
+				break;
+			}
+		}
+	}
+
+	private static class Entry {
+		private final IBundleProvider myBundleProvider;
+		private final long myCreated;
+		private volatile long myLastAccessed;
+		private final int myWeight;
+
+		private Entry(IBundleProvider theBundleProvider, int theWeight, long theNow) {
+			myBundleProvider = theBundleProvider;
+			myWeight = theWeight;
+			myCreated = theNow;
+			myLastAccessed = theNow;
+		}
+	}
+
+}
@@ -38,6 +38,7 @@ public class Constants {
 	public static final String CT_OCTET_STREAM = "application/octet-stream";
 	public static final String CT_TEXT = "text/plain";
 	public static final String CT_XML = "application/xml";
+	public static final String ENCODING_DEFLATE = "deflate";
 	public static final String ENCODING_GZIP = "gzip";
 	public static final String FORMAT_JSON = "json";
 	public static final Set<String> FORMAT_VAL_JSON;
@@ -46,6 +47,7 @@ public class Constants {
 	public static final String FORMAT_XML = "xml";
 	public static final String HEADER_ACCEPT = "Accept";
 	public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+	public static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
 	public static final String HEADER_AUTHORIZATION = "Authorization";
 	public static final String HEADER_AUTHORIZATION_VALPREFIX_BASIC = "Basic ";
 	public static final String HEADER_AUTHORIZATION_VALPREFIX_BEARER = "Bearer ";
@@ -53,8 +55,10 @@ public class Constants {
 	public static final String HEADER_CATEGORY_LC = HEADER_CATEGORY.toLowerCase();
 	public static final String HEADER_CONTENT_DISPOSITION = "Content-Disposition";
 	public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+	public static final String HEADER_CONTENT_LENGTH = "Content-Length";
 	public static final String HEADER_CONTENT_LOCATION = "Content-Location";
 	public static final String HEADER_CONTENT_LOCATION_LC = HEADER_CONTENT_LOCATION.toLowerCase();
+	public static final String HEADER_CONTENT_RANGE = "Content-Range";
 	public static final String HEADER_CONTENT_TYPE = "Content-Type";
 	public static final String HEADER_COOKIE = "Cookie";
 	public static final String HEADER_CORS_ALLOW_METHODS = "Access-Control-Allow-Methods";
@@ -66,15 +70,24 @@ public class Constants {
 	public static final String HEADER_IF_NONE_MATCH_LC = HEADER_IF_NONE_MATCH.toLowerCase();
 	public static final String HEADER_IF_MATCH = "If-Match";
 	public static final String HEADER_IF_MATCH_LC = HEADER_IF_MATCH.toLowerCase();
+	public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	public static final String HEADER_IF_MODIFIED_SINCE_LC = HEADER_IF_MODIFIED_SINCE.toLowerCase();
+	public static final String HEADER_IF_NONE_EXIST = "If-None-Exist";
+	public static final String HEADER_IF_NONE_EXIST_LC = HEADER_IF_NONE_EXIST.toLowerCase();
+	public static final String HEADER_IF_RANGE = "If-Range";
 	public static final String HEADER_LAST_MODIFIED = "Last-Modified";
 	public static final String HEADER_LAST_MODIFIED_LOWERCASE = HEADER_LAST_MODIFIED.toLowerCase();
 	public static final String HEADER_LOCATION = "Location";
 	public static final String HEADER_LOCATION_LC = HEADER_LOCATION.toLowerCase();
+	public static final String HEADER_RANGE = "Range";
 	public static final String HEADER_SUFFIX_CT_UTF_8 = "; charset=UTF-8";
+	public static final String HEADER_VARY = "Vary";
 	public static final String HEADERVALUE_CORS_ALLOW_METHODS_ALL = "GET, POST, PUT, DELETE, OPTIONS";
 	public static final String OPENSEARCH_NS_OLDER = "http://purl.org/atompub/tombstones/1.0";
+	public static final String PARAM_BATCH = "_batch";
 	public static final String PARAM_COUNT = "_count";
 	public static final String PARAM_DELETE = "_delete";
+	public static final String PARAM_ELEMENTS = "_elements";
 	public static final String PARAM_FORMAT = "_format";
 	public static final String PARAM_HISTORY = "_history";
 	public static final String PARAM_INCLUDE = "_include";
@@ -89,6 +102,8 @@ public class Constants {
 	public static final String PARAM_SORT = "_sort";
 	public static final String PARAM_SORT_ASC = "_sort:asc";
 	public static final String PARAM_SORT_DESC = "_sort:desc";
+	public static final String PARAM_SUMMARY = "_summary";
+	public static final String PARAM_SUMMARY_COUNT = "count";
 	public static final String PARAM_TAGS = "_tags";
 	public static final String PARAM_VALIDATE = "_validate";
 	public static final String PARAMQUALIFIER_MISSING = ":missing";
@@ -97,6 +112,7 @@ public class Constants {
 	public static final int STATUS_HTTP_200_OK = 200;
 	public static final int STATUS_HTTP_201_CREATED = 201;
 	public static final int STATUS_HTTP_204_NO_CONTENT = 204;
+	public static final int STATUS_HTTP_206_PARTIAL_CONTENT = 206;
 	public static final int STATUS_HTTP_304_NOT_MODIFIED = 304;
 	public static final int STATUS_HTTP_400_BAD_REQUEST = 400;
 	public static final int STATUS_HTTP_401_CLIENT_UNAUTHORIZED = 401;
@@ -105,6 +121,9 @@ public class Constants {
 	public static final int STATUS_HTTP_409_CONFLICT = 409;
 	public static final int STATUS_HTTP_410_GONE = 410;
 	public static final int STATUS_HTTP_412_PRECONDITION_FAILED = 412;
+	public static final int STATUS_HTTP_413_PAYLOAD_TOO_LARGE = 413;
+	public static final int STATUS_HTTP_415_UNSUPPORTED_MEDIA_TYPE = 415;
+	public static final int STATUS_HTTP_416_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
 	public static final int STATUS_HTTP_422_UNPROCESSABLE_ENTITY = 422;
 	public static final int STATUS_HTTP_500_INTERNAL_ERROR = 500;
 	public static final int STATUS_HTTP_501_NOT_IMPLEMENTED = 501;
@@ -0,0 +1,169 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Counts the bytes written to the response body, so that the size of the response can be reported to interceptors.
+ * Bytes written through the output stream are counted exactly. Characters written through the writer are counted
+ * according to their UTF-8 encoded length (or as one byte each if another character encoding is used), which avoids
+ * encoding them twice.
+ */
+class CountingResponseWrapper extends HttpServletResponseWrapper {
+
+	private long myByteCount;
+	private CountingOutputStream myOutputStream;
+	private PrintWriter myWriter;
+
+	CountingResponseWrapper(HttpServletResponse theResponse) {
+		super(theResponse);
+	}
+
+	/**
+	 * Returns the number of bytes written to the response body so far
+	 */
+	long getByteCount() {
+		return myByteCount;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (myOutputStream == null) {
+			myOutputStream = new CountingOutputStream(super.getOutputStream());
+		}
+		return myOutputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (myWriter == null) {
+			boolean utf8 = Constants.CHARSET_UTF_8.equalsIgnoreCase(getCharacterEncoding());
+			myWriter = new PrintWriter(new CountingWriter(super.getWriter(), utf8));
+		}
+		return myWriter;
+	}
+
+	private class CountingOutputStream extends ServletOutputStream {
+
+		private final ServletOutputStream myWrap;
+
+		CountingOutputStream(ServletOutputStream theWrap) {
+			myWrap = theWrap;
+		}
+
+		@Override
+		public void close() throws IOException {
+			myWrap.close();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			myWrap.flush();
+		}
+
+		@Override
+		public boolean isReady() {
+			return myWrap.isReady();
+		}
+
+		@Override
+		public void setWriteListener(WriteListener theWriteListener) {
+			myWrap.setWriteListener(theWriteListener);
+		}
+
+		@Override
+		public void write(byte[] theBytes, int theOffset, int theLength) throws IOException {
+			myWrap.write(theBytes, theOffset, theLength);
+			myByteCount += theLength;
+		}
+
+		@Override
+		public void write(int theByte) throws IOException {
+			myWrap.write(theByte);
+			myByteCount++;
+		}
+
+	}
+
+	private class CountingWriter extends Writer {
+
+		private final boolean myUtf8;
+		private final Writer myWrap;
+
+		CountingWriter(Writer theWrap, boolean theUtf8) {
+			myWrap = theWrap;
+			myUtf8 = theUtf8;
+		}
+
+		@Override
+		public void close() throws IOException {
+			myWrap.close();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			myWrap.flush();
+		}
+
+		private void count(char theChar) {
+			if (!myUtf8 || theChar < 0x80) {
+				myByteCount++;
+			} else if (theChar < 0x800 || (theChar >= Character.MIN_SURROGATE && theChar <= Character.MAX_SURROGATE)) {
+				// Each half of a surrogate pair counts for half of the pair's 4 bytes
+				myByteCount += 2;
+			} else {
+				myByteCount += 3;
+			}
+		}
+
+		@Override
+		public void write(char[] theChars, int theOffset, int theLength) throws IOException {
+			myWrap.write(theChars, theOffset, theLength);
+			for (int i = theOffset; i < theOffset + theLength; i++) {
+				count(theChars[i]);
+			}
+		}
+
+		@Override
+		public void write(int theChar) throws IOException {
+			myWrap.write(theChar);
+			count((char) theChar);
+		}
+
+		@Override
+		public void write(String theString, int theOffset, int theLength) throws IOException {
+			myWrap.write(theString, theOffset, theLength);
+			for (int i = theOffset; i < theOffset + theLength; i++) {
+				count(theString.charAt(i));
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,223 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.apache.commons.lang3.StringUtils;
+
+import ca.uhn.fhir.rest.server.exceptions.PayloadTooLargeException;
+import ca.uhn.fhir.rest.server.exceptions.UnsupportedMediaTypeException;
+
+/**
+ * Transparently decompresses a request body which was sent with <code>Content-Encoding: gzip</code> or
+ * <code>Content-Encoding: deflate</code>, so that method bindings can read it using {@link #getReader()} or
+ * {@link #getInputStream()} as though it had been sent uncompressed. Reading more than the maximum decompressed size
+ * fails with a {@link PayloadTooLargeException}, so that a small compressed body can not expand without limit.
+ */
+class DecompressingRequestWrapper extends HttpServletRequestWrapper {
+
+	private final String myContentEncoding;
+	private ServletInputStream myInputStream;
+	private final long myMaximumSize;
+
+	private DecompressingRequestWrapper(HttpServletRequest theRequest, String theContentEncoding, long theMaximumSize) {
+		super(theRequest);
+		myContentEncoding = theContentEncoding;
+		myMaximumSize = theMaximumSize;
+	}
+
+	@Override
+	public int getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public long getContentLengthLong() {
+		return -1;
+	}
+
+	@Override
+	public String getHeader(String theName) {
+		if (isHiddenHeader(theName)) {
+			return null;
+		}
+		return super.getHeader(theName);
+	}
+
+	@Override
+	public Enumeration<String> getHeaderNames() {
+		List<String> retVal = new ArrayList<String>();
+		for (Enumeration<String> names = super.getHeaderNames(); names != null && names.hasMoreElements();) {
+			String next = names.nextElement();
+			if (!isHiddenHeader(next)) {
+				retVal.add(next);
+			}
+		}
+		return Collections.enumeration(retVal);
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(String theName) {
+		if (isHiddenHeader(theName)) {
+			return Collections.enumeration(Collections.<String> emptyList());
+		}
+		return super.getHeaders(theName);
+	}
+
+	@Override
+	public int getIntHeader(String theName) {
+		if (isHiddenHeader(theName)) {
+			return -1;
+		}
+		return super.getIntHeader(theName);
+	}
+
+	@Override
+	public ServletInputStream getInputStream() throws IOException {
+		if (myInputStream == null) {
+			final InputStream decompressed;
+			if (Constants.ENCODING_DEFLATE.equals(myContentEncoding)) {
+				decompressed = newInflaterInputStream(super.getInputStream());
+			} else {
+				decompressed = new GZIPInputStream(super.getInputStream());
+			}
+			myInputStream = new ServletInputStream() {
+
+				private boolean myFinished;
+				private long myRead;
+
+				private int counted(int theCount) {
+					if (theCount > 0) {
+						myRead += theCount;
+						if (myMaximumSize != -1 && myRead > myMaximumSize) {
+							throw new PayloadTooLargeException("Request body decompresses to more than the maximum size of " + myMaximumSize + " bytes");
+						}
+					}
+					myFinished = theCount == -1;
+					return theCount;
+				}
+
+				@Override
+				public void close() throws IOException {
+					decompressed.close();
+				}
+
+				@Override
+				public boolean isFinished() {
+					return myFinished;
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public int read() throws IOException {
+					int retVal = decompressed.read();
+					counted(retVal == -1 ? -1 : 1);
+					return retVal;
+				}
+
+				@Override
+				public int read(byte[] theBuffer, int theOffset, int theLength) throws IOException {
+					return counted(decompressed.read(theBuffer, theOffset, theLength));
+				}
+
+				@Override
+				public void setReadListener(ReadListener theReadListener) {
+					throw new IllegalStateException("Compressed request bodies can not be read asynchronously");
+				}
+			};
+		}
+		return myInputStream;
+	}
+
+	@Override
+	public BufferedReader getReader() throws IOException {
+		String charset = StringUtils.defaultIfBlank(getCharacterEncoding(), Constants.CHARSET_UTF_8);
+		return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+	}
+
+	private static boolean isHiddenHeader(String theName) {
+		return Constants.HEADER_CONTENT_ENCODING.equalsIgnoreCase(theName) || "Content-Length".equalsIgnoreCase(theName);
+	}
+
+	/**
+	 * <code>deflate</code> is defined as the zlib format, but some clients send raw deflate data, so the zlib header
+	 * is checked for before choosing how to inflate the body
+	 */
+	private static InputStream newInflaterInputStream(InputStream theInputStream) throws IOException {
+		PushbackInputStream pushback = new PushbackInputStream(theInputStream, 2);
+		byte[] header = new byte[2];
+		int read = pushback.read(header);
+		if (read > 0) {
+			pushback.unread(header, 0, read);
+		}
+		boolean zlib = read == 2 && (header[0] & 0x0f) == 8 && (((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 == 0;
+		return new InflaterInputStream(pushback, new Inflater(!zlib));
+	}
+
+	/**
+	 * Returns a wrapper which decompresses the given request's body if it has a <code>Content-Encoding</code>, or the
+	 * request itself otherwise
+	 * 
+	 * @param theMaximumSize
+	 *            The maximum number of bytes the body may decompress to, or <code>-1</code> for no limit
+	 * @throws UnsupportedMediaTypeException
+	 *             If the body has a <code>Content-Encoding</code> which is not supported
+	 */
+	static HttpServletRequest wrapIfCompressed(HttpServletRequest theRequest, long theMaximumSize) {
+		String contentEncoding = StringUtils.trimToNull(theRequest.getHeader(Constants.HEADER_CONTENT_ENCODING));
+		if (contentEncoding == null) {
+			return theRequest;
+		}
+		contentEncoding = contentEncoding.toLowerCase();
+		if (Constants.ENCODING_GZIP.equals(contentEncoding) || "x-gzip".equals(contentEncoding)) {
+			return new DecompressingRequestWrapper(theRequest, Constants.ENCODING_GZIP, theMaximumSize);
+		}
+		if (Constants.ENCODING_DEFLATE.equals(contentEncoding)) {
+			return new DecompressingRequestWrapper(theRequest, Constants.ENCODING_DEFLATE, theMaximumSize);
+		}
+		if ("identity".equals(contentEncoding)) {
+			return theRequest;
+		}
+		throw new UnsupportedMediaTypeException("Unsupported Content-Encoding: " + contentEncoding);
+	}
+
+}
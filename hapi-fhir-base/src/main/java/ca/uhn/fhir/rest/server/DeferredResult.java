@@ -0,0 +1,161 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A {@link Future} which is completed by calling {@link #set(Object)} or {@link #setException(Throwable)}, typically
+ * from a callback of an asynchronous database or HTTP client.
+ * <p>
+ * Server methods (e.g. methods annotated with {@link ca.uhn.fhir.rest.annotation.Read @Read} or
+ * {@link ca.uhn.fhir.rest.annotation.Search @Search}) may return a <code>DeferredResult</code> wrapping anything they
+ * could otherwise return, e.g. <code>DeferredResult&lt;Patient&gt;</code> or <code>DeferredResult&lt;MethodOutcome&gt;</code>.
+ * If the servlet container supports asynchronous processing (Servlet 3.0 or above, with <code>async-supported</code>
+ * enabled for the {@link RestfulServer} servlet), the container thread is released until the result is set, and the
+ * response is then written on a container thread. Otherwise the server simply waits for the result.
+ * </p>
+ * <p>
+ * Server methods may also return any other {@link Future}, but the server will wait for those on the request thread.
+ * </p>
+ */
+public class DeferredResult<T> implements Future<T> {
+
+	private boolean myCancelled;
+	private boolean myDone;
+	private Throwable myException;
+	private List<Runnable> myListeners = new ArrayList<Runnable>();
+	private T myValue;
+
+	/**
+	 * Registers a listener to be run (on the thread which completes this result) when this result is completed. If
+	 * the result is already complete, the listener is run immediately on the calling thread.
+	 */
+	public void addListener(Runnable theListener) {
+		Validate.notNull(theListener, "Listener must not be null");
+		synchronized (this) {
+			if (!myDone) {
+				myListeners.add(theListener);
+				return;
+			}
+		}
+		theListener.run();
+	}
+
+	@Override
+	public boolean cancel(boolean theMayInterruptIfRunning) {
+		return complete(null, null, true);
+	}
+
+	@Override
+	public synchronized T get() throws InterruptedException, ExecutionException {
+		while (!myDone) {
+			wait();
+		}
+		return getResult();
+	}
+
+	@Override
+	public synchronized T get(long theTimeout, TimeUnit theUnit) throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + theUnit.toNanos(theTimeout);
+		while (!myDone) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				throw new TimeoutException();
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return getResult();
+	}
+
+	private T getResult() throws ExecutionException {
+		if (myCancelled) {
+			throw new CancellationException();
+		}
+		if (myException != null) {
+			throw new ExecutionException(myException);
+		}
+		return myValue;
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return myCancelled;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return myDone;
+	}
+
+	/**
+	 * Completes this result with the given value
+	 * 
+	 * @return Returns <code>true</code> if this call completed the result, or <code>false</code> if it had already been
+	 *         completed (in which case the value is ignored)
+	 */
+	public boolean set(T theValue) {
+		return complete(theValue, null, false);
+	}
+
+	/**
+	 * Completes this result with the given failure. If the exception is a
+	 * {@link ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException} (e.g.
+	 * {@link ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException}) it is returned to the client just as if the
+	 * server method had thrown it.
+	 * 
+	 * @return Returns <code>true</code> if this call completed the result, or <code>false</code> if it had already been
+	 *         completed (in which case the exception is ignored)
+	 */
+	public boolean setException(Throwable theException) {
+		Validate.notNull(theException, "Exception must not be null");
+		return complete(null, theException, false);
+	}
+
+	private boolean complete(T theValue, Throwable theException, boolean theCancelled) {
+		List<Runnable> listeners;
+		synchronized (this) {
+			if (myDone) {
+				return false;
+			}
+			myValue = theValue;
+			myException = theException;
+			myCancelled = theCancelled;
+			myDone = true;
+			listeners = myListeners;
+			myListeners = null;
+			notifyAll();
+		}
+		for (Runnable next : listeners) {
+			next.run();
+		}
+		return true;
+	}
+
+}
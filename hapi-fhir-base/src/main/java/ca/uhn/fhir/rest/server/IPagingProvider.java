@@ -29,6 +29,9 @@ public interface IPagingProvider {
 	
 	/**
 	 * Stores a result list and returns an ID with which that list can be returned
+	 * 
+	 * @return The ID, or <code>null</code> if the provider chose not to store the result list (e.g. because it is too
+	 *         large), in which case only the first page is returned and the response has no paging links
 	 */
 	public String storeResultList(IBundleProvider theList);
 	
@@ -0,0 +1,49 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.model.primitive.IdDt;
+
+/**
+ * Optional interface which may be implemented by resource providers (or plain providers) which
+ * are able to determine the current version of a resource more cheaply than by reading the
+ * whole resource.
+ * <p>
+ * If a client performs a <a href="http://hl7.org/implement/standards/fhir/http.html#read">read</a> with an
+ * <code>If-None-Match</code> or <code>If-Modified-Since</code> header, the server first calls
+ * {@link #getCurrentVersion(IdDt)} and returns an <b>HTTP 304 Not Modified</b> if the client's copy is still current,
+ * without ever invoking the {@link ca.uhn.fhir.rest.annotation.Read @Read} method.
+ * </p>
+ */
+public interface IResourceVersionProvider {
+
+	/**
+	 * Returns the current version of the given resource
+	 * 
+	 * @param theId
+	 *            The ID of the resource being read (this ID will not have a version part)
+	 * @return Returns the current version of the resource, or <code>null</code> if it can not be determined (e.g. the
+	 *         resource does not exist or has been deleted). If <code>null</code> is returned, the read method is invoked
+	 *         normally.
+	 */
+	ResourceVersionInfo getCurrentVersion(IdDt theId);
+
+}
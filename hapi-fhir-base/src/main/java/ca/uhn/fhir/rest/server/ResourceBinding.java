@@ -21,10 +21,17 @@ package ca.uhn.fhir.rest.server;
  */
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.commons.lang3.ObjectUtils;
+
+import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.rest.method.BaseMethodBinding;
 import ca.uhn.fhir.rest.method.Request;
+import ca.uhn.fhir.rest.method.SearchMethodBinding.RequestType;
 
 /**
  * Created by dsotnikov on 2/25/2014.
@@ -33,8 +40,15 @@ public class ResourceBinding {
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ResourceBinding.class);
 
+	/**
+	 * The maximum number of distinct request shapes for which the matching method is remembered. Parameter names are
+	 * chosen by the client, so this bounds the memory used by unusual requests.
+	 */
+	static final int MAX_DISPATCH_CACHE_SIZE = 1000;
+
 	private String resourceName;
 	private List<BaseMethodBinding<?>> methods = new ArrayList<BaseMethodBinding<?>>();
+	private final ConcurrentHashMap<DispatchKey, BaseMethodBinding<?>> myDispatchCache = new ConcurrentHashMap<DispatchKey, BaseMethodBinding<?>>();
 
 	public ResourceBinding() {
 	}
@@ -51,9 +65,25 @@ public class ResourceBinding {
 		}
 
 		ourLog.debug("Looking for a handler for {}", theRequest);
+
+		/*
+		 * Whether a method matches depends only on the "shape" of the request (type, operation, ID, compartment and
+		 * parameter names), so once the first matching method is known for a given shape, later requests with the
+		 * same shape go straight to it
+		 */
+		DispatchKey key = new DispatchKey(theRequest);
+		BaseMethodBinding<?> cached = myDispatchCache.get(key);
+		if (cached != null) {
+			ourLog.debug("Handler {} matches", cached);
+			return cached;
+		}
+
 		for (BaseMethodBinding<?> rm : methods) {
 			if (rm.incomingServerRequestMatchesMethod(theRequest)) {
 				ourLog.debug("Handler {} matches", rm);
+				if (myDispatchCache.size() < MAX_DISPATCH_CACHE_SIZE) {
+					myDispatchCache.put(key.copyParameterNames(), rm);
+				}
 				return rm;
 			} else {
 				ourLog.trace("Handler {} does not match", rm);
@@ -76,10 +106,12 @@ public class ResourceBinding {
 
 	public void setMethods(List<BaseMethodBinding<?>> methods) {
 		this.methods = methods;
+		myDispatchCache.clear();
 	}
 
 	public void addMethod(BaseMethodBinding<?> method) {
 		this.methods.add(method);
+		myDispatchCache.clear();
 	}
 
 	@Override
@@ -94,4 +126,93 @@ public class ResourceBinding {
 		return 0;
 	}
 
+	/**
+	 * The parts of a request which method bindings look at when deciding whether they match it
+	 */
+	private static final class DispatchKey {
+
+		private final String myCompartmentName;
+		private final int myHashCode;
+		private final int myIdState;
+		private final String myOperation;
+		private final Set<String> myParameterNames;
+		private final String myQueryName;
+		private final RequestType myRequestType;
+		private final String myResourceName;
+		private final String mySecondaryOperation;
+
+		private DispatchKey(DispatchKey theKey, Set<String> theParameterNames) {
+			myCompartmentName = theKey.myCompartmentName;
+			myHashCode = theKey.myHashCode;
+			myIdState = theKey.myIdState;
+			myOperation = theKey.myOperation;
+			myParameterNames = theParameterNames;
+			myQueryName = theKey.myQueryName;
+			myRequestType = theKey.myRequestType;
+			myResourceName = theKey.myResourceName;
+			mySecondaryOperation = theKey.mySecondaryOperation;
+		}
+
+		DispatchKey(Request theRequest) {
+			myCompartmentName = theRequest.getCompartmentName();
+			myOperation = theRequest.getOperation();
+			myParameterNames = theRequest.getParameters().keySet();
+			myRequestType = theRequest.getRequestType();
+			myResourceName = theRequest.getResourceName();
+			mySecondaryOperation = theRequest.getSecondaryOperation();
+
+			IdDt id = theRequest.getId();
+			if (id == null) {
+				myIdState = 0;
+			} else if (id.isEmpty()) {
+				myIdState = 1;
+			} else if (!id.hasVersionIdPart()) {
+				myIdState = 2;
+			} else {
+				myIdState = 3;
+			}
+
+			// Named queries are selected by the value of the _query parameter, not just its presence
+			String[] queryName = theRequest.getParameters().get(Constants.PARAM_QUERY);
+			myQueryName = queryName != null && queryName.length > 0 ? queryName[0] : null;
+
+			int hashCode = myParameterNames.hashCode();
+			hashCode = 31 * hashCode + myIdState;
+			hashCode = 31 * hashCode + ObjectUtils.hashCode(myRequestType);
+			hashCode = 31 * hashCode + ObjectUtils.hashCode(myOperation);
+			hashCode = 31 * hashCode + ObjectUtils.hashCode(mySecondaryOperation);
+			hashCode = 31 * hashCode + ObjectUtils.hashCode(myCompartmentName);
+			hashCode = 31 * hashCode + ObjectUtils.hashCode(myQueryName);
+			hashCode = 31 * hashCode + ObjectUtils.hashCode(myResourceName);
+			myHashCode = hashCode;
+		}
+
+		/**
+		 * Returns a copy of this key which does not refer to the parameter map of the request
+		 */
+		DispatchKey copyParameterNames() {
+			return new DispatchKey(this, new HashSet<String>(myParameterNames));
+		}
+
+		@Override
+		public boolean equals(Object theObj) {
+			if (this == theObj) {
+				return true;
+			}
+			if (!(theObj instanceof DispatchKey)) {
+				return false;
+			}
+			DispatchKey o = (DispatchKey) theObj;
+			return myHashCode == o.myHashCode && myIdState == o.myIdState && myRequestType == o.myRequestType && ObjectUtils.equals(myOperation, o.myOperation)
+					&& ObjectUtils.equals(mySecondaryOperation, o.mySecondaryOperation) && ObjectUtils.equals(myCompartmentName, o.myCompartmentName)
+					&& ObjectUtils.equals(myQueryName, o.myQueryName) && ObjectUtils.equals(myResourceName, o.myResourceName) && myParameterNames.equals(o.myParameterNames);
+		}
+
+		@Override
+		public int hashCode() {
+			return myHashCode;
+		}
+
+	}
+
 }
@@ -0,0 +1,62 @@
+package ca.uhn.fhir.rest.server;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Date;
+
+import ca.uhn.fhir.model.primitive.IdDt;
+
+/**
+ * The current version of a resource, as returned by {@link IResourceVersionProvider#getCurrentVersion(IdDt)}
+ */
+public class ResourceVersionInfo {
+
+	private final Date myLastUpdated;
+	private final String myVersionId;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param theVersionId
+	 *            The current version ID of the resource (may be <code>null</code> if the resource is not versioned)
+	 * @param theLastUpdated
+	 *            The time at which the resource was last updated (may be <code>null</code> if not known)
+	 */
+	public ResourceVersionInfo(String theVersionId, Date theLastUpdated) {
+		myVersionId = theVersionId;
+		myLastUpdated = theLastUpdated;
+	}
+
+	/**
+	 * Returns the time at which the resource was last updated, or <code>null</code> if not known
+	 */
+	public Date getLastUpdated() {
+		return myLastUpdated;
+	}
+
+	/**
+	 * Returns the current version ID of the resource, or <code>null</code> if not known
+	 */
+	public String getVersionId() {
+		return myVersionId;
+	}
+
+}
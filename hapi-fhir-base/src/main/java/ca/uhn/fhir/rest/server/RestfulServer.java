@@ -32,6 +32,7 @@ import ca.uhn.fhir.model.dstu.resource.Binary;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.model.valueset.BundleEntryStatusEnum;
+import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.annotation.Destroy;
 import ca.uhn.fhir.rest.annotation.IdParam;
@@ -42,15 +43,21 @@ import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
+import ca.uhn.fhir.rest.server.exceptions.PayloadTooLargeException;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
 import ca.uhn.fhir.util.ReflectionUtil;
 import ca.uhn.fhir.util.VersionUtil;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.http.client.utils.DateUtils;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
@@ -58,6 +65,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
@@ -67,24 +76,62 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.URLEncoder;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
+import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 public class RestfulServer extends HttpServlet {
 
+	/**
+	 * Default setting for {@link #setBinaryStreamingThreshold(int) the Binary streaming threshold}: 1 MB
+	 */
+	public static final int DEFAULT_BINARY_STREAMING_THRESHOLD = 1024 * 1024;
+
+	/**
+	 * Default value for {@link #setMaximumDecompressedRequestSize(long)}
+	 */
+	public static final long DEFAULT_MAXIMUM_DECOMPRESSED_REQUEST_SIZE = 100L * 1024 * 1024;
+
 	/**
 	 * Default setting for {@link #setETagSupport(ETagSupportEnum) ETag Support}: {@link ETagSupportEnum#ENABLED}
 	 */
 	public static final ETagSupportEnum DEFAULT_ETAG_SUPPORT = ETagSupportEnum.ENABLED;
+
+	/**
+	 * The number of resources which are loaded from an {@link IBundleProvider} at a time when a bundle is
+	 * streamed directly to the response
+	 */
+	public static final int STREAMING_BUNDLE_CHUNK_SIZE = 100;
+	private static final Map<Class<? extends IServerInterceptor>, Boolean> ourBundleInterceptorTypes = new ConcurrentHashMap<Class<? extends IServerInterceptor>, Boolean>();
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(RestfulServer.class);
 
 	private static final long serialVersionUID = 1L;
 	private AddProfileTagEnum myAddProfileTag;
+	private Long myAsyncTimeout;
+	private ExecutorService myBatchExecutor;
+	private int myBatchThreadCount;
+	private int myBinaryStreamingThreshold = DEFAULT_BINARY_STREAMING_THRESHOLD;
+	private int myCompressionLevel = Deflater.DEFAULT_COMPRESSION;
 	private ETagSupportEnum myETagSupport = DEFAULT_ETAG_SUPPORT;
 	private FhirContext myFhirContext;
 	private String myImplementationDescription;
 	private final List<IServerInterceptor> myInterceptors = new ArrayList<IServerInterceptor>();
+	private long myMaximumDecompressedRequestSize = DEFAULT_MAXIMUM_DECOMPRESSED_REQUEST_SIZE;
+	private int myMinimumCompressionSize;
 	private ResourceBinding myNullResourceBinding = new ResourceBinding();
 	private IPagingProvider myPagingProvider;
 	private Collection<Object> myPlainProviders;
@@ -131,6 +178,12 @@ public class RestfulServer extends HttpServlet {
 
 	@Override
 	public void destroy() {
+		synchronized (this) {
+			if (myBatchExecutor != null) {
+				myBatchExecutor.shutdown();
+				myBatchExecutor = null;
+			}
+		}
 		if (getResourceProviders() != null) {
 			for (IResourceProvider iResourceProvider : getResourceProviders()) {
 				invokeDestroy(iResourceProvider);
@@ -292,6 +345,46 @@ public class RestfulServer extends HttpServlet {
 		return myAddProfileTag;
 	}
 
+	/**
+	 * Returns the number of threads used to process the entries of batch requests, or <code>0</code> (the default) if
+	 * batch requests are not supported
+	 *
+	 * @see #setBatchThreadCount(int)
+	 */
+	public int getBatchThreadCount() {
+		return myBatchThreadCount;
+	}
+
+	/**
+	 * Returns the size (in bytes) above which incoming Binary request bodies are streamed to the server method instead
+	 * of being read into memory
+	 *
+	 * @see #setBinaryStreamingThreshold(int)
+	 */
+	public int getBinaryStreamingThreshold() {
+		return myBinaryStreamingThreshold;
+	}
+
+	/**
+	 * Returns the timeout (in milliseconds) for requests whose server method returned a {@link DeferredResult}, or
+	 * <code>null</code> if the servlet container's default is used
+	 *
+	 * @see #setAsyncTimeout(Long)
+	 */
+	public Long getAsyncTimeout() {
+		return myAsyncTimeout;
+	}
+
+	/**
+	 * Returns the compression level (<code>0</code>-<code>9</code>, or <code>-1</code> for the default level) used
+	 * for compressed responses
+	 *
+	 * @see #setCompressionLevel(int)
+	 */
+	public int getCompressionLevel() {
+		return myCompressionLevel;
+	}
+
 	/**
 	 * Returns the server support for ETags (will not be <code>null</code>). Default is {@link #DEFAULT_ETAG_SUPPORT}
 	 */
@@ -311,6 +404,33 @@ public class RestfulServer extends HttpServlet {
 		return myImplementationDescription;
 	}
 
+	/**
+	 * Returns <code>true</code> if any registered interceptor overrides
+	 * {@link IServerInterceptor#outgoingResponse(RequestDetails, Bundle, HttpServletRequest, HttpServletResponse)}
+	 * (interceptors which do not extend {@link InterceptorAdapter} are assumed to). Search results are only written
+	 * as they are loaded when this returns <code>false</code>, since otherwise they must first be collected into a
+	 * complete {@link Bundle} for the interceptors to inspect.
+	 */
+	public boolean isBundleInterceptorRegistered() {
+		for (IServerInterceptor next : myInterceptors) {
+			Class<? extends IServerInterceptor> type = next.getClass();
+			Boolean intercepts = ourBundleInterceptorTypes.get(type);
+			if (intercepts == null) {
+				try {
+					Method method = type.getMethod("outgoingResponse", RequestDetails.class, Bundle.class, HttpServletRequest.class, HttpServletResponse.class);
+					intercepts = method.getDeclaringClass() != InterceptorAdapter.class;
+				} catch (NoSuchMethodException e) {
+					throw new InternalErrorException(e);
+				}
+				ourBundleInterceptorTypes.put(type, intercepts);
+			}
+			if (intercepts) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Returns a ist of all registered server interceptors
 	 */
@@ -318,6 +438,25 @@ public class RestfulServer extends HttpServlet {
 		return Collections.unmodifiableList(myInterceptors);
 	}
 
+	/**
+	 * Returns the maximum size (in bytes) that a compressed request body may decompress to, or <code>-1</code> if there
+	 * is no limit
+	 * 
+	 * @see #setMaximumDecompressedRequestSize(long)
+	 */
+	public long getMaximumDecompressedRequestSize() {
+		return myMaximumDecompressedRequestSize;
+	}
+
+	/**
+	 * Returns the minimum size (in bytes) of a response body before it is compressed
+	 *
+	 * @see #setMinimumCompressionSize(int)
+	 */
+	public int getMinimumCompressionSize() {
+		return myMinimumCompressionSize;
+	}
+
 	public IPagingProvider getPagingProvider() {
 		return myPagingProvider;
 	}
@@ -425,9 +564,18 @@ public class RestfulServer extends HttpServlet {
 		boolean prettyPrint = prettyPrintResponse(theRequest);
 		boolean requestIsBrowser = requestIsBrowser(theRequest.getServletRequest());
 		NarrativeModeEnum narrativeMode = determineNarrativeMode(theRequest);
+		Set<String> elements = determineElements(theRequest.getServletRequest());
 		boolean respondGzip = theRequest.isRespondGzip();
 
+		if (!isBundleInterceptorRegistered()) {
+			// No interceptor needs to see the complete bundle, so resources can be written as they are loaded
+			streamResponseAsBundle(this, theResponse, resultList, responseEncoding, theRequest.getFhirServerBase(), theRequest.getCompleteUrl(), prettyPrint, requestIsBrowser, narrativeMode, start, count, thePagingAction, respondGzip, elements);
+			return;
+		}
+
+		long bundleStart = System.nanoTime();
 		Bundle bundle = createBundleFromBundleProvider(this, theResponse, resultList, responseEncoding, theRequest.getFhirServerBase(), theRequest.getCompleteUrl(), prettyPrint, requestIsBrowser, narrativeMode, start, count, thePagingAction);
+		theRequest.addPhaseTimeNanos(RequestPhaseEnum.BUNDLE, System.nanoTime() - bundleStart);
 
 		for (int i = getInterceptors().size() - 1; i >= 0; i--) {
 			IServerInterceptor next = getInterceptors().get(i);
@@ -438,23 +586,290 @@ public class RestfulServer extends HttpServlet {
 			}
 		}
 
-		streamResponseAsBundle(this, theResponse, bundle, responseEncoding, theRequest.getFhirServerBase(), prettyPrint, narrativeMode, respondGzip);
+		long encodeStart = System.nanoTime();
+		streamResponseAsBundle(this, theResponse, bundle, responseEncoding, theRequest.getFhirServerBase(), prettyPrint, narrativeMode, respondGzip, elements);
+		theRequest.addPhaseTimeNanos(RequestPhaseEnum.ENCODE, System.nanoTime() - encodeStart);
+
+	}
+
+	/**
+	 * Creates the request for a single entry within a batch:
+	 * <ul>
+	 * <li>An entry with a resource whose ID has a resource type and ID part (e.g. <code>Patient/123</code>) is an
+	 * update</li>
+	 * <li>An entry with a resource whose ID does not (e.g. <code>cid:1</code>) is a create</li>
+	 * <li>A deleted entry is a delete</li>
+	 * <li>An entry with no resource is a read (or vread) of the resource identified by its self link or ID</li>
+	 * </ul>
+	 */
+	private BatchEntryServletRequest createBatchEntryRequest(HttpServletRequest theBatchRequest, String theServerBase, EncodingEnum theEncoding, BundleEntry theEntry, int theIndex) {
+		RequestType requestType;
+		String path;
+		IResource body = null;
+		IdDt id;
+
+		IResource resource = theEntry.getResource();
+		if (theEntry.getDeletedAt() != null && theEntry.getDeletedAt().isEmpty() == false) {
+			id = theEntry.getId() != null && theEntry.getId().isEmpty() == false ? theEntry.getId() : new IdDt(theEntry.getLinkSelf().getValue());
+			requestType = RequestType.DELETE;
+			path = id.toUnqualifiedVersionless().getValue();
+		} else if (resource != null && resource.isEmpty() == false) {
+			String resourceName = myFhirContext.getResourceDefinition(resource).getName();
+			id = resource.getId();
+			if (id != null && id.hasResourceType() && id.hasIdPart()) {
+				if (!resourceName.equals(id.getResourceType())) {
+					throw new InvalidRequestException("Batch entry " + theIndex + " contains a " + resourceName + " resource with ID " + id.getValue());
+				}
+				requestType = RequestType.PUT;
+				path = resourceName + '/' + id.getIdPart();
+			} else {
+				requestType = RequestType.POST;
+				path = resourceName;
+			}
+			body = resource;
+		} else {
+			id = theEntry.getLinkSelf().isEmpty() ? theEntry.getId() : new IdDt(theEntry.getLinkSelf().getValue());
+			requestType = RequestType.GET;
+			path = id != null ? id.toUnqualified().getValue() : null;
+		}
+
+		if (id != null && id.hasBaseUrl() && !StringUtils.removeEnd(id.getBaseUrl(), "/").equals(StringUtils.removeEnd(theServerBase, "/"))) {
+			throw new InvalidRequestException("Batch entry " + theIndex + " refers to a resource on another server: " + id.getValue());
+		}
+		if (requestType != RequestType.POST && (id == null || !id.hasResourceType() || !id.hasIdPart())) {
+			throw new InvalidRequestException("Batch entry " + theIndex + " has no resource to create or update, and no resource ID to read or delete");
+		}
+
+		BatchEntryServletRequest retVal = new BatchEntryServletRequest(theBatchRequest, requestType, path, body);
+		retVal.addHeader(Constants.HEADER_ACCEPT, theEncoding.getResourceContentType());
+		if (body != null) {
+			retVal.addHeader(Constants.HEADER_CONTENT_TYPE, theEncoding.getResourceContentType());
+			for (Tag next : theEntry.getCategories()) {
+				retVal.addHeader(Constants.HEADER_CATEGORY, next.toHeaderValue());
+			}
+			if (requestType == RequestType.PUT && id.hasVersionIdPart()) {
+				retVal.addHeader(Constants.HEADER_CONTENT_LOCATION, id.toUnqualified().getValue());
+			}
+		}
+		return retVal;
+	}
+
+	private BaseOperationOutcome createBatchEntryOperationOutcome(String theMessage) {
+		BaseOperationOutcome retVal;
+		try {
+			retVal = (BaseOperationOutcome) myFhirContext.getResourceDefinition("OperationOutcome").getImplementingClass().newInstance();
+		} catch (Exception e) {
+			throw new InternalErrorException("Failed to instantiate OperationOutcome resource instance", e);
+		}
+		BaseIssue issue = retVal.addIssue();
+		issue.getSeverityElement().setValue("error");
+		issue.getDetailsElement().setValue(theMessage);
+		return retVal;
+	}
+
+	private synchronized ExecutorService getBatchExecutor() {
+		if (myBatchExecutor == null) {
+			final AtomicInteger threadIndex = new AtomicInteger();
+			ThreadFactory threadFactory = new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable theRunnable) {
+					Thread retVal = new Thread(theRunnable, "hapi-fhir-batch-" + threadIndex.incrementAndGet());
+					retVal.setDaemon(true);
+					return retVal;
+				}
+			};
+
+			/*
+			 * Once every worker is busy and the queue is full, the thread submitting the batch processes entries
+			 * itself. This bounds the memory used by large batches, and also runs entries submitted while the pool is
+			 * being shut down, which would otherwise never complete.
+			 */
+			RejectedExecutionHandler callerRuns = new RejectedExecutionHandler() {
+				@Override
+				public void rejectedExecution(Runnable theRunnable, ThreadPoolExecutor theExecutor) {
+					theRunnable.run();
+				}
+			};
+			myBatchExecutor = new ThreadPoolExecutor(myBatchThreadCount, myBatchThreadCount, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(myBatchThreadCount), threadFactory, callerRuns);
+		}
+		return myBatchExecutor;
+	}
+
+	/**
+	 * Handles a batch (a POST to <code>[base]/_batch</code>), in which each entry of the bundle is an independent
+	 * request. Each entry is dispatched to its normal method binding (including interceptors) on the batch worker pool,
+	 * and the response bundle contains the outcome of each entry in the same order as the request. A failed entry does
+	 * not affect the others, and appears in the response as an OperationOutcome.
+	 */
+	private void handleBatchRequest(Request theRequest) throws IOException {
+		HttpServletRequest servletRequest = theRequest.getServletRequest();
+		final HttpServletResponse servletResponse = theRequest.getServletResponse();
+		String serverBase = theRequest.getFhirServerBase();
+		EncodingEnum encoding = determineRequestEncoding(theRequest);
+
+		Bundle batch;
+		try {
+			batch = encoding.newParser(myFhirContext).parseBundle(servletRequest.getReader());
+		} catch (DataFormatException e) {
+			throw new InvalidRequestException("Failed to parse batch bundle: " + e.getMessage());
+		}
+		ourLog.debug("Processing batch of {} entries", batch.getEntries().size());
+
+		List<BatchEntryServletRequest> entryRequests = new ArrayList<BatchEntryServletRequest>();
+		List<Future<BatchEntryServletResponse>> entryResponses = new ArrayList<Future<BatchEntryServletResponse>>();
+		ExecutorService executor = getBatchExecutor();
+		for (int i = 0; i < batch.getEntries().size(); i++) {
+			final BatchEntryServletRequest entryRequest;
+			try {
+				entryRequest = createBatchEntryRequest(servletRequest, serverBase, encoding, batch.getEntries().get(i), i);
+			} catch (InvalidRequestException e) {
+				DeferredResult<BatchEntryServletResponse> failed = new DeferredResult<BatchEntryServletResponse>();
+				failed.setException(e);
+				entryRequests.add(null);
+				entryResponses.add(failed);
+				continue;
+			}
+
+			entryRequests.add(entryRequest);
+			entryResponses.add(executor.submit(new Callable<BatchEntryServletResponse>() {
+				@Override
+				public BatchEntryServletResponse call() throws Exception {
+					BatchEntryServletResponse retVal = new BatchEntryServletResponse(servletResponse);
+					handleRequest(entryRequest.getRequestType(), entryRequest, retVal);
+					return retVal;
+				}
+			}));
+		}
+
+		Bundle response = new Bundle();
+		response.getTitle().setValue("Batch results");
+		response.getUpdated().setToCurrentTimeInLocalTimeZone();
+		response.getLinkBase().setValue(serverBase);
+		for (int i = 0; i < entryResponses.size(); i++) {
+			BatchEntryServletResponse entryResponse;
+			try {
+				entryResponse = entryResponses.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InternalErrorException("Interrupted while processing batch", e);
+			} catch (ExecutionException e) {
+				ourLog.warn("Failure processing batch entry " + i, e.getCause());
+				response.addResource(createBatchEntryOperationOutcome(e.getCause().getMessage()), myFhirContext, serverBase);
+				continue;
+			}
+			addBatchEntryResponse(response, serverBase, batch.getEntries().get(i), entryRequests.get(i), entryResponse);
+		}
+
+		EncodingEnum responseEncoding = determineResponseEncoding(servletRequest);
+		streamResponseAsBundle(this, servletResponse, response, responseEncoding, serverBase, prettyPrintResponse(theRequest), NarrativeModeEnum.NORMAL, theRequest.isRespondGzip());
+	}
+
+	private void addBatchEntryResponse(Bundle theResponse, String theServerBase, BundleEntry theEntry, BatchEntryServletRequest theEntryRequest, BatchEntryServletResponse theEntryResponse) {
+		int status = theEntryResponse.getStatus();
+		IResource bodyResource = theEntryResponse.getResource();
+
+		if (status >= 400) {
+			if (!(bodyResource instanceof BaseOperationOutcome)) {
+				bodyResource = createBatchEntryOperationOutcome("Batch entry failed with HTTP " + status);
+			}
+			theResponse.addResource(bodyResource, myFhirContext, theServerBase);
+			return;
+		}
+
+		switch (theEntryRequest.getRequestType()) {
+		case GET:
+			String contentLocation = theEntryResponse.getHeader(Constants.HEADER_CONTENT_LOCATION);
+			if (bodyResource == null) {
+				bodyResource = createBatchEntryOperationOutcome("Batch entry returned no resource (HTTP " + status + ")");
+			} else if (contentLocation != null && (bodyResource.getId() == null || bodyResource.getId().isEmpty())) {
+				bodyResource.setId(new IdDt(contentLocation));
+			}
+			theResponse.addResource(bodyResource, myFhirContext, theServerBase);
+			break;
+		case DELETE:
+			BundleEntry deleted = theResponse.addEntry();
+			deleted.setDeleted(InstantDt.withCurrentTime());
+			deleted.getId().setValue(theServerBase + '/' + theEntryRequest.getPathInfo().substring(1));
+			break;
+		default:
+			IResource resource = theEntry.getResource();
+			String location = theEntryResponse.getHeader(Constants.HEADER_LOCATION);
+			if (location != null) {
+				IdDt oldId = resource.getId();
+				IdDt newId = new IdDt(location);
+				if (oldId != null && oldId.isEmpty() == false && !oldId.equals(newId)) {
+					ResourceMetadataKeyEnum.PREVIOUS_ID.put(resource, oldId);
+				}
+				resource.setId(newId);
+			}
+			theResponse.addResource(resource, myFhirContext, theServerBase);
+			break;
+		}
+	}
 
+	/**
+	 * Releases the container thread until the server method's result is available, at which point the request is
+	 * dispatched to this servlet again and the response is written using that result
+	 */
+	private void suspendRequest(HttpServletRequest theRequest, AsyncResultPendingException thePending) {
+		ourLog.debug("Server method result is pending, suspending request {}", theRequest.getRequestURI());
+		DeferredResult<?> result = thePending.getResult();
+		theRequest.setAttribute(Request.ATTR_ASYNC_METHOD_PARAMS, thePending.getMethodParams());
+		theRequest.setAttribute(Request.ATTR_ASYNC_RESULT, result);
+
+		AsyncContext asyncContext = theRequest.startAsync();
+		if (myAsyncTimeout != null) {
+			asyncContext.setTimeout(myAsyncTimeout);
+		}
+		AsyncResultListener listener = new AsyncResultListener(asyncContext, result);
+		asyncContext.addListener(listener);
+		result.addListener(listener);
 	}
 
 	protected void handleRequest(SearchMethodBinding.RequestType theRequestType, HttpServletRequest theRequest, HttpServletResponse theResponse) throws ServletException, IOException {
-		for (IServerInterceptor next : myInterceptors) {
-			boolean continueProcessing = next.incomingRequestPreProcessed(theRequest, theResponse);
-			if (!continueProcessing) {
-				ourLog.debug("Interceptor {} returned false, not continuing processing");
-				return;
+		long requestStartNanos = System.nanoTime();
+
+		/*
+		 * If this request is being resumed after its server method returned a DeferredResult, the interceptors have
+		 * already seen it
+		 */
+		boolean asyncResume = Request.getAsyncResult(theRequest) != null;
+		if (asyncResume && theRequest.getAttribute(Request.ATTR_ASYNC_START_NANOS) != null) {
+			requestStartNanos = (Long) theRequest.getAttribute(Request.ATTR_ASYNC_START_NANOS);
+		}
+
+		/*
+		 * Interceptors are told the size of the response once it has been written
+		 */
+		CountingResponseWrapper countingResponse = null;
+		if (!myInterceptors.isEmpty()) {
+			countingResponse = new CountingResponseWrapper(theResponse);
+			theResponse = countingResponse;
+		}
+
+		if (!asyncResume) {
+			for (IServerInterceptor next : myInterceptors) {
+				boolean continueProcessing = next.incomingRequestPreProcessed(theRequest, theResponse);
+				if (!continueProcessing) {
+					ourLog.debug("Interceptor {} returned false, not continuing processing");
+					return;
+				}
 			}
 		}
 
 		String fhirServerBase = null;
 		boolean requestIsBrowser = requestIsBrowser(theRequest);
 		RequestDetails requestDetails = null;
+		CompressingResponseWrapper compressingResponse = null;
+		boolean suspended = false;
 		try {
+			if (theRequestType == RequestType.POST || theRequestType == RequestType.PUT) {
+				theRequest = DecompressingRequestWrapper.wrapIfCompressed(theRequest, myMaximumDecompressedRequestSize);
+			}
+
+			Request r = new Request();
+			r.setRequestStartNanos(requestStartNanos);
+			requestDetails = r;
 
 			String resourceName = null;
 			String requestFullPath = StringUtils.defaultString(theRequest.getRequestURI());
@@ -567,18 +982,13 @@ public class RestfulServer extends HttpServlet {
 
 			// TODO: look for more tokens for version, compartments, etc...
 
-			String acceptEncoding = theRequest.getHeader(Constants.HEADER_ACCEPT_ENCODING);
-			boolean respondGzip = false;
-			if (acceptEncoding != null) {
-				String[] parts = acceptEncoding.trim().split("\\s*,\\s*");
-				for (String string : parts) {
-					if (string.equals("gzip")) {
-						respondGzip = true;
-					}
-				}
+			String responseContentEncoding = determineResponseContentEncoding(theRequest.getHeader(Constants.HEADER_ACCEPT_ENCODING));
+			HttpServletResponse servletResponse = theResponse;
+			if (responseContentEncoding != null) {
+				compressingResponse = new CompressingResponseWrapper(theResponse, responseContentEncoding, myCompressionLevel, myMinimumCompressionSize);
+				servletResponse = compressingResponse;
 			}
 
-			Request r = new Request();
 			r.setServer(this);
 			r.setResourceName(resourceName);
 			r.setId(id);
@@ -589,14 +999,19 @@ public class RestfulServer extends HttpServlet {
 			r.setFhirServerBase(fhirServerBase);
 			r.setCompleteUrl(completeUrl);
 			r.setServletRequest(theRequest);
-			r.setServletResponse(theResponse);
-			r.setRespondGzip(respondGzip);
+			r.setServletResponse(servletResponse);
+			r.setRespondGzip(compressingResponse != null);
 			r.setCompartmentName(compartment);
 
+			if (resourceName == null && Constants.PARAM_BATCH.equals(operation) && theRequestType == RequestType.POST && myBatchThreadCount > 0) {
+				handleBatchRequest(r);
+				return;
+			}
+
 			String pagingAction = theRequest.getParameter(Constants.PARAM_PAGINGACTION);
 			if (getPagingProvider() != null && isNotBlank(pagingAction)) {
 				r.setOtherOperationType(OtherOperationTypeEnum.GET_PAGE);
-				handlePagingRequest(r, theResponse, pagingAction);
+				handlePagingRequest(r, servletResponse, pagingAction);
 				return;
 			}
 
@@ -615,21 +1030,28 @@ public class RestfulServer extends HttpServlet {
 				throw new InvalidRequestException(b.toString());
 			}
 
-			requestDetails = r;
 			requestDetails.setResourceOperationType(resourceMethod.getResourceOperationType());
 			requestDetails.setSystemOperationType(resourceMethod.getSystemOperationType());
 			requestDetails.setOtherOperationType(resourceMethod.getOtherOperationType());
 
-			for (IServerInterceptor next : myInterceptors) {
-				boolean continueProcessing = next.incomingRequestPostProcessed(requestDetails, theRequest, theResponse);
-				if (!continueProcessing) {
-					ourLog.debug("Interceptor {} returned false, not continuing processing");
-					return;
+			if (!asyncResume) {
+				for (IServerInterceptor next : myInterceptors) {
+					boolean continueProcessing = next.incomingRequestPostProcessed(requestDetails, theRequest, theResponse);
+					if (!continueProcessing) {
+						ourLog.debug("Interceptor {} returned false, not continuing processing");
+						return;
+					}
 				}
 			}
 
 			resourceMethod.invokeServer(this, r);
 
+		} catch (AsyncResultPendingException e) {
+
+			suspended = true;
+			theRequest.setAttribute(Request.ATTR_ASYNC_START_NANOS, requestStartNanos);
+			suspendRequest(theRequest, e);
+
 		} catch (NotModifiedException e) {
 
 			for (int i = getInterceptors().size() - 1; i >= 0; i--) {
@@ -639,7 +1061,10 @@ public class RestfulServer extends HttpServlet {
 					return;
 				}
 			}
-			writeExceptionToResponse(theResponse, e);
+
+			// A 304 response must not contain a body
+			theResponse.setStatus(e.getStatusCode());
+			addHeadersToResponse(theResponse);
 
 		} catch (AuthenticationException e) {
 
@@ -659,6 +1084,14 @@ public class RestfulServer extends HttpServlet {
 
 		} catch (Throwable e) {
 
+			/*
+			 * An oversized request body is detected while it is being parsed, so the parser may have wrapped it
+			 */
+			int payloadTooLargeIndex = ExceptionUtils.indexOfType(e, PayloadTooLargeException.class);
+			if (payloadTooLargeIndex > 0) {
+				e = ExceptionUtils.getThrowableList(e).get(payloadTooLargeIndex);
+			}
+
 			/*
 			 * We have caught an exception while handling an incoming server request. Start by notifying the
 			 * interceptors..
@@ -716,7 +1149,7 @@ public class RestfulServer extends HttpServlet {
 				ourLog.error("Unknown error during processing", e);
 			}
 
-			streamResponseAsResource(this, theResponse, oo, determineResponseEncoding(theRequest), true, requestIsBrowser, NarrativeModeEnum.NORMAL, statusCode, false, fhirServerBase);
+			streamResponseAsResource(this, theRequest, theResponse, oo, determineResponseEncoding(theRequest), true, requestIsBrowser, NarrativeModeEnum.NORMAL, statusCode, false, fhirServerBase, null);
 
 			theResponse.setStatus(statusCode);
 			addHeadersToResponse(theResponse);
@@ -725,6 +1158,28 @@ public class RestfulServer extends HttpServlet {
 			theResponse.getWriter().append(e.getMessage());
 			theResponse.getWriter().close();
 
+		} finally {
+			try {
+				if (compressingResponse != null) {
+					compressingResponse.finish();
+				}
+			} finally {
+				if (countingResponse != null && !suspended) {
+					fireProcessingCompleted(requestDetails, theRequest, countingResponse);
+				}
+			}
+		}
+	}
+
+	private void fireProcessingCompleted(RequestDetails theRequestDetails, HttpServletRequest theRequest, CountingResponseWrapper theResponse) {
+		theRequestDetails.setResponseSize(theResponse.getByteCount());
+		for (int i = getInterceptors().size() - 1; i >= 0; i--) {
+			IServerInterceptor next = getInterceptors().get(i);
+			try {
+				next.processingCompleted(theRequestDetails, theRequest, theResponse);
+			} catch (RuntimeException e) {
+				ourLog.error("Interceptor " + next + " failed after the response was completed", e);
+			}
 		}
 	}
 
@@ -847,6 +1302,54 @@ public class RestfulServer extends HttpServlet {
 		myAddProfileTag = theAddProfileTag;
 	}
 
+	/**
+	 * Sets the number of threads used to process the entries of batch requests. A batch is a bundle POSTed to
+	 * <code>[base]/_batch</code> whose entries are independent of each other (unlike a transaction, which is handed to
+	 * a single server method), and up to this many of its entries are processed in parallel. The worker threads are
+	 * shared by all batches processed by this server, and at most this many further entries are queued for them, after
+	 * which the thread handling a batch processes its entries itself. Defaults to <code>0</code>, meaning that batch
+	 * requests are not supported.
+	 */
+	public synchronized void setBatchThreadCount(int theBatchThreadCount) {
+		Validate.isTrue(theBatchThreadCount >= 0, "theBatchThreadCount must not be negative");
+		myBatchThreadCount = theBatchThreadCount;
+		if (myBatchExecutor != null) {
+			myBatchExecutor.shutdown();
+			myBatchExecutor = null;
+		}
+	}
+
+	/**
+	 * Sets the size (in bytes) above which the body of a request which creates or updates a Binary is not read into
+	 * memory. Instead, the Binary passed to the server method has a {@link Binary#getContentSource() content source}
+	 * which reads from the request as it is consumed, so the server method must consume it before returning. Bodies
+	 * whose length is not known in advance (e.g. chunked or compressed requests) are always streamed. Defaults to
+	 * {@link #DEFAULT_BINARY_STREAMING_THRESHOLD}.
+	 */
+	public void setBinaryStreamingThreshold(int theBinaryStreamingThreshold) {
+		Validate.isTrue(theBinaryStreamingThreshold >= 0, "theBinaryStreamingThreshold must not be negative");
+		myBinaryStreamingThreshold = theBinaryStreamingThreshold;
+	}
+
+	/**
+	 * Sets the timeout (in milliseconds) for requests whose server method returned a {@link DeferredResult} which is
+	 * processed asynchronously. If the result has not been set when the timeout expires, an HTTP 500 is returned to
+	 * the client. Defaults to <code>null</code>, meaning that the servlet container's default timeout is used.
+	 */
+	public void setAsyncTimeout(Long theAsyncTimeout) {
+		myAsyncTimeout = theAsyncTimeout;
+	}
+
+	/**
+	 * Sets the compression level used when the client accepts a compressed (gzip or deflate) response, from
+	 * <code>1</code> (fastest) to <code>9</code> (smallest), or <code>0</code> for no compression. Defaults to
+	 * <code>-1</code>, which is the default level of {@link Deflater}.
+	 */
+	public void setCompressionLevel(int theCompressionLevel) {
+		Validate.isTrue(theCompressionLevel >= Deflater.DEFAULT_COMPRESSION && theCompressionLevel <= Deflater.BEST_COMPRESSION, "theCompressionLevel must be between -1 and 9");
+		myCompressionLevel = theCompressionLevel;
+	}
+
 	/**
 	 * Sets (enables/disables) the server support for ETags. Must not be <code>null</code>. Default is
 	 * {@link #DEFAULT_ETAG_SUPPORT}
@@ -896,6 +1399,27 @@ public class RestfulServer extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Sets the maximum size (in bytes) that a compressed request body may decompress to. A request whose body
+	 * decompresses to more than this fails with <b>HTTP 413 Payload Too Large</b>, which protects the server from
+	 * small bodies which expand to exhaust its memory. Use <code>-1</code> for no limit. Defaults to
+	 * {@link #DEFAULT_MAXIMUM_DECOMPRESSED_REQUEST_SIZE}.
+	 */
+	public void setMaximumDecompressedRequestSize(long theMaximumDecompressedRequestSize) {
+		Validate.isTrue(theMaximumDecompressedRequestSize >= -1, "theMaximumDecompressedRequestSize must be -1 or greater");
+		myMaximumDecompressedRequestSize = theMaximumDecompressedRequestSize;
+	}
+
+	/**
+	 * Sets the minimum size (in bytes) of a response body before it is compressed. Responses smaller than this are
+	 * sent uncompressed even if the client accepts a compressed response, since compressing a small body costs more
+	 * time than it saves on the wire. Defaults to <code>0</code>, meaning that every response is compressed.
+	 */
+	public void setMinimumCompressionSize(int theMinimumCompressionSize) {
+		Validate.isTrue(theMinimumCompressionSize >= 0, "theMinimumCompressionSize must not be negative");
+		myMinimumCompressionSize = theMinimumCompressionSize;
+	}
+
 	/**
 	 * Sets the paging provider to use, or <code>null</code> to use no paging (which is the default)
 	 */
@@ -1027,51 +1551,127 @@ public class RestfulServer extends HttpServlet {
 
 	public static Bundle createBundleFromBundleProvider(RestfulServer theServer, HttpServletResponse theHttpResponse, IBundleProvider theResult, EncodingEnum theResponseEncoding, String theServerBase, String theCompleteUrl, boolean thePrettyPrint, boolean theRequestIsBrowser,
 			NarrativeModeEnum theNarrativeMode, int theOffset, Integer theLimit, String theSearchId) {
-		theHttpResponse.setStatus(200);
+		setBundleResponseHeaders(theServer, theHttpResponse, theResponseEncoding, theRequestIsBrowser, theNarrativeMode);
 
-		if (theRequestIsBrowser && theServer.isUseBrowserFriendlyContentTypes()) {
-			theHttpResponse.setContentType(theResponseEncoding.getBrowserFriendlyBundleContentType());
-		} else if (theNarrativeMode == NarrativeModeEnum.ONLY) {
-			theHttpResponse.setContentType(Constants.CT_HTML);
-		} else {
-			theHttpResponse.setContentType(theResponseEncoding.getBundleContentType());
-		}
+		int numToReturn = determineNumToReturn(theServer, theResult, theOffset, theLimit);
+		int fromIndex = theServer.getPagingProvider() != null ? theOffset : 0;
+		List<IResource> resourceList = theResult.getResources(fromIndex, fromIndex + numToReturn);
+		validateResourceListNotNull(resourceList);
+		String searchId = determineSearchId(theServer, theResult, numToReturn, theSearchId);
 
-		theHttpResponse.setCharacterEncoding(Constants.CHARSET_UTF_8);
+		prepareResourcesForBundle(theServer, resourceList, theServerBase);
 
-		theServer.addHeadersToResponse(theHttpResponse);
+		Bundle bundle = createBundleFromResourceList(theServer.getFhirContext(), theServer.getServerName(), resourceList, theServerBase, theCompleteUrl, theResult.size());
 
-		int numToReturn;
-		String searchId = null;
-		List<IResource> resourceList;
-		if (theServer.getPagingProvider() == null) {
-			numToReturn = theResult.size();
-			resourceList = theResult.getResources(0, numToReturn);
-			validateResourceListNotNull(resourceList);
+		bundle.setPublished(theResult.getPublished());
 
-		} else {
-			IPagingProvider pagingProvider = theServer.getPagingProvider();
-			if (theLimit == null) {
-				numToReturn = pagingProvider.getDefaultPageSize();
-			} else {
-				numToReturn = Math.min(pagingProvider.getMaximumPageSize(), theLimit);
-			}
+		addPagingLinks(theServer, bundle, theResult, searchId, theOffset, numToReturn, theLimit, theServerBase, theResponseEncoding, thePrettyPrint);
+		return bundle;
+	}
 
-			numToReturn = Math.min(numToReturn, theResult.size() - theOffset);
-			resourceList = theResult.getResources(theOffset, numToReturn + theOffset);
-			validateResourceListNotNull(resourceList);
+	private static void addPagingLinks(RestfulServer theServer, Bundle theBundle, IBundleProvider theResult, String theSearchId, int theOffset, int theNumToReturn, Integer theLimit, String theServerBase, EncodingEnum theResponseEncoding, boolean thePrettyPrint) {
+		if (theServer.getPagingProvider() != null) {
+			int limit;
+			limit = theLimit != null ? theLimit : theServer.getPagingProvider().getDefaultPageSize();
+			limit = Math.min(limit, theServer.getPagingProvider().getMaximumPageSize());
 
 			if (theSearchId != null) {
-				searchId = theSearchId;
-			} else {
-				if (theResult.size() > numToReturn) {
-					searchId = pagingProvider.storeResultList(theResult);
-					Validate.notNull(searchId, "Paging provider returned null searchId");
+				if (theOffset + theNumToReturn < theResult.size()) {
+					theBundle.getLinkNext().setValue(createPagingLink(theServerBase, theSearchId, theOffset + theNumToReturn, theNumToReturn, theResponseEncoding, thePrettyPrint));
+				}
+				if (theOffset > 0) {
+					int start = Math.max(0, theOffset - limit);
+					theBundle.getLinkPrevious().setValue(createPagingLink(theServerBase, theSearchId, start, limit, theResponseEncoding, thePrettyPrint));
 				}
 			}
 		}
+	}
+
+	/**
+	 * Selects the content encoding for the response from the request's <code>Accept-Encoding</code> header, preferring
+	 * gzip over deflate when the client accepts both with the same quality. Returns <code>null</code> if the response
+	 * should not be compressed.
+	 */
+	private static String determineResponseContentEncoding(String theAcceptEncoding) {
+		if (isBlank(theAcceptEncoding)) {
+			return null;
+		}
 
-		for (IResource next : resourceList) {
+		float gzipQuality = 0;
+		float deflateQuality = 0;
+		for (String nextPart : theAcceptEncoding.trim().split("\\s*,\\s*")) {
+			String coding = nextPart;
+			float quality = 1;
+			int semicolonIdx = nextPart.indexOf(';');
+			if (semicolonIdx != -1) {
+				coding = nextPart.substring(0, semicolonIdx).trim();
+				String qualityPart = nextPart.substring(semicolonIdx + 1).trim();
+				if (qualityPart.startsWith("q=")) {
+					try {
+						quality = Float.parseFloat(qualityPart.substring(2).trim());
+					} catch (NumberFormatException e) {
+						quality = 0;
+					}
+				}
+			}
+			if (Constants.ENCODING_GZIP.equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding)) {
+				gzipQuality = Math.max(gzipQuality, quality);
+			} else if (Constants.ENCODING_DEFLATE.equalsIgnoreCase(coding)) {
+				deflateQuality = Math.max(deflateQuality, quality);
+			}
+		}
+
+		if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+			return Constants.ENCODING_GZIP;
+		}
+		if (deflateQuality > 0) {
+			return Constants.ENCODING_DEFLATE;
+		}
+		return null;
+	}
+
+	private static int determineNumToReturn(RestfulServer theServer, IBundleProvider theResult, int theOffset, Integer theLimit) {
+		IPagingProvider pagingProvider = theServer.getPagingProvider();
+		if (pagingProvider == null) {
+			return theResult.size();
+		}
+
+		int numToReturn;
+		if (theLimit == null) {
+			numToReturn = pagingProvider.getDefaultPageSize();
+		} else {
+			numToReturn = Math.min(pagingProvider.getMaximumPageSize(), theLimit);
+		}
+		return Math.min(numToReturn, theResult.size() - theOffset);
+	}
+
+	/**
+	 * Returns the search ID to use in paging links, storing the result list with the paging provider if this is the
+	 * first page of a result which has more than one page. Returns <code>null</code> (so that no paging links are
+	 * added) if there is only one page, or if the paging provider did not store the result list.
+	 */
+	private static String determineSearchId(RestfulServer theServer, IBundleProvider theResult, int theNumToReturn, String theSearchId) {
+		if (theServer.getPagingProvider() == null) {
+			return null;
+		}
+		if (theSearchId != null) {
+			return theSearchId;
+		}
+		if (theResult.size() > theNumToReturn) {
+			String searchId = theServer.getPagingProvider().storeResultList(theResult);
+			if (searchId == null) {
+				ourLog.warn("Paging provider did not store result list with {} resources, so only the first {} will be returned and the response will have no paging links", theResult.size(), theNumToReturn);
+			}
+			return searchId;
+		}
+		return null;
+	}
+
+	/**
+	 * Validates that the resources returned by a provider all have IDs, and adds profile tags if needed
+	 */
+	private static void prepareResourcesForBundle(RestfulServer theServer, List<IResource> theResourceList, String theServerBase) {
+		for (IResource next : theResourceList) {
 			if (next.getId() == null || next.getId().isEmpty()) {
 				if (!(next instanceof BaseOperationOutcome)) {
 					throw new InternalErrorException("Server method returned resource of type[" + next.getClass().getSimpleName() + "] with no ID specified (IResource#setId(IdDt) must be called)");
@@ -1080,37 +1680,38 @@ public class RestfulServer extends HttpServlet {
 		}
 
 		if (theServer.getAddProfileTag() != AddProfileTagEnum.NEVER) {
-			for (IResource nextRes : resourceList) {
+			for (IResource nextRes : theResourceList) {
 				RuntimeResourceDefinition def = theServer.getFhirContext().getResourceDefinition(nextRes);
 				if (theServer.getAddProfileTag() == AddProfileTagEnum.ALWAYS || !def.isStandardProfile()) {
 					addProfileToBundleEntry(theServer.getFhirContext(), nextRes, theServerBase);
 				}
 			}
 		}
+	}
 
-		Bundle bundle = createBundleFromResourceList(theServer.getFhirContext(), theServer.getServerName(), resourceList, theServerBase, theCompleteUrl, theResult.size());
+	/**
+	 * Creates a bundle for a count-only search (<code>_summary=count</code>). The returned bundle has no entries, only
+	 * the total number of results, so the only method which is called on the provider is {@link IBundleProvider#size()}.
+	 */
+	public static Bundle createCountOnlyBundleFromBundleProvider(RestfulServer theServer, HttpServletResponse theHttpResponse, IBundleProvider theResult, EncodingEnum theResponseEncoding, String theServerBase, String theCompleteUrl, boolean theRequestIsBrowser,
+			NarrativeModeEnum theNarrativeMode) {
+		setBundleResponseHeaders(theServer, theHttpResponse, theResponseEncoding, theRequestIsBrowser, theNarrativeMode);
 
+		List<IResource> resourceList = Collections.emptyList();
+		Bundle bundle = createBundleFromResourceList(theServer.getFhirContext(), theServer.getServerName(), resourceList, theServerBase, theCompleteUrl, theResult.size());
 		bundle.setPublished(theResult.getPublished());
-
-		if (theServer.getPagingProvider() != null) {
-			int limit;
-			limit = theLimit != null ? theLimit : theServer.getPagingProvider().getDefaultPageSize();
-			limit = Math.min(limit, theServer.getPagingProvider().getMaximumPageSize());
-
-			if (searchId != null) {
-				if (theOffset + numToReturn < theResult.size()) {
-					bundle.getLinkNext().setValue(createPagingLink(theServerBase, searchId, theOffset + numToReturn, numToReturn, theResponseEncoding, thePrettyPrint));
-				}
-				if (theOffset > 0) {
-					int start = Math.max(0, theOffset - limit);
-					bundle.getLinkPrevious().setValue(createPagingLink(theServerBase, searchId, start, limit, theResponseEncoding, thePrettyPrint));
-				}
-			}
-		}
 		return bundle;
 	}
 
 	public static Bundle createBundleFromResourceList(FhirContext theContext, String theAuthor, List<IResource> theResult, String theServerBase, String theCompleteUrl, int theTotalResults) {
+		return createBundleFromResourceList(theContext, theAuthor, theResult, theServerBase, theCompleteUrl, theTotalResults, new HashSet<IdDt>());
+	}
+
+	/**
+	 * @param theAddedResourceIds
+	 *            The IDs of included resources which have already been added, and should not be added again
+	 */
+	private static Bundle createBundleFromResourceList(FhirContext theContext, String theAuthor, List<IResource> theResult, String theServerBase, String theCompleteUrl, int theTotalResults, Set<IdDt> theAddedResourceIds) {
 		Bundle bundle = new Bundle();
 		bundle.getAuthorName().setValue(theAuthor);
 		bundle.getBundleId().setValue(UUID.randomUUID().toString());
@@ -1119,7 +1720,7 @@ public class RestfulServer extends HttpServlet {
 		bundle.getLinkSelf().setValue(theCompleteUrl);
 
 		List<IResource> includedResources = new ArrayList<IResource>();
-		Set<IdDt> addedResourceIds = new HashSet<IdDt>();
+		Set<IdDt> addedResourceIds = theAddedResourceIds;
 		for (IResource next : theResult) {
 
 			Set<String> containedIds = new HashSet<String>();
@@ -1228,6 +1829,31 @@ public class RestfulServer extends HttpServlet {
 		return b.toString();
 	}
 
+	/**
+	 * Returns the element names requested using the <code>_elements</code> parameter, or <code>null</code> if the
+	 * parameter is not present. Names may be separated by commas and/or the parameter may be repeated.
+	 * 
+	 * @see IParser#setEncodeElements(Set)
+	 */
+	public static Set<String> determineElements(HttpServletRequest theRequest) {
+		String[] elements = theRequest.getParameterValues(Constants.PARAM_ELEMENTS);
+		if (elements == null) {
+			return null;
+		}
+		Set<String> retVal = new HashSet<String>();
+		for (String next : elements) {
+			for (String nextElement : next.split(",")) {
+				if (isNotBlank(nextElement)) {
+					retVal.add(nextElement.trim());
+				}
+			}
+		}
+		if (retVal.isEmpty()) {
+			return null;
+		}
+		return retVal;
+	}
+
 	public static NarrativeModeEnum determineNarrativeMode(RequestDetails theRequest) {
 		Map<String, String[]> requestParams = theRequest.getParameters();
 		String[] narrative = requestParams.remove(Constants.PARAM_NARRATIVE);
@@ -1267,6 +1893,29 @@ public class RestfulServer extends HttpServlet {
 		return EncodingEnum.XML;
 	}
 
+	/**
+	 * If the given response is for an entry within a batch, records the given resource as its body and returns
+	 * <code>true</code>. The resource is added to the batch response as is, so the caller should not encode it.
+	 */
+	public static boolean captureBatchEntryResponse(HttpServletResponse theResponse, IResource theResource) {
+		if (theResponse instanceof BatchEntryServletResponse) {
+			((BatchEntryServletResponse) theResponse).setResource(theResource);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * If the given request is for an entry within a batch, returns the resource to create or update, which should be
+	 * used instead of parsing the request body. Returns <code>null</code> otherwise.
+	 */
+	public static IResource getBatchEntryResource(HttpServletRequest theRequest) {
+		if (theRequest instanceof BatchEntryServletRequest) {
+			return ((BatchEntryServletRequest) theRequest).getResource();
+		}
+		return null;
+	}
+
 	/**
 	 * Determine whether a response should be given in JSON or XML format based on the incoming HttpServletRequest's
 	 * <code>"_format"</code> parameter and <code>"Accept:"</code> HTTP header.
@@ -1313,6 +1962,14 @@ public class RestfulServer extends HttpServlet {
 	}
 
 	public static IParser getNewParser(FhirContext theContext, EncodingEnum theResponseEncoding, boolean thePrettyPrint, NarrativeModeEnum theNarrativeMode) {
+		return getNewParser(theContext, theResponseEncoding, thePrettyPrint, theNarrativeMode, null);
+	}
+
+	/**
+	 * @param theElements
+	 *            The elements to encode (see {@link IParser#setEncodeElements(Set)}), or <code>null</code> for all
+	 */
+	public static IParser getNewParser(FhirContext theContext, EncodingEnum theResponseEncoding, boolean thePrettyPrint, NarrativeModeEnum theNarrativeMode, Set<String> theElements) {
 		IParser parser;
 		switch (theResponseEncoding) {
 		case JSON:
@@ -1323,12 +1980,84 @@ public class RestfulServer extends HttpServlet {
 			parser = theContext.newXmlParser();
 			break;
 		}
-		return parser.setPrettyPrint(thePrettyPrint).setSuppressNarratives(theNarrativeMode == NarrativeModeEnum.SUPPRESS);
+		return parser.setPrettyPrint(thePrettyPrint).setSuppressNarratives(theNarrativeMode == NarrativeModeEnum.SUPPRESS).setEncodeElements(theElements);
+	}
+
+	/**
+	 * Parses the value of a <code>Range</code> header. Only a single byte range is supported, and any other value
+	 * (including a request for several ranges) is ignored so that the complete content is returned.
+	 * 
+	 * @return <code>null</code> if the header should be ignored, an empty array if the range can not be satisfied, or
+	 *         the positions of the first and last bytes (inclusive) to return
+	 */
+	static long[] parseByteRange(String theRange, long theLength) {
+		if (isBlank(theRange) || !theRange.startsWith("bytes=") || theRange.indexOf(',') != -1) {
+			return null;
+		}
+
+		String spec = theRange.substring("bytes=".length()).trim();
+		int dashIndex = spec.indexOf('-');
+		if (dashIndex == -1) {
+			return null;
+		}
+		String firstString = spec.substring(0, dashIndex).trim();
+		String lastString = spec.substring(dashIndex + 1).trim();
+
+		long first;
+		long last;
+		try {
+			if (firstString.length() == 0) {
+				// A suffix range, e.g. "bytes=-500" for the last 500 bytes
+				if (lastString.length() == 0) {
+					return null;
+				}
+				long suffixLength = Long.parseLong(lastString);
+				if (suffixLength < 0) {
+					return null;
+				}
+				if (suffixLength == 0) {
+					return new long[0];
+				}
+				first = Math.max(0, theLength - suffixLength);
+				last = theLength - 1;
+			} else {
+				first = Long.parseLong(firstString);
+				if (lastString.length() == 0) {
+					last = theLength - 1;
+				} else {
+					last = Long.parseLong(lastString);
+					if (last < first) {
+						return null;
+					}
+					last = Math.min(last, theLength - 1);
+				}
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+
+		if (first >= theLength) {
+			return new long[0];
+		}
+		return new long[] { first, last };
+	}
+
+	/**
+	 * Returns the stream that encoded resources are written to. Parsers write UTF-8 bytes to this stream directly, so
+	 * no character encoding is applied by the servlet container.
+	 */
+	private static OutputStream getOutputStream(HttpServletResponse theHttpResponse, boolean theRespondGzip) throws IOException {
+		if (theRespondGzip && !(theHttpResponse instanceof CompressingResponseWrapper)) {
+			theHttpResponse.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+			return new GZIPOutputStream(theHttpResponse.getOutputStream());
+		} else {
+			return theHttpResponse.getOutputStream();
+		}
 	}
 
 	private static Writer getWriter(HttpServletResponse theHttpResponse, boolean theRespondGzip) throws UnsupportedEncodingException, IOException {
 		Writer writer;
-		if (theRespondGzip) {
+		if (theRespondGzip && !(theHttpResponse instanceof CompressingResponseWrapper)) {
 			theHttpResponse.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
 			writer = new OutputStreamWriter(new GZIPOutputStream(theHttpResponse.getOutputStream()), "UTF-8");
 		} else {
@@ -1337,6 +2066,22 @@ public class RestfulServer extends HttpServlet {
 		return writer;
 	}
 
+	/**
+	 * Returns <code>true</code> if the request asks for the number of matching resources only
+	 * (<code>_summary=count</code>), and not for the resources themselves
+	 */
+	public static boolean isCountOnlyRequest(HttpServletRequest theRequest) {
+		String[] summary = theRequest.getParameterValues(Constants.PARAM_SUMMARY);
+		if (summary != null) {
+			for (String next : summary) {
+				if (Constants.PARAM_SUMMARY_COUNT.equals(next)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	public static boolean prettyPrintResponse(Request theRequest) {
 		Map<String, String[]> requestParams = theRequest.getParameters();
 		String[] pretty = requestParams.remove(Constants.PARAM_PRETTY);
@@ -1362,32 +2107,128 @@ public class RestfulServer extends HttpServlet {
 		return prettyPrint;
 	}
 
+	private static void setBundleResponseHeaders(RestfulServer theServer, HttpServletResponse theHttpResponse, EncodingEnum theResponseEncoding, boolean theRequestIsBrowser, NarrativeModeEnum theNarrativeMode) {
+		theHttpResponse.setStatus(200);
+
+		if (theRequestIsBrowser && theServer.isUseBrowserFriendlyContentTypes()) {
+			theHttpResponse.setContentType(theResponseEncoding.getBrowserFriendlyBundleContentType());
+		} else if (theNarrativeMode == NarrativeModeEnum.ONLY) {
+			theHttpResponse.setContentType(Constants.CT_HTML);
+		} else {
+			theHttpResponse.setContentType(theResponseEncoding.getBundleContentType());
+		}
+
+		theHttpResponse.setCharacterEncoding(Constants.CHARSET_UTF_8);
+
+		theServer.addHeadersToResponse(theHttpResponse);
+	}
+
 	public static void streamResponseAsBundle(RestfulServer theServer, HttpServletResponse theHttpResponse, Bundle bundle, EncodingEnum theResponseEncoding, String theServerBase, boolean thePrettyPrint, NarrativeModeEnum theNarrativeMode, boolean theRespondGzip) throws IOException {
+		streamResponseAsBundle(theServer, theHttpResponse, bundle, theResponseEncoding, theServerBase, thePrettyPrint, theNarrativeMode, theRespondGzip, null);
+	}
+
+	/**
+	 * @param theElements
+	 *            The elements to encode for each resource (see {@link IParser#setEncodeElements(Set)}), or
+	 *            <code>null</code> for all
+	 */
+	public static void streamResponseAsBundle(RestfulServer theServer, HttpServletResponse theHttpResponse, Bundle bundle, EncodingEnum theResponseEncoding, String theServerBase, boolean thePrettyPrint, NarrativeModeEnum theNarrativeMode, boolean theRespondGzip, Set<String> theElements) throws IOException {
 		assert !theServerBase.endsWith("/");
 
-		Writer writer = getWriter(theHttpResponse, theRespondGzip);
-		try {
-			if (theNarrativeMode == NarrativeModeEnum.ONLY) {
-				for (IResource next : bundle.toListOfResources()) {
-					writer.append(next.getText().getDiv().getValueAsString());
-					writer.append("<hr/>");
+		streamResponseAsBundle(theServer, theHttpResponse, bundle, bundle.getEntries(), theResponseEncoding, thePrettyPrint, theNarrativeMode, theRespondGzip, theElements);
+	}
+
+	/**
+	 * Streams a bundle for the given result directly to the response. This is equivalent to
+	 * {@link #createBundleFromBundleProvider(RestfulServer, HttpServletResponse, IBundleProvider, EncodingEnum, String, String, boolean, boolean, NarrativeModeEnum, int, Integer, String) creating a bundle}
+	 * and then {@link #streamResponseAsBundle(RestfulServer, HttpServletResponse, Bundle, EncodingEnum, String, boolean, NarrativeModeEnum, boolean, Set) streaming it},
+	 * except that the bundle header is written first and the resources are then loaded from the provider in chunks
+	 * of {@link #STREAMING_BUNDLE_CHUNK_SIZE} as they are written, so only one chunk is held in memory at a time.
+	 * <p>
+	 * Included resources are added after the chunk which references them (each included resource is only added
+	 * once per response) rather than after all of the matching resources.
+	 * </p>
+	 */
+	public static void streamResponseAsBundle(RestfulServer theServer, HttpServletResponse theHttpResponse, IBundleProvider theResult, EncodingEnum theResponseEncoding, String theServerBase, String theCompleteUrl, boolean thePrettyPrint, boolean theRequestIsBrowser,
+			NarrativeModeEnum theNarrativeMode, int theOffset, Integer theLimit, String theSearchId, boolean theRespondGzip, Set<String> theElements) throws IOException {
+		assert !theServerBase.endsWith("/");
+
+		setBundleResponseHeaders(theServer, theHttpResponse, theResponseEncoding, theRequestIsBrowser, theNarrativeMode);
+
+		int numToReturn = determineNumToReturn(theServer, theResult, theOffset, theLimit);
+		int fromIndex = theServer.getPagingProvider() != null ? theOffset : 0;
+		String searchId = determineSearchId(theServer, theResult, numToReturn, theSearchId);
+
+		List<IResource> noResources = Collections.emptyList();
+		Bundle bundle = createBundleFromResourceList(theServer.getFhirContext(), theServer.getServerName(), noResources, theServerBase, theCompleteUrl, theResult.size());
+		bundle.setPublished(theResult.getPublished());
+		addPagingLinks(theServer, bundle, theResult, searchId, theOffset, numToReturn, theLimit, theServerBase, theResponseEncoding, thePrettyPrint);
+
+		StreamingBundleEntries entries = new StreamingBundleEntries(theServer, theResult, fromIndex, fromIndex + numToReturn, theServerBase, theCompleteUrl);
+
+		/*
+		 * Load the first chunk before anything is written, so that an invalid result from the
+		 * provider still produces a proper error response
+		 */
+		entries.hasNext();
+
+		streamResponseAsBundle(theServer, theHttpResponse, bundle, entries, theResponseEncoding, thePrettyPrint, theNarrativeMode, theRespondGzip, theElements);
+	}
+
+	private static void streamResponseAsBundle(RestfulServer theServer, HttpServletResponse theHttpResponse, Bundle theBundle, Iterable<BundleEntry> theEntries, EncodingEnum theResponseEncoding, boolean thePrettyPrint, NarrativeModeEnum theNarrativeMode, boolean theRespondGzip,
+			Set<String> theElements) throws IOException {
+		if (theNarrativeMode == NarrativeModeEnum.ONLY) {
+			Writer writer = getWriter(theHttpResponse, theRespondGzip);
+			try {
+				for (BundleEntry nextEntry : theEntries) {
+					IResource next = nextEntry.getResource();
+					if (next != null) {
+						writer.append(next.getText().getDiv().getValueAsString());
+						writer.append("<hr/>");
+					}
 				}
-			} else {
-				RestfulServer.getNewParser(theServer.getFhirContext(), theResponseEncoding, thePrettyPrint, theNarrativeMode).encodeBundleToWriter(bundle, writer);
+			} finally {
+				writer.close();
+			}
+		} else {
+			OutputStream outputStream = getOutputStream(theHttpResponse, theRespondGzip);
+			try {
+				RestfulServer.getNewParser(theServer.getFhirContext(), theResponseEncoding, thePrettyPrint, theNarrativeMode, theElements).encodeBundleToOutputStream(theBundle, theEntries, outputStream);
+			} finally {
+				outputStream.close();
 			}
-		} finally {
-			writer.close();
 		}
 	}
 
 	public static void streamResponseAsResource(RestfulServer theServer, HttpServletResponse theHttpResponse, IResource theResource, EncodingEnum theResponseEncoding, boolean thePrettyPrint, boolean theRequestIsBrowser, NarrativeModeEnum theNarrativeMode, boolean theRespondGzip, String theServerBase)
 			throws IOException {
+		streamResponseAsResource(theServer, theHttpResponse, theResource, theResponseEncoding, thePrettyPrint, theRequestIsBrowser, theNarrativeMode, theRespondGzip, theServerBase, null);
+	}
+
+	/**
+	 * @param theElements
+	 *            The elements to encode (see {@link IParser#setEncodeElements(Set)}), or <code>null</code> for all
+	 */
+	public static void streamResponseAsResource(RestfulServer theServer, HttpServletResponse theHttpResponse, IResource theResource, EncodingEnum theResponseEncoding, boolean thePrettyPrint, boolean theRequestIsBrowser, NarrativeModeEnum theNarrativeMode, boolean theRespondGzip, String theServerBase,
+			Set<String> theElements) throws IOException {
+		streamResponseAsResource(theServer, null, theHttpResponse, theResource, theResponseEncoding, thePrettyPrint, theRequestIsBrowser, theNarrativeMode, theRespondGzip, theServerBase, theElements);
+	}
+
+	/**
+	 * @param theHttpRequest
+	 *            The request, used to serve a range of the content if the resource is a {@link Binary} and the request
+	 *            has a <code>Range</code> header. May be <code>null</code>.
+	 * @param theElements
+	 *            The elements to encode (see {@link IParser#setEncodeElements(Set)}), or <code>null</code> for all
+	 */
+	public static void streamResponseAsResource(RestfulServer theServer, HttpServletRequest theHttpRequest, HttpServletResponse theHttpResponse, IResource theResource, EncodingEnum theResponseEncoding, boolean thePrettyPrint, boolean theRequestIsBrowser, NarrativeModeEnum theNarrativeMode,
+			boolean theRespondGzip, String theServerBase, Set<String> theElements) throws IOException {
 		int stausCode = 200;
-		streamResponseAsResource(theServer, theHttpResponse, theResource, theResponseEncoding, thePrettyPrint, theRequestIsBrowser, theNarrativeMode, stausCode, theRespondGzip, theServerBase);
+		streamResponseAsResource(theServer, theHttpRequest, theHttpResponse, theResource, theResponseEncoding, thePrettyPrint, theRequestIsBrowser, theNarrativeMode, stausCode, theRespondGzip, theServerBase, theElements);
 	}
 
-	private static void streamResponseAsResource(RestfulServer theServer, HttpServletResponse theHttpResponse, IResource theResource, EncodingEnum theResponseEncoding, boolean thePrettyPrint, boolean theRequestIsBrowser, NarrativeModeEnum theNarrativeMode, int stausCode, boolean theRespondGzip,
-			String theServerBase) throws IOException {
+	private static void streamResponseAsResource(RestfulServer theServer, HttpServletRequest theHttpRequest, HttpServletResponse theHttpResponse, IResource theResource, EncodingEnum theResponseEncoding, boolean thePrettyPrint, boolean theRequestIsBrowser, NarrativeModeEnum theNarrativeMode, int stausCode,
+			boolean theRespondGzip, String theServerBase, Set<String> theElements) throws IOException {
 		theHttpResponse.setStatus(stausCode);
 
 		if (theResource.getId() != null && theResource.getId().hasIdPart() && isNotBlank(theServerBase)) {
@@ -1409,6 +2250,10 @@ public class RestfulServer extends HttpServlet {
 			}
 		}
 
+		if (captureBatchEntryResponse(theHttpResponse, theResource)) {
+			return;
+		}
+
 		if (theResource instanceof Binary) {
 			Binary bin = (Binary) theResource;
 			if (isNotBlank(bin.getContentType())) {
@@ -1416,16 +2261,50 @@ public class RestfulServer extends HttpServlet {
 			} else {
 				theHttpResponse.setContentType(Constants.CT_OCTET_STREAM);
 			}
-			if (bin.getContent() == null || bin.getContent().length == 0) {
+			IBinaryContentSource source = bin.getContentSource();
+			if (source == null || source.getLength() == 0) {
 				return;
 			}
 
+			/*
+			 * Binary content is copied straight from its source, and is not compressed since it is usually already
+			 * in a compressed format and since ranges refer to the uncompressed bytes
+			 */
+			if (theHttpResponse instanceof CompressingResponseWrapper) {
+				((CompressingResponseWrapper) theHttpResponse).disableCompression();
+			}
+
 			theHttpResponse.addHeader(Constants.HEADER_CONTENT_DISPOSITION, "Attachment;");
 
-			theHttpResponse.setContentLength(bin.getContent().length);
-			ServletOutputStream oos = theHttpResponse.getOutputStream();
-			oos.write(bin.getContent());
-			oos.close();
+			long length = source.getLength();
+			long offset = 0;
+			long count = length;
+			if (length != -1) {
+				theHttpResponse.addHeader(Constants.HEADER_ACCEPT_RANGES, "bytes");
+				if (stausCode == Constants.STATUS_HTTP_200_OK && theHttpRequest != null && theHttpRequest.getHeader(Constants.HEADER_IF_RANGE) == null) {
+					long[] range = parseByteRange(theHttpRequest.getHeader(Constants.HEADER_RANGE), length);
+					if (range != null && range.length == 0) {
+						theHttpResponse.setStatus(Constants.STATUS_HTTP_416_REQUESTED_RANGE_NOT_SATISFIABLE);
+						theHttpResponse.addHeader(Constants.HEADER_CONTENT_RANGE, "bytes */" + length);
+						return;
+					} else if (range != null) {
+						offset = range[0];
+						count = range[1] - range[0] + 1;
+						theHttpResponse.setStatus(Constants.STATUS_HTTP_206_PARTIAL_CONTENT);
+						theHttpResponse.addHeader(Constants.HEADER_CONTENT_RANGE, "bytes " + range[0] + '-' + range[1] + '/' + length);
+					}
+				}
+				theHttpResponse.setHeader(Constants.HEADER_CONTENT_LENGTH, Long.toString(count));
+			}
+
+			InputStream inputStream = offset > 0 ? source.openStream(offset) : source.openStream();
+			try {
+				ServletOutputStream oos = theHttpResponse.getOutputStream();
+				IOUtils.copyLarge(inputStream, oos, 0, count);
+				oos.close();
+			} finally {
+				IOUtils.closeQuietly(inputStream);
+			}
 			return;
 		}
 
@@ -1454,15 +2333,20 @@ public class RestfulServer extends HttpServlet {
 			}
 		}
 
-		Writer writer = getWriter(theHttpResponse, theRespondGzip);
-		try {
-			if (theNarrativeMode == NarrativeModeEnum.ONLY) {
+		if (theNarrativeMode == NarrativeModeEnum.ONLY) {
+			Writer writer = getWriter(theHttpResponse, theRespondGzip);
+			try {
 				writer.append(theResource.getText().getDiv().getValueAsString());
-			} else {
-				RestfulServer.getNewParser(theServer.getFhirContext(), theResponseEncoding, thePrettyPrint, theNarrativeMode).encodeResourceToWriter(theResource, writer);
+			} finally {
+				writer.close();
+			}
+		} else {
+			OutputStream outputStream = getOutputStream(theHttpResponse, theRespondGzip);
+			try {
+				RestfulServer.getNewParser(theServer.getFhirContext(), theResponseEncoding, thePrettyPrint, theNarrativeMode, theElements).encodeResourceToOutputStream(theResource, outputStream);
+			} finally {
+				outputStream.close();
 			}
-		} finally {
-			writer.close();
 		}
 	}
 
@@ -1485,6 +2369,70 @@ public class RestfulServer extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Supplies the entries for a streamed bundle, loading resources from the bundle provider one chunk at a time.
+	 * This object can only be iterated once.
+	 */
+	private static class StreamingBundleEntries implements Iterable<BundleEntry>, Iterator<BundleEntry> {
+
+		private Set<IdDt> myAddedResourceIds = new HashSet<IdDt>();
+		private String myCompleteUrl;
+		private Iterator<BundleEntry> myCurrentChunk;
+		private int myNextIndex;
+		private IBundleProvider myResult;
+		private RestfulServer myServer;
+		private String myServerBase;
+		private int myToIndex;
+
+		public StreamingBundleEntries(RestfulServer theServer, IBundleProvider theResult, int theFromIndex, int theToIndex, String theServerBase, String theCompleteUrl) {
+			myServer = theServer;
+			myResult = theResult;
+			myNextIndex = theFromIndex;
+			myToIndex = theToIndex;
+			myServerBase = theServerBase;
+			myCompleteUrl = theCompleteUrl;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (myCurrentChunk == null || !myCurrentChunk.hasNext()) {
+				if (myNextIndex >= myToIndex) {
+					myCurrentChunk = null;
+					return false;
+				}
+
+				int chunkEnd = Math.min(myToIndex, myNextIndex + STREAMING_BUNDLE_CHUNK_SIZE);
+				List<IResource> resourceList = myResult.getResources(myNextIndex, chunkEnd);
+				validateResourceListNotNull(resourceList);
+				myNextIndex = chunkEnd;
+
+				prepareResourcesForBundle(myServer, resourceList, myServerBase);
+				Bundle chunk = createBundleFromResourceList(myServer.getFhirContext(), myServer.getServerName(), resourceList, myServerBase, myCompleteUrl, myResult.size(), myAddedResourceIds);
+				myCurrentChunk = chunk.getEntries().iterator();
+			}
+			return true;
+		}
+
+		@Override
+		public Iterator<BundleEntry> iterator() {
+			return this;
+		}
+
+		@Override
+		public BundleEntry next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return myCurrentChunk.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
 	public enum NarrativeModeEnum {
 		NORMAL, ONLY, SUPPRESS;
 
@@ -1493,4 +2441,54 @@ public class RestfulServer extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Dispatches a suspended request back to the servlet once the server method's result is available. If the async
+	 * context errors or completes first, the request is not dispatched, since the context can no longer be used.
+	 */
+	static class AsyncResultListener implements AsyncListener, Runnable {
+
+		private final AsyncContext myAsyncContext;
+		private final AtomicBoolean myFinished = new AtomicBoolean();
+		private final DeferredResult<?> myResult;
+
+		AsyncResultListener(AsyncContext theAsyncContext, DeferredResult<?> theResult) {
+			myAsyncContext = theAsyncContext;
+			myResult = theResult;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent theEvent) {
+			myFinished.set(true);
+		}
+
+		@Override
+		public void onError(AsyncEvent theEvent) {
+			if (myFinished.compareAndSet(false, true)) {
+				myResult.cancel(false);
+				myAsyncContext.complete();
+			}
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent theEvent) {
+			// nothing
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent theEvent) {
+			myResult.setException(new InternalErrorException("Timed out waiting for result of server method"));
+		}
+
+		/**
+		 * Invoked when the result is completed
+		 */
+		@Override
+		public void run() {
+			if (myFinished.compareAndSet(false, true)) {
+				myAsyncContext.dispatch();
+			}
+		}
+
+	}
+
 }
@@ -44,11 +44,13 @@ public abstract class BaseServerResponseException extends RuntimeException {
 		registerExceptionType(MethodNotAllowedException.STATUS_CODE, MethodNotAllowedException.class);
 		registerExceptionType(NotImplementedOperationException.STATUS_CODE, NotImplementedOperationException.class);
 		registerExceptionType(NotModifiedException.STATUS_CODE, NotModifiedException.class);
+		registerExceptionType(PayloadTooLargeException.STATUS_CODE, PayloadTooLargeException.class);
 		registerExceptionType(ResourceNotFoundException.STATUS_CODE, ResourceNotFoundException.class);
 		registerExceptionType(ResourceGoneException.STATUS_CODE, ResourceGoneException.class);
 		registerExceptionType(PreconditionFailedException.STATUS_CODE, PreconditionFailedException.class);
 		registerExceptionType(ResourceVersionConflictException.STATUS_CODE, ResourceVersionConflictException.class);
 		registerExceptionType(UnprocessableEntityException.STATUS_CODE, UnprocessableEntityException.class);
+		registerExceptionType(UnsupportedMediaTypeException.STATUS_CODE, UnsupportedMediaTypeException.class);
 	}
 
 	private List<String> myAdditionalMessages = null;
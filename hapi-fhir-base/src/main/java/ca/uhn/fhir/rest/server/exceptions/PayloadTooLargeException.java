@@ -0,0 +1,56 @@
+package ca.uhn.fhir.rest.server.exceptions;
+
+import ca.uhn.fhir.model.base.resource.BaseOperationOutcome;
+import ca.uhn.fhir.rest.server.Constants;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Represents an <b>HTTP 413 Payload Too Large</b> response, which means that the body of the request is larger than
+ * the server is willing to process (e.g. because it decompresses to more than the configured maximum size).
+ * 
+ * <p>
+ * Note that a complete list of RESTful exceptions is available in the <a href="./package-summary.html">Package
+ * Summary</a>.
+ * </p>
+ */
+public class PayloadTooLargeException extends BaseServerResponseException {
+
+	public static final int STATUS_CODE = Constants.STATUS_HTTP_413_PAYLOAD_TOO_LARGE;
+	private static final long serialVersionUID = 1L;
+
+	public PayloadTooLargeException(String theMessage) {
+		super(STATUS_CODE, theMessage);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param theMessage
+	 *            The message
+	 * @param theOperationOutcome
+	 *            The OperationOutcome resource to return to the client
+	 */
+	public PayloadTooLargeException(String theMessage, BaseOperationOutcome theOperationOutcome) {
+		super(STATUS_CODE, theMessage, theOperationOutcome);
+	}
+
+}
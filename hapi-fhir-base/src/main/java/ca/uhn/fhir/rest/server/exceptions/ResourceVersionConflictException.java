@@ -37,6 +37,18 @@ public class ResourceVersionConflictException extends BaseServerResponseExceptio
 	public ResourceVersionConflictException(String error) {
 		super(STATUS_CODE, error);
 	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param theMessage
+	 *            The message
+	 * @param theCause
+	 *            The cause
+	 */
+	public ResourceVersionConflictException(String theMessage, Throwable theCause) {
+		super(STATUS_CODE, theMessage, theCause);
+	}
 	
 	/**
 	 * Constructor
@@ -168,6 +168,25 @@ public interface IServerInterceptor {
 	 */
 	public boolean outgoingResponse(RequestDetails theRequestDetails, HttpServletRequest theServletRequest, HttpServletResponse theServletResponse) throws AuthenticationException;
 
+	/**
+	 * This method is called once the response to a request has been completely written to the client, whether the request succeeded or not. It is called for every request which made it past
+	 * {@link #incomingRequestPreProcessed(HttpServletRequest, HttpServletResponse)}, except that a request whose server method returned a {@link ca.uhn.fhir.rest.server.DeferredResult} is only
+	 * completed once it has been resumed and its response written. It may be used to record metrics about the request, such as the time spent in each phase of processing (see
+	 * {@link RequestDetails#getPhaseTimeNanos(ca.uhn.fhir.rest.method.RequestPhaseEnum)}) and the size of the response (see {@link RequestDetails#getResponseSize()}).
+	 * <p>
+	 * Note that any exceptions thrown by this method will be logged and otherwise ignored, since the response has already been sent.
+	 * </p>
+	 * 
+	 * @param theRequestDetails
+	 *            A bean containing details about the request that was processed. Note that if processing failed before the request was completely parsed (e.g. because the URL was invalid), some of
+	 *            its details (such as the resource name and operation type) will be <code>null</code>.
+	 * @param theServletRequest
+	 *            The incoming request
+	 * @param theServletResponse
+	 *            The response, which has already been written
+	 */
+	public void processingCompleted(RequestDetails theRequestDetails, HttpServletRequest theServletRequest, HttpServletResponse theServletResponse);
+
 	/**
 	 * This method is called upon any exception being thrown within the server's request processing code. This includes any exceptions thrown within resource provider methods (e.g. {@link Search} and
 	 * {@link Read} methods) as well as any runtime exceptions thrown by the server itself. This also includes any {@link AuthenticationException}s thrown.
@@ -68,6 +68,11 @@ public class InterceptorAdapter implements IServerInterceptor {
 		return true;
 	}
 
+	@Override
+	public void processingCompleted(RequestDetails theRequestDetails, HttpServletRequest theServletRequest, HttpServletResponse theServletResponse) {
+		// nothing
+	}
+
 	@Override
 	public boolean handleException(RequestDetails theRequestDetails, Throwable theException, HttpServletRequest theServletRequest, HttpServletResponse theServletResponse) throws ServletException,
 			IOException {
@@ -0,0 +1,413 @@
+package ca.uhn.fhir.rest.server.interceptor;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.Validate;
+
+import ca.uhn.fhir.rest.method.RequestDetails;
+import ca.uhn.fhir.rest.method.RequestPhaseEnum;
+import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+
+/**
+ * Server interceptor which collects request metrics: the number of requests in flight, and for each resource type and
+ * operation (e.g. "Patient" / "search") the number of requests and errors, a latency histogram, the time spent in each
+ * {@link RequestPhaseEnum phase} of processing, and response sizes.
+ * <p>
+ * Latencies are kept as a count, a total, a maximum, and a histogram with fixed bucket boundaries (see
+ * {@link #BUCKET_UPPER_BOUNDS_MILLIS}) from which percentiles can be estimated. The metrics may be read using
+ * {@link #getOperations()}, or through JMX once {@link #registerMBean()} has been called.
+ * </p>
+ * <p>
+ * This interceptor does not inspect response bundles, so registering it does not prevent search results from being
+ * streamed to the client as they are loaded (see {@link ca.uhn.fhir.rest.server.RestfulServer#isBundleInterceptorRegistered()}).
+ * </p>
+ */
+public class MetricsInterceptor extends InterceptorAdapter implements MetricsInterceptorMBean {
+
+	/**
+	 * Upper bounds (inclusive) of the latency histogram buckets, in milliseconds. Any request which takes longer than
+	 * the last bound is counted in an additional overflow bucket.
+	 */
+	public static final long[] BUCKET_UPPER_BOUNDS_MILLIS = { 1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+	public static final String DEFAULT_OBJECT_NAME = "ca.uhn.fhir:type=MetricsInterceptor";
+
+	private static final String ATTR_OPERATION = MetricsInterceptor.class.getName() + ".OPERATION";
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(MetricsInterceptor.class);
+
+	private String myObjectName = DEFAULT_OBJECT_NAME;
+	private final ConcurrentMap<String, OperationMetrics> myOperations = new ConcurrentHashMap<String, OperationMetrics>();
+	private ObjectName myRegisteredName;
+
+	@Override
+	public long getInFlightCount() {
+		long retVal = 0;
+		for (OperationMetrics next : myOperations.values()) {
+			retVal += next.getInFlightCount();
+		}
+		return retVal;
+	}
+
+	public String getObjectName() {
+		return myObjectName;
+	}
+
+	/**
+	 * Returns the metrics for the given resource type and operation, or <code>null</code> if the operation has never
+	 * been performed
+	 */
+	public OperationMetrics getOperation(String theResourceType, String theOperation) {
+		return myOperations.get(toKey(theResourceType, theOperation));
+	}
+
+	@Override
+	public long getOperationCount(String theResourceType, String theOperation) {
+		OperationMetrics metrics = getOperation(theResourceType, theOperation);
+		return metrics != null ? metrics.getCount() : 0;
+	}
+
+	@Override
+	public long getOperationPercentileMillis(String theResourceType, String theOperation, double thePercentile) {
+		OperationMetrics metrics = getOperation(theResourceType, theOperation);
+		return metrics != null ? metrics.getPercentileMillis(thePercentile) : 0;
+	}
+
+	/**
+	 * Returns all recorded operations, keyed by "[resource type].[operation]" (where the resource type is "*" for
+	 * operations which are not specific to a resource type)
+	 */
+	public Map<String, OperationMetrics> getOperations() {
+		return Collections.unmodifiableMap(myOperations);
+	}
+
+	@Override
+	public String[] getOperationSummaries() {
+		List<String> keys = new ArrayList<String>(myOperations.keySet());
+		Collections.sort(keys);
+		String[] retVal = new String[keys.size()];
+		for (int i = 0; i < keys.size(); i++) {
+			retVal[i] = keys.get(i) + " " + myOperations.get(keys.get(i)).toString();
+		}
+		return retVal;
+	}
+
+	@Override
+	public long getRequestCount() {
+		long retVal = 0;
+		for (OperationMetrics next : myOperations.values()) {
+			retVal += next.getCount();
+		}
+		return retVal;
+	}
+
+	@Override
+	public boolean incomingRequestPostProcessed(RequestDetails theRequestDetails, HttpServletRequest theRequest, HttpServletResponse theResponse) throws AuthenticationException {
+		OperationMetrics metrics = getOrCreateOperation(theRequestDetails);
+		metrics.myInFlight.incrementAndGet();
+		theRequest.setAttribute(ATTR_OPERATION, metrics);
+		return true;
+	}
+
+	@Override
+	public void processingCompleted(RequestDetails theRequestDetails, HttpServletRequest theServletRequest, HttpServletResponse theServletResponse) {
+		OperationMetrics metrics = (OperationMetrics) theServletRequest.getAttribute(ATTR_OPERATION);
+		if (metrics != null) {
+			metrics.myInFlight.decrementAndGet();
+		} else {
+			// The request failed before it was matched to a server method, or another interceptor stopped it
+			metrics = getOrCreateOperation(theRequestDetails);
+		}
+
+		metrics.record(theRequestDetails, theServletResponse.getStatus());
+	}
+
+	/**
+	 * Registers this interceptor with the platform MBean server using the configured {@link #setObjectName(String)
+	 * object name}
+	 */
+	public synchronized void registerMBean() {
+		if (myRegisteredName != null) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName(myObjectName);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			myRegisteredName = name;
+		} catch (JMException e) {
+			throw new InternalErrorException("Failed to register MBean " + myObjectName, e);
+		}
+	}
+
+	@Override
+	public void reset() {
+		for (OperationMetrics next : myOperations.values()) {
+			next.reset();
+		}
+	}
+
+	/**
+	 * Sets the JMX object name used by {@link #registerMBean()}. Defaults to {@link #DEFAULT_OBJECT_NAME}, which must be
+	 * changed if more than one server in the same JVM registers a metrics interceptor.
+	 */
+	public void setObjectName(String theObjectName) {
+		Validate.notBlank(theObjectName, "theObjectName must not be blank");
+		myObjectName = theObjectName;
+	}
+
+	/**
+	 * Removes this interceptor from the platform MBean server, if it has been registered
+	 */
+	public synchronized void unregisterMBean() {
+		if (myRegisteredName == null) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(myRegisteredName)) {
+				server.unregisterMBean(myRegisteredName);
+			}
+		} catch (JMException e) {
+			ourLog.warn("Failed to unregister MBean " + myRegisteredName, e);
+		}
+		myRegisteredName = null;
+	}
+
+	private OperationMetrics getOrCreateOperation(RequestDetails theRequestDetails) {
+		String key = toKey(theRequestDetails.getResourceName(), toOperationCode(theRequestDetails));
+		OperationMetrics retVal = myOperations.get(key);
+		if (retVal == null) {
+			OperationMetrics newMetrics = new OperationMetrics();
+			retVal = myOperations.putIfAbsent(key, newMetrics);
+			if (retVal == null) {
+				retVal = newMetrics;
+			}
+		}
+		return retVal;
+	}
+
+	private static String toKey(String theResourceType, String theOperation) {
+		return (theResourceType != null ? theResourceType : "*") + '.' + theOperation;
+	}
+
+	private static String toOperationCode(RequestDetails theRequestDetails) {
+		if (theRequestDetails.getResourceOperationType() != null) {
+			return theRequestDetails.getResourceOperationType().getCode();
+		}
+		if (theRequestDetails.getSystemOperationType() != null) {
+			return theRequestDetails.getSystemOperationType().getCode();
+		}
+		if (theRequestDetails.getOtherOperationType() != null) {
+			return theRequestDetails.getOtherOperationType().getCode();
+		}
+		return "unknown";
+	}
+
+	/**
+	 * Metrics for a single resource type and operation
+	 */
+	public static class OperationMetrics {
+		private final AtomicLongArray myBuckets = new AtomicLongArray(BUCKET_UPPER_BOUNDS_MILLIS.length + 1);
+		private final AtomicLong myCount = new AtomicLong();
+		private final AtomicLong myErrorCount = new AtomicLong();
+		private final AtomicLong myInFlight = new AtomicLong();
+		private final AtomicLong myMaxMillis = new AtomicLong();
+		private final AtomicLong myMaxResponseSize = new AtomicLong();
+		private final AtomicLongArray myPhaseNanos = new AtomicLongArray(RequestPhaseEnum.values().length);
+		private final AtomicLong myTotalMillis = new AtomicLong();
+		private final AtomicLong myTotalResponseSize = new AtomicLong();
+
+		/**
+		 * Returns the number of requests in each histogram bucket. The returned array has one more element than
+		 * {@link MetricsInterceptor#BUCKET_UPPER_BOUNDS_MILLIS}, the last one being the overflow bucket.
+		 */
+		public long[] getBucketCounts() {
+			long[] retVal = new long[myBuckets.length()];
+			for (int i = 0; i < retVal.length; i++) {
+				retVal[i] = myBuckets.get(i);
+			}
+			return retVal;
+		}
+
+		public long getCount() {
+			return myCount.get();
+		}
+
+		/**
+		 * Returns the number of requests which completed with an HTTP status of 400 or above
+		 */
+		public long getErrorCount() {
+			return myErrorCount.get();
+		}
+
+		public long getInFlightCount() {
+			return myInFlight.get();
+		}
+
+		public long getMaxMillis() {
+			return myMaxMillis.get();
+		}
+
+		public long getMaxResponseSize() {
+			return myMaxResponseSize.get();
+		}
+
+		public double getMeanMillis() {
+			long count = myCount.get();
+			return count > 0 ? ((double) myTotalMillis.get()) / count : 0;
+		}
+
+		/**
+		 * Returns the mean time (in milliseconds) spent in the given phase of processing, over all requests
+		 */
+		public double getMeanPhaseMillis(RequestPhaseEnum thePhase) {
+			long count = myCount.get();
+			return count > 0 ? ((double) myPhaseNanos.get(thePhase.ordinal())) / count / TimeUnit.MILLISECONDS.toNanos(1) : 0;
+		}
+
+		public double getMeanResponseSize() {
+			long count = myCount.get();
+			return count > 0 ? ((double) myTotalResponseSize.get()) / count : 0;
+		}
+
+		/**
+		 * Returns an estimate of the given percentile (0-100). The estimate is the upper bound of the histogram bucket
+		 * which contains the percentile, or the maximum recorded value if that is lower.
+		 */
+		public long getPercentileMillis(double thePercentile) {
+			long[] buckets = getBucketCounts();
+			long total = 0;
+			for (long next : buckets) {
+				total += next;
+			}
+			if (total == 0) {
+				return 0;
+			}
+
+			long threshold = (long) Math.ceil(total * (thePercentile / 100.0));
+			long seen = 0;
+			for (int i = 0; i < BUCKET_UPPER_BOUNDS_MILLIS.length; i++) {
+				seen += buckets[i];
+				if (seen >= threshold) {
+					return Math.min(BUCKET_UPPER_BOUNDS_MILLIS[i], getMaxMillis());
+				}
+			}
+			return getMaxMillis();
+		}
+
+		public long getTotalMillis() {
+			return myTotalMillis.get();
+		}
+
+		public long getTotalResponseSize() {
+			return myTotalResponseSize.get();
+		}
+
+		void record(RequestDetails theRequestDetails, int theStatus) {
+			long millis = TimeUnit.NANOSECONDS.toMillis(theRequestDetails.getElapsedTimeNanos());
+			myCount.incrementAndGet();
+			myTotalMillis.addAndGet(millis);
+			setIfGreater(myMaxMillis, millis);
+
+			if (theStatus >= 400) {
+				myErrorCount.incrementAndGet();
+			}
+
+			for (RequestPhaseEnum next : RequestPhaseEnum.values()) {
+				myPhaseNanos.addAndGet(next.ordinal(), theRequestDetails.getPhaseTimeNanos(next));
+			}
+
+			long responseSize = theRequestDetails.getResponseSize();
+			if (responseSize > 0) {
+				myTotalResponseSize.addAndGet(responseSize);
+				setIfGreater(myMaxResponseSize, responseSize);
+			}
+
+			int bucket = BUCKET_UPPER_BOUNDS_MILLIS.length;
+			for (int i = 0; i < BUCKET_UPPER_BOUNDS_MILLIS.length; i++) {
+				if (millis <= BUCKET_UPPER_BOUNDS_MILLIS[i]) {
+					bucket = i;
+					break;
+				}
+			}
+			myBuckets.incrementAndGet(bucket);
+		}
+
+		void reset() {
+			for (int i = 0; i < myBuckets.length(); i++) {
+				myBuckets.set(i, 0);
+			}
+			for (int i = 0; i < myPhaseNanos.length(); i++) {
+				myPhaseNanos.set(i, 0);
+			}
+			myCount.set(0);
+			myErrorCount.set(0);
+			myMaxMillis.set(0);
+			myMaxResponseSize.set(0);
+			myTotalMillis.set(0);
+			myTotalResponseSize.set(0);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder b = new StringBuilder();
+			b.append("count=").append(getCount());
+			b.append(" errors=").append(getErrorCount());
+			b.append(" inFlight=").append(getInFlightCount());
+			b.append(" mean=").append(Math.round(getMeanMillis())).append("ms");
+			b.append(" p50=").append(getPercentileMillis(50)).append("ms");
+			b.append(" p95=").append(getPercentileMillis(95)).append("ms");
+			b.append(" p99=").append(getPercentileMillis(99)).append("ms");
+			b.append(" max=").append(getMaxMillis()).append("ms");
+			for (RequestPhaseEnum next : RequestPhaseEnum.values()) {
+				b.append(' ').append(next.name().toLowerCase()).append('=').append(String.format("%.2f", getMeanPhaseMillis(next))).append("ms");
+			}
+			b.append(" meanSize=").append(Math.round(getMeanResponseSize()));
+			b.append(" maxSize=").append(getMaxResponseSize());
+			return b.toString();
+		}
+
+		private static void setIfGreater(AtomicLong theValue, long theCandidate) {
+			long current;
+			do {
+				current = theValue.get();
+			} while (theCandidate > current && !theValue.compareAndSet(current, theCandidate));
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+package ca.uhn.fhir.rest.server.interceptor;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * JMX management interface of {@link MetricsInterceptor}
+ */
+public interface MetricsInterceptorMBean {
+
+	/**
+	 * Returns the number of requests which are currently being processed
+	 */
+	long getInFlightCount();
+
+	/**
+	 * Returns the number of times the given operation has been performed on the given resource type (use
+	 * <code>null</code> for operations which are not specific to a resource type)
+	 */
+	long getOperationCount(String theResourceType, String theOperation);
+
+	/**
+	 * Returns an estimate (the upper bound of the histogram bucket) of the given latency percentile, e.g. 95 or 99
+	 */
+	long getOperationPercentileMillis(String theResourceType, String theOperation, double thePercentile);
+
+	/**
+	 * Returns one line per resource type and operation with request counts, latencies, time spent in each phase of
+	 * processing and response sizes
+	 */
+	String[] getOperationSummaries();
+
+	/**
+	 * Returns the total number of requests which have been completed
+	 */
+	long getRequestCount();
+
+	/**
+	 * Clears all collected metrics (requests which are in flight are still counted as such)
+	 */
+	void reset();
+
+}
@@ -88,7 +88,8 @@ public class FhirTerser {
 			@SuppressWarnings("unchecked")
 			@Override
 			public void acceptElement(IBase theElement, BaseRuntimeChildDefinition theChildDefinition, BaseRuntimeElementDefinition<?> theDefinition) {
-				if (theElement == null || theElement.isEmpty()) {
+				// Child elements are only visited if they are non-empty, so only resources need to be checked here
+				if (theElement == null || (theChildDefinition == null && theElement.isEmpty())) {
 					return;
 				}
 
@@ -28,6 +28,7 @@ import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.concurrent.Future;
 
 public class ReflectionUtil {
 
@@ -64,7 +65,7 @@ public class ReflectionUtil {
 	@SuppressWarnings({ "rawtypes" })
 	public static Class<?> getGenericCollectionTypeOfMethodReturnType(Method theMethod) {
 		Class<?> type;
-		Type genericReturnType = theMethod.getGenericReturnType();
+		Type genericReturnType = getMethodGenericReturnType(theMethod);
 		if (!(genericReturnType instanceof ParameterizedType)) {
 			return null;
 		}
@@ -85,6 +86,49 @@ public class ReflectionUtil {
 		return type;
 	}
 
+	/**
+	 * Returns the generic return type of the given method, or if the method returns a {@link Future} (e.g.
+	 * <code>Future&lt;List&lt;Patient&gt;&gt;</code>), the generic type that the future will produce (e.g.
+	 * <code>List&lt;Patient&gt;</code>)
+	 */
+	public static Type getMethodGenericReturnType(Method theMethod) {
+		Type genericReturnType = theMethod.getGenericReturnType();
+		if (genericReturnType instanceof ParameterizedType) {
+			ParameterizedType parameterized = (ParameterizedType) genericReturnType;
+			if (isFuture(parameterized.getRawType()) && parameterized.getActualTypeArguments().length == 1) {
+				return parameterized.getActualTypeArguments()[0];
+			}
+		}
+		return genericReturnType;
+	}
+
+	/**
+	 * Returns the raw return type of the given method, or if the method returns a {@link Future} (e.g.
+	 * <code>Future&lt;Patient&gt;</code>), the raw type that the future will produce (e.g. <code>Patient</code>)
+	 */
+	@SuppressWarnings("rawtypes")
+	public static Class<?> getMethodReturnType(Method theMethod) {
+		if (!isFuture(theMethod.getReturnType())) {
+			return theMethod.getReturnType();
+		}
+		Type type = getMethodGenericReturnType(theMethod);
+		if (type instanceof ParameterizedType) {
+			type = ((ParameterizedType) type).getRawType();
+		} else if (type instanceof TypeVariable<?>) {
+			type = ((TypeVariable) type).getBounds()[0];
+		} else if (type instanceof WildcardType) {
+			type = ((WildcardType) type).getUpperBounds()[0];
+		}
+		if (type instanceof Class<?> && !isFuture(type)) {
+			return (Class<?>) type;
+		}
+		return Object.class;
+	}
+
+	private static boolean isFuture(Type theType) {
+		return theType instanceof Class<?> && Future.class.isAssignableFrom((Class<?>) theType);
+	}
+
 	public static LinkedHashSet<Method> getDeclaredMethods(Class<?> theClazz) {
 		LinkedHashSet<Method> retVal = new LinkedHashSet<Method>();
 		for (Method next : theClazz.getDeclaredMethods()) {
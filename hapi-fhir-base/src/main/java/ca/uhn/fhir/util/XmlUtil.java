@@ -41,7 +41,9 @@ import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -195,6 +197,66 @@ public class XmlUtil {
 		return er;
 	}
 
+	public static XMLStreamReader createXmlStreamReader(Reader reader) throws FactoryConfigurationError, XMLStreamException {
+		XMLInputFactory inputFactory = getOrCreateInputFactory();
+		XMLStreamReader er = inputFactory.createXMLStreamReader(reader);
+		return er;
+	}
+
+	/**
+	 * Writes the current event of the given stream reader to the given writer, for the (rare) cases where part of a
+	 * document needs to be retained as markup, such as the contents of a narrative
+	 */
+	public static void copyXmlEvent(XMLStreamReader theReader, XMLStreamWriter theWriter) throws XMLStreamException {
+		switch (theReader.getEventType()) {
+		case XMLStreamConstants.START_ELEMENT: {
+			theWriter.writeStartElement(defaultString(theReader.getPrefix()), theReader.getLocalName(), defaultString(theReader.getNamespaceURI()));
+			for (int i = 0; i < theReader.getNamespaceCount(); i++) {
+				String prefix = theReader.getNamespacePrefix(i);
+				if (prefix == null || prefix.length() == 0) {
+					theWriter.writeDefaultNamespace(theReader.getNamespaceURI(i));
+				} else {
+					theWriter.writeNamespace(prefix, theReader.getNamespaceURI(i));
+				}
+			}
+			for (int i = 0; i < theReader.getAttributeCount(); i++) {
+				String namespace = theReader.getAttributeNamespace(i);
+				if (namespace == null || namespace.length() == 0) {
+					theWriter.writeAttribute(theReader.getAttributeLocalName(i), theReader.getAttributeValue(i));
+				} else {
+					theWriter.writeAttribute(defaultString(theReader.getAttributePrefix(i)), namespace, theReader.getAttributeLocalName(i), theReader.getAttributeValue(i));
+				}
+			}
+			break;
+		}
+		case XMLStreamConstants.END_ELEMENT:
+			theWriter.writeEndElement();
+			break;
+		case XMLStreamConstants.CDATA:
+			theWriter.writeCData(theReader.getText());
+			break;
+		case XMLStreamConstants.COMMENT:
+			theWriter.writeComment(theReader.getText());
+			break;
+		case XMLStreamConstants.PROCESSING_INSTRUCTION:
+			theWriter.writeProcessingInstruction(theReader.getPITarget(), theReader.getPIData());
+			break;
+		case XMLStreamConstants.CHARACTERS:
+		case XMLStreamConstants.SPACE:
+			theWriter.writeCharacters(theReader.getTextCharacters(), theReader.getTextStart(), theReader.getTextLength());
+			break;
+		case XMLStreamConstants.ENTITY_REFERENCE:
+			theWriter.writeCharacters(theReader.getText());
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static String defaultString(String theString) {
+		return theString != null ? theString : "";
+	}
+
 	private static XMLInputFactory getOrCreateInputFactory() throws FactoryConfigurationError {
 		if (ourInputFactory == null) {
 			XMLInputFactory inputFactory = XMLInputFactory.newInstance();
@@ -289,6 +351,25 @@ public class XmlUtil {
 		}
 	}
 
+	/**
+	 * Creates a stream reader which reads directly from bytes, detecting the character encoding from the byte order
+	 * mark or XML declaration (and defaulting to UTF-8)
+	 */
+	public static XMLStreamReader createXmlStreamReader(InputStream theInputStream) throws FactoryConfigurationError, XMLStreamException {
+		XMLInputFactory inputFactory = getOrCreateInputFactory();
+		XMLStreamReader er = inputFactory.createXMLStreamReader(theInputStream);
+		return er;
+	}
+
+	/**
+	 * Creates a stream writer which writes UTF-8 bytes directly to the given stream
+	 */
+	public static XMLStreamWriter createXmlStreamWriter(OutputStream theOutputStream) throws FactoryConfigurationError, XMLStreamException {
+		XMLOutputFactory outputFactory = getOrCreateOutputFactory();
+		XMLStreamWriter retVal = outputFactory.createXMLStreamWriter(theOutputStream, "UTF-8");
+		return retVal;
+	}
+
 	public static XMLStreamWriter createXmlStreamWriter(Writer theWriter) throws FactoryConfigurationError, XMLStreamException {
 		XMLOutputFactory outputFactory = getOrCreateOutputFactory();
 		XMLStreamWriter retVal = outputFactory.createXMLStreamWriter(theWriter);
@@ -0,0 +1,108 @@
+package ca.uhn.fhir.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures the number of bytes allocated on the heap by a thread or a group of threads, using the HotSpot extension
+ * to {@link ThreadMXBean}. On JVMs which do not provide this extension every method returns <code>-1</code>.
+ */
+public class AllocationCounter {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(AllocationCounter.class);
+	private static final com.sun.management.ThreadMXBean ourThreadBean;
+
+	static {
+		com.sun.management.ThreadMXBean threadBean = null;
+		try {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				threadBean = (com.sun.management.ThreadMXBean) bean;
+				if (!threadBean.isThreadAllocatedMemorySupported()) {
+					threadBean = null;
+				} else if (!threadBean.isThreadAllocatedMemoryEnabled()) {
+					threadBean.setThreadAllocatedMemoryEnabled(true);
+				}
+			}
+		} catch (Throwable e) {
+			ourLog.info("Thread allocation counters are not available on this JVM: {}", e.toString());
+			threadBean = null;
+		}
+		ourThreadBean = threadBean;
+	}
+
+	private final String myThreadNamePrefix;
+	private Map<Long, Long> myStart;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param theThreadNamePrefix
+	 *            Only threads whose name starts with this prefix are counted
+	 */
+	public AllocationCounter(String theThreadNamePrefix) {
+		myThreadNamePrefix = theThreadNamePrefix;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the matching threads since {@link #start()} was called, or
+	 * <code>-1</code> if this can not be measured. Threads which started after {@link #start()} are counted from
+	 * their creation, but the allocations of threads which have since terminated are lost.
+	 */
+	public long getAllocatedBytesSinceStart() {
+		if (myStart == null) {
+			return -1;
+		}
+		Map<Long, Long> now = snapshot();
+		long retVal = 0;
+		for (Map.Entry<Long, Long> next : now.entrySet()) {
+			Long before = myStart.get(next.getKey());
+			retVal += next.getValue() - (before != null ? before : 0L);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Records the current allocation counts of the matching threads
+	 */
+	public void start() {
+		myStart = isSupported() ? snapshot() : null;
+	}
+
+	private Map<Long, Long> snapshot() {
+		Map<Long, Long> retVal = new HashMap<Long, Long>();
+		ThreadInfo[] infos = ourThreadBean.getThreadInfo(ourThreadBean.getAllThreadIds());
+		for (ThreadInfo next : infos) {
+			if (next == null || !next.getThreadName().startsWith(myThreadNamePrefix)) {
+				continue;
+			}
+			long bytes = ourThreadBean.getThreadAllocatedBytes(next.getThreadId());
+			if (bytes != -1) {
+				retVal.put(next.getThreadId(), bytes);
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the total number of bytes allocated so far by the calling thread, or <code>-1</code> if this can not
+	 * be measured
+	 */
+	public static long getCurrentThreadAllocatedBytes() {
+		if (ourThreadBean == null) {
+			return -1;
+		}
+		return ourThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Returns <code>true</code> if allocations can be measured on this JVM
+	 */
+	public static boolean isSupported() {
+		return ourThreadBean != null;
+	}
+
+}
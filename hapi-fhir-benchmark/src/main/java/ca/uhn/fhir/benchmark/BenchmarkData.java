@@ -0,0 +1,105 @@
+package ca.uhn.fhir.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.Bundle;
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.dstu.composite.AddressDt;
+import ca.uhn.fhir.model.dstu.composite.HumanNameDt;
+import ca.uhn.fhir.model.dstu.resource.Patient;
+import ca.uhn.fhir.model.dstu.valueset.AddressUseEnum;
+import ca.uhn.fhir.model.dstu.valueset.AdministrativeGenderCodesEnum;
+import ca.uhn.fhir.model.dstu.valueset.ContactSystemEnum;
+import ca.uhn.fhir.model.dstu.valueset.ContactUseEnum;
+import ca.uhn.fhir.model.dstu.valueset.IdentifierUseEnum;
+import ca.uhn.fhir.model.dstu.valueset.NameUseEnum;
+import ca.uhn.fhir.model.primitive.DateTimeDt;
+import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.model.primitive.StringDt;
+
+/**
+ * Creates the resources used as benchmark inputs. These are populated roughly as a typical registration system
+ * would populate them, so that their encoded size is realistic.
+ */
+public class BenchmarkData {
+
+	/**
+	 * The family names given to {@link #newSeedPatient(int) seed patients} are this prefix followed by a number
+	 * between <code>0</code> and {@link #SEED_FAMILY_COUNT}<code> - 1</code>
+	 */
+	public static final String SEED_FAMILY_PREFIX = "Seed";
+
+	public static final int SEED_FAMILY_COUNT = 10;
+
+	/**
+	 * The family name given to patients created by the benchmarks themselves (as opposed to seed patients), so that
+	 * they do not affect the results of searches
+	 */
+	public static final String CREATED_FAMILY = "Created";
+
+	private BenchmarkData() {
+		// non instantiable
+	}
+
+	/**
+	 * Returns a bundle containing the given number of patients
+	 */
+	public static Bundle newBundle(FhirContext theContext, int thePatientCount) {
+		List<IResource> patients = new ArrayList<IResource>();
+		for (int i = 0; i < thePatientCount; i++) {
+			Patient patient = newPatient(SEED_FAMILY_PREFIX + (i % SEED_FAMILY_COUNT), i);
+			patient.setId(new IdDt("Patient", Integer.toString(i + 1), "1"));
+			patients.add(patient);
+		}
+		Bundle retVal = Bundle.withResources(patients, theContext, "http://example.com/fhir");
+		retVal.getTitle().setValue("Search results");
+		return retVal;
+	}
+
+	/**
+	 * Returns a new patient with the given family name
+	 * 
+	 * @param theNumber
+	 *            A number used to vary the other values of the patient
+	 */
+	public static Patient newPatient(String theFamily, long theNumber) {
+		Patient retVal = new Patient();
+		retVal.addIdentifier().setUse(IdentifierUseEnum.OFFICIAL).setSystem("urn:oid:2.16.840.1.113883.19.5").setValue("MRN" + theNumber).setLabel("Medical record number");
+		retVal.addIdentifier().setUse(IdentifierUseEnum.SECONDARY).setSystem("urn:oid:2.16.840.1.113883.4.1").setValue(Long.toString(100000000L + theNumber));
+
+		HumanNameDt name = retVal.addName();
+		name.setUse(NameUseEnum.OFFICIAL);
+		name.addFamily(theFamily);
+		name.addGiven("Given" + theNumber);
+		name.addGiven("Middle");
+		name.addPrefix("Mr.");
+
+		retVal.setGender(AdministrativeGenderCodesEnum.M);
+		retVal.setBirthDate(new DateTimeDt("19" + (10 + theNumber % 90) + "-0" + (1 + theNumber % 9) + "-1" + (theNumber % 10)));
+
+		AddressDt address = retVal.addAddress();
+		address.setUse(AddressUseEnum.HOME);
+		address.addLine(theNumber + " Benchmark Street");
+		address.addLine("Apartment " + (theNumber % 100));
+		address.setCity("Toronto");
+		address.setState("ON");
+		address.setZip("M5G 2C4");
+		address.setCountry("Canada");
+
+		retVal.addTelecom().setSystem(ContactSystemEnum.PHONE).setUse(ContactUseEnum.HOME).setValue("416-555-" + (1000 + theNumber % 9000));
+		retVal.addTelecom().setSystem(ContactSystemEnum.EMAIL).setValue("patient" + theNumber + "@example.com");
+
+		retVal.addUndeclaredExtension(false, "http://example.com/fhir/extensions#preferredPharmacy", new StringDt("Pharmacy " + (theNumber % 50)));
+		return retVal;
+	}
+
+	/**
+	 * Returns a new patient whose family name is one of the {@link #SEED_FAMILY_PREFIX seed family names}
+	 */
+	public static Patient newSeedPatient(int theNumber) {
+		return newPatient(SEED_FAMILY_PREFIX + (theNumber % SEED_FAMILY_COUNT), theNumber);
+	}
+
+}
@@ -0,0 +1,145 @@
+package ca.uhn.fhir.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measurements taken by {@link BenchmarkRunner} for a single benchmark
+ */
+public class BenchmarkResult {
+
+	private static final String ROW_FORMAT = "%-36s %7s %12s %9s %9s %9s %9s %12s %12s %7s";
+
+	private final long myClientAllocatedBytes;
+	private final long myElapsedNanos;
+	private final long myErrorCount;
+	private final Throwable myFirstError;
+	private final LatencyHistogram myLatencies;
+	private final String myName;
+	private final long myOperationCount;
+	private final long myServerAllocatedBytes;
+	private final int myThreadCount;
+
+	BenchmarkResult(String theName, int theThreadCount, long theOperationCount, long theErrorCount, Throwable theFirstError, long theElapsedNanos, LatencyHistogram theLatencies, long theClientAllocatedBytes, long theServerAllocatedBytes) {
+		myName = theName;
+		myThreadCount = theThreadCount;
+		myOperationCount = theOperationCount;
+		myErrorCount = theErrorCount;
+		myFirstError = theFirstError;
+		myElapsedNanos = theElapsedNanos;
+		myLatencies = theLatencies;
+		myClientAllocatedBytes = theClientAllocatedBytes;
+		myServerAllocatedBytes = theServerAllocatedBytes;
+	}
+
+	/**
+	 * Returns the mean number of bytes allocated by the benchmark threads for each operation, or <code>-1</code> if
+	 * this could not be measured
+	 */
+	public double getClientBytesPerOperation() {
+		return perOperation(myClientAllocatedBytes);
+	}
+
+	public long getElapsedNanos() {
+		return myElapsedNanos;
+	}
+
+	public long getErrorCount() {
+		return myErrorCount;
+	}
+
+	/**
+	 * Returns the first exception thrown by the operation, or <code>null</code> if none failed
+	 */
+	public Throwable getFirstError() {
+		return myFirstError;
+	}
+
+	/**
+	 * Returns the latencies of the individual operations, or <code>null</code> if latencies were not recorded
+	 */
+	public LatencyHistogram getLatencies() {
+		return myLatencies;
+	}
+
+	public String getName() {
+		return myName;
+	}
+
+	/**
+	 * Returns the number of operations which completed (successfully or not) during the measurement
+	 */
+	public long getOperationCount() {
+		return myOperationCount;
+	}
+
+	/**
+	 * Returns the mean number of bytes allocated by the server's request threads for each operation, or
+	 * <code>-1</code> if this was not measured
+	 */
+	public double getServerBytesPerOperation() {
+		return perOperation(myServerAllocatedBytes);
+	}
+
+	public int getThreadCount() {
+		return myThreadCount;
+	}
+
+	/**
+	 * Returns the number of operations completed per second
+	 */
+	public double getThroughput() {
+		if (myElapsedNanos == 0) {
+			return 0;
+		}
+		return myOperationCount / (myElapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+	}
+
+	private double perOperation(long theBytes) {
+		if (theBytes < 0 || myOperationCount == 0) {
+			return -1;
+		}
+		return (double) theBytes / myOperationCount;
+	}
+
+	/**
+	 * Formats this result as a row of the table headed by {@link #formatHeader()}
+	 */
+	public String formatRow() {
+		String p50 = "-";
+		String p90 = "-";
+		String p99 = "-";
+		String max = "-";
+		if (myLatencies != null) {
+			p50 = formatMillis(myLatencies.getPercentileNanos(50));
+			p90 = formatMillis(myLatencies.getPercentileNanos(90));
+			p99 = formatMillis(myLatencies.getPercentileNanos(99));
+			max = formatMillis(myLatencies.getMaxNanos());
+		}
+		return String.format(ROW_FORMAT, myName, myThreadCount, String.format("%.1f", getThroughput()), p50, p90, p99, max, formatBytes(getClientBytesPerOperation()), formatBytes(getServerBytesPerOperation()), myErrorCount);
+	}
+
+	@Override
+	public String toString() {
+		return formatRow().replaceAll(" +", " ");
+	}
+
+	/**
+	 * Returns the header for a table of {@link #formatRow() result rows}. Latencies are in milliseconds, and
+	 * allocations in bytes per operation.
+	 */
+	public static String formatHeader() {
+		return String.format(ROW_FORMAT, "Benchmark", "Threads", "Ops/sec", "p50 ms", "p90 ms", "p99 ms", "Max ms", "Client B/op", "Server B/op", "Errors");
+	}
+
+	private static String formatBytes(double theBytes) {
+		if (theBytes < 0) {
+			return "-";
+		}
+		return String.format("%.0f", theBytes);
+	}
+
+	private static String formatMillis(long theNanos) {
+		return String.format("%.3f", theNanos / 1000000.0);
+	}
+
+}
@@ -0,0 +1,209 @@
+package ca.uhn.fhir.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Runs an {@link IBenchmarkOperation} repeatedly from a fixed number of threads: first for a warmup period, whose
+ * results are discarded, and then for a measurement period. Each thread invokes the operation back to back, so the
+ * concurrency (rather than the request rate) is what is controlled.
+ * <p>
+ * By default the latency of each invocation is recorded. For very cheap operations (such as parsing a date) the cost
+ * of reading the clock would distort the result, so {@link #setOperationsPerCheck(int)} may be used to invoke the
+ * operation several times between clock reads, in which case latencies are not recorded.
+ * </p>
+ */
+public class BenchmarkRunner {
+
+	private long myMeasurementMillis = 10000;
+	private int myOperationsPerCheck = 1;
+	private String myServerThreadNamePrefix;
+	private int myThreadCount = 1;
+	private long myWarmupMillis = 5000;
+
+	public long getMeasurementMillis() {
+		return myMeasurementMillis;
+	}
+
+	public int getOperationsPerCheck() {
+		return myOperationsPerCheck;
+	}
+
+	public String getServerThreadNamePrefix() {
+		return myServerThreadNamePrefix;
+	}
+
+	public int getThreadCount() {
+		return myThreadCount;
+	}
+
+	public long getWarmupMillis() {
+		return myWarmupMillis;
+	}
+
+	/**
+	 * Runs the given operation, and returns the measurements taken after warmup
+	 */
+	public BenchmarkResult run(String theName, IBenchmarkOperation theOperation) throws InterruptedException {
+		Validate.notNull(theOperation, "Operation must not be null");
+
+		if (myWarmupMillis > 0) {
+			runPhase(theOperation, myWarmupMillis);
+		}
+
+		AllocationCounter serverAllocations = null;
+		if (myServerThreadNamePrefix != null) {
+			serverAllocations = new AllocationCounter(myServerThreadNamePrefix);
+			serverAllocations.start();
+		}
+
+		Worker[] workers = runPhase(theOperation, myMeasurementMillis);
+
+		long serverBytes = serverAllocations != null ? serverAllocations.getAllocatedBytesSinceStart() : -1;
+		long clientBytes = 0;
+		long ops = 0;
+		long errors = 0;
+		long elapsed = 0;
+		Throwable firstError = null;
+		LatencyHistogram latencies = myOperationsPerCheck == 1 ? new LatencyHistogram() : null;
+		for (Worker next : workers) {
+			ops += next.myOperations;
+			errors += next.myErrors;
+			elapsed = Math.max(elapsed, next.myElapsedNanos);
+			if (firstError == null) {
+				firstError = next.myFirstError;
+			}
+			if (clientBytes != -1) {
+				clientBytes = next.myAllocatedBytes != -1 ? clientBytes + next.myAllocatedBytes : -1;
+			}
+			if (latencies != null) {
+				latencies.add(next.myLatencies);
+			}
+		}
+
+		return new BenchmarkResult(theName, myThreadCount, ops, errors, firstError, elapsed, latencies, clientBytes, serverBytes);
+	}
+
+	private Worker[] runPhase(IBenchmarkOperation theOperation, long theMillis) throws InterruptedException {
+		CountDownLatch startLatch = new CountDownLatch(1);
+		Worker[] workers = new Worker[myThreadCount];
+		Thread[] threads = new Thread[myThreadCount];
+		for (int i = 0; i < myThreadCount; i++) {
+			workers[i] = new Worker(theOperation, i, startLatch, TimeUnit.MILLISECONDS.toNanos(theMillis));
+			threads[i] = new Thread(workers[i], "benchmark-client-" + i);
+			threads[i].start();
+		}
+		startLatch.countDown();
+		for (Thread next : threads) {
+			next.join();
+		}
+		return workers;
+	}
+
+	/**
+	 * Sets the length of the measurement period in milliseconds (default is 10000)
+	 */
+	public void setMeasurementMillis(long theMeasurementMillis) {
+		Validate.isTrue(theMeasurementMillis > 0, "Measurement period must be positive");
+		myMeasurementMillis = theMeasurementMillis;
+	}
+
+	/**
+	 * Sets the number of times the operation is invoked between reads of the clock (default is 1). If this is more
+	 * than 1, latencies are not recorded.
+	 */
+	public void setOperationsPerCheck(int theOperationsPerCheck) {
+		Validate.isTrue(theOperationsPerCheck > 0, "Operations per check must be positive");
+		myOperationsPerCheck = theOperationsPerCheck;
+	}
+
+	/**
+	 * If set, the heap allocations of all threads whose names start with the given prefix (typically the request
+	 * threads of an embedded server) are also measured
+	 */
+	public void setServerThreadNamePrefix(String theServerThreadNamePrefix) {
+		myServerThreadNamePrefix = theServerThreadNamePrefix;
+	}
+
+	/**
+	 * Sets the number of threads which invoke the operation concurrently (default is 1)
+	 */
+	public void setThreadCount(int theThreadCount) {
+		Validate.isTrue(theThreadCount > 0, "Thread count must be positive");
+		myThreadCount = theThreadCount;
+	}
+
+	/**
+	 * Sets the length of the warmup period in milliseconds (default is 5000), or <code>0</code> for no warmup
+	 */
+	public void setWarmupMillis(long theWarmupMillis) {
+		Validate.isTrue(theWarmupMillis >= 0, "Warmup period must not be negative");
+		myWarmupMillis = theWarmupMillis;
+	}
+
+	private class Worker implements Runnable {
+
+		private long myAllocatedBytes;
+		private final long myDurationNanos;
+		private long myElapsedNanos;
+		private long myErrors;
+		private Throwable myFirstError;
+		private final LatencyHistogram myLatencies = new LatencyHistogram();
+		private final IBenchmarkOperation myOperation;
+		private long myOperations;
+		private final CountDownLatch myStartLatch;
+		private final int myThreadIndex;
+
+		public Worker(IBenchmarkOperation theOperation, int theThreadIndex, CountDownLatch theStartLatch, long theDurationNanos) {
+			myOperation = theOperation;
+			myThreadIndex = theThreadIndex;
+			myStartLatch = theStartLatch;
+			myDurationNanos = theDurationNanos;
+		}
+
+		@Override
+		public void run() {
+			try {
+				myStartLatch.await();
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			int perCheck = myOperationsPerCheck;
+			long allocatedBefore = AllocationCounter.getCurrentThreadAllocatedBytes();
+			long start = System.nanoTime();
+			long deadline = start + myDurationNanos;
+			long now = start;
+			long iteration = 0;
+			while (now < deadline) {
+				for (int i = 0; i < perCheck; i++) {
+					try {
+						myOperation.execute(myThreadIndex, iteration);
+					} catch (Throwable e) {
+						myErrors++;
+						if (myFirstError == null) {
+							myFirstError = e;
+						}
+					}
+					iteration++;
+				}
+				long end = System.nanoTime();
+				if (perCheck == 1) {
+					myLatencies.record(end - now);
+					// Don't count the time spent recording against the next invocation
+					end = System.nanoTime();
+				}
+				now = end;
+			}
+			myElapsedNanos = now - start;
+			myOperations = iteration;
+
+			long allocatedAfter = AllocationCounter.getCurrentThreadAllocatedBytes();
+			myAllocatedBytes = allocatedBefore != -1 && allocatedAfter != -1 ? allocatedAfter - allocatedBefore : -1;
+		}
+
+	}
+
+}
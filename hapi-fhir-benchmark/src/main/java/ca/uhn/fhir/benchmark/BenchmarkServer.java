@@ -0,0 +1,84 @@
+package ca.uhn.fhir.benchmark;
+
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.server.RestfulServer;
+
+/**
+ * A {@link RestfulServer} running in an embedded Jetty server, listening on a free port on the loopback interface.
+ * Requests may also be sent through a {@link #getLocalConnector() local connector}, which bypasses the network
+ * entirely.
+ * <p>
+ * All of Jetty's request threads are named with {@link #THREAD_NAME_PREFIX}, so that their allocations can be
+ * measured separately from those of the client.
+ * </p>
+ */
+public class BenchmarkServer {
+
+	public static final String THREAD_NAME_PREFIX = "benchmark-server";
+
+	private final IBenchmarkBackend myBackend;
+	private final LocalConnector myLocalConnector;
+	private final RestfulServer myRestfulServer;
+	private final Server myServer;
+	private final ServerConnector myServerConnector;
+
+	public BenchmarkServer(FhirContext theContext, IBenchmarkBackend theBackend) throws Exception {
+		myBackend = theBackend;
+
+		QueuedThreadPool threadPool = new QueuedThreadPool(200, 8);
+		threadPool.setName(THREAD_NAME_PREFIX);
+		myServer = new Server(threadPool);
+
+		myServerConnector = new ServerConnector(myServer);
+		myServerConnector.setHost("127.0.0.1");
+		myServerConnector.setPort(0);
+		myLocalConnector = new LocalConnector(myServer);
+		myServer.addConnector(myServerConnector);
+		myServer.addConnector(myLocalConnector);
+
+		myRestfulServer = new RestfulServer(theContext);
+		theBackend.configure(myRestfulServer);
+
+		ServletHandler handler = new ServletHandler();
+		handler.addServletWithMapping(new ServletHolder(myRestfulServer), "/*");
+		myServer.setHandler(handler);
+	}
+
+	/**
+	 * Returns the base URL of the server, which is only known once it has been {@link #start() started}
+	 */
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + myServerConnector.getLocalPort();
+	}
+
+	public LocalConnector getLocalConnector() {
+		return myLocalConnector;
+	}
+
+	public RestfulServer getRestfulServer() {
+		return myRestfulServer;
+	}
+
+	public void start() throws Exception {
+		myServer.start();
+	}
+
+	/**
+	 * Stops the server, and closes its backend
+	 */
+	public void stop() throws Exception {
+		try {
+			myServer.stop();
+		} finally {
+			myBackend.close();
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package ca.uhn.fhir.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uhn.fhir.model.api.Bundle;
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.dstu.resource.Patient;
+import ca.uhn.fhir.rest.client.IGenericClient;
+
+/**
+ * The operations which {@link ServerLoadBenchmark} can drive against a server, each through the
+ * {@link IGenericClient generic client}
+ */
+public enum BenchmarkWorkloadEnum {
+
+	/**
+	 * Creates a single patient
+	 */
+	CREATE {
+		@Override
+		public IBenchmarkOperation newOperation(final IGenericClient theClient, List<String> theSeedIds) {
+			return new IBenchmarkOperation() {
+				@Override
+				public void execute(int theThreadIndex, long theIteration) throws Exception {
+					Patient patient = BenchmarkData.newPatient(BenchmarkData.CREATED_FAMILY, theIteration);
+					theClient.create().resource(patient).execute();
+				}
+			};
+		}
+	},
+
+	/**
+	 * Reads one of the seed patients by ID
+	 */
+	READ {
+		@Override
+		public IBenchmarkOperation newOperation(final IGenericClient theClient, final List<String> theSeedIds) {
+			return new IBenchmarkOperation() {
+				@Override
+				public void execute(int theThreadIndex, long theIteration) throws Exception {
+					String id = theSeedIds.get((int) ((theIteration * 31 + theThreadIndex) % theSeedIds.size()));
+					theClient.read(Patient.class, id);
+				}
+			};
+		}
+	},
+
+	/**
+	 * Searches for the seed patients with one of the seed family names
+	 */
+	SEARCH {
+		@Override
+		public IBenchmarkOperation newOperation(final IGenericClient theClient, List<String> theSeedIds) {
+			return new IBenchmarkOperation() {
+				@Override
+				public void execute(int theThreadIndex, long theIteration) throws Exception {
+					String family = BenchmarkData.SEED_FAMILY_PREFIX + ((theIteration + theThreadIndex) % BenchmarkData.SEED_FAMILY_COUNT);
+					Bundle result = theClient.search().forResource(Patient.class).where(Patient.FAMILY.matches().value(family)).execute();
+					if (result.getEntries().isEmpty()) {
+						throw new IllegalStateException("Search for family " + family + " found no patients");
+					}
+				}
+			};
+		}
+	},
+
+	/**
+	 * Creates {@link #TRANSACTION_SIZE} patients in a single transaction
+	 */
+	TRANSACTION {
+		@Override
+		public IBenchmarkOperation newOperation(final IGenericClient theClient, List<String> theSeedIds) {
+			return new IBenchmarkOperation() {
+				@Override
+				public void execute(int theThreadIndex, long theIteration) throws Exception {
+					List<IResource> resources = new ArrayList<IResource>(TRANSACTION_SIZE);
+					for (int i = 0; i < TRANSACTION_SIZE; i++) {
+						resources.add(BenchmarkData.newPatient(BenchmarkData.CREATED_FAMILY, theIteration * TRANSACTION_SIZE + i));
+					}
+					theClient.transaction().withResources(resources).execute();
+				}
+			};
+		}
+	};
+
+	/**
+	 * The number of resources in each {@link #TRANSACTION} workload request
+	 */
+	public static final int TRANSACTION_SIZE = 5;
+
+	/**
+	 * Creates the operation for this workload
+	 * 
+	 * @param theClient
+	 *            The client to send requests with
+	 * @param theSeedIds
+	 *            The IDs of the seed patients stored on the server before the benchmark started
+	 */
+	public abstract IBenchmarkOperation newOperation(IGenericClient theClient, List<String> theSeedIds);
+
+}
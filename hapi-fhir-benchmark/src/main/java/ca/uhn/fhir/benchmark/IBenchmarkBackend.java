@@ -0,0 +1,26 @@
+package ca.uhn.fhir.benchmark;
+
+import ca.uhn.fhir.rest.server.RestfulServer;
+
+/**
+ * Supplies the providers which serve requests in a {@link BenchmarkServer}. Each backend must support reading,
+ * creating, and searching by family name for Patient resources, as well as transactions.
+ */
+public interface IBenchmarkBackend {
+
+	/**
+	 * Releases any resources held by this backend, once the server has stopped
+	 */
+	void close();
+
+	/**
+	 * Registers this backend's providers with the given server
+	 */
+	void configure(RestfulServer theServer) throws Exception;
+
+	/**
+	 * Returns a short name describing this backend, which is included in the benchmark names
+	 */
+	String getName();
+
+}
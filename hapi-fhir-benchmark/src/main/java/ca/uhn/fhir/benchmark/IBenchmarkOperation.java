@@ -0,0 +1,20 @@
+package ca.uhn.fhir.benchmark;
+
+/**
+ * A single unit of work which is timed by the {@link BenchmarkRunner}. Implementations are invoked concurrently from
+ * several threads, so must be thread safe.
+ */
+public interface IBenchmarkOperation {
+
+	/**
+	 * Performs the operation once
+	 * 
+	 * @param theThreadIndex
+	 *            The index (starting at 0) of the benchmark thread invoking the operation
+	 * @param theIteration
+	 *            The number of times this operation has previously been invoked by the same thread, which
+	 *            implementations may use to vary their input
+	 */
+	void execute(int theThreadIndex, long theIteration) throws Exception;
+
+}
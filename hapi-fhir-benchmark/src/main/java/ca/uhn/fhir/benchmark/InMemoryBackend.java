@@ -0,0 +1,60 @@
+package ca.uhn.fhir.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.dstu.resource.Patient;
+import ca.uhn.fhir.rest.annotation.Transaction;
+import ca.uhn.fhir.rest.annotation.TransactionParam;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+
+/**
+ * Backend which serves requests from {@link InMemoryPatientProvider}
+ */
+public class InMemoryBackend implements IBenchmarkBackend {
+
+	private final InMemoryPatientProvider myPatientProvider = new InMemoryPatientProvider();
+
+	@Override
+	public void close() {
+		// nothing
+	}
+
+	@Override
+	public void configure(RestfulServer theServer) {
+		theServer.setResourceProviders(myPatientProvider);
+		theServer.setPlainProviders(new TransactionProvider());
+	}
+
+	@Override
+	public String getName() {
+		return "memory";
+	}
+
+	public InMemoryPatientProvider getPatientProvider() {
+		return myPatientProvider;
+	}
+
+	/**
+	 * Transactions may only contain new Patient resources, which are all stored
+	 */
+	public class TransactionProvider {
+
+		@Transaction
+		public List<IResource> transaction(@TransactionParam List<IResource> theResources) {
+			List<IResource> retVal = new ArrayList<IResource>(theResources.size());
+			for (IResource next : theResources) {
+				if (!(next instanceof Patient)) {
+					throw new InvalidRequestException("Only Patient resources are supported in transactions");
+				}
+				myPatientProvider.store((Patient) next);
+				retVal.add(next);
+			}
+			return retVal;
+		}
+
+	}
+
+}
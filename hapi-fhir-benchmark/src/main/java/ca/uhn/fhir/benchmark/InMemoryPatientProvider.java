@@ -0,0 +1,84 @@
+package ca.uhn.fhir.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.dstu.resource.Patient;
+import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.rest.annotation.Create;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.RequiredParam;
+import ca.uhn.fhir.rest.annotation.ResourceParam;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+
+/**
+ * Patient provider which keeps its resources in memory, so that benchmarks measure the cost of the server framework
+ * rather than that of a database. Searches match the family name exactly, using an index.
+ */
+public class InMemoryPatientProvider implements IResourceProvider {
+
+	private final ConcurrentMap<String, Queue<Patient>> myFamilyIndex = new ConcurrentHashMap<String, Queue<Patient>>();
+	private final AtomicLong myNextId = new AtomicLong(1);
+	private final ConcurrentMap<String, Patient> myPatients = new ConcurrentHashMap<String, Patient>();
+
+	@Create
+	public MethodOutcome create(@ResourceParam Patient thePatient) {
+		IdDt id = store(thePatient);
+		return new MethodOutcome(id, Boolean.TRUE);
+	}
+
+	@Override
+	public Class<? extends IResource> getResourceType() {
+		return Patient.class;
+	}
+
+	@Read
+	public Patient read(@IdParam IdDt theId) {
+		Patient retVal = myPatients.get(theId.getIdPart());
+		if (retVal == null) {
+			throw new ResourceNotFoundException(theId);
+		}
+		return retVal;
+	}
+
+	@Search
+	public List<Patient> searchByFamily(@RequiredParam(name = Patient.SP_FAMILY) StringParam theFamily) {
+		Queue<Patient> matches = myFamilyIndex.get(theFamily.getValue());
+		if (matches == null) {
+			return new ArrayList<Patient>();
+		}
+		return new ArrayList<Patient>(matches);
+	}
+
+	/**
+	 * Stores the given patient, assigning it a new ID
+	 * 
+	 * @return The new ID
+	 */
+	public IdDt store(Patient thePatient) {
+		IdDt id = new IdDt("Patient", Long.toString(myNextId.getAndIncrement()), "1");
+		thePatient.setId(id);
+		myPatients.put(id.getIdPart(), thePatient);
+
+		String family = thePatient.getNameFirstRep().getFamilyAsSingleString();
+		Queue<Patient> matches = myFamilyIndex.get(family);
+		if (matches == null) {
+			myFamilyIndex.putIfAbsent(family, new ConcurrentLinkedQueue<Patient>());
+			matches = myFamilyIndex.get(family);
+		}
+		matches.add(thePatient);
+		return id;
+	}
+
+}
@@ -0,0 +1,104 @@
+package ca.uhn.fhir.benchmark;
+
+/**
+ * Histogram of operation latencies with exponentially sized buckets, each 5% wider than the one before, covering
+ * 1&micro;s to several minutes. Percentiles are therefore estimated to within 5%.
+ * <p>
+ * This class is not thread safe: each benchmark thread records into its own instance, and these are
+ * {@link #add(LatencyHistogram) combined} once the threads have finished.
+ * </p>
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKET_COUNT = 400;
+	private static final double BUCKET_RATIO = 1.05;
+	private static final double LOG_BUCKET_RATIO = Math.log(BUCKET_RATIO);
+	private static final long MIN_NANOS = 1000L;
+	private static final long[] UPPER_BOUNDS_NANOS;
+
+	static {
+		UPPER_BOUNDS_NANOS = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			UPPER_BOUNDS_NANOS[i] = (long) Math.ceil(MIN_NANOS * Math.pow(BUCKET_RATIO, i));
+		}
+	}
+
+	private long myCount;
+	private final long[] myCounts = new long[BUCKET_COUNT];
+	private long myMaxNanos;
+	private long myTotalNanos;
+
+	/**
+	 * Adds the latencies recorded by another histogram to this one
+	 */
+	public void add(LatencyHistogram theOther) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			myCounts[i] += theOther.myCounts[i];
+		}
+		myCount += theOther.myCount;
+		myTotalNanos += theOther.myTotalNanos;
+		myMaxNanos = Math.max(myMaxNanos, theOther.myMaxNanos);
+	}
+
+	public long getCount() {
+		return myCount;
+	}
+
+	public long getMaxNanos() {
+		return myMaxNanos;
+	}
+
+	public double getMeanNanos() {
+		if (myCount == 0) {
+			return 0;
+		}
+		return (double) myTotalNanos / myCount;
+	}
+
+	/**
+	 * Returns an estimate of the given percentile (e.g. <code>99.0</code>) of the recorded latencies, or
+	 * <code>0</code> if nothing has been recorded. The estimate is the upper bound of the bucket containing the
+	 * percentile, and is never larger than the largest latency actually recorded.
+	 */
+	public long getPercentileNanos(double thePercentile) {
+		if (myCount == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(myCount * (thePercentile / 100.0));
+		rank = Math.max(1, Math.min(myCount, rank));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += myCounts[i];
+			if (seen >= rank) {
+				return Math.min(UPPER_BOUNDS_NANOS[i], myMaxNanos);
+			}
+		}
+		return myMaxNanos;
+	}
+
+	public void record(long theNanos) {
+		myCounts[bucketIndex(theNanos)]++;
+		myCount++;
+		myTotalNanos += theNanos;
+		if (theNanos > myMaxNanos) {
+			myMaxNanos = theNanos;
+		}
+	}
+
+	static int bucketIndex(long theNanos) {
+		if (theNanos <= MIN_NANOS) {
+			return 0;
+		}
+		int index = (int) Math.ceil(Math.log((double) theNanos / MIN_NANOS) / LOG_BUCKET_RATIO);
+		/*
+		 * Rounding in the logarithm can put a value one bucket away from where it belongs
+		 */
+		if (index < BUCKET_COUNT && index > 0 && UPPER_BOUNDS_NANOS[index - 1] >= theNanos) {
+			index--;
+		} else if (index < BUCKET_COUNT - 1 && UPPER_BOUNDS_NANOS[index] < theNanos) {
+			index++;
+		}
+		return Math.min(index, BUCKET_COUNT - 1);
+	}
+
+}
@@ -0,0 +1,307 @@
+package ca.uhn.fhir.benchmark;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.Bundle;
+import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
+import ca.uhn.fhir.model.dstu.resource.Patient;
+import ca.uhn.fhir.model.primitive.DateTimeDt;
+import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.model.primitive.StringDt;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.util.FhirTerser;
+
+/**
+ * Single-process benchmarks of the individual stages of request processing, each reporting throughput and bytes
+ * allocated per operation:
+ * <ul>
+ * <li><code>parse/*</code> and <code>encode/*</code>: the JSON and XML parsers, for a single patient and for a bundle
+ * of patients</li>
+ * <li><code>terser/*</code>: path lookups and element traversal with {@link FhirTerser}</li>
+ * <li><code>date/*</code>: parsing and formatting canonical date/time values</li>
+ * <li><code>dispatch/*</code>: complete requests (method dispatch, parameter binding, provider invocation and
+ * encoding) sent to an embedded {@link ca.uhn.fhir.rest.server.RestfulServer} through Jetty's local connector, so
+ * that no network or client code is involved</li>
+ * </ul>
+ * <p>
+ * Run from the command line with the module's dependencies on the classpath, e.g.
+ * <code>java -cp ... ca.uhn.fhir.benchmark.MicroBenchmarks -filter parse/</code>. Supported options are
+ * <code>-threads</code> (default <code>1</code>), <code>-warmup</code> and <code>-duration</code> in seconds (default
+ * <code>5</code> and <code>10</code>), and <code>-filter</code>, which only runs benchmarks whose names start with
+ * the given prefix.
+ * </p>
+ */
+public class MicroBenchmarks {
+
+	private static final int BUNDLE_SIZE = 20;
+	private static volatile Object ourBlackhole;
+
+	private final FhirContext myContext = new FhirContext();
+	private String myFilter;
+	private long myMeasurementMillis = TimeUnit.SECONDS.toMillis(10);
+	private PrintStream myOut = System.out;
+	private int myThreadCount = 1;
+	private long myWarmupMillis = TimeUnit.SECONDS.toMillis(5);
+
+	private void addDateBenchmarks(List<Micro> theMicros) {
+		final String[] dateTimes = new String[64];
+		final Date[] dates = new Date[dateTimes.length];
+		final TimeZone[] zones = { TimeZone.getTimeZone("UTC"), TimeZone.getTimeZone("America/Toronto"), TimeZone.getTimeZone("Asia/Kolkata"), TimeZone.getTimeZone("Australia/Adelaide") };
+		long base = 1262304000000L; // 2010-01-01T00:00:00Z
+		for (int i = 0; i < dateTimes.length; i++) {
+			dates[i] = new Date(base + i * 86400017L * 37);
+			dateTimes[i] = new DateTimeDt(dates[i], i % 2 == 0 ? TemporalPrecisionEnum.SECOND : TemporalPrecisionEnum.MILLI, zones[i % zones.length]).getValueAsString();
+		}
+		final String[] instants = new String[dates.length];
+		for (int i = 0; i < instants.length; i++) {
+			InstantDt instant = new InstantDt(dates[i]);
+			instant.setTimeZoneZulu(true);
+			instants[i] = instant.getValueAsString();
+		}
+
+		theMicros.add(new Micro("date/parse-datetime", 100, new IBenchmarkOperation() {
+			@Override
+			public void execute(int theThreadIndex, long theIteration) {
+				consume(new DateTimeDt(dateTimes[(int) (theIteration % dateTimes.length)]).getValue());
+			}
+		}));
+		theMicros.add(new Micro("date/parse-instant", 100, new IBenchmarkOperation() {
+			@Override
+			public void execute(int theThreadIndex, long theIteration) {
+				consume(new InstantDt(instants[(int) (theIteration % instants.length)]).getValue());
+			}
+		}));
+		theMicros.add(new Micro("date/format-datetime", 100, new IBenchmarkOperation() {
+			@Override
+			public void execute(int theThreadIndex, long theIteration) {
+				int index = (int) (theIteration % dates.length);
+				consume(new DateTimeDt(dates[index], TemporalPrecisionEnum.SECOND, zones[index % zones.length]).getValueAsString());
+			}
+		}));
+		theMicros.add(new Micro("date/format-instant", 100, new IBenchmarkOperation() {
+			@Override
+			public void execute(int theThreadIndex, long theIteration) {
+				InstantDt instant = new InstantDt(dates[(int) (theIteration % dates.length)]);
+				instant.setTimeZoneZulu(true);
+				consume(instant.getValueAsString());
+			}
+		}));
+	}
+
+	private void addDispatchBenchmarks(List<Micro> theMicros, final BenchmarkServer theServer, InMemoryPatientProvider thePatientProvider) {
+		final List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 100; i++) {
+			ids.add(thePatientProvider.store(BenchmarkData.newSeedPatient(i)).getIdPart());
+		}
+
+		theMicros.add(new Micro("dispatch/read", 1, new IBenchmarkOperation() {
+			@Override
+			public void execute(int theThreadIndex, long theIteration) throws Exception {
+				String id = ids.get((int) (theIteration % ids.size()));
+				sendLocalRequest(theServer, "/Patient/" + id + "?_format=json");
+			}
+		}));
+		theMicros.add(new Micro("dispatch/search", 1, new IBenchmarkOperation() {
+			@Override
+			public void execute(int theThreadIndex, long theIteration) throws Exception {
+				String family = BenchmarkData.SEED_FAMILY_PREFIX + (theIteration % BenchmarkData.SEED_FAMILY_COUNT);
+				sendLocalRequest(theServer, "/Patient?family=" + family + "&_format=json");
+			}
+		}));
+	}
+
+	private void addParserBenchmarks(List<Micro> theMicros) {
+		final Patient patient = BenchmarkData.newSeedPatient(1);
+		final Bundle bundle = BenchmarkData.newBundle(myContext, BUNDLE_SIZE);
+
+		for (final boolean json : new boolean[] { true, false }) {
+			String encoding = json ? "json" : "xml";
+			IParser parser = newParser(json);
+			final String encodedPatient = parser.encodeResourceToString(patient);
+			final String encodedBundle = parser.encodeBundleToString(bundle);
+
+			theMicros.add(new Micro("parse/" + encoding + "/patient", 1, new IBenchmarkOperation() {
+				@Override
+				public void execute(int theThreadIndex, long theIteration) {
+					consume(newParser(json).parseResource(Patient.class, encodedPatient));
+				}
+			}));
+			theMicros.add(new Micro("parse/" + encoding + "/bundle", 1, new IBenchmarkOperation() {
+				@Override
+				public void execute(int theThreadIndex, long theIteration) {
+					consume(newParser(json).parseBundle(encodedBundle));
+				}
+			}));
+			theMicros.add(new Micro("encode/" + encoding + "/patient", 1, new IBenchmarkOperation() {
+				@Override
+				public void execute(int theThreadIndex, long theIteration) {
+					consume(newParser(json).encodeResourceToString(patient));
+				}
+			}));
+			theMicros.add(new Micro("encode/" + encoding + "/bundle", 1, new IBenchmarkOperation() {
+				@Override
+				public void execute(int theThreadIndex, long theIteration) {
+					consume(newParser(json).encodeBundleToString(bundle));
+				}
+			}));
+		}
+	}
+
+	private void addTerserBenchmarks(List<Micro> theMicros) {
+		final Patient patient = BenchmarkData.newSeedPatient(1);
+		final FhirTerser terser = myContext.newTerser();
+
+		theMicros.add(new Micro("terser/get-values", 10, new IBenchmarkOperation() {
+			@Override
+			public void execute(int theThreadIndex, long theIteration) {
+				consume(terser.getValues(patient, "Patient.name.family"));
+			}
+		}));
+		theMicros.add(new Micro("terser/all-strings", 1, new IBenchmarkOperation() {
+			@Override
+			public void execute(int theThreadIndex, long theIteration) {
+				consume(terser.getAllPopulatedChildElementsOfType(patient, StringDt.class));
+			}
+		}));
+	}
+
+	private boolean isIncluded(String theName) {
+		return myFilter == null || theName.startsWith(myFilter);
+	}
+
+	private IParser newParser(boolean theJson) {
+		return theJson ? myContext.newJsonParser() : myContext.newXmlParser();
+	}
+
+	/**
+	 * Runs each benchmark matching the {@link #setFilter(String) filter}. Each result is also printed as it completes.
+	 */
+	public List<BenchmarkResult> run() throws Exception {
+		List<Micro> micros = new ArrayList<Micro>();
+		addParserBenchmarks(micros);
+		addTerserBenchmarks(micros);
+		addDateBenchmarks(micros);
+
+		BenchmarkServer server = null;
+		if (myFilter == null || myFilter.startsWith("dispatch/") || "dispatch/".startsWith(myFilter)) {
+			InMemoryBackend backend = new InMemoryBackend();
+			server = new BenchmarkServer(myContext, backend);
+			server.start();
+			addDispatchBenchmarks(micros, server, backend.getPatientProvider());
+		}
+
+		try {
+			List<BenchmarkResult> retVal = new ArrayList<BenchmarkResult>();
+			myOut.println(BenchmarkResult.formatHeader());
+			for (Micro next : micros) {
+				if (!isIncluded(next.myName)) {
+					continue;
+				}
+				BenchmarkRunner runner = new BenchmarkRunner();
+				runner.setThreadCount(myThreadCount);
+				runner.setWarmupMillis(myWarmupMillis);
+				runner.setMeasurementMillis(myMeasurementMillis);
+				runner.setOperationsPerCheck(next.myOperationsPerCheck);
+				if (server != null && next.myName.startsWith("dispatch/")) {
+					runner.setServerThreadNamePrefix(BenchmarkServer.THREAD_NAME_PREFIX);
+				}
+
+				BenchmarkResult result = runner.run(next.myName, next.myOperation);
+				retVal.add(result);
+				myOut.println(result.formatRow());
+			}
+			return retVal;
+		} finally {
+			if (server != null) {
+				server.stop();
+			}
+		}
+	}
+
+	/**
+	 * Only benchmarks whose names start with the given prefix (e.g. <code>"parse/"</code>) will be run
+	 */
+	public void setFilter(String theFilter) {
+		myFilter = theFilter;
+	}
+
+	public void setMeasurementMillis(long theMeasurementMillis) {
+		myMeasurementMillis = theMeasurementMillis;
+	}
+
+	/**
+	 * Sets the stream the result table is printed to (default is {@link System#out})
+	 */
+	public void setOut(PrintStream theOut) {
+		myOut = theOut;
+	}
+
+	public void setThreadCount(int theThreadCount) {
+		myThreadCount = theThreadCount;
+	}
+
+	public void setWarmupMillis(long theWarmupMillis) {
+		myWarmupMillis = theWarmupMillis;
+	}
+
+	/**
+	 * Stores a value where the JIT can not prove it unused, so that the work producing it is not eliminated
+	 */
+	static void consume(Object theValue) {
+		ourBlackhole = theValue;
+	}
+
+	public static void main(String[] theArgs) throws Exception {
+		MicroBenchmarks benchmarks = new MicroBenchmarks();
+		for (int i = 0; i < theArgs.length; i += 2) {
+			String option = theArgs[i];
+			if (i + 1 >= theArgs.length) {
+				throw new IllegalArgumentException("Missing value for option: " + option);
+			}
+			String value = theArgs[i + 1];
+			if ("-threads".equals(option)) {
+				benchmarks.setThreadCount(Integer.parseInt(value));
+			} else if ("-warmup".equals(option)) {
+				benchmarks.setWarmupMillis(TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+			} else if ("-duration".equals(option)) {
+				benchmarks.setMeasurementMillis(TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+			} else if ("-filter".equals(option)) {
+				benchmarks.setFilter(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + option);
+			}
+		}
+
+		benchmarks.run();
+	}
+
+	/**
+	 * Sends a GET request through the server's local connector, and fails unless the response is successful
+	 */
+	static String sendLocalRequest(BenchmarkServer theServer, String thePathAndQuery) throws Exception {
+		String response = theServer.getLocalConnector().getResponses("GET " + thePathAndQuery + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+		if (response == null || !response.startsWith("HTTP/1.1 200")) {
+			throw new IllegalStateException("Request " + thePathAndQuery + " failed: " + response);
+		}
+		return response;
+	}
+
+	private static class Micro {
+		private final String myName;
+		private final IBenchmarkOperation myOperation;
+		private final int myOperationsPerCheck;
+
+		public Micro(String theName, int theOperationsPerCheck, IBenchmarkOperation theOperation) {
+			myName = theName;
+			myOperationsPerCheck = theOperationsPerCheck;
+			myOperation = theOperation;
+		}
+	}
+
+}
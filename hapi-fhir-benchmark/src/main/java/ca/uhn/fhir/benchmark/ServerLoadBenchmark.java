@@ -0,0 +1,275 @@
+package ca.uhn.fhir.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.dstu.resource.Patient;
+import ca.uhn.fhir.rest.client.GenericClient;
+import ca.uhn.fhir.rest.client.IGenericClient;
+import ca.uhn.fhir.rest.server.Constants;
+import ca.uhn.fhir.rest.server.EncodingEnum;
+
+/**
+ * Load benchmark for {@link ca.uhn.fhir.rest.server.RestfulServer}: starts a {@link BenchmarkServer} in embedded Jetty,
+ * stores a number of seed patients, and then drives each {@link BenchmarkWorkloadEnum workload} through the generic
+ * client at each requested concurrency, in each encoding, with and without gzip compression of responses. For each
+ * combination the throughput, latency percentiles, and bytes allocated per operation (separately for the client and
+ * server threads) are reported.
+ * <p>
+ * Run from the command line with the module's dependencies on the classpath, e.g.
+ * <code>java -cp ... ca.uhn.fhir.benchmark.ServerLoadBenchmark -threads 1,8,32 -duration 30</code>. Supported
+ * options are:
+ * </p>
+ * <ul>
+ * <li><code>-threads</code>: comma separated list of client thread counts (default <code>1,8</code>)</li>
+ * <li><code>-warmup</code>: warmup period in seconds for each combination (default <code>5</code>)</li>
+ * <li><code>-duration</code>: measurement period in seconds for each combination (default <code>10</code>)</li>
+ * <li><code>-workloads</code>: comma separated list of workloads (default all)</li>
+ * <li><code>-encodings</code>: comma separated list of <code>json</code> and/or <code>xml</code> (default both)</li>
+ * <li><code>-gzip</code>: comma separated list of <code>on</code> and/or <code>off</code> (default both)</li>
+ * <li><code>-seed</code>: number of patients stored before the benchmarks start (default <code>100</code>)</li>
+ * <li><code>-jpa</code>: use the JPA server on an in-memory Derby database instead of the in-memory providers.
+ * This requires the module to have been built with the <code>jpa</code> Maven profile.</li>
+ * </ul>
+ */
+public class ServerLoadBenchmark {
+
+	static final String JPA_BACKEND_CLASS = "ca.uhn.fhir.benchmark.jpa.JpaBenchmarkBackend";
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ServerLoadBenchmark.class);
+
+	private IBenchmarkBackend myBackend;
+	private final FhirContext myContext = new FhirContext();
+	private List<EncodingEnum> myEncodings = Arrays.asList(EncodingEnum.JSON, EncodingEnum.XML);
+	private List<Boolean> myGzip = Arrays.asList(Boolean.TRUE, Boolean.FALSE);
+	private long myMeasurementMillis = TimeUnit.SECONDS.toMillis(10);
+	private PrintStream myOut = System.out;
+	private int mySeedPatientCount = 100;
+	private List<Integer> myThreadCounts = Arrays.asList(1, 8);
+	private long myWarmupMillis = TimeUnit.SECONDS.toMillis(5);
+	private List<BenchmarkWorkloadEnum> myWorkloads = Arrays.asList(BenchmarkWorkloadEnum.values());
+
+	/**
+	 * Starts the server, runs every combination of the configured thread counts, encodings, compression settings and
+	 * workloads, and stops the server again. Each result is also printed as it completes.
+	 */
+	public List<BenchmarkResult> run() throws Exception {
+		IBenchmarkBackend backend = myBackend != null ? myBackend : new InMemoryBackend();
+		BenchmarkServer server = new BenchmarkServer(myContext, backend);
+		server.start();
+		try {
+			List<String> seedIds = seed(server.getBaseUrl());
+
+			List<BenchmarkResult> retVal = new ArrayList<BenchmarkResult>();
+			myOut.println(BenchmarkResult.formatHeader());
+			for (int threadCount : myThreadCounts) {
+				for (EncodingEnum encoding : myEncodings) {
+					for (boolean gzip : myGzip) {
+						CloseableHttpClient httpClient = newHttpClient(threadCount, gzip);
+						try {
+							myContext.getRestfulClientFactory().setHttpClient(httpClient);
+							GenericClient client = (GenericClient) myContext.newRestfulGenericClient(server.getBaseUrl());
+							client.setEncoding(encoding);
+
+							for (BenchmarkWorkloadEnum workload : myWorkloads) {
+								BenchmarkRunner runner = new BenchmarkRunner();
+								runner.setThreadCount(threadCount);
+								runner.setWarmupMillis(myWarmupMillis);
+								runner.setMeasurementMillis(myMeasurementMillis);
+								runner.setServerThreadNamePrefix(BenchmarkServer.THREAD_NAME_PREFIX);
+
+								String name = backend.getName() + "/" + workload.name().toLowerCase(Locale.US) + "/" + encoding.name().toLowerCase(Locale.US) + "/" + (gzip ? "gzip" : "plain");
+								BenchmarkResult result = runner.run(name, workload.newOperation(client, seedIds));
+								retVal.add(result);
+								myOut.println(result.formatRow());
+								if (result.getFirstError() != null) {
+									ourLog.warn("Benchmark " + name + " had " + result.getErrorCount() + " failures, the first was:", result.getFirstError());
+								}
+							}
+						} finally {
+							httpClient.close();
+						}
+					}
+				}
+			}
+			return retVal;
+		} finally {
+			server.stop();
+		}
+	}
+
+	private List<String> seed(String theBaseUrl) throws IOException {
+		CloseableHttpClient httpClient = newHttpClient(1, false);
+		try {
+			myContext.getRestfulClientFactory().setHttpClient(httpClient);
+			IGenericClient client = myContext.newRestfulGenericClient(theBaseUrl);
+			List<String> retVal = new ArrayList<String>();
+			for (int i = 0; i < mySeedPatientCount; i++) {
+				Patient patient = BenchmarkData.newSeedPatient(i);
+				retVal.add(client.create().resource(patient).execute().getId().getIdPart());
+			}
+			ourLog.info("Stored {} seed patients", retVal.size());
+			return retVal;
+		} finally {
+			httpClient.close();
+		}
+	}
+
+	/**
+	 * Sets the backend serving requests (default is an {@link InMemoryBackend})
+	 */
+	public void setBackend(IBenchmarkBackend theBackend) {
+		myBackend = theBackend;
+	}
+
+	public void setEncodings(List<EncodingEnum> theEncodings) {
+		Validate.notEmpty(theEncodings, "At least one encoding must be given");
+		myEncodings = theEncodings;
+	}
+
+	/**
+	 * Sets whether to run with responses compressed (<code>true</code>), uncompressed (<code>false</code>), or both
+	 */
+	public void setGzip(List<Boolean> theGzip) {
+		Validate.notEmpty(theGzip, "At least one compression setting must be given");
+		myGzip = theGzip;
+	}
+
+	public void setMeasurementMillis(long theMeasurementMillis) {
+		myMeasurementMillis = theMeasurementMillis;
+	}
+
+	/**
+	 * Sets the stream the result table is printed to (default is {@link System#out})
+	 */
+	public void setOut(PrintStream theOut) {
+		myOut = theOut;
+	}
+
+	public void setSeedPatientCount(int theSeedPatientCount) {
+		Validate.isTrue(theSeedPatientCount > 0, "At least one seed patient is required");
+		mySeedPatientCount = theSeedPatientCount;
+	}
+
+	public void setThreadCounts(List<Integer> theThreadCounts) {
+		Validate.notEmpty(theThreadCounts, "At least one thread count must be given");
+		myThreadCounts = theThreadCounts;
+	}
+
+	public void setWarmupMillis(long theWarmupMillis) {
+		myWarmupMillis = theWarmupMillis;
+	}
+
+	public void setWorkloads(List<BenchmarkWorkloadEnum> theWorkloads) {
+		Validate.notEmpty(theWorkloads, "At least one workload must be given");
+		myWorkloads = theWorkloads;
+	}
+
+	public static void main(String[] theArgs) throws Exception {
+		ServerLoadBenchmark benchmark = new ServerLoadBenchmark();
+		for (int i = 0; i < theArgs.length; i++) {
+			String option = theArgs[i];
+			if ("-jpa".equals(option)) {
+				benchmark.setBackend(newJpaBackend());
+				continue;
+			}
+			if (i + 1 >= theArgs.length) {
+				throw new IllegalArgumentException("Missing value for option: " + option);
+			}
+			String value = theArgs[++i];
+			if ("-threads".equals(option)) {
+				List<Integer> threadCounts = new ArrayList<Integer>();
+				for (String next : value.split(",")) {
+					threadCounts.add(Integer.parseInt(next.trim()));
+				}
+				benchmark.setThreadCounts(threadCounts);
+			} else if ("-warmup".equals(option)) {
+				benchmark.setWarmupMillis(TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+			} else if ("-duration".equals(option)) {
+				benchmark.setMeasurementMillis(TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+			} else if ("-seed".equals(option)) {
+				benchmark.setSeedPatientCount(Integer.parseInt(value));
+			} else if ("-workloads".equals(option)) {
+				List<BenchmarkWorkloadEnum> workloads = new ArrayList<BenchmarkWorkloadEnum>();
+				for (String next : value.split(",")) {
+					workloads.add(BenchmarkWorkloadEnum.valueOf(next.trim().toUpperCase(Locale.US)));
+				}
+				benchmark.setWorkloads(workloads);
+			} else if ("-encodings".equals(option)) {
+				List<EncodingEnum> encodings = new ArrayList<EncodingEnum>();
+				for (String next : value.split(",")) {
+					encodings.add(EncodingEnum.valueOf(next.trim().toUpperCase(Locale.US)));
+				}
+				benchmark.setEncodings(encodings);
+			} else if ("-gzip".equals(option)) {
+				List<Boolean> gzip = new ArrayList<Boolean>();
+				for (String next : value.split(",")) {
+					gzip.add("on".equalsIgnoreCase(next.trim()));
+				}
+				benchmark.setGzip(gzip);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + option);
+			}
+		}
+
+		benchmark.run();
+	}
+
+	/**
+	 * Creates a client which keeps one pooled connection per benchmark thread. If compression is enabled the client
+	 * asks for compressed responses and decompresses them, as the default client does; otherwise no
+	 * <code>Accept-Encoding</code> header is sent.
+	 * Unlike the default client, stale connection checking is disabled, since it adds a blocking read to every request.
+	 */
+	static CloseableHttpClient newHttpClient(int theThreadCount, boolean theGzip) {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		connectionManager.setMaxTotal(theThreadCount);
+		connectionManager.setDefaultMaxPerRoute(theThreadCount);
+
+		RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(60000).setConnectTimeout(10000).setStaleConnectionCheckEnabled(false).build();
+
+		//@formatter:off
+		HttpClientBuilder builder = HttpClients.custom()
+			.setConnectionManager(connectionManager)
+			.setDefaultRequestConfig(requestConfig)
+			.disableCookieManagement();
+		//@formatter:on
+		if (!theGzip) {
+			/*
+			 * The FHIR client asks for gzip on every request itself, so the header has to be removed here too
+			 */
+			builder.disableContentCompression();
+			builder.addInterceptorLast(new HttpRequestInterceptor() {
+				@Override
+				public void process(HttpRequest theRequest, HttpContext theContext) {
+					theRequest.removeHeaders(Constants.HEADER_ACCEPT_ENCODING);
+				}
+			});
+		}
+		return builder.build();
+	}
+
+	private static IBenchmarkBackend newJpaBackend() throws Exception {
+		try {
+			return (IBenchmarkBackend) Class.forName(JPA_BACKEND_CLASS).newInstance();
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("The JPA backend is not available, build this module with the \"jpa\" profile (mvn -Pjpa) to include it");
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package ca.uhn.fhir.benchmark.jpa;
+
+import java.util.List;
+
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import ca.uhn.fhir.benchmark.IBenchmarkBackend;
+import ca.uhn.fhir.jpa.dao.IFhirSystemDao;
+import ca.uhn.fhir.jpa.provider.JpaSystemProvider;
+import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.RestfulServer;
+
+/**
+ * Backend which serves requests from the JPA server's DSTU1 resource providers and system provider, backed by an
+ * in-memory Derby database. This class is only compiled when the <code>jpa</code> Maven profile is active.
+ */
+public class JpaBenchmarkBackend implements IBenchmarkBackend {
+
+	private ClassPathXmlApplicationContext myAppCtx;
+
+	@Override
+	public void close() {
+		if (myAppCtx != null) {
+			myAppCtx.close();
+			myAppCtx = null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void configure(RestfulServer theServer) {
+		myAppCtx = new ClassPathXmlApplicationContext("hapi-fhir-server-resourceproviders-dstu1.xml", "benchmark-jpa-config.xml");
+
+		List<IResourceProvider> resourceProviders = (List<IResourceProvider>) myAppCtx.getBean("myResourceProvidersDstu1", List.class);
+		theServer.setResourceProviders(resourceProviders);
+
+		IFhirSystemDao systemDao = myAppCtx.getBean("mySystemDaoDstu1", IFhirSystemDao.class);
+		theServer.setPlainProviders(new JpaSystemProvider(systemDao));
+	}
+
+	@Override
+	public String getName() {
+		return "jpa";
+	}
+
+}
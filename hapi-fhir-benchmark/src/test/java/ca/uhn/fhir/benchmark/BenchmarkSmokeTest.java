@@ -0,0 +1,160 @@
+package ca.uhn.fhir.benchmark;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.server.Constants;
+import ca.uhn.fhir.rest.server.EncodingEnum;
+
+/**
+ * Runs every benchmark very briefly, to make sure that none of them fail
+ */
+public class BenchmarkSmokeTest {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BenchmarkSmokeTest.class);
+
+	@Test
+	public void testHttpClientCompression() throws Exception {
+		InMemoryBackend backend = new InMemoryBackend();
+		BenchmarkServer server = new BenchmarkServer(new FhirContext(), backend);
+		server.start();
+		try {
+			String id = backend.getPatientProvider().store(BenchmarkData.newSeedPatient(1)).getIdPart();
+			HttpGet get = new HttpGet(server.getBaseUrl() + "/Patient/" + id + "?_format=json");
+			get.addHeader(Constants.HEADER_ACCEPT_ENCODING, "gzip");
+
+			CloseableHttpClient plainClient = ServerLoadBenchmark.newHttpClient(1, false);
+			try {
+				CloseableHttpResponse response = plainClient.execute(get);
+				try {
+					assertNull(response.getFirstHeader(Constants.HEADER_CONTENT_ENCODING));
+					assertTrue(IOUtils.toString(response.getEntity().getContent(), "UTF-8").startsWith("{"));
+				} finally {
+					response.close();
+				}
+			} finally {
+				plainClient.close();
+			}
+
+			CloseableHttpClient gzipClient = ServerLoadBenchmark.newHttpClient(1, true);
+			try {
+				CloseableHttpResponse response = gzipClient.execute(get);
+				try {
+					assertThat(response.getEntity(), instanceOf(GzipDecompressingEntity.class));
+					assertTrue(IOUtils.toString(response.getEntity().getContent(), "UTF-8").startsWith("{"));
+				} finally {
+					response.close();
+				}
+			} finally {
+				gzipClient.close();
+			}
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testMicroBenchmarks() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MicroBenchmarks benchmarks = new MicroBenchmarks();
+		benchmarks.setWarmupMillis(0);
+		benchmarks.setMeasurementMillis(50);
+		benchmarks.setThreadCount(2);
+		benchmarks.setOut(new PrintStream(out, true, "UTF-8"));
+
+		List<BenchmarkResult> results = benchmarks.run();
+		ourLog.info("Results:\n{}", out.toString("UTF-8"));
+
+		Set<String> prefixes = new HashSet<String>();
+		for (BenchmarkResult next : results) {
+			assertNoErrors(next);
+			prefixes.add(next.getName().substring(0, next.getName().indexOf('/')));
+		}
+		assertEquals(new HashSet<String>(Arrays.asList("parse", "encode", "terser", "date", "dispatch")), prefixes);
+	}
+
+	@Test
+	public void testMicroBenchmarksFilter() throws Exception {
+		MicroBenchmarks benchmarks = new MicroBenchmarks();
+		benchmarks.setWarmupMillis(0);
+		benchmarks.setMeasurementMillis(20);
+		benchmarks.setFilter("dispatch/read");
+		benchmarks.setOut(new PrintStream(new ByteArrayOutputStream(), true, "UTF-8"));
+
+		List<BenchmarkResult> results = benchmarks.run();
+		assertEquals(1, results.size());
+		assertEquals("dispatch/read", results.get(0).getName());
+		assertNoErrors(results.get(0));
+	}
+
+	@Test
+	public void testServerLoadBenchmark() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ServerLoadBenchmark benchmark = new ServerLoadBenchmark();
+		benchmark.setWarmupMillis(0);
+		benchmark.setMeasurementMillis(150);
+		benchmark.setThreadCounts(Arrays.asList(2));
+		benchmark.setSeedPatientCount(20);
+		benchmark.setOut(new PrintStream(out, true, "UTF-8"));
+
+		List<BenchmarkResult> results = benchmark.run();
+		ourLog.info("Results:\n{}", out.toString("UTF-8"));
+
+		assertEquals(BenchmarkWorkloadEnum.values().length * 2 * 2, results.size());
+		for (BenchmarkResult next : results) {
+			assertNoErrors(next);
+			assertEquals(next.getOperationCount(), next.getLatencies().getCount());
+		}
+		assertEquals("memory/create/json/gzip", results.get(0).getName());
+		assertTrue(out.toString("UTF-8").contains("memory/transaction/xml/plain"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testServerLoadBenchmarkRejectsUnknownOption() throws Exception {
+		ServerLoadBenchmark.main(new String[] { "-foo", "bar" });
+	}
+
+	@Test
+	public void testServerLoadBenchmarkSingleCombination() throws Exception {
+		ServerLoadBenchmark benchmark = new ServerLoadBenchmark();
+		benchmark.setWarmupMillis(0);
+		benchmark.setMeasurementMillis(100);
+		benchmark.setThreadCounts(Arrays.asList(1));
+		benchmark.setEncodings(Arrays.asList(EncodingEnum.XML));
+		benchmark.setGzip(Arrays.asList(Boolean.TRUE));
+		benchmark.setWorkloads(Arrays.asList(BenchmarkWorkloadEnum.SEARCH));
+		benchmark.setOut(new PrintStream(new ByteArrayOutputStream(), true, "UTF-8"));
+
+		List<BenchmarkResult> results = benchmark.run();
+		assertEquals(1, results.size());
+		assertEquals("memory/search/xml/gzip", results.get(0).getName());
+		assertNoErrors(results.get(0));
+	}
+
+	private static void assertNoErrors(BenchmarkResult theResult) {
+		if (theResult.getFirstError() != null) {
+			throw new AssertionError(theResult.getName() + " failed: " + theResult.getFirstError());
+		}
+		assertTrue(theResult.getName() + " completed no operations", theResult.getOperationCount() > 0);
+		assertTrue(theResult.getThroughput() > 0);
+	}
+
+}
@@ -0,0 +1,65 @@
+package ca.uhn.fhir.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBucketIndexIsMonotonicAndBounded() {
+		int previous = 0;
+		for (long nanos = 1; nanos < 1000L * 1000L * 1000L * 1000L; nanos = nanos * 11 / 10 + 1) {
+			int index = LatencyHistogram.bucketIndex(nanos);
+			assertTrue("Index for " + nanos + " went backwards", index >= previous);
+			previous = index;
+		}
+		assertEquals(0, LatencyHistogram.bucketIndex(0));
+		assertEquals(LatencyHistogram.bucketIndex(Long.MAX_VALUE), LatencyHistogram.bucketIndex(Long.MAX_VALUE / 2));
+	}
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentileNanos(99));
+		assertEquals(0.0, histogram.getMeanNanos(), 0.0);
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L * 1000L);
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000L * 1000L * 1000L, histogram.getMaxNanos());
+		assertEquals(500.5 * 1000 * 1000, histogram.getMeanNanos(), 1.0);
+		assertWithinFivePercent(500L * 1000L * 1000L, histogram.getPercentileNanos(50));
+		assertWithinFivePercent(990L * 1000L * 1000L, histogram.getPercentileNanos(99));
+		assertEquals(1000L * 1000L * 1000L, histogram.getPercentileNanos(100));
+	}
+
+	@Test
+	public void testAdd() {
+		LatencyHistogram first = new LatencyHistogram();
+		first.record(2000);
+		first.record(3000);
+		LatencyHistogram second = new LatencyHistogram();
+		second.record(50000);
+
+		first.add(second);
+		assertEquals(3, first.getCount());
+		assertEquals(50000, first.getMaxNanos());
+		assertEquals(50000, first.getPercentileNanos(100));
+		assertWithinFivePercent(3000, first.getPercentileNanos(50));
+	}
+
+	private static void assertWithinFivePercent(long theExpected, long theActual) {
+		assertTrue("Expected " + theActual + " to be at least " + theExpected, theActual >= theExpected);
+		assertTrue("Expected " + theActual + " to be within 5% of " + theExpected, theActual <= theExpected * 1.05);
+	}
+
+}
@@ -2,7 +2,10 @@ package ca.uhn.fhir.jpa.dao;
 
 import static org.apache.commons.lang3.StringUtils.*;
 
-import java.io.UnsupportedEncodingException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -14,6 +17,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
@@ -53,16 +58,19 @@ import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamQuantity;
 import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamString;
 import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamToken;
 import ca.uhn.fhir.jpa.entity.ResourceLink;
+import ca.uhn.fhir.jpa.entity.ResourceMatchUrl;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.entity.ResourceTag;
 import ca.uhn.fhir.jpa.entity.TagDefinition;
 import ca.uhn.fhir.jpa.util.StopWatch;
+import ca.uhn.fhir.model.api.IBinaryContentSource;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.model.api.Tag;
 import ca.uhn.fhir.model.api.TagList;
 import ca.uhn.fhir.model.base.composite.BaseResourceReferenceDt;
 import ca.uhn.fhir.model.dstu.composite.ResourceReferenceDt;
+import ca.uhn.fhir.model.dstu.resource.Binary;
 import ca.uhn.fhir.model.dstu.valueset.SearchParamTypeEnum;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.model.primitive.InstantDt;
@@ -95,6 +103,10 @@ public abstract class BaseFhirDao implements IDao {
 	private EntityManager myEntityManager;
 
 	private List<IDaoListener> myListeners = new ArrayList<IDaoListener>();
+
+	@Autowired(required = false)
+	private DaoMetrics myMetrics;
+
 	private ISearchParamExtractor mySearchParamExtractor;
 
 	@Autowired
@@ -274,6 +286,34 @@ public abstract class BaseFhirDao implements IDao {
 		return myConfig;
 	}
 
+	/**
+	 * Returns the metrics collector, or <code>null</code> if none is configured
+	 */
+	protected DaoMetrics getMetrics() {
+		return myMetrics;
+	}
+
+	/**
+	 * Should per-operation timings be logged at INFO level
+	 */
+	protected boolean isLogOperationTimings() {
+		return myConfig.isLogOperationTimings();
+	}
+
+	/**
+	 * Stops the given watch (restarting it) and records the elapsed time against the given resource type and
+	 * operation
+	 * 
+	 * @return The elapsed time in milliseconds
+	 */
+	protected long recordOperation(String theResourceType, String theOperation, StopWatch theWatch) {
+		long millis = theWatch.getMillisAndRestart();
+		if (myMetrics != null) {
+			myMetrics.recordOperation(theResourceType, theOperation, millis);
+		}
+		return millis;
+	}
+
 	public FhirContext getContext() {
 		return myContext;
 	}
@@ -373,11 +413,15 @@ public abstract class BaseFhirDao implements IDao {
 		// Get list of IDs
 		searchHistoryCurrentVersion(theResourceName, theId, theSince, end.getValue(), limit, tuples);
 		assert tuples.size() < 2 || !tuples.get(tuples.size() - 2).getUpdated().before(tuples.get(tuples.size() - 1).getUpdated());
-		ourLog.info("Retrieved {} history IDs from current versions in {} ms", tuples.size(), timer.getMillisAndRestart());
+		if (isLogOperationTimings()) {
+			ourLog.info("Retrieved {} history IDs from current versions in {} ms", tuples.size(), timer.getMillisAndRestart());
+		}
 
 		searchHistoryHistory(theResourceName, theId, theSince, end.getValue(), limit, tuples);
 		assert tuples.size() < 2 || !tuples.get(tuples.size() - 2).getUpdated().before(tuples.get(tuples.size() - 1).getUpdated());
-		ourLog.info("Retrieved {} history IDs from previous versions in {} ms", tuples.size(), timer.getMillisAndRestart());
+		if (isLogOperationTimings()) {
+			ourLog.info("Retrieved {} history IDs from previous versions in {} ms", tuples.size(), timer.getMillisAndRestart());
+		}
 
 		// Sort merged list
 		Collections.sort(tuples, Collections.reverseOrder());
@@ -401,10 +445,14 @@ public abstract class BaseFhirDao implements IDao {
 
 						List<HistoryTuple> tupleSubList = tuples.subList(theFromIndex, theToIndex);
 						searchHistoryCurrentVersion(tupleSubList, resEntities);
-						ourLog.info("Loaded history from current versions in {} ms", timer.getMillisAndRestart());
+						if (isLogOperationTimings()) {
+							ourLog.info("Loaded history from current versions in {} ms", timer.getMillisAndRestart());
+						}
 
 						searchHistoryHistory(tupleSubList, resEntities);
-						ourLog.info("Loaded history from previous versions in {} ms", timer.getMillisAndRestart());
+						if (isLogOperationTimings()) {
+							ourLog.info("Loaded history from previous versions in {} ms", timer.getMillisAndRestart());
+						}
 
 						Collections.sort(resEntities, new Comparator<BaseHasResource>() {
 							@Override
@@ -526,20 +574,51 @@ public abstract class BaseFhirDao implements IDao {
 			}
 		}
 
-		String encoded = myConfig.getResourceEncoding().newParser(myContext).encodeResourceToString(theResource);
+		IResource encodedResource = theResource;
+		theEntity.setBinaryStorageKey(null);
+		FilesystemBinaryStorage binaryStorage = myConfig.getBinaryStorage();
+		if (binaryStorage != null && theResource instanceof Binary) {
+			Binary binary = (Binary) theResource;
+			IBinaryContentSource content = binary.getContentSource();
+			if (content != null) {
+				String key;
+				try {
+					key = binaryStorage.store(content);
+				} catch (IOException e) {
+					throw new InternalErrorException("Failed to store binary content", e);
+				}
+				theEntity.setBinaryStorageKey(key);
+
+				/*
+				 * The content may have been a stream which can only be read once, so the resource now reads it back
+				 * from the storage. Only the content type is encoded into the resource table.
+				 */
+				binary.setContentSource(binaryStorage.load(key));
+				Binary stub = new Binary();
+				stub.setContentType(binary.getContentType());
+				stub.setContent(new byte[0]);
+				encodedResource = stub;
+			}
+		}
+
 		ResourceEncodingEnum encoding = myConfig.getResourceEncoding();
+		IParser parser = encoding.newParser(myContext);
 		theEntity.setEncoding(encoding);
 		theEntity.setFhirVersion(myContext.getVersion().getVersion());
 		try {
+			ByteArrayOutputStream encoded = new ByteArrayOutputStream();
 			switch (encoding) {
 			case JSON:
-				theEntity.setResource(encoded.getBytes("UTF-8"));
+				parser.encodeResourceToOutputStream(encodedResource, encoded);
 				break;
 			case JSONC:
-				theEntity.setResource(GZipUtil.compress(encoded));
+				GZIPOutputStream compressed = new GZIPOutputStream(encoded);
+				parser.encodeResourceToOutputStream(encodedResource, compressed);
+				compressed.close();
 				break;
 			}
-		} catch (UnsupportedEncodingException e) {
+			theEntity.setResource(encoded.toByteArray());
+		} catch (IOException e) {
 			throw new InternalErrorException(e);
 		}
 
@@ -650,7 +729,9 @@ public abstract class BaseFhirDao implements IDao {
 			return;
 		}
 
-		ourLog.info("Retrieving {} history elements from ResourceHistoryTable", ids.size());
+		if (isLogOperationTimings()) {
+			ourLog.info("Retrieving {} history elements from ResourceHistoryTable", ids.size());
+		}
 
 		CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
 		CriteriaQuery<ResourceHistoryTable> cq = builder.createQuery(ResourceHistoryTable.class);
@@ -728,24 +809,23 @@ public abstract class BaseFhirDao implements IDao {
 	}
 
 	protected <T extends IBaseResource> T toResource(Class<T> theResourceType, BaseHasResource theEntity) {
-		String resourceText = null;
+		InputStream resourceStream = new ByteArrayInputStream(theEntity.getResource());
 		switch (theEntity.getEncoding()) {
 		case JSON:
-			try {
-				resourceText = new String(theEntity.getResource(), "UTF-8");
-			} catch (UnsupportedEncodingException e) {
-				throw new Error("Should not happen", e);
-			}
 			break;
 		case JSONC:
-			resourceText = GZipUtil.decompress(theEntity.getResource());
+			try {
+				resourceStream = new GZIPInputStream(resourceStream);
+			} catch (IOException e) {
+				throw new DataFormatException("Failed to decompress contents", e);
+			}
 			break;
 		}
 
 		IParser parser = theEntity.getEncoding().newParser(getContext(theEntity.getFhirVersion()));
 		T retVal;
 		try {
-			retVal = parser.parseResource(theResourceType, resourceText);
+			retVal = parser.parseResource(theResourceType, resourceStream);
 		} catch (Exception e) {
 			StringBuilder b = new StringBuilder();
 			b.append("Failed to parse database resource[");
@@ -765,6 +845,14 @@ public abstract class BaseFhirDao implements IDao {
 		IResource res = (IResource) retVal;
 		res.setId(theEntity.getIdDt());
 
+		if (theEntity.getBinaryStorageKey() != null && res instanceof Binary) {
+			FilesystemBinaryStorage binaryStorage = myConfig.getBinaryStorage();
+			if (binaryStorage == null) {
+				throw new InternalErrorException("Content of " + theEntity.getIdDt().toUnqualifiedVersionless() + " is held in binary storage, but no binary storage is configured");
+			}
+			((Binary) res).setContentSource(binaryStorage.load(theEntity.getBinaryStorageKey()));
+		}
+
 		res.getResourceMetadata().put(ResourceMetadataKeyEnum.VERSION_ID, theEntity.getVersion());
 		res.getResourceMetadata().put(ResourceMetadataKeyEnum.PUBLISHED, theEntity.getPublished());
 		res.getResourceMetadata().put(ResourceMetadataKeyEnum.UPDATED, theEntity.getUpdated());
@@ -955,8 +1043,16 @@ public abstract class BaseFhirDao implements IDao {
 			myEntityManager.persist(next);
 		}
 
+		if (myMetrics != null) {
+			myMetrics.recordIndexRowsWritten(stringParams.size() + tokenParams.size() + numberParams.size() + quantityParams.size() + dateParams.size() + links.size());
+		}
+
 		myEntityManager.flush();
 
+		if (entity.isHasMatchUrl()) {
+			releaseMatchUrls(entity, theDelete);
+		}
+
 		if (theResource != null) {
 			theResource.setId(entity.getIdDt());
 		}
@@ -964,4 +1060,44 @@ public abstract class BaseFhirDao implements IDao {
 		return entity;
 	}
 
+	/**
+	 * Once a resource changes it may no longer match the URL of the conditional operation which created it, and a
+	 * row left behind would make every later conditional create for that URL fail. Claims are kept for as long as
+	 * the resource still matches, since a second resource created for the URL would then be a duplicate.
+	 */
+	private void releaseMatchUrls(ResourceTable theEntity, boolean theDelete) {
+		TypedQuery<ResourceMatchUrl> q = myEntityManager.createNamedQuery("Q_GET_MATCH_URL_BY_RESOURCE", ResourceMatchUrl.class);
+		q.setParameter("RES_ID", theEntity.getId());
+
+		boolean retained = false;
+		for (ResourceMatchUrl next : q.getResultList()) {
+			if (!theDelete && isStillMatching(theEntity, next)) {
+				retained = true;
+			} else {
+				myEntityManager.remove(next);
+			}
+		}
+
+		if (!retained) {
+			theEntity.setHasMatchUrl(false);
+		}
+		myEntityManager.flush();
+	}
+
+	private boolean isStillMatching(ResourceTable theEntity, ResourceMatchUrl theMatchUrl) {
+		/*
+		 * Long URLs are stored truncated, in which case the hash no longer agrees and the URL can't be re-run
+		 */
+		String matchUrl = theMatchUrl.getMatchUrl();
+		if (!ResourceMatchUrl.hashMatchUrl(theEntity.getResourceType(), matchUrl).equals(theMatchUrl.getMatchHash())) {
+			return false;
+		}
+
+		IFhirResourceDao<? extends IResource> dao = getDao(myContext.getResourceDefinition(theEntity.getResourceType()).getImplementingClass());
+		if (!(dao instanceof FhirResourceDao)) {
+			return false;
+		}
+		return ((FhirResourceDao<?>) dao).searchForIdsWithMatchUrl(matchUrl).contains(theEntity.getId());
+	}
+
 }
@@ -1,13 +1,23 @@
 package ca.uhn.fhir.jpa.dao;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import ca.uhn.fhir.jpa.entity.ResourceEncodingEnum;
 
 public class DaoConfig {
 
+	private FilesystemBinaryStorage myBinaryStorage;
 	private int myHardSearchLimit = 1000;
 	private int myHardTagListLimit = 1000;
 	private ResourceEncodingEnum myResourceEncoding=ResourceEncodingEnum.JSONC;
 	private int myIncludeLimit = 2000;
+	private HistoryRetentionPolicy myDefaultHistoryRetentionPolicy = new HistoryRetentionPolicy();
+	private Map<String, HistoryRetentionPolicy> myHistoryRetentionPolicies = new HashMap<String, HistoryRetentionPolicy>();
+	private int myExpungeBatchSize = 500;
+	private boolean myExpungeDeletedResources = false;
+	private boolean myLogOperationTimings = true;
+	private boolean myMatchUnnormalizedQuantities = false;
 
 	/**
 	 * This is the maximum number of resources that will be added to a single page of 
@@ -38,6 +48,27 @@ public class DaoConfig {
 		myHardTagListLimit = theHardTagListLimit;
 	}
 
+	/**
+	 * See {@link #setBinaryStorage(FilesystemBinaryStorage)}
+	 */
+	public FilesystemBinaryStorage getBinaryStorage() {
+		return myBinaryStorage;
+	}
+
+	/**
+	 * Sets the storage used for the content of Binary resources. If set, the content of each Binary which is created
+	 * or updated is streamed to this storage instead of being stored in the resource table, and Binary resources which
+	 * are read are streamed from it. Default is <code>null</code>, meaning that Binary content is stored in the
+	 * resource table like any other resource.
+	 * <p>
+	 * Note that once binaries have been written to the storage it must remain configured, since they can not be read
+	 * without it.
+	 * </p>
+	 */
+	public void setBinaryStorage(FilesystemBinaryStorage theBinaryStorage) {
+		myBinaryStorage = theBinaryStorage;
+	}
+
 	public ResourceEncodingEnum getResourceEncoding() {
 		return myResourceEncoding;
 	}
@@ -50,4 +81,119 @@ public class DaoConfig {
 		return myIncludeLimit;
 	}
 
+	/**
+	 * See {@link #setDefaultHistoryRetentionPolicy(HistoryRetentionPolicy)}
+	 */
+	public HistoryRetentionPolicy getDefaultHistoryRetentionPolicy() {
+		return myDefaultHistoryRetentionPolicy;
+	}
+
+	/**
+	 * Sets the history retention policy which applies to any resource type that does not have its own policy
+	 * set using {@link #setHistoryRetentionPolicies(Map)}. The default policy retains all versions.
+	 */
+	public void setDefaultHistoryRetentionPolicy(HistoryRetentionPolicy theDefaultHistoryRetentionPolicy) {
+		if (theDefaultHistoryRetentionPolicy == null) {
+			throw new NullPointerException("Policy can not be null");
+		}
+		myDefaultHistoryRetentionPolicy = theDefaultHistoryRetentionPolicy;
+	}
+
+	/**
+	 * See {@link #setHistoryRetentionPolicies(Map)}
+	 */
+	public Map<String, HistoryRetentionPolicy> getHistoryRetentionPolicies() {
+		return myHistoryRetentionPolicies;
+	}
+
+	/**
+	 * Sets history retention policies for individual resource types. Keys are resource names (e.g. "Patient").
+	 */
+	public void setHistoryRetentionPolicies(Map<String, HistoryRetentionPolicy> theHistoryRetentionPolicies) {
+		myHistoryRetentionPolicies = theHistoryRetentionPolicies;
+		if (myHistoryRetentionPolicies == null) {
+			myHistoryRetentionPolicies = new HashMap<String, HistoryRetentionPolicy>();
+		}
+	}
+
+	/**
+	 * Returns the history retention policy which applies to the given resource type
+	 */
+	public HistoryRetentionPolicy getHistoryRetentionPolicy(String theResourceType) {
+		HistoryRetentionPolicy retVal = myHistoryRetentionPolicies.get(theResourceType);
+		if (retVal == null) {
+			retVal = myDefaultHistoryRetentionPolicy;
+		}
+		return retVal;
+	}
+
+	/**
+	 * See {@link #setExpungeBatchSize(int)}
+	 */
+	public int getExpungeBatchSize() {
+		return myExpungeBatchSize;
+	}
+
+	/**
+	 * This is the maximum number of rows (old versions or deleted resources) which will be physically removed 
+	 * in a single database transaction by the expunge job. Keeping this small keeps the job's transactions
+	 * short so that they do not hold locks which block regular traffic. Default is 500.
+	 */
+	public void setExpungeBatchSize(int theExpungeBatchSize) {
+		if (theExpungeBatchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		myExpungeBatchSize = theExpungeBatchSize;
+	}
+
+	/**
+	 * See {@link #setExpungeDeletedResources(boolean)}
+	 */
+	public boolean isExpungeDeletedResources() {
+		return myExpungeDeletedResources;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the expunge job will also physically remove resources
+	 * which have been deleted, along with all of their history, tags and index rows. Once this has happened
+	 * a read of the deleted resource will return 404 Not Found instead of 410 Gone.
+	 */
+	public void setExpungeDeletedResources(boolean theExpungeDeletedResources) {
+		myExpungeDeletedResources = theExpungeDeletedResources;
+	}
+
+	/**
+	 * See {@link #setLogOperationTimings(boolean)}
+	 */
+	public boolean isLogOperationTimings() {
+		return myLogOperationTimings;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>true</code>), the DAOs log the time taken by each read, search,
+	 * create, update, etc. (as well as the individual steps of searches and transactions) at INFO level. High volume
+	 * servers may wish to disable this, since the timings are also collected by {@link DaoMetrics} if that bean is
+	 * present.
+	 */
+	public void setLogOperationTimings(boolean theLogOperationTimings) {
+		myLogOperationTimings = theLogOperationTimings;
+	}
+
+	/**
+	 * See {@link #setMatchUnnormalizedQuantities(boolean)}
+	 */
+	public boolean isMatchUnnormalizedQuantities() {
+		return myMatchUnnormalizedQuantities;
+	}
+
+	/**
+	 * Searches on UCUM quantities match the values converted to canonical units, which are only present in index
+	 * rows written by this version of the server or backfilled by {@link QuantityReindexJob}. If set to
+	 * <code>true</code> (default is <code>false</code>), searches will also match rows without converted values
+	 * using the units as given, which is slower but allows searching while the backfill is still running.
+	 */
+	public void setMatchUnnormalizedQuantities(boolean theMatchUnnormalizedQuantities) {
+		myMatchUnnormalizedQuantities = theMatchUnnormalizedQuantities;
+	}
+
 }
@@ -0,0 +1,294 @@
+package ca.uhn.fhir.jpa.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+
+import org.hibernate.jpa.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Collects timing and volume metrics for the JPA DAOs. If a bean of this type is present in the application
+ * context it is automatically used by all DAOs, and if the context contains an MBean exporter (e.g.
+ * <code>&lt;context:mbean-export/&gt;</code>) the metrics are also available through JMX.
+ * <p>
+ * Operation timings are kept per resource type and operation (e.g. "Patient" / "search") as a count, a total, a
+ * maximum, and a histogram with fixed bucket boundaries (see {@link #BUCKET_UPPER_BOUNDS_MILLIS}) from which
+ * percentiles can be estimated.
+ * </p>
+ */
+@ManagedResource(objectName = DaoMetrics.OBJECT_NAME, description = "HAPI FHIR JPA DAO metrics")
+public class DaoMetrics {
+
+	/**
+	 * Upper bounds (inclusive) of the latency histogram buckets, in milliseconds. Any operation which takes longer
+	 * than the last bound is counted in an additional overflow bucket.
+	 */
+	public static final long[] BUCKET_UPPER_BOUNDS_MILLIS = { 1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+	public static final String OBJECT_NAME = "ca.uhn.fhir.jpa:type=DaoMetrics";
+
+	@PersistenceUnit(unitName = "FHIR_UT")
+	private EntityManagerFactory myEntityManagerFactory;
+
+	private final AtomicLong myIncludedResources = new AtomicLong();
+	private final AtomicLong myIndexRowsWritten = new AtomicLong();
+	private final ConcurrentMap<String, OperationTimer> myOperations = new ConcurrentHashMap<String, OperationTimer>();
+	private final AtomicLong mySearchCount = new AtomicLong();
+	private final AtomicLong mySearchPidsMax = new AtomicLong();
+	private final AtomicLong mySearchPidsTotal = new AtomicLong();
+
+	@ManagedAttribute(description = "Total number of resources loaded because of _include parameters")
+	public long getIncludedResourceCount() {
+		return myIncludedResources.get();
+	}
+
+	@ManagedAttribute(description = "Total number of search index and resource link rows written")
+	public long getIndexRowsWritten() {
+		return myIndexRowsWritten.get();
+	}
+
+	/**
+	 * Returns the timer for the given resource type and operation, or <code>null</code> if the operation has
+	 * never been recorded
+	 */
+	public OperationTimer getOperation(String theResourceType, String theOperation) {
+		return myOperations.get(toKey(theResourceType, theOperation));
+	}
+
+	@ManagedOperation(description = "Returns the number of times the given operation has been performed on the given resource type")
+	public long getOperationCount(String theResourceType, String theOperation) {
+		OperationTimer timer = getOperation(theResourceType, theOperation);
+		return timer != null ? timer.getCount() : 0;
+	}
+
+	@ManagedOperation(description = "Returns an estimate (the upper bound of the histogram bucket) of the given latency percentile, e.g. 95 or 99")
+	public long getOperationPercentileMillis(String theResourceType, String theOperation, double thePercentile) {
+		OperationTimer timer = getOperation(theResourceType, theOperation);
+		return timer != null ? timer.getPercentileMillis(thePercentile) : 0;
+	}
+
+	/**
+	 * Returns all recorded operations, keyed by "[resource type].[operation]"
+	 */
+	public Map<String, OperationTimer> getOperations() {
+		return Collections.unmodifiableMap(myOperations);
+	}
+
+	@ManagedAttribute(description = "One line per resource type and operation with count, mean, percentiles and maximum latency")
+	public String[] getOperationSummaries() {
+		List<String> keys = new ArrayList<String>(myOperations.keySet());
+		Collections.sort(keys);
+		String[] retVal = new String[keys.size()];
+		for (int i = 0; i < keys.size(); i++) {
+			retVal[i] = keys.get(i) + " " + myOperations.get(keys.get(i)).toString();
+		}
+		return retVal;
+	}
+
+	@ManagedAttribute(description = "Number of searches which have been performed")
+	public long getSearchCount() {
+		return mySearchCount.get();
+	}
+
+	@ManagedAttribute(description = "Largest number of resource IDs matched by a single search")
+	public long getSearchPidsMax() {
+		return mySearchPidsMax.get();
+	}
+
+	@ManagedAttribute(description = "Total number of resource IDs matched by all searches")
+	public long getSearchPidsTotal() {
+		return mySearchPidsTotal.get();
+	}
+
+	@ManagedAttribute(description = "Second level cache hit count (requires Hibernate statistics to be enabled)")
+	public long getSecondLevelCacheHitCount() {
+		Statistics stats = getHibernateStatistics();
+		return stats != null ? stats.getSecondLevelCacheHitCount() : 0;
+	}
+
+	@ManagedAttribute(description = "Second level cache miss count (requires Hibernate statistics to be enabled)")
+	public long getSecondLevelCacheMissCount() {
+		Statistics stats = getHibernateStatistics();
+		return stats != null ? stats.getSecondLevelCacheMissCount() : 0;
+	}
+
+	@ManagedAttribute(description = "Number of SQL statements prepared (requires Hibernate statistics to be enabled)")
+	public long getSqlStatementCount() {
+		Statistics stats = getHibernateStatistics();
+		return stats != null ? stats.getPrepareStatementCount() : 0;
+	}
+
+	@ManagedAttribute(description = "Are Hibernate statistics (SQL statement and cache counters) being collected")
+	public boolean isHibernateStatisticsEnabled() {
+		Statistics stats = getHibernateStatistics();
+		return stats != null && stats.isStatisticsEnabled();
+	}
+
+	public void recordIncludedResources(int theCount) {
+		myIncludedResources.addAndGet(theCount);
+	}
+
+	public void recordIndexRowsWritten(int theCount) {
+		myIndexRowsWritten.addAndGet(theCount);
+	}
+
+	public void recordOperation(String theResourceType, String theOperation, long theMillis) {
+		String key = toKey(theResourceType, theOperation);
+		OperationTimer timer = myOperations.get(key);
+		if (timer == null) {
+			OperationTimer newTimer = new OperationTimer();
+			timer = myOperations.putIfAbsent(key, newTimer);
+			if (timer == null) {
+				timer = newTimer;
+			}
+		}
+		timer.record(theMillis);
+	}
+
+	public void recordSearchPids(int theCount) {
+		mySearchCount.incrementAndGet();
+		mySearchPidsTotal.addAndGet(theCount);
+		long max;
+		do {
+			max = mySearchPidsMax.get();
+		} while (theCount > max && !mySearchPidsMax.compareAndSet(max, theCount));
+	}
+
+	@ManagedOperation(description = "Clears all collected metrics")
+	public void reset() {
+		myOperations.clear();
+		myIncludedResources.set(0);
+		myIndexRowsWritten.set(0);
+		mySearchCount.set(0);
+		mySearchPidsTotal.set(0);
+		mySearchPidsMax.set(0);
+		Statistics stats = getHibernateStatistics();
+		if (stats != null) {
+			stats.clear();
+		}
+	}
+
+	public void setEntityManagerFactory(EntityManagerFactory theEntityManagerFactory) {
+		myEntityManagerFactory = theEntityManagerFactory;
+	}
+
+	@ManagedAttribute(description = "Enables or disables the collection of Hibernate statistics (SQL statement and cache counters)")
+	public void setHibernateStatisticsEnabled(boolean theEnabled) {
+		Statistics stats = getHibernateStatistics();
+		if (stats != null) {
+			stats.setStatisticsEnabled(theEnabled);
+		}
+	}
+
+	private Statistics getHibernateStatistics() {
+		if (myEntityManagerFactory instanceof HibernateEntityManagerFactory) {
+			return ((HibernateEntityManagerFactory) myEntityManagerFactory).getSessionFactory().getStatistics();
+		}
+		return null;
+	}
+
+	private static String toKey(String theResourceType, String theOperation) {
+		return (theResourceType != null ? theResourceType : "*") + '.' + theOperation;
+	}
+
+	/**
+	 * Latency statistics for a single resource type and operation
+	 */
+	public static class OperationTimer {
+		private final AtomicLongArray myBuckets = new AtomicLongArray(BUCKET_UPPER_BOUNDS_MILLIS.length + 1);
+		private final AtomicLong myCount = new AtomicLong();
+		private final AtomicLong myMaxMillis = new AtomicLong();
+		private final AtomicLong myTotalMillis = new AtomicLong();
+
+		/**
+		 * Returns the number of operations in each histogram bucket. The returned array has one more element than
+		 * {@link DaoMetrics#BUCKET_UPPER_BOUNDS_MILLIS}, the last one being the overflow bucket.
+		 */
+		public long[] getBucketCounts() {
+			long[] retVal = new long[myBuckets.length()];
+			for (int i = 0; i < retVal.length; i++) {
+				retVal[i] = myBuckets.get(i);
+			}
+			return retVal;
+		}
+
+		public long getCount() {
+			return myCount.get();
+		}
+
+		public long getMaxMillis() {
+			return myMaxMillis.get();
+		}
+
+		public double getMeanMillis() {
+			long count = myCount.get();
+			return count > 0 ? ((double) myTotalMillis.get()) / count : 0;
+		}
+
+		/**
+		 * Returns an estimate of the given percentile (0-100). The estimate is the upper bound of the histogram
+		 * bucket which contains the percentile, or the maximum recorded value if that is lower.
+		 */
+		public long getPercentileMillis(double thePercentile) {
+			long[] buckets = getBucketCounts();
+			long total = 0;
+			for (long next : buckets) {
+				total += next;
+			}
+			if (total == 0) {
+				return 0;
+			}
+
+			long threshold = (long) Math.ceil(total * (thePercentile / 100.0));
+			long seen = 0;
+			for (int i = 0; i < BUCKET_UPPER_BOUNDS_MILLIS.length; i++) {
+				seen += buckets[i];
+				if (seen >= threshold) {
+					return Math.min(BUCKET_UPPER_BOUNDS_MILLIS[i], getMaxMillis());
+				}
+			}
+			return getMaxMillis();
+		}
+
+		public long getTotalMillis() {
+			return myTotalMillis.get();
+		}
+
+		void record(long theMillis) {
+			myCount.incrementAndGet();
+			myTotalMillis.addAndGet(theMillis);
+
+			long max;
+			do {
+				max = myMaxMillis.get();
+			} while (theMillis > max && !myMaxMillis.compareAndSet(max, theMillis));
+
+			int bucket = BUCKET_UPPER_BOUNDS_MILLIS.length;
+			for (int i = 0; i < BUCKET_UPPER_BOUNDS_MILLIS.length; i++) {
+				if (theMillis <= BUCKET_UPPER_BOUNDS_MILLIS[i]) {
+					bucket = i;
+					break;
+				}
+			}
+			myBuckets.incrementAndGet(bucket);
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + getCount() + " mean=" + Math.round(getMeanMillis()) + "ms p50=" + getPercentileMillis(50) + "ms p95=" + getPercentileMillis(95) + "ms p99=" + getPercentileMillis(99) + "ms max=" + getMaxMillis() + "ms";
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package ca.uhn.fhir.jpa.dao;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Background job which physically removes old resource versions (according to the
+ * {@link DaoConfig#setDefaultHistoryRetentionPolicy(HistoryRetentionPolicy) history retention policies}) and, if
+ * {@link DaoConfig#setExpungeDeletedResources(boolean) enabled}, deleted resources.
+ * <p>
+ * Work is performed in batches of {@link DaoConfig#getExpungeBatchSize()} rows, each in its own transaction, with a
+ * pause between batches so that the job does not compete too aggressively with regular traffic. This class is
+ * intended to be scheduled periodically, e.g. using
+ * <code>&lt;task:scheduled ref="myExpungeJob" method="run" fixed-delay="3600000"/&gt;</code>
+ * </p>
+ */
+public class ExpungeJob implements Runnable {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ExpungeJob.class);
+
+	@Autowired(required = true)
+	private DaoConfig myConfig;
+
+	private int myMaxBatchesPerRun = 100;
+	private long myPauseMillisBetweenBatches = 1000;
+	private final AtomicBoolean myRunning = new AtomicBoolean(false);
+	private IFhirSystemDao mySystemDao;
+
+	public int getMaxBatchesPerRun() {
+		return myMaxBatchesPerRun;
+	}
+
+	public long getPauseMillisBetweenBatches() {
+		return myPauseMillisBetweenBatches;
+	}
+
+	public IFhirSystemDao getSystemDao() {
+		return mySystemDao;
+	}
+
+	@Override
+	public void run() {
+		if (!myRunning.compareAndSet(false, true)) {
+			ourLog.info("Expunge job is already running, skipping this pass");
+			return;
+		}
+		try {
+			int batchSize = myConfig.getExpungeBatchSize();
+			int batches = 0;
+			long versions = 0;
+			long resources = 0;
+
+			while (batches < myMaxBatchesPerRun) {
+				int count = mySystemDao.expungeHistory(batchSize);
+				versions += count;
+				batches++;
+				if (count < batchSize || !pause()) {
+					break;
+				}
+			}
+
+			if (myConfig.isExpungeDeletedResources()) {
+				while (batches < myMaxBatchesPerRun) {
+					int count = mySystemDao.expungeDeletedResources(batchSize);
+					resources += count;
+					batches++;
+					if (count < batchSize || !pause()) {
+						break;
+					}
+				}
+			}
+
+			ourLog.info("Expunge job removed {} old versions and {} deleted resources in {} batches", new Object[] { versions, resources, batches });
+		} finally {
+			myRunning.set(false);
+		}
+	}
+
+	/**
+	 * Sets the DAO config. Normally this is autowired.
+	 */
+	public void setConfig(DaoConfig theConfig) {
+		myConfig = theConfig;
+	}
+
+	/**
+	 * Sets the maximum number of batches which will be executed in a single run of this job. Any remaining work is
+	 * left for the next run. Default is 100.
+	 */
+	public void setMaxBatchesPerRun(int theMaxBatchesPerRun) {
+		myMaxBatchesPerRun = theMaxBatchesPerRun;
+	}
+
+	/**
+	 * Sets the number of milliseconds to wait between batches. Default is 1000.
+	 */
+	public void setPauseMillisBetweenBatches(long thePauseMillisBetweenBatches) {
+		myPauseMillisBetweenBatches = thePauseMillisBetweenBatches;
+	}
+
+	/**
+	 * Sets the system DAO. Note that this must be the transactional (i.e. Spring managed) instance, since
+	 * each batch relies on the DAO to start its own transaction.
+	 */
+	public void setSystemDao(IFhirSystemDao theSystemDao) {
+		mySystemDao = theSystemDao;
+	}
+
+	private boolean pause() {
+		if (myPauseMillisBetweenBatches <= 0) {
+			return true;
+		}
+		try {
+			Thread.sleep(myPauseMillisBetweenBatches);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+}
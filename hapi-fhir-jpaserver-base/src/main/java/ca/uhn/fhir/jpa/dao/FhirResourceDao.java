@@ -2,7 +2,10 @@ package ca.uhn.fhir.jpa.dao;
 
 import static org.apache.commons.lang3.StringUtils.*;
 
+import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -18,6 +21,7 @@ import java.util.Set;
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
 import javax.persistence.TemporalType;
 import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
@@ -32,6 +36,9 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.hibernate.exception.ConstraintViolationException;
 import org.hl7.fhir.instance.model.IBaseResource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Required;
@@ -56,9 +63,11 @@ import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamQuantity;
 import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamString;
 import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamToken;
 import ca.uhn.fhir.jpa.entity.ResourceLink;
+import ca.uhn.fhir.jpa.entity.ResourceMatchUrl;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.entity.TagDefinition;
 import ca.uhn.fhir.jpa.util.StopWatch;
+import ca.uhn.fhir.jpa.util.UcumConverter;
 import ca.uhn.fhir.model.api.IPrimitiveDatatype;
 import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.model.api.IResource;
@@ -77,6 +86,7 @@ import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.method.QualifiedParamList;
 import ca.uhn.fhir.rest.param.CompositeParam;
 import ca.uhn.fhir.rest.param.DateParam;
 import ca.uhn.fhir.rest.param.DateRangeParam;
@@ -85,12 +95,17 @@ import ca.uhn.fhir.rest.param.QuantityParam;
 import ca.uhn.fhir.rest.param.ReferenceParam;
 import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.server.BundleProviders;
+import ca.uhn.fhir.rest.server.Constants;
 import ca.uhn.fhir.rest.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.ResourceVersionInfo;
 import ca.uhn.fhir.rest.server.SimpleBundleProvider;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
 import ca.uhn.fhir.util.FhirTerser;
 import ca.uhn.fhir.util.ObjectUtil;
@@ -132,12 +147,63 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 		myEntityManager.persist(newEntity);
 		myEntityManager.merge(entity);
 		notifyWriteCompleted();
-		ourLog.info("Processed addTag {}/{} on {} in {}ms", new Object[] { theScheme, theTerm, theId, w.getMillisAndRestart() });
+		long millis = recordOperation(myResourceName, "addTag", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed addTag {}/{} on {} in {}ms", new Object[] { theScheme, theTerm, theId, millis });
+		}
 	}
 
 	@Override
 	public MethodOutcome create(final T theResource) {
 		StopWatch w = new StopWatch();
+		ResourceTable entity = doCreate(theResource);
+
+		MethodOutcome outcome = toMethodOutcome(entity);
+		notifyWriteCompleted();
+		long millis = recordOperation(myResourceName, "create", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed create on {} in {}ms", myResourceName, millis);
+		}
+		return outcome;
+	}
+
+	@Override
+	public MethodOutcome create(T theResource, String theIfNoneExist) {
+		if (isBlank(theIfNoneExist)) {
+			return create(theResource);
+		}
+
+		StopWatch w = new StopWatch();
+		String matchUrl = normalizeMatchUrl(theIfNoneExist);
+		Set<Long> match = searchForIdsWithAndOr(translateMatchUrl(matchUrl));
+		if (match.size() > 1) {
+			throw new PreconditionFailedException("Failed to create resource of type " + myResourceName + " with If-None-Exist[" + theIfNoneExist + "] because this search matched " + match.size() + " resources");
+		}
+
+		MethodOutcome outcome;
+		if (match.size() == 1) {
+			ResourceTable existing = myEntityManager.find(ResourceTable.class, match.iterator().next());
+			outcome = toMethodOutcome(existing);
+			outcome.setCreated(false);
+			long millis = recordOperation(myResourceName, "conditionalCreate", w);
+			if (isLogOperationTimings()) {
+				ourLog.info("Processed conditional create on {} in {}ms, matched existing resource {}", new Object[] { myResourceName, millis, existing.getIdDt().getValue() });
+			}
+		} else {
+			ResourceTable entity = doCreate(theResource);
+			storeMatchUrl(entity, matchUrl);
+			outcome = toMethodOutcome(entity);
+			outcome.setCreated(true);
+			notifyWriteCompleted();
+			long millis = recordOperation(myResourceName, "conditionalCreate", w);
+			if (isLogOperationTimings()) {
+				ourLog.info("Processed conditional create on {} in {}ms", myResourceName, millis);
+			}
+		}
+		return outcome;
+	}
+
+	private ResourceTable doCreate(final T theResource) {
 		ResourceTable entity = new ResourceTable();
 		entity.setResourceType(toResourceName(theResource));
 
@@ -159,12 +225,7 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 
 		}
 
-		updateEntity(theResource, entity, false, false);
-
-		MethodOutcome outcome = toMethodOutcome(entity);
-		notifyWriteCompleted();
-		ourLog.info("Processed create on {} in {}ms", myResourceName, w.getMillisAndRestart());
-		return outcome;
+		return updateEntity(theResource, entity, false, false);
 	}
 
 	@Override
@@ -179,7 +240,10 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 
 		notifyWriteCompleted();
 
-		ourLog.info("Processed delete on {} in {}ms", theId.getValue(), w.getMillisAndRestart());
+		long millis = recordOperation(myResourceName, "delete", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed delete on {} in {}ms", theId.getValue(), millis);
+		}
 		return toMethodOutcome(savedEntity);
 	}
 
@@ -191,7 +255,10 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 	public TagList getAllResourceTags() {
 		StopWatch w = new StopWatch();
 		TagList tags = super.getTags(myResourceType, null);
-		ourLog.info("Processed getTags on {} in {}ms", myResourceName, w.getMillisAndRestart());
+		long millis = recordOperation(myResourceName, "getTags", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed getTags on {} in {}ms", myResourceName, millis);
+		}
 		return tags;
 	}
 
@@ -203,7 +270,10 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 	public TagList getTags(IdDt theResourceId) {
 		StopWatch w = new StopWatch();
 		TagList retVal = super.getTags(myResourceType, theResourceId);
-		ourLog.info("Processed getTags on {} in {}ms", theResourceId, w.getMillisAndRestart());
+		long millis = recordOperation(myResourceName, "getTags", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed getTags on {} in {}ms", theResourceId, millis);
+		}
 		return retVal;
 	}
 
@@ -211,7 +281,10 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 	public IBundleProvider history(Date theSince) {
 		StopWatch w = new StopWatch();
 		IBundleProvider retVal = super.history(myResourceName, null, theSince);
-		ourLog.info("Processed history on {} in {}ms", myResourceName, w.getMillisAndRestart());
+		long millis = recordOperation(myResourceName, "history", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed history on {} in {}ms", myResourceName, millis);
+		}
 		return retVal;
 	}
 
@@ -307,7 +380,10 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 	public IBundleProvider history(Long theId, Date theSince) {
 		StopWatch w = new StopWatch();
 		IBundleProvider retVal = super.history(myResourceName, theId, theSince);
-		ourLog.info("Processed history on {} in {}ms", theId, w.getMillisAndRestart());
+		long millis = recordOperation(myResourceName, "history", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed history on {} in {}ms", theId, millis);
+		}
 		return retVal;
 	}
 
@@ -344,10 +420,38 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 			throw new ResourceGoneException("Resource was deleted at " + deleted.getValueAsString());
 		}
 
-		ourLog.info("Processed read on {} in {}ms", theId.getValue(), w.getMillisAndRestart());
+		long millis = recordOperation(myResourceName, "read", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed read on {} in {}ms", theId.getValue(), millis);
+		}
 		return retVal;
 	}
 
+	@Override
+	public ResourceVersionInfo readCurrentVersion(IdDt theId) {
+		validateResourceTypeAndThrowIllegalArgumentException(theId);
+
+		StopWatch w = new StopWatch();
+		Long pid;
+		try {
+			pid = translateForcedIdToPid(theId);
+		} catch (ResourceNotFoundException e) {
+			return null;
+		}
+
+		TypedQuery<Object[]> q = myEntityManager.createQuery("SELECT t.myVersion, t.myUpdated FROM ResourceTable t WHERE t.myId = :PID AND t.myResourceType = :RTYP AND t.myDeleted IS NULL", Object[].class);
+		q.setParameter("PID", pid);
+		q.setParameter("RTYP", myResourceName);
+		List<Object[]> results = q.getResultList();
+
+		recordOperation(myResourceName, "readCurrentVersion", w);
+		if (results.isEmpty()) {
+			return null;
+		}
+		Object[] result = results.get(0);
+		return new ResourceVersionInfo(result[0].toString(), (Date) result[1]);
+	}
+
 	@Override
 	public BaseHasResource readEntity(IdDt theId) {
 		validateResourceTypeAndThrowIllegalArgumentException(theId);
@@ -402,7 +506,10 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 
 		myEntityManager.merge(entity);
 
-		ourLog.info("Processed remove tag {}/{} on {} in {}ms", new Object[] { theScheme, theTerm, theId.getValue(), w.getMillisAndRestart() });
+		long millis = recordOperation(myResourceName, "removeTag", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed remove tag {}/{} on {} in {}ms", new Object[] { theScheme, theTerm, theId.getValue(), millis });
+		}
 	}
 
 	@Override
@@ -419,6 +526,25 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 		StopWatch w = new StopWatch();
 		final InstantDt now = InstantDt.withCurrentTime();
 
+		if (theParams.isCountOnly()) {
+			int count;
+			if (theParams.isEmpty()) {
+				CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
+				CriteriaQuery<Long> cq = builder.createQuery(Long.class);
+				Root<ResourceTable> from = cq.from(ResourceTable.class);
+				cq.select(builder.count(from));
+				cq.where(builder.equal(from.get("myResourceType"), myResourceName));
+				count = myEntityManager.createQuery(cq).getSingleResult().intValue();
+			} else {
+				count = searchForIdsWithAndOr(theParams).size();
+			}
+			long millis = recordOperation(myResourceName, "searchCount", w);
+			if (isLogOperationTimings()) {
+				ourLog.info("Processed count search for {} on {} in {}ms", new Object[] { myResourceName, theParams, millis });
+			}
+			return BundleProviders.newCountOnly(count);
+		}
+
 		Set<Long> loadPids;
 		if (theParams.isEmpty()) {
 			loadPids = new HashSet<Long>();
@@ -434,9 +560,13 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 			}
 		} else {
 			loadPids = searchForIdsWithAndOr(theParams);
-			if (loadPids.isEmpty()) {
-				return new SimpleBundleProvider();
-			}
+		}
+
+		if (getMetrics() != null) {
+			getMetrics().recordSearchPids(loadPids.size());
+		}
+		if (loadPids.isEmpty() && !theParams.isEmpty()) {
+			return new SimpleBundleProvider();
 		}
 
 		final List<Long> pids = new ArrayList<Long>(loadPids);
@@ -462,7 +592,9 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 					loadPids.add(next.get(0, Long.class));
 				}
 
-				ourLog.info("Sort PID order is now: {}", loadPids);
+				if (isLogOperationTimings()) {
+					ourLog.info("Sort PID order is now: {}", loadPids);
+				}
 
 				pids.clear();
 				pids.addAll(loadPids);
@@ -531,8 +663,13 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 								}
 
 								if (!includePids.isEmpty()) {
-									ourLog.info("Loading {} included resources", includePids.size());
+									if (isLogOperationTimings()) {
+										ourLog.info("Loading {} included resources", includePids.size());
+									}
 									resources = loadResourcesById(includePids);
+									if (getMetrics() != null) {
+										getMetrics().recordIncludedResources(resources.size());
+									}
 									retVal.addAll(resources);
 								}
 							} while (includePids.size() > 0 && previouslyLoadedPids.size() < getConfig().getIncludeLimit());
@@ -556,7 +693,10 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 			}
 		};
 
-		ourLog.info("Processed search for {} on {} in {}ms", new Object[] { myResourceName, theParams, w.getMillisAndRestart() });
+		long millis = recordOperation(myResourceName, "search", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed search for {} on {} in {}ms", new Object[] { myResourceName, theParams, millis });
+		}
 
 		return retVal;
 	}
@@ -739,10 +879,43 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 		ResourceTable savedEntity = updateEntity(theResource, entity, true, false);
 
 		notifyWriteCompleted();
-		ourLog.info("Processed update on {} in {}ms", theId.getValue(), w.getMillisAndRestart());
+		long millis = recordOperation(myResourceName, "update", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed update on {} in {}ms", theId.getValue(), millis);
+		}
 		return toMethodOutcome(savedEntity);
 	}
 
+	@Override
+	public MethodOutcome update(T theResource, String theMatchUrl) {
+		StopWatch w = new StopWatch();
+		String matchUrl = normalizeMatchUrl(theMatchUrl);
+		Set<Long> match = searchForIdsWithAndOr(translateMatchUrl(matchUrl));
+		if (match.size() > 1) {
+			throw new PreconditionFailedException("Failed to update resource of type " + myResourceName + " with match URL[" + theMatchUrl + "] because this search matched " + match.size() + " resources");
+		}
+
+		MethodOutcome outcome;
+		if (match.isEmpty()) {
+			ResourceTable entity = doCreate(theResource);
+			storeMatchUrl(entity, matchUrl);
+			outcome = toMethodOutcome(entity);
+			outcome.setCreated(true);
+		} else {
+			ResourceTable entity = myEntityManager.find(ResourceTable.class, match.iterator().next());
+			ResourceTable savedEntity = updateEntity(theResource, entity, true, false);
+			outcome = toMethodOutcome(savedEntity);
+			outcome.setCreated(false);
+		}
+
+		notifyWriteCompleted();
+		long millis = recordOperation(myResourceName, "conditionalUpdate", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed conditional update on {} in {}ms", myResourceName, millis);
+		}
+		return outcome;
+	}
+
 	private Set<Long> addPredicateComposite(RuntimeSearchParam theParamDef, Set<Long> thePids, List<? extends IQueryParameterType> theNextAnd) {
 		CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
 		CriteriaQuery<Long> cq = builder.createQuery(Long.class);
@@ -1035,38 +1208,35 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 				code = builder.equal(from.get("myUnits"), unitsValue);
 			}
 
-			Predicate num;
-			if (cmpValue == null) {
-				BigDecimal mul = approx ? new BigDecimal(0.1) : new BigDecimal(0.01);
-				BigDecimal low = valueValue.subtract(valueValue.multiply(mul));
-				BigDecimal high = valueValue.add(valueValue.multiply(mul));
-				Predicate lowPred = builder.gt(from.get("myValue").as(BigDecimal.class), low);
-				Predicate highPred = builder.lt(from.get("myValue").as(BigDecimal.class), high);
-				num = builder.and(lowPred, highPred);
-			} else {
-				switch (cmpValue) {
-				case GREATERTHAN:
-					Expression<Number> path = from.get("myValue");
-					num = builder.gt(path, valueValue);
-					break;
-				case GREATERTHAN_OR_EQUALS:
-					path = from.get("myValue");
-					num = builder.ge(path, valueValue);
-					break;
-				case LESSTHAN:
-					path = from.get("myValue");
-					num = builder.lt(path, valueValue);
-					break;
-				case LESSTHAN_OR_EQUALS:
-					path = from.get("myValue");
-					num = builder.le(path, valueValue);
-					break;
-				default:
-					throw new IllegalStateException(cmpValue.getCode());
-				}
+			Predicate num = createPredicateQuantityValue(builder, from.<BigDecimal> get("myValue"), cmpValue, valueValue, approx);
+
+			Pair<BigDecimal, String> normalized = null;
+			if (UCUM_NS.equals(systemValue) && isNotBlank(unitsValue)) {
+				normalized = UcumConverter.toCanonical(valueValue, unitsValue);
 			}
 
-			Predicate singleCode = builder.and(system, code, num);
+			Predicate singleCode;
+			if (normalized != null) {
+				/*
+				 * Match on the values converted to canonical UCUM units, so that e.g. a search in mmol/L also 
+				 * finds values recorded in mol/L. Values which are too large or too small to be stored in
+				 * canonical units only have their units normalized, so those are matched using the units as given.
+				 */
+				Predicate normalizedUnits = builder.equal(from.get("myUnitsNormalized"), normalized.getRight());
+				Predicate unstorableMatch = builder.and(builder.isNull(from.get("myValueNormalized")), code, num);
+				if (ResourceIndexedSearchParamQuantity.isStorableNormalizedValue(normalized.getLeft())) {
+					Predicate normalizedNum = createPredicateQuantityValue(builder, from.<BigDecimal> get("myValueNormalized"), cmpValue, normalized.getLeft(), approx);
+					singleCode = builder.and(system, normalizedUnits, builder.or(normalizedNum, unstorableMatch));
+				} else {
+					singleCode = builder.and(system, normalizedUnits, unstorableMatch);
+				}
+				if (getConfig().isMatchUnnormalizedQuantities()) {
+					Predicate unnormalizedMatch = builder.and(system, builder.isNull(from.get("myUnitsNormalized")), code, num);
+					singleCode = builder.or(singleCode, unnormalizedMatch);
+				}
+			} else {
+				singleCode = builder.and(system, code, num);
+			}
 			codePredicates.add(singleCode);
 
 		}
@@ -1086,6 +1256,30 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 		return new HashSet<Long>(q.getResultList());
 	}
 
+	private Predicate createPredicateQuantityValue(CriteriaBuilder theBuilder, Expression<BigDecimal> thePath, QuantityCompararatorEnum theCmpValue, BigDecimal theValue, boolean theApprox) {
+		if (theCmpValue == null) {
+			BigDecimal mul = theApprox ? new BigDecimal("0.1") : new BigDecimal("0.01");
+			BigDecimal low = theValue.subtract(theValue.multiply(mul));
+			BigDecimal high = theValue.add(theValue.multiply(mul));
+			Predicate lowPred = theBuilder.gt(thePath, low);
+			Predicate highPred = theBuilder.lt(thePath, high);
+			return theBuilder.and(lowPred, highPred);
+		}
+
+		switch (theCmpValue) {
+		case GREATERTHAN:
+			return theBuilder.gt(thePath, theValue);
+		case GREATERTHAN_OR_EQUALS:
+			return theBuilder.ge(thePath, theValue);
+		case LESSTHAN:
+			return theBuilder.lt(thePath, theValue);
+		case LESSTHAN_OR_EQUALS:
+			return theBuilder.le(thePath, theValue);
+		default:
+			throw new IllegalStateException(theCmpValue.getCode());
+		}
+	}
+
 	private Set<Long> addPredicateReference(String theParamName, Set<Long> thePids, List<? extends IQueryParameterType> theList) {
 		assert theParamName.contains(".") == false;
 
@@ -1115,7 +1309,9 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 
 				if (isBlank(ref.getChain())) {
 					Long targetPid = translateForcedIdToPid(new IdDt(resourceId));
-					ourLog.info("Searching for resource link with target PID: {}", targetPid);
+					if (isLogOperationTimings()) {
+						ourLog.info("Searching for resource link with target PID: {}", targetPid);
+					}
 					Predicate eq = builder.equal(from.get("myTargetResourcePid"), targetPid);
 
 					codePredicates.add(eq);
@@ -1451,6 +1647,132 @@ public class FhirResourceDao<T extends IResource> extends BaseFhirDao implements
 		return entity;
 	}
 
+	/**
+	 * Strips the resource type (if any) from a match URL and sorts its parameters, so that equivalent
+	 * URLs produce the same hash in {@link ResourceMatchUrl}
+	 */
+	private String normalizeMatchUrl(String theMatchUrl) {
+		String query = defaultString(theMatchUrl).trim();
+		int questionMarkIndex = query.indexOf('?');
+		if (questionMarkIndex != -1) {
+			String resourceName = query.substring(0, questionMarkIndex);
+			if (resourceName.contains("/")) {
+				resourceName = resourceName.substring(resourceName.lastIndexOf('/') + 1);
+			}
+			if (isNotBlank(resourceName) && !resourceName.equals(myResourceName)) {
+				throw new InvalidRequestException("Match URL[" + theMatchUrl + "] is for resource type " + resourceName + ", expected " + myResourceName);
+			}
+			query = query.substring(questionMarkIndex + 1);
+		}
+
+		List<String> parts = new ArrayList<String>();
+		for (String next : query.split("&")) {
+			if (isBlank(next) || next.startsWith(Constants.PARAM_FORMAT + "=") || next.startsWith(Constants.PARAM_PRETTY + "=")) {
+				continue;
+			}
+			int equalsIndex = next.indexOf('=');
+			if (equalsIndex < 1) {
+				throw new InvalidRequestException("Failed to parse match URL[" + theMatchUrl + "] - Invalid parameter: " + next);
+			}
+
+			// Re-encode each part so that differently escaped but equivalent URLs normalize identically
+			try {
+				String name = URLEncoder.encode(URLDecoder.decode(next.substring(0, equalsIndex), Constants.CHARSET_UTF_8), Constants.CHARSET_UTF_8);
+				String value = URLEncoder.encode(URLDecoder.decode(next.substring(equalsIndex + 1), Constants.CHARSET_UTF_8), Constants.CHARSET_UTF_8);
+				parts.add(name + '=' + value);
+			} catch (UnsupportedEncodingException e) {
+				throw new InternalErrorException(e);
+			}
+		}
+		if (parts.isEmpty()) {
+			throw new InvalidRequestException("Match URL[" + theMatchUrl + "] does not contain any search parameters");
+		}
+
+		Collections.sort(parts);
+		return StringUtils.join(parts, '&');
+	}
+
+	/**
+	 * Claims the hash of the given match URL for a newly created resource. Rows for the hash are never removed
+	 * here: if another transaction has claimed it (because its resource was created after our search ran), the
+	 * unique constraint fails and the request is rejected as a conflict. Rows are removed when the owning
+	 * resource is updated or deleted instead.
+	 */
+	private void storeMatchUrl(ResourceTable theEntity, String theMatchUrl) {
+		try {
+			theEntity.setHasMatchUrl(true);
+			myEntityManager.persist(new ResourceMatchUrl(theEntity, myResourceName, theMatchUrl));
+			myEntityManager.flush();
+		} catch (PersistenceException e) {
+			if (ExceptionUtils.indexOfType(e, ConstraintViolationException.class) == -1) {
+				throw e;
+			}
+			throw new ResourceVersionConflictException("A resource of type " + myResourceName + " matching URL[" + theMatchUrl + "] was created by a concurrent request", e);
+		}
+	}
+
+	/**
+	 * Returns the IDs of the resources matching the given (already normalized) match URL
+	 */
+	Set<Long> searchForIdsWithMatchUrl(String theMatchUrl) {
+		return searchForIdsWithAndOr(translateMatchUrl(theMatchUrl));
+	}
+
+	private SearchParameterMap translateMatchUrl(String theMatchUrl) {
+		RuntimeResourceDefinition resourceDef = getContext().getResourceDefinition(myResourceType);
+		SearchParameterMap retVal = new SearchParameterMap();
+
+		for (String next : theMatchUrl.split("&")) {
+			int equalsIndex = next.indexOf('=');
+
+			String paramName;
+			String value;
+			try {
+				paramName = URLDecoder.decode(next.substring(0, equalsIndex), Constants.CHARSET_UTF_8);
+				value = URLDecoder.decode(next.substring(equalsIndex + 1), Constants.CHARSET_UTF_8);
+			} catch (UnsupportedEncodingException e) {
+				throw new InternalErrorException(e);
+			}
+
+			String qualifier = null;
+			for (int i = 0; i < paramName.length(); i++) {
+				char nextChar = paramName.charAt(i);
+				if (nextChar == ':' || nextChar == '.') {
+					qualifier = paramName.substring(i);
+					paramName = paramName.substring(0, i);
+					break;
+				}
+			}
+
+			boolean isBuiltIn = paramName.equals("_id") || paramName.equals("_language");
+			RuntimeSearchParam paramDef = resourceDef.getSearchParam(paramName);
+			if (paramDef == null && !isBuiltIn) {
+				throw new InvalidRequestException("Failed to parse match URL[" + theMatchUrl + "] - Resource type " + myResourceName + " does not have a parameter with name: " + paramName);
+			}
+
+			List<IQueryParameterType> orList = new ArrayList<IQueryParameterType>();
+			for (String nextValue : QualifiedParamList.splitQueryStringByCommasIgnoreEscape(qualifier, value)) {
+				IQueryParameterType param;
+				if (isBuiltIn) {
+					param = new StringParam();
+				} else if (paramDef.getParamType() == SearchParamTypeEnum.REFERENCE) {
+					param = new ReferenceParam();
+				} else {
+					param = toParameterType(paramDef);
+				}
+				param.setValueAsQueryToken(qualifier, nextValue);
+				orList.add(param);
+			}
+
+			if (!retVal.containsKey(paramName)) {
+				retVal.put(paramName, new ArrayList<List<? extends IQueryParameterType>>());
+			}
+			retVal.get(paramName).add(orList);
+		}
+
+		return retVal;
+	}
+
 	private MethodOutcome toMethodOutcome(final ResourceTable entity) {
 		MethodOutcome outcome = new MethodOutcome();
 		outcome.setId(entity.getIdDt());
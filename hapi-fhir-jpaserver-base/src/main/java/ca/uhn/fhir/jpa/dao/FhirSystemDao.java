@@ -3,11 +3,14 @@ package ca.uhn.fhir.jpa.dao;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
 import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
@@ -16,7 +19,11 @@ import javax.persistence.criteria.Root;
 
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import ca.uhn.fhir.jpa.entity.ForcedId;
+import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamQuantity;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.util.StopWatch;
 import ca.uhn.fhir.model.api.IResource;
@@ -38,7 +45,9 @@ public class FhirSystemDao extends BaseFhirDao implements IFhirSystemDao {
 	@Transactional(propagation = Propagation.REQUIRED)
 	@Override
 	public List<IResource> transaction(List<IResource> theResources) {
-		ourLog.info("Beginning transaction with {} resources", theResources.size());
+		if (isLogOperationTimings()) {
+			ourLog.info("Beginning transaction with {} resources", theResources.size());
+		}
 		long start = System.currentTimeMillis();
 
 		for (int i =0; i <theResources.size();i++) {
@@ -96,17 +105,23 @@ public class FhirSystemDao extends BaseFhirDao implements IFhirSystemDao {
 				}
 				// myEntityManager.flush();
 				creations++;
-				ourLog.info("Resource Type[{}] with ID[{}] does not exist, creating it", resourceName, nextId);
+				if (isLogOperationTimings()) {
+					ourLog.info("Resource Type[{}] with ID[{}] does not exist, creating it", resourceName, nextId);
+				}
 			} else {
 				updates++;
-				ourLog.info("Resource Type[{}] with ID[{}] exists, updating it", resourceName, nextId);
+				if (isLogOperationTimings()) {
+					ourLog.info("Resource Type[{}] with ID[{}] exists, updating it", resourceName, nextId);
+				}
 			}
 
 			persistedResources.add(entity);
 
 		}
 
-		ourLog.info("Flushing transaction to database");
+		if (isLogOperationTimings()) {
+			ourLog.info("Flushing transaction to database");
+		}
 		myEntityManager.flush();
 
 		for (int i = 0; i < persistedResources.size(); i++) {
@@ -116,14 +131,20 @@ public class FhirSystemDao extends BaseFhirDao implements IFhirSystemDao {
 
 			IdDt newId = entity.getIdDt().toUnqualifiedVersionless();
 			if (nextId == null || nextId.isEmpty()) {
-				ourLog.info("Transaction resource (with no preexisting ID) has been assigned new ID[{}]", nextId, newId);
+				if (isLogOperationTimings()) {
+					ourLog.info("Transaction resource (with no preexisting ID) has been assigned new ID[{}]", nextId, newId);
+				}
 			} else {
 				if (nextId.toUnqualifiedVersionless().equals(entity.getIdDt().toUnqualifiedVersionless())) {
-					ourLog.info("Transaction resource ID[{}] is being updated", newId);
+					if (isLogOperationTimings()) {
+						ourLog.info("Transaction resource ID[{}] is being updated", newId);
+					}
 				} else {
 					if (!nextId.getIdPart().startsWith("#")) {
 						nextId = new IdDt(resourceName + '/' + nextId.getIdPart());
-						ourLog.info("Transaction resource ID[{}] has been assigned new ID[{}]", nextId, newId);
+						if (isLogOperationTimings()) {
+							ourLog.info("Transaction resource ID[{}] has been assigned new ID[{}]", nextId, newId);
+						}
 						idConversions.put(nextId, newId);
 					}
 				}
@@ -137,7 +158,9 @@ public class FhirSystemDao extends BaseFhirDao implements IFhirSystemDao {
 				IdDt nextId = nextRef.getReference();
 				if (idConversions.containsKey(nextId)) {
 					IdDt newId = idConversions.get(nextId);
-					ourLog.info(" * Replacing resource ref {} with {}", nextId, newId);
+					if (isLogOperationTimings()) {
+						ourLog.info(" * Replacing resource ref {} with {}", nextId, newId);
+					}
 					nextRef.setReference(newId);
 				} else {
 					ourLog.debug(" * Reference [{}] does not exist in bundle", nextId);
@@ -145,7 +168,9 @@ public class FhirSystemDao extends BaseFhirDao implements IFhirSystemDao {
 			}
 		}
 
-		ourLog.info("Re-flushing updated resource references and extracting search criteria");
+		if (isLogOperationTimings()) {
+			ourLog.info("Re-flushing updated resource references and extracting search criteria");
+		}
 
 		for (int i = 0; i < theResources.size(); i++) {
 			IResource resource = theResources.get(i);
@@ -154,7 +179,12 @@ public class FhirSystemDao extends BaseFhirDao implements IFhirSystemDao {
 		}
 
 		long delay = System.currentTimeMillis() - start;
-		ourLog.info("Transaction completed in {}ms with {} creations and {} updates", new Object[] { delay, creations, updates });
+		if (getMetrics() != null) {
+			getMetrics().recordOperation(null, "transaction", delay);
+		}
+		if (isLogOperationTimings()) {
+			ourLog.info("Transaction completed in {}ms with {} creations and {} updates", new Object[] { delay, creations, updates });
+		}
 
 		OperationOutcome oo = new OperationOutcome();
 		oo.addIssue().setSeverity(IssueSeverityEnum.INFORMATION).setDetails("Transaction completed in "+delay+"ms with "+creations+" creations and "+updates+" updates");
@@ -172,7 +202,10 @@ public class FhirSystemDao extends BaseFhirDao implements IFhirSystemDao {
 	public IBundleProvider history(Date theSince) {
 		StopWatch w = new StopWatch();
 		IBundleProvider retVal = super.history(null, null, theSince);
-		ourLog.info("Processed global history in {}ms", w.getMillisAndRestart());
+		long millis = recordOperation(null, "history", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed global history in {}ms", millis);
+		}
 		return retVal;
 	}
 
@@ -180,7 +213,10 @@ public class FhirSystemDao extends BaseFhirDao implements IFhirSystemDao {
 	public TagList getAllTags() {
 		StopWatch w = new StopWatch();
 		TagList retVal = super.getTags(null, null);
-		ourLog.info("Processed getAllTags in {}ms", w.getMillisAndRestart());
+		long millis = recordOperation(null, "getTags", w);
+		if (isLogOperationTimings()) {
+			ourLog.info("Processed getAllTags in {}ms", millis);
+		}
 		return retVal;
 	}
 
@@ -203,4 +239,253 @@ public class FhirSystemDao extends BaseFhirDao implements IFhirSystemDao {
 		return retVal;
 	}
 
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	@Override
+	public int expungeHistory(int theBatchSize) {
+		if (!hasHistoryRetentionPolicy()) {
+			return 0;
+		}
+
+		StopWatch w = new StopWatch();
+		Date now = new Date();
+		int count = 0;
+		List<String> binaryStorageKeys = new ArrayList<String>();
+
+		/*
+		 * Types with their own policy are expunged one at a time, and everything else is expunged in one pass
+		 * using the default policy
+		 */
+		List<String> policyTypes = new ArrayList<String>(getConfig().getHistoryRetentionPolicies().keySet());
+		for (String nextType : policyTypes) {
+			HistoryRetentionPolicy policy = getConfig().getHistoryRetentionPolicy(nextType);
+			count += expungeHistory(policy, "h.myResourceType = :RES_TYPES", nextType, now, theBatchSize - count, binaryStorageKeys);
+		}
+		HistoryRetentionPolicy defaultPolicy = getConfig().getDefaultHistoryRetentionPolicy();
+		if (policyTypes.isEmpty()) {
+			count += expungeHistory(defaultPolicy, null, null, now, theBatchSize - count, binaryStorageKeys);
+		} else {
+			count += expungeHistory(defaultPolicy, "h.myResourceType NOT IN (:RES_TYPES)", policyTypes, now, theBatchSize - count, binaryStorageKeys);
+		}
+
+		myEntityManager.flush();
+		deleteBinaryStorage(binaryStorageKeys);
+
+		ourLog.info("Expunged {} old resource versions in {}ms", count, recordOperation(null, "expungeHistory", w));
+		return count;
+	}
+
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	@Override
+	public int expungeDeletedResources(int theBatchSize) {
+		StopWatch w = new StopWatch();
+
+		TypedQuery<ResourceTable> q = myEntityManager.createNamedQuery("Q_GET_DELETED_RESOURCES_TO_EXPUNGE", ResourceTable.class);
+		q.setMaxResults(theBatchSize);
+		List<ResourceTable> resources = q.getResultList();
+		List<String> binaryStorageKeys = new ArrayList<String>();
+
+		for (ResourceTable next : resources) {
+			Long pid = next.getId();
+
+			TypedQuery<Object[]> historyQ = myEntityManager.createNamedQuery("Q_GET_HISTORY_VERSIONS_BY_RESOURCE", Object[].class);
+			historyQ.setParameter("RES_ID", pid);
+			removeAll(historyQ.getResultList(), binaryStorageKeys);
+			if (next.getBinaryStorageKey() != null) {
+				binaryStorageKeys.add(next.getBinaryStorageKey());
+			}
+
+			/*
+			 * Deleting a resource already removes its index rows, but we clear them again here in case
+			 * anything was left behind by an older version of the server
+			 */
+			deleteByResourcePid("DELETE FROM ResourceIndexedSearchParamString t WHERE t.myResourcePid = :RES_ID", pid);
+			deleteByResourcePid("DELETE FROM ResourceIndexedSearchParamToken t WHERE t.myResourcePid = :RES_ID", pid);
+			deleteByResourcePid("DELETE FROM ResourceIndexedSearchParamNumber t WHERE t.myResourcePid = :RES_ID", pid);
+			deleteByResourcePid("DELETE FROM ResourceIndexedSearchParamQuantity t WHERE t.myResourcePid = :RES_ID", pid);
+			deleteByResourcePid("DELETE FROM ResourceIndexedSearchParamDate t WHERE t.myResourcePid = :RES_ID", pid);
+			deleteByResourcePid("DELETE FROM ResourceLink t WHERE t.mySourceResourcePid = :RES_ID", pid);
+
+			if (next.isHasMatchUrl()) {
+				Query matchUrlQ = myEntityManager.createNamedQuery("Q_DELETE_MATCH_URL_BY_RESOURCE");
+				matchUrlQ.setParameter("RES_ID", pid);
+				matchUrlQ.executeUpdate();
+			}
+
+			ForcedId forcedId = next.getForcedId();
+			if (forcedId != null) {
+				next.setForcedId(null);
+				myEntityManager.remove(forcedId);
+			}
+
+			myEntityManager.remove(next);
+		}
+
+		myEntityManager.flush();
+		deleteBinaryStorage(binaryStorageKeys);
+
+		ourLog.info("Expunged {} deleted resources in {}ms", resources.size(), recordOperation(null, "expungeDeletedResources", w));
+		return resources.size();
+	}
+
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	@Override
+	public Long reindexQuantities(Long theAfterResourceId, int theBatchSize) {
+		StopWatch w = new StopWatch();
+
+		String jpql = "SELECT DISTINCT q.myResourcePid FROM ResourceIndexedSearchParamQuantity q WHERE q.mySystem = :SYSTEM AND q.myUnitsNormalized IS NULL AND q.myResourcePid > :AFTER_ID ORDER BY q.myResourcePid";
+		TypedQuery<Long> q = myEntityManager.createQuery(jpql, Long.class);
+		q.setParameter("SYSTEM", UCUM_NS);
+		q.setParameter("AFTER_ID", theAfterResourceId != null ? theAfterResourceId : Long.valueOf(-1));
+		q.setMaxResults(theBatchSize);
+		List<Long> pids = q.getResultList();
+
+		for (Long nextPid : pids) {
+			ResourceTable entity = myEntityManager.find(ResourceTable.class, nextPid);
+			IResource resource = (IResource) toResource(entity);
+
+			List<ResourceIndexedSearchParamQuantity> quantityParams = extractSearchParamQuantity(entity, resource);
+			for (ResourceIndexedSearchParamQuantity next : new ArrayList<ResourceIndexedSearchParamQuantity>(entity.getParamsQuantity())) {
+				myEntityManager.remove(next);
+			}
+			for (ResourceIndexedSearchParamQuantity next : quantityParams) {
+				myEntityManager.persist(next);
+			}
+			entity.setParamsQuantity(quantityParams);
+			entity.setParamsQuantityPopulated(quantityParams.isEmpty() == false);
+		}
+
+		myEntityManager.flush();
+
+		ourLog.info("Reindexed quantities of {} resources in {}ms", pids.size(), recordOperation(null, "reindexQuantities", w));
+		if (pids.size() < theBatchSize) {
+			return null;
+		}
+		return pids.get(pids.size() - 1);
+	}
+
+	private void deleteByResourcePid(String theQuery, Long thePid) {
+		Query q = myEntityManager.createQuery(theQuery);
+		q.setParameter("RES_ID", thePid);
+		q.executeUpdate();
+	}
+
+	private boolean hasHistoryRetentionPolicy() {
+		if (!getConfig().getDefaultHistoryRetentionPolicy().isRetainAll()) {
+			return true;
+		}
+		for (HistoryRetentionPolicy next : getConfig().getHistoryRetentionPolicies().values()) {
+			if (!next.isRetainAll()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Expunges at most theMaxCount versions which fall outside of the given policy
+	 * 
+	 * @param theTypeCriteria
+	 *           JPQL criteria restricting the resource types (using the RES_TYPES parameter), or <code>null</code> for
+	 *           all types
+	 */
+	private int expungeHistory(HistoryRetentionPolicy thePolicy, String theTypeCriteria, Object theTypes, Date theNow, int theMaxCount, List<String> theBinaryStorageKeys) {
+		int count = 0;
+		if (thePolicy.getMaxVersions() != null && count < theMaxCount) {
+			String jpql = "SELECT h.myId, h.myResourceId, h.myBinaryStorageKey FROM ResourceHistoryTable h, ResourceTable r WHERE r.myId = h.myResourceId AND h.myResourceVersion <= (r.myVersion - :KEEP)";
+			TypedQuery<Object[]> q = createHistoryQuery(jpql, theTypeCriteria, theTypes);
+			q.setParameter("KEEP", thePolicy.getMaxVersions().longValue());
+			q.setMaxResults(theMaxCount - count);
+			count += removeAll(q.getResultList(), theBinaryStorageKeys);
+		}
+		if (thePolicy.getMaxAgeMillis() != null && count < theMaxCount) {
+			String jpql = "SELECT h.myId, h.myResourceId, h.myBinaryStorageKey FROM ResourceHistoryTable h WHERE h.myUpdated < :CUTOFF";
+			TypedQuery<Object[]> q = createHistoryQuery(jpql, theTypeCriteria, theTypes);
+			q.setParameter("CUTOFF", new Date(theNow.getTime() - thePolicy.getMaxAgeMillis()));
+			q.setMaxResults(theMaxCount - count);
+			count += removeAll(q.getResultList(), theBinaryStorageKeys);
+		}
+		return count;
+	}
+
+	private TypedQuery<Object[]> createHistoryQuery(String theJpql, String theTypeCriteria, Object theTypes) {
+		if (theTypeCriteria == null) {
+			return myEntityManager.createQuery(theJpql, Object[].class);
+		}
+		TypedQuery<Object[]> retVal = myEntityManager.createQuery(theJpql + " AND " + theTypeCriteria, Object[].class);
+		retVal.setParameter("RES_TYPES", theTypes);
+		return retVal;
+	}
+
+	/**
+	 * Removes the given versions, adding the binary storage keys which are no longer referenced to the given list
+	 * 
+	 * @param theVersions
+	 *           Rows of (version PID, resource PID, binary storage key)
+	 */
+	private int removeAll(List<Object[]> theVersions, List<String> theBinaryStorageKeys) {
+		if (theVersions.isEmpty()) {
+			return 0;
+		}
+
+		List<Long> ids = new ArrayList<Long>(theVersions.size());
+		Set<Long> resourceIdsWithKeys = new HashSet<Long>();
+		for (Object[] next : theVersions) {
+			ids.add((Long) next[0]);
+			if (next[2] != null) {
+				resourceIdsWithKeys.add((Long) next[1]);
+			}
+		}
+
+		if (!resourceIdsWithKeys.isEmpty()) {
+			/*
+			 * A deleted resource keeps the key of its last version, so the file may still be referenced
+			 */
+			Map<Long, String> currentKeys = new HashMap<Long, String>();
+			TypedQuery<Object[]> currentQ = myEntityManager.createQuery("SELECT r.myId, r.myBinaryStorageKey FROM ResourceTable r WHERE r.myId IN (:IDS)", Object[].class);
+			currentQ.setParameter("IDS", resourceIdsWithKeys);
+			for (Object[] next : currentQ.getResultList()) {
+				currentKeys.put((Long) next[0], (String) next[1]);
+			}
+			for (Object[] next : theVersions) {
+				String key = (String) next[2];
+				if (key != null && !key.equals(currentKeys.get(next[1]))) {
+					theBinaryStorageKeys.add(key);
+				}
+			}
+		}
+
+		Query tagDelete = myEntityManager.createNamedQuery("Q_DELETE_HISTORY_TAGS_BY_ID");
+		tagDelete.setParameter("IDS", ids);
+		tagDelete.executeUpdate();
+
+		Query versionDelete = myEntityManager.createNamedQuery("Q_DELETE_HISTORY_BY_ID");
+		versionDelete.setParameter("IDS", ids);
+		return versionDelete.executeUpdate();
+	}
+
+	/**
+	 * Deletes the given files once the current transaction has committed, so that they are kept if the rows which
+	 * reference them are rolled back
+	 */
+	private void deleteBinaryStorage(final List<String> theBinaryStorageKeys) {
+		final FilesystemBinaryStorage binaryStorage = getConfig().getBinaryStorage();
+		if (binaryStorage == null || theBinaryStorageKeys.isEmpty()) {
+			return;
+		}
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			for (String next : theBinaryStorageKeys) {
+				binaryStorage.delete(next);
+			}
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				for (String next : theBinaryStorageKeys) {
+					binaryStorage.delete(next);
+				}
+			}
+		});
+	}
+
 }
@@ -0,0 +1,102 @@
+package ca.uhn.fhir.jpa.dao;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+import ca.uhn.fhir.context.ConfigurationException;
+import ca.uhn.fhir.model.api.BinaryContentSources;
+import ca.uhn.fhir.model.api.IBinaryContentSource;
+
+/**
+ * Stores the content of Binary resources as files in a local directory instead of in the resource table, so that
+ * large binaries are streamed to and from disk rather than being base64 encoded into the database and held in memory.
+ * Enable this by passing an instance to {@link DaoConfig#setBinaryStorage(FilesystemBinaryStorage)}.
+ * <p>
+ * Each version of a Binary is written to its own file, named using a random key which is stored with that version,
+ * and the file is removed when the version is expunged (see {@link ExpungeJob}). Files are written before the
+ * database transaction commits, so a transaction which is rolled back may leave an unreferenced file behind.
+ * </p>
+ */
+public class FilesystemBinaryStorage {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FilesystemBinaryStorage.class);
+
+	private final File myDirectory;
+
+	/**
+	 * @param theDirectory
+	 *            The directory to store files in. It is created if it does not exist.
+	 */
+	public FilesystemBinaryStorage(File theDirectory) {
+		Validate.notNull(theDirectory, "theDirectory must not be null");
+		if (!theDirectory.isDirectory() && !theDirectory.mkdirs()) {
+			throw new ConfigurationException("Unable to create binary storage directory: " + theDirectory.getAbsolutePath());
+		}
+		myDirectory = theDirectory;
+	}
+
+	/**
+	 * Deletes the file with the given key, if it exists
+	 */
+	public void delete(String theKey) {
+		File file = toFile(theKey);
+		if (file.exists() && !file.delete()) {
+			ourLog.warn("Failed to delete binary storage file {}", file.getAbsolutePath());
+		}
+	}
+
+	public File getDirectory() {
+		return myDirectory;
+	}
+
+	/**
+	 * Returns a content source which reads the file with the given key
+	 */
+	public IBinaryContentSource load(String theKey) {
+		return BinaryContentSources.fromFile(toFile(theKey));
+	}
+
+	/**
+	 * Writes the given content to a new file, and returns the key which identifies it
+	 */
+	public String store(IBinaryContentSource theContent) throws IOException {
+		String key = UUID.randomUUID().toString();
+		File tempFile = new File(myDirectory, key + ".tmp");
+
+		InputStream inputStream = theContent.openStream();
+		try {
+			OutputStream outputStream = new FileOutputStream(tempFile);
+			try {
+				IOUtils.copyLarge(inputStream, outputStream);
+			} finally {
+				outputStream.close();
+			}
+		} catch (IOException e) {
+			tempFile.delete();
+			throw e;
+		} finally {
+			IOUtils.closeQuietly(inputStream);
+		}
+
+		File file = toFile(key);
+		if (!tempFile.renameTo(file)) {
+			tempFile.delete();
+			throw new IOException("Failed to move " + tempFile.getAbsolutePath() + " to " + file.getAbsolutePath());
+		}
+
+		ourLog.debug("Stored binary content of {} bytes in {}", file.length(), file.getAbsolutePath());
+		return key;
+	}
+
+	private File toFile(String theKey) {
+		return new File(myDirectory, theKey + ".bin");
+	}
+
+}
@@ -0,0 +1,68 @@
+package ca.uhn.fhir.jpa.dao;
+
+/**
+ * Describes how many old versions of a resource should be retained in the history table (HFJ_RES_VER). Old
+ * versions which fall outside of the policy are removed by {@link IFhirSystemDao#expungeHistory(int)}.
+ * <p>
+ * The current version of a resource is never stored in the history table, so it is never affected by a retention
+ * policy.
+ * </p>
+ */
+public class HistoryRetentionPolicy {
+
+	private Long myMaxAgeMillis;
+	private Integer myMaxVersions;
+
+	public HistoryRetentionPolicy() {
+		// nothing
+	}
+
+	public HistoryRetentionPolicy(Integer theMaxVersions, Long theMaxAgeMillis) {
+		setMaxVersions(theMaxVersions);
+		setMaxAgeMillis(theMaxAgeMillis);
+	}
+
+	/**
+	 * See {@link #setMaxAgeMillis(Long)}
+	 */
+	public Long getMaxAgeMillis() {
+		return myMaxAgeMillis;
+	}
+
+	/**
+	 * See {@link #setMaxVersions(Integer)}
+	 */
+	public Integer getMaxVersions() {
+		return myMaxVersions;
+	}
+
+	/**
+	 * Returns <code>true</code> if this policy will never expunge anything
+	 */
+	public boolean isRetainAll() {
+		return myMaxVersions == null && myMaxAgeMillis == null;
+	}
+
+	/**
+	 * If set, old versions which were last updated more than the given number of milliseconds ago will be expunged.
+	 * Set to <code>null</code> (the default) to retain old versions regardless of their age.
+	 */
+	public void setMaxAgeMillis(Long theMaxAgeMillis) {
+		if (theMaxAgeMillis != null && theMaxAgeMillis < 0) {
+			throw new IllegalArgumentException("Max age must not be negative");
+		}
+		myMaxAgeMillis = theMaxAgeMillis;
+	}
+
+	/**
+	 * If set, only this many versions of each resource (including the current version) will be retained, and any
+	 * older versions will be expunged. Set to <code>null</code> (the default) to retain any number of versions.
+	 */
+	public void setMaxVersions(Integer theMaxVersions) {
+		if (theMaxVersions != null && theMaxVersions < 1) {
+			throw new IllegalArgumentException("Max versions must be at least 1");
+		}
+		myMaxVersions = theMaxVersions;
+	}
+
+}
@@ -11,6 +11,8 @@ import ca.uhn.fhir.model.api.TagList;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.ResourceVersionInfo;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 
 public interface IFhirResourceDao<T extends IResource> extends IDao {
@@ -19,6 +21,18 @@ public interface IFhirResourceDao<T extends IResource> extends IDao {
 
 	MethodOutcome create(T theResource);
 
+	/**
+	 * Conditional create: If a resource matching <code>theIfNoneExist</code> (the contents of the
+	 * <code>If-None-Exist</code> header, e.g. <code>identifier=urn:foo|123</code>) already exists, that resource's ID
+	 * is returned and nothing is created. The match is performed within the same transaction as the write.
+	 * 
+	 * @param theIfNoneExist
+	 *           The search URL to match against, or <code>null</code> to perform a normal create
+	 * @throws PreconditionFailedException
+	 *            If more than one resource matches the given search URL
+	 */
+	MethodOutcome create(T theResource, String theIfNoneExist);
+
 	MethodOutcome delete(IdDt theResource);
 
 	TagList getAllResourceTags();
@@ -41,6 +55,14 @@ public interface IFhirResourceDao<T extends IResource> extends IDao {
 	 */
 	T read(IdDt theId);
 
+	/**
+	 * Returns the current version ID and last updated time of the given resource, without loading or parsing the
+	 * resource body
+	 * 
+	 * @return Returns the current version, or <code>null</code> if the resource does not exist or has been deleted
+	 */
+	ResourceVersionInfo readCurrentVersion(IdDt theId);
+
 	BaseHasResource readEntity(IdDt theId);
 
 	void removeTag(IdDt theId, String theScheme, String theTerm);
@@ -57,6 +79,16 @@ public interface IFhirResourceDao<T extends IResource> extends IDao {
 
 	MethodOutcome update(T theResource, IdDt theId);
 
+	/**
+	 * Conditional update: Updates the single resource matching the given search URL (e.g.
+	 * <code>Patient?identifier=urn:foo|123</code>), or creates a new resource if nothing matches. The match is
+	 * performed within the same transaction as the write.
+	 * 
+	 * @throws PreconditionFailedException
+	 *            If more than one resource matches the given search URL
+	 */
+	MethodOutcome update(T theResource, String theMatchUrl);
+
 	Set<Long> searchForIdsWithAndOr(SearchParameterMap theParams);
 	
 }
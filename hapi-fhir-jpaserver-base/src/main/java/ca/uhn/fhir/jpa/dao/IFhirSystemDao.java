@@ -18,4 +18,36 @@ public interface IFhirSystemDao extends IDao {
 
 	Map<String, Long> getResourceCounts();
 
+	/**
+	 * Physically removes up to the given number of old resource versions which fall outside of the
+	 * {@link HistoryRetentionPolicy history retention policy} configured in the {@link DaoConfig}. Each call
+	 * runs in its own transaction.
+	 * 
+	 * @return The number of versions which were removed. If this is less than <code>theBatchSize</code>, there
+	 * is currently nothing more to remove.
+	 */
+	int expungeHistory(int theBatchSize);
+
+	/**
+	 * Physically removes up to the given number of deleted resources, along with their history, tags and index rows.
+	 * Deleted resources which are still the target of a reference from another resource are not removed. Each call
+	 * runs in its own transaction.
+	 * 
+	 * @return The number of resources which were removed. If this is less than <code>theBatchSize</code>, there
+	 * is currently nothing more to remove.
+	 */
+	int expungeDeletedResources(int theBatchSize);
+
+	/**
+	 * Re-extracts the quantity index rows of up to the given number of resources which have UCUM quantities indexed
+	 * without values converted to canonical units (i.e. by an older version of the server), starting after the
+	 * resource with the given ID. Each call runs in its own transaction.
+	 * 
+	 * @param theAfterResourceId
+	 *            Only resources with a greater ID are reindexed, or <code>null</code> to start at the beginning
+	 * @return The ID of the last resource which was reindexed, or <code>null</code> if there are no more resources to
+	 *         reindex
+	 */
+	Long reindexQuantities(Long theAfterResourceId, int theBatchSize);
+
 }
@@ -0,0 +1,94 @@
+package ca.uhn.fhir.jpa.dao;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Background job which backfills the values converted to canonical UCUM units into quantity index rows which were
+ * written by an older version of the server. Until this has completed, searches on UCUM quantities will not find
+ * those rows unless {@link DaoConfig#setMatchUnnormalizedQuantities(boolean)} is enabled.
+ * <p>
+ * Work is performed in batches of resources, each in its own transaction, with a pause between batches so that the
+ * job does not compete too aggressively with regular traffic. This class is intended to be run once after upgrading,
+ * e.g. using <code>&lt;task:scheduled ref="myQuantityReindexJob" method="run" fixed-delay="86400000"/&gt;</code>
+ * </p>
+ */
+public class QuantityReindexJob implements Runnable {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(QuantityReindexJob.class);
+
+	private int myBatchSize = 100;
+	private long myPauseMillisBetweenBatches = 1000;
+	private final AtomicBoolean myRunning = new AtomicBoolean(false);
+	private IFhirSystemDao mySystemDao;
+
+	public int getBatchSize() {
+		return myBatchSize;
+	}
+
+	public long getPauseMillisBetweenBatches() {
+		return myPauseMillisBetweenBatches;
+	}
+
+	public IFhirSystemDao getSystemDao() {
+		return mySystemDao;
+	}
+
+	@Override
+	public void run() {
+		if (!myRunning.compareAndSet(false, true)) {
+			ourLog.info("Quantity reindex job is already running, skipping this pass");
+			return;
+		}
+		try {
+			int batches = 0;
+			Long lastId = null;
+			do {
+				lastId = mySystemDao.reindexQuantities(lastId, myBatchSize);
+				batches++;
+			} while (lastId != null && pause());
+
+			ourLog.info("Quantity reindex job completed {} batches", batches);
+		} finally {
+			myRunning.set(false);
+		}
+	}
+
+	/**
+	 * Sets the number of resources which are reindexed in a single transaction. Default is 100.
+	 */
+	public void setBatchSize(int theBatchSize) {
+		if (theBatchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		myBatchSize = theBatchSize;
+	}
+
+	/**
+	 * Sets the number of milliseconds to wait between batches. Default is 1000.
+	 */
+	public void setPauseMillisBetweenBatches(long thePauseMillisBetweenBatches) {
+		myPauseMillisBetweenBatches = thePauseMillisBetweenBatches;
+	}
+
+	/**
+	 * Sets the system DAO. Note that this must be the transactional (i.e. Spring managed) instance, since
+	 * each batch relies on the DAO to start its own transaction.
+	 */
+	public void setSystemDao(IFhirSystemDao theSystemDao) {
+		mySystemDao = theSystemDao;
+	}
+
+	private boolean pause() {
+		if (myPauseMillisBetweenBatches <= 0) {
+			return true;
+		}
+		try {
+			Thread.sleep(myPauseMillisBetweenBatches);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+}
@@ -25,6 +25,7 @@ import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamQuantity;
 import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamString;
 import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamToken;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
+import ca.uhn.fhir.jpa.util.UcumConverter;
 import ca.uhn.fhir.model.api.IDatatype;
 import ca.uhn.fhir.model.api.IPrimitiveDatatype;
 import ca.uhn.fhir.model.api.IResource;
@@ -259,6 +260,15 @@ class SearchParamExtractorDev implements ISearchParamExtractor {
 
 					ResourceIndexedSearchParamQuantity nextEntity = new ResourceIndexedSearchParamQuantity(resourceName, nextValue.getValueElement().getValue(), nextValue.getSystemElement().getValueAsString(), nextValue.getUnits());
 					nextEntity.setResource(theEntity);
+
+					if (BaseFhirDao.UCUM_NS.equals(nextEntity.getSystem())) {
+						String ucumCode = defaultIfBlank(nextValue.getCode(), nextEntity.getUnits());
+						Pair<BigDecimal, String> normalized = UcumConverter.toCanonical(nextEntity.getValue(), ucumCode);
+						if (normalized != null) {
+							nextEntity.setNormalized(normalized.getLeft(), normalized.getRight());
+						}
+					}
+
 					retVal.add(nextEntity);
 				} else {
 					if (!multiType) {
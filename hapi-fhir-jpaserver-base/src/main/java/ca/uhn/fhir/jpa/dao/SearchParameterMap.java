@@ -21,6 +21,8 @@ public class SearchParameterMap extends HashMap<String, List<List<? extends IQue
 
 	private Integer myCount;
 
+	private boolean myCountOnly;
+
 	private Set<Include> myIncludes;
 
 	private SortSpec mySort;
@@ -83,10 +85,25 @@ public class SearchParameterMap extends HashMap<String, List<List<? extends IQue
 		return mySort;
 	}
 
+	/**
+	 * See {@link #setCountOnly(boolean)}
+	 */
+	public boolean isCountOnly() {
+		return myCountOnly;
+	}
+
 	public void setCount(Integer theCount) {
 		myCount = theCount;
 	}
 
+	/**
+	 * If set to <code>true</code>, the search will only determine the number of matching resources. The
+	 * returned bundle provider will report the correct size, but will not return any resources.
+	 */
+	public void setCountOnly(boolean theCountOnly) {
+		myCountOnly = theCountOnly;
+	}
+
 	public void setIncludes(Set<Include> theIncludes) {
 		myIncludes = theIncludes;
 	}
@@ -104,6 +121,9 @@ public class SearchParameterMap extends HashMap<String, List<List<? extends IQue
 		if (getIncludes().isEmpty() == false) {
 			b.append("includes", getIncludes());
 		}
+		if (myCountOnly) {
+			b.append("countOnly", myCountOnly);
+		}
 		return b.toString();
 	}
 
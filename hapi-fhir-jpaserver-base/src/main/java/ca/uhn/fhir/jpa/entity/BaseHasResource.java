@@ -21,8 +21,12 @@ import ca.uhn.fhir.model.primitive.InstantDt;
 @MappedSuperclass
 public abstract class BaseHasResource {
 
+	public static final int MAX_BINARY_STORAGE_KEY_LENGTH = 36;
 	public static final int MAX_TITLE_LENGTH = 100;
 
+	@Column(name = "RES_BINARY_KEY", nullable = true, length = MAX_BINARY_STORAGE_KEY_LENGTH)
+	private String myBinaryStorageKey;
+
 	@Column(name = "RES_DELETED_AT", nullable = true)
 	@Temporal(TemporalType.TIMESTAMP)
 	private Date myDeleted;
@@ -59,6 +63,16 @@ public abstract class BaseHasResource {
 
 	public abstract BaseTag addTag(TagDefinition theDef);
 
+	/**
+	 * Returns the key of the file holding the content of a Binary resource, or <code>null</code> if the content is
+	 * stored in the resource table
+	 * 
+	 * @see ca.uhn.fhir.jpa.dao.DaoConfig#setBinaryStorage(ca.uhn.fhir.jpa.dao.FilesystemBinaryStorage)
+	 */
+	public String getBinaryStorageKey() {
+		return myBinaryStorageKey;
+	}
+
 	public Date getDeleted() {
 		return myDeleted;
 	}
@@ -103,6 +117,10 @@ public abstract class BaseHasResource {
 		return myHasTags;
 	}
 
+	public void setBinaryStorageKey(String theBinaryStorageKey) {
+		myBinaryStorageKey = theBinaryStorageKey;
+	}
+
 	public void setDeleted(Date theDate) {
 		myDeleted = theDate;
 	}
@@ -11,6 +11,8 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
@@ -23,6 +25,13 @@ import ca.uhn.fhir.rest.server.Constants;
 @Entity
 @Table(name = "HFJ_RES_VER", uniqueConstraints = {@UniqueConstraint(name="IDX_RES_VER_ALL", columnNames = { "RES_ID", "RES_TYPE", "RES_VER" })})
 @org.hibernate.annotations.Table(appliesTo="HFJ_RES_VER", indexes= {@Index(name="IDX_RES_VER_DATE", columnNames= {"RES_UPDATED"})})
+//@formatter:off
+@NamedQueries({
+	@NamedQuery(name = "Q_GET_HISTORY_VERSIONS_BY_RESOURCE", query = "SELECT h.myId, h.myResourceId, h.myBinaryStorageKey FROM ResourceHistoryTable h WHERE h.myResourceId = :RES_ID"),
+	@NamedQuery(name = "Q_DELETE_HISTORY_TAGS_BY_ID", query = "DELETE FROM ResourceHistoryTag t WHERE t.myResourceHistory.myId IN (:IDS)"),
+	@NamedQuery(name = "Q_DELETE_HISTORY_BY_ID", query = "DELETE FROM ResourceHistoryTable h WHERE h.myId IN (:IDS)")
+})
+//@formatter:on
 public class ResourceHistoryTable extends BaseHasResource implements Serializable {
 
 	private static final long serialVersionUID = 1L;
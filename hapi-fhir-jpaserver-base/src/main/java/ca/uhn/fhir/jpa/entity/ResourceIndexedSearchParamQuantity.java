@@ -1,6 +1,7 @@
 package ca.uhn.fhir.jpa.entity;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -10,11 +11,27 @@ import javax.persistence.Table;
 @Entity
 @Table(name = "HFJ_SPIDX_QUANTITY" /*, indexes= {@Index(name="IDX_SP_NUMBER", columnList="SP_VALUE")}*/ )
 @org.hibernate.annotations.Table(appliesTo = "HFJ_SPIDX_QUANTITY", indexes= {
-		@org.hibernate.annotations.Index(name="IDX_SP_QUANTITY", columnNames= {"RES_TYPE", "SP_NAME", "SP_SYSTEM", "SP_UNITS", "SP_VALUE"}
-	)})
+		@org.hibernate.annotations.Index(name="IDX_SP_QUANTITY", columnNames= {"RES_TYPE", "SP_NAME", "SP_SYSTEM", "SP_UNITS", "SP_VALUE"}), 
+		@org.hibernate.annotations.Index(name="IDX_SP_QUANTITY_NRM", columnNames= {"RES_TYPE", "SP_NAME", "SP_SYSTEM", "SP_UNITS_NRM", "SP_VALUE_NRM"})
+	})
 //@formatter:on
 public class ResourceIndexedSearchParamQuantity extends BaseResourceIndexedSearchParam {
 
+	/**
+	 * Precision and scale of the normalized value column. These are chosen to fit within the
+	 * limits of all of the databases we support (Derby allows a maximum precision of 31)
+	 */
+	private static final int NORMALIZED_PRECISION = 31;
+	private static final int NORMALIZED_SCALE = 14;
+	private static final BigDecimal NORMALIZED_MAX = BigDecimal.ONE.scaleByPowerOfTen(NORMALIZED_PRECISION - NORMALIZED_SCALE);
+
+	/**
+	 * Values which can not be stored exactly at {@link #NORMALIZED_SCALE} must keep at least this many significant
+	 * digits once rounded, otherwise (e.g. for very small values) no normalized value is stored rather than one
+	 * which has been rounded to zero or nearly so
+	 */
+	private static final int NORMALIZED_MIN_DIGITS = 6;
+
 	private static final long serialVersionUID = 1L;
 
 	@Column(name = "SP_SYSTEM", nullable = true, length = 100)
@@ -26,6 +43,12 @@ public class ResourceIndexedSearchParamQuantity extends BaseResourceIndexedSearc
 	@Column(name = "SP_VALUE", nullable = true)
 	public BigDecimal myValue;
 
+	@Column(name = "SP_UNITS_NRM", nullable = true, length = 100)
+	public String myUnitsNormalized;
+
+	@Column(name = "SP_VALUE_NRM", nullable = true, precision = NORMALIZED_PRECISION, scale = NORMALIZED_SCALE)
+	public BigDecimal myValueNormalized;
+
 	public ResourceIndexedSearchParamQuantity() {
 		//nothing
 	}
@@ -49,6 +72,58 @@ public class ResourceIndexedSearchParamQuantity extends BaseResourceIndexedSearc
 		return myValue;
 	}
 
+	/**
+	 * Returns the units, converted to canonical UCUM units, or <code>null</code> if the quantity was not
+	 * expressed in convertible UCUM units
+	 */
+	public String getUnitsNormalized() {
+		return myUnitsNormalized;
+	}
+
+	/**
+	 * Returns the value, converted to {@link #getUnitsNormalized() canonical units}, or <code>null</code> if the
+	 * converted value can not be stored (see {@link #isStorableNormalizedValue(BigDecimal)})
+	 */
+	public BigDecimal getValueNormalized() {
+		return myValueNormalized;
+	}
+
+	/**
+	 * Sets the value and units converted to canonical UCUM units. If the value does not fit into the normalized
+	 * column, either because it is too large or because it is too small to be stored without losing most of its
+	 * precision, only the normalized units are stored.
+	 */
+	public void setNormalized(BigDecimal theValue, String theUnits) {
+		if (theUnits == null || theUnits.length() > 100) {
+			myValueNormalized = null;
+			myUnitsNormalized = null;
+			return;
+		}
+		myUnitsNormalized = theUnits;
+		if (isStorableNormalizedValue(theValue)) {
+			myValueNormalized = theValue.setScale(NORMALIZED_SCALE, RoundingMode.HALF_UP);
+		} else {
+			myValueNormalized = null;
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the given value (in canonical units) can be stored in the normalized value column
+	 */
+	public static boolean isStorableNormalizedValue(BigDecimal theValue) {
+		return theValue != null && theValue.abs().compareTo(NORMALIZED_MAX) < 0 && !isUnderflow(theValue);
+	}
+
+	private static boolean isUnderflow(BigDecimal theValue) {
+		BigDecimal value = theValue.stripTrailingZeros();
+		if (value.signum() == 0 || value.scale() <= NORMALIZED_SCALE) {
+			return false;
+		}
+		// The power of ten of the most significant digit
+		int magnitude = value.precision() - value.scale() - 1;
+		return magnitude + NORMALIZED_SCALE + 1 < NORMALIZED_MIN_DIGITS;
+	}
+
 
 	public void setSystem(String theSystem) {
 		mySystem = theSystem;
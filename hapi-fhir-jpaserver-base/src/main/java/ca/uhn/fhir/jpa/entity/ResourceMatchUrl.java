@@ -0,0 +1,98 @@
+package ca.uhn.fhir.jpa.entity;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Stores a hash of the match URL (e.g. <code>Patient?identifier=foo|bar</code>) which was used to
+ * perform a conditional create or a conditional update. The hash column carries a unique constraint,
+ * so two concurrent transactions which both find no existing match for the same URL can not both
+ * commit a new resource.
+ */
+//@formatter:off
+@Entity()
+@Table(name = "HFJ_RES_MATCH_URL", uniqueConstraints = { @UniqueConstraint(name = "IDX_RES_MATCH_URL_HASH", columnNames = { "MATCH_HASH" }) })
+@NamedQueries({
+	@NamedQuery(name = "Q_GET_MATCH_URL_BY_HASH", query = "SELECT m FROM ResourceMatchUrl m WHERE m.myMatchHash = :HASH"),
+	@NamedQuery(name = "Q_GET_MATCH_URL_BY_RESOURCE", query = "SELECT m FROM ResourceMatchUrl m WHERE m.myResourcePid = :RES_ID"),
+	@NamedQuery(name = "Q_DELETE_MATCH_URL_BY_RESOURCE", query = "DELETE FROM ResourceMatchUrl m WHERE m.myResourcePid = :RES_ID")
+})
+//@formatter:on
+public class ResourceMatchUrl implements Serializable {
+
+	public static final int MAX_URL_LENGTH = 200;
+
+	private static final long serialVersionUID = 1L;
+
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	@Id
+	@Column(name = "PID")
+	private Long myId;
+
+	@Column(name = "MATCH_HASH", nullable = false, length = 64, updatable = false)
+	private String myMatchHash;
+
+	@Column(name = "MATCH_URL", nullable = false, length = MAX_URL_LENGTH, updatable = false)
+	private String myMatchUrl;
+
+	@ManyToOne(optional = false)
+	@JoinColumn(name = "RES_ID", referencedColumnName = "RES_ID", nullable = false, updatable = false)
+	private ResourceTable myResource;
+
+	@Column(name = "RES_ID", insertable = false, updatable = false)
+	private Long myResourcePid;
+
+	public ResourceMatchUrl() {
+		// nothing
+	}
+
+	public ResourceMatchUrl(ResourceTable theResource, String theResourceType, String theMatchUrl) {
+		myResource = theResource;
+		myMatchHash = hashMatchUrl(theResourceType, theMatchUrl);
+		myMatchUrl = StringUtils.left(theMatchUrl, MAX_URL_LENGTH);
+	}
+
+	public String getMatchHash() {
+		return myMatchHash;
+	}
+
+	public String getMatchUrl() {
+		return myMatchUrl;
+	}
+
+	public ResourceTable getResource() {
+		return myResource;
+	}
+
+	public Long getResourcePid() {
+		if (myResourcePid == null) {
+			return myResource.getId();
+		}
+		return myResourcePid;
+	}
+
+	/**
+	 * Creates the hash which is stored in the unique column for the given resource type and
+	 * (already normalized) match URL
+	 */
+	public static String hashMatchUrl(String theResourceType, String theMatchUrl) {
+		return Hashing.sha256().hashString(theResourceType + "?" + theMatchUrl, Charsets.UTF_8).toString();
+	}
+
+}
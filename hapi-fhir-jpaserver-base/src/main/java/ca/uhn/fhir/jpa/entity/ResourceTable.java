@@ -16,6 +16,8 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 
@@ -35,6 +37,9 @@ import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
 		@Index(name = "IDX_RES_LANG", columnNames = { "RES_TYPE", "RES_LANGUAGE" }), 
 		@Index(name = "IDX_RES_PROFILE", columnNames = { "RES_PROFILE" }) 
 	})
+@NamedQueries({
+	@NamedQuery(name = "Q_GET_DELETED_RESOURCES_TO_EXPUNGE", query = "SELECT r FROM ResourceTable r WHERE r.myDeleted IS NOT NULL AND r.myIncomingResourceLinks IS EMPTY")
+})
 //@formatter:on
 public class ResourceTable extends BaseHasResource implements Serializable {
 	private static final int MAX_LANGUAGE_LENGTH = 20;
@@ -47,6 +52,9 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 	@Column(name = "SP_HAS_LINKS")
 	private boolean myHasLinks;
 
+	@Column(name = "HAS_MATCH_URL")
+	private boolean myHasMatchUrl;
+
 	@Id
 	@GeneratedValue(strategy = GenerationType.AUTO)
 	@Column(name = "RES_ID")
@@ -212,6 +220,13 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 		return myHasLinks;
 	}
 
+	/**
+	 * Returns <code>true</code> if a {@link ResourceMatchUrl} row may exist for this resource
+	 */
+	public boolean isHasMatchUrl() {
+		return myHasMatchUrl;
+	}
+
 	public boolean isParamsDatePopulated() {
 		return myParamsDatePopulated;
 	}
@@ -236,6 +251,10 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 		myHasLinks = theHasLinks;
 	}
 
+	public void setHasMatchUrl(boolean theHasMatchUrl) {
+		myHasMatchUrl = theHasMatchUrl;
+	}
+
 	public void setId(Long theId) {
 		myId = theId;
 	}
@@ -329,6 +348,7 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 		retVal.setEncoding(getEncoding());
 		retVal.setFhirVersion(getFhirVersion());
 		retVal.setResource(getResource());
+		retVal.setBinaryStorageKey(getBinaryStorageKey());
 		retVal.setDeleted(getDeleted());
 		retVal.setForcedId(getForcedId());
 
@@ -1,5 +1,7 @@
 package ca.uhn.fhir.jpa.provider;
 
+import static org.apache.commons.lang3.StringUtils.*;
+
 import java.util.Date;
 
 import javax.servlet.http.HttpServletRequest;
@@ -26,11 +28,15 @@ import ca.uhn.fhir.rest.annotation.Since;
 import ca.uhn.fhir.rest.annotation.Update;
 import ca.uhn.fhir.rest.annotation.Validate;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.server.Constants;
 import ca.uhn.fhir.rest.server.IBundleProvider;
 import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.IResourceVersionProvider;
+import ca.uhn.fhir.rest.server.ResourceVersionInfo;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 
-public class JpaResourceProvider<T extends IResource> extends BaseJpaProvider implements IResourceProvider {
+public class JpaResourceProvider<T extends IResource> extends BaseJpaProvider implements IResourceProvider, IResourceVersionProvider {
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(JpaResourceProvider.class);
 
@@ -50,7 +56,7 @@ public class JpaResourceProvider<T extends IResource> extends BaseJpaProvider im
 	public MethodOutcome create(HttpServletRequest theRequest, @ResourceParam T theResource) {
 		startRequest(theRequest);
 		try {
-			return myDao.create(theResource);
+			return myDao.create(theResource, theRequest.getHeader(Constants.HEADER_IF_NONE_EXIST));
 		} finally {
 			endRequest(theRequest);
 		}
@@ -66,6 +72,11 @@ public class JpaResourceProvider<T extends IResource> extends BaseJpaProvider im
 		}
 	}
 
+	@Override
+	public ResourceVersionInfo getCurrentVersion(IdDt theId) {
+		return myDao.readCurrentVersion(theId);
+	}
+
 	public FhirContext getContext() {
 		return myContext;
 	}
@@ -142,8 +153,18 @@ public class JpaResourceProvider<T extends IResource> extends BaseJpaProvider im
 	public MethodOutcome update(HttpServletRequest theRequest, @ResourceParam T theResource, @IdParam IdDt theId) {
 		startRequest(theRequest);
 		try {
+			if (theId == null || theId.hasIdPart() == false) {
+				String matchUrl = theRequest.getQueryString();
+				if (isBlank(matchUrl)) {
+					throw new InvalidRequestException("Can not perform update without either a resource ID or a match URL");
+				}
+				return myDao.update(theResource, matchUrl);
+			}
 			return myDao.update(theResource, theId);
 		} catch (ResourceNotFoundException e) {
+			if (theId == null || theId.hasIdPart() == false) {
+				throw e;
+			}
 			ourLog.info("Can't update resource with ID[" + theId.getValue() + "] because it doesn't exist, going to create it instead");
 			theResource.setId(theId);
 			MethodOutcome retVal = myDao.create(theResource);
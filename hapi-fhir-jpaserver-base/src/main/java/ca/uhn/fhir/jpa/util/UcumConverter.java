@@ -0,0 +1,316 @@
+package ca.uhn.fhir.jpa.util;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Converts quantities expressed in (a commonly used subset of) UCUM units into a canonical form, so that e.g.
+ * <code>5.4 mmol/L</code> and <code>0.0054 mol/L</code> produce the same indexed value and units.
+ * <p>
+ * Canonical units are built from the base atoms <code>g</code>, <code>m</code>, <code>L</code>, <code>s</code>,
+ * <code>mol</code>, <code>eq</code> and <code>[iU]</code>, so minutes are converted to seconds, etc. Volumes are
+ * expressed in litres rather than cubic metres (so <code>cm3</code> becomes <code>0.001 L</code>), which keeps
+ * typical clinical volumes such as <code>fL</code> within the precision of the index. Units
+ * with an offset (such as degrees Celsius), arbitrary units and unit expressions which can not be parsed are not
+ * converted. Note that conversions between mass and substance amount (e.g. mg/dL to mmol/L) depend on the molar
+ * mass of the analyte, so they are never performed here.
+ * </p>
+ */
+public class UcumConverter {
+
+	private static final Map<String, UnitDef> ourMetricAtoms = new HashMap<String, UnitDef>();
+	private static final Map<String, UnitDef> ourNonMetricAtoms = new HashMap<String, UnitDef>();
+	private static final Map<String, BigDecimal> ourPrefixes = new HashMap<String, BigDecimal>();
+	private static final Pattern POWER_OF_TEN = Pattern.compile("10[\\*\\^]([+-]?[0-9]+)");
+	private static final Pattern NUMBER = Pattern.compile("[0-9]+");
+
+	/**
+	 * Factors such as 1/60 (for minutes) are not exact, so results are rounded to this precision in
+	 * order to avoid values such as 0.09000000000000002
+	 */
+	private static final MathContext RESULT_PRECISION = new MathContext(15);
+	private static final Pattern ATOM_AND_EXPONENT = Pattern.compile("(.*?[^0-9+-])([+-]?[0-9]+)?");
+
+	static {
+		ourPrefixes.put("Y", new BigDecimal("1E24"));
+		ourPrefixes.put("Z", new BigDecimal("1E21"));
+		ourPrefixes.put("E", new BigDecimal("1E18"));
+		ourPrefixes.put("P", new BigDecimal("1E15"));
+		ourPrefixes.put("T", new BigDecimal("1E12"));
+		ourPrefixes.put("G", new BigDecimal("1E9"));
+		ourPrefixes.put("M", new BigDecimal("1E6"));
+		ourPrefixes.put("k", new BigDecimal("1E3"));
+		ourPrefixes.put("h", new BigDecimal("1E2"));
+		ourPrefixes.put("da", new BigDecimal("1E1"));
+		ourPrefixes.put("d", new BigDecimal("1E-1"));
+		ourPrefixes.put("c", new BigDecimal("1E-2"));
+		ourPrefixes.put("m", new BigDecimal("1E-3"));
+		ourPrefixes.put("u", new BigDecimal("1E-6"));
+		ourPrefixes.put("n", new BigDecimal("1E-9"));
+		ourPrefixes.put("p", new BigDecimal("1E-12"));
+		ourPrefixes.put("f", new BigDecimal("1E-15"));
+		ourPrefixes.put("a", new BigDecimal("1E-18"));
+		ourPrefixes.put("z", new BigDecimal("1E-21"));
+		ourPrefixes.put("y", new BigDecimal("1E-24"));
+
+		metric("g", "1", "g");
+		metric("m", "1", "m");
+		metric("s", "1", "s");
+		metric("mol", "1", "mol");
+		metric("eq", "1", "eq");
+		metric("[iU]", "1", "[iU]");
+		metric("[IU]", "1", "[iU]");
+		metric("L", "1", "L");
+		metric("l", "1", "L");
+		metric("Hz", "1", "s", -1);
+		metric("kat", "1", "mol", 1, "s", -1);
+		metric("Pa", "1000", "g", 1, "m", -1, "s", -2);
+		metric("bar", "100000000", "g", 1, "m", -1, "s", -2);
+		metric("m[Hg]", "133322000", "g", 1, "m", -1, "s", -2);
+		metric("m[H2O]", "9806650", "g", 1, "m", -1, "s", -2);
+
+		nonMetric("min", "60", "s");
+		nonMetric("h", "3600", "s");
+		nonMetric("d", "86400", "s");
+		nonMetric("wk", "604800", "s");
+		nonMetric("mo", "2629800", "s");
+		nonMetric("a", "31557600", "s");
+		nonMetric("[lb_av]", "453.59237", "g");
+		nonMetric("[oz_av]", "28.349523125", "g");
+		nonMetric("[in_i]", "0.0254", "m");
+		nonMetric("[ft_i]", "0.3048", "m");
+		nonMetric("[mi_i]", "1609.344", "m");
+		nonMetric("%", "0.01");
+		nonMetric("[ppm]", "0.000001");
+
+		// The enzyme unit is defined as umol/min
+		ourMetricAtoms.put("U", parse("umol/min"));
+	}
+
+	/**
+	 * Converts the given value and units into their canonical form
+	 *
+	 * @return A pair containing the canonical value and the canonical units, or <code>null</code> if the
+	 *         units can not be converted
+	 */
+	public static Pair<BigDecimal, String> toCanonical(BigDecimal theValue, String theUnits) {
+		if (theValue == null || theUnits == null) {
+			return null;
+		}
+
+		UnitDef unit = parse(theUnits.trim());
+		if (unit == null) {
+			return null;
+		}
+		unit.convertCubicMetresToLitres();
+
+		BigDecimal value = theValue.multiply(unit.myFactor, RESULT_PRECISION).stripTrailingZeros();
+		return Pair.of(value, unit.toCanonicalString());
+	}
+
+	static UnitDef parse(String theUnits) {
+		String units = stripAnnotations(theUnits);
+		if (units == null || units.indexOf('(') != -1 || units.indexOf(')') != -1 || units.indexOf(' ') != -1) {
+			return null;
+		}
+		if (units.length() == 0) {
+			return new UnitDef(BigDecimal.ONE);
+		}
+
+		UnitDef retVal = new UnitDef(BigDecimal.ONE);
+		boolean divide = false;
+		int start = 0;
+		if (units.charAt(0) == '/') {
+			divide = true;
+			start = 1;
+		}
+
+		while (start <= units.length()) {
+			int end = start;
+			while (end < units.length() && units.charAt(end) != '.' && units.charAt(end) != '/') {
+				end++;
+			}
+			UnitDef component = parseComponent(units.substring(start, end));
+			if (component == null) {
+				return null;
+			}
+			retVal.multiply(component, divide ? -1 : 1);
+
+			if (end == units.length()) {
+				break;
+			}
+			divide = units.charAt(end) == '/';
+			start = end + 1;
+		}
+
+		return retVal;
+	}
+
+	private static void metric(String theAtom, String theFactor, Object... theBaseAndExponents) {
+		ourMetricAtoms.put(theAtom, newUnitDef(theFactor, theBaseAndExponents));
+	}
+
+	private static UnitDef newUnitDef(String theFactor, Object... theBaseAndExponents) {
+		UnitDef retVal = new UnitDef(new BigDecimal(theFactor));
+		for (int i = 0; i < theBaseAndExponents.length; i++) {
+			String base = (String) theBaseAndExponents[i];
+			int exponent = 1;
+			if (i + 1 < theBaseAndExponents.length && theBaseAndExponents[i + 1] instanceof Integer) {
+				exponent = (Integer) theBaseAndExponents[i + 1];
+				i++;
+			}
+			retVal.myExponents.put(base, exponent);
+		}
+		return retVal;
+	}
+
+	private static void nonMetric(String theAtom, String theFactor, Object... theBaseAndExponents) {
+		ourNonMetricAtoms.put(theAtom, newUnitDef(theFactor, theBaseAndExponents));
+	}
+
+	private static UnitDef parseAtom(String theAtom) {
+		UnitDef retVal = ourNonMetricAtoms.get(theAtom);
+		if (retVal != null) {
+			return retVal;
+		}
+		retVal = ourMetricAtoms.get(theAtom);
+		if (retVal != null) {
+			return retVal;
+		}
+		for (int i = 1; i <= 2 && i < theAtom.length(); i++) {
+			BigDecimal prefix = ourPrefixes.get(theAtom.substring(0, i));
+			UnitDef atom = ourMetricAtoms.get(theAtom.substring(i));
+			if (prefix != null && atom != null) {
+				UnitDef prefixed = new UnitDef(prefix);
+				prefixed.multiply(atom, 1);
+				return prefixed;
+			}
+		}
+		return null;
+	}
+
+	private static UnitDef parseComponent(String theComponent) {
+		if (theComponent.length() == 0) {
+			return null;
+		}
+
+		Matcher powerOfTen = POWER_OF_TEN.matcher(theComponent);
+		if (powerOfTen.matches()) {
+			int exponent = Integer.parseInt(powerOfTen.group(1).replace("+", ""));
+			return new UnitDef(BigDecimal.ONE.scaleByPowerOfTen(exponent));
+		}
+
+		if (NUMBER.matcher(theComponent).matches()) {
+			return new UnitDef(new BigDecimal(theComponent));
+		}
+
+		Matcher matcher = ATOM_AND_EXPONENT.matcher(theComponent);
+		if (!matcher.matches()) {
+			return null;
+		}
+		UnitDef atom = parseAtom(matcher.group(1));
+		if (atom == null) {
+			return null;
+		}
+		int exponent = 1;
+		if (matcher.group(2) != null) {
+			exponent = Integer.parseInt(matcher.group(2).replace("+", ""));
+		}
+
+		UnitDef retVal = new UnitDef(BigDecimal.ONE);
+		retVal.multiply(atom, exponent);
+		return retVal;
+	}
+
+	private static String stripAnnotations(String theUnits) {
+		StringBuilder b = new StringBuilder(theUnits.length());
+		int depth = 0;
+		for (int i = 0; i < theUnits.length(); i++) {
+			char next = theUnits.charAt(i);
+			if (next == '{') {
+				depth++;
+			} else if (next == '}') {
+				if (depth == 0) {
+					return null;
+				}
+				depth--;
+			} else if (depth == 0) {
+				b.append(next);
+			}
+		}
+		if (depth != 0) {
+			return null;
+		}
+		return b.toString();
+	}
+
+	static class UnitDef {
+		private final Map<String, Integer> myExponents = new TreeMap<String, Integer>();
+		private BigDecimal myFactor;
+
+		UnitDef(BigDecimal theFactor) {
+			myFactor = theFactor;
+		}
+
+		BigDecimal getFactor() {
+			return myFactor;
+		}
+
+		void multiply(UnitDef theOther, int theExponent) {
+			if (theExponent >= 0) {
+				myFactor = myFactor.multiply(theOther.myFactor.pow(theExponent), MathContext.DECIMAL64);
+			} else {
+				myFactor = myFactor.divide(theOther.myFactor.pow(-theExponent), MathContext.DECIMAL64);
+			}
+			for (Map.Entry<String, Integer> next : theOther.myExponents.entrySet()) {
+				Integer existing = myExponents.get(next.getKey());
+				int exponent = (existing != null ? existing : 0) + next.getValue() * theExponent;
+				if (exponent == 0) {
+					myExponents.remove(next.getKey());
+				} else {
+					myExponents.put(next.getKey(), exponent);
+				}
+			}
+		}
+
+		/**
+		 * Replaces each power of three of <code>m</code> with <code>L</code> (one cubic metre being 1000 litres)
+		 */
+		void convertCubicMetresToLitres() {
+			Integer metres = myExponents.get("m");
+			if (metres == null || Math.abs(metres) < 3) {
+				return;
+			}
+			int litres = metres / 3;
+			UnitDef cubicMetre = new UnitDef(new BigDecimal("1000"));
+			cubicMetre.myExponents.put("L", 1);
+			cubicMetre.myExponents.put("m", -3);
+			multiply(cubicMetre, litres);
+		}
+
+		String toCanonicalString() {
+			if (myExponents.isEmpty()) {
+				return "1";
+			}
+			StringBuilder b = new StringBuilder();
+			for (Map.Entry<String, Integer> next : myExponents.entrySet()) {
+				if (b.length() > 0) {
+					b.append('.');
+				}
+				b.append(next.getKey());
+				if (next.getValue() != 1) {
+					b.append(next.getValue());
+				}
+			}
+			return b.toString();
+		}
+	}
+
+}
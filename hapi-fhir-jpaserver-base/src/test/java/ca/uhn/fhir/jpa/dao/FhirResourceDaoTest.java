@@ -5,6 +5,13 @@ import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
@@ -13,22 +20,46 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.hamcrest.core.StringContains;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.jpa.entity.ResourceIndexedSearchParamString;
+import ca.uhn.fhir.jpa.entity.ResourceMatchUrl;
+import ca.uhn.fhir.jpa.entity.ResourceTable;
+import ca.uhn.fhir.model.api.BinaryContentSources;
 import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
@@ -38,6 +69,7 @@ import ca.uhn.fhir.model.dstu.composite.IdentifierDt;
 import ca.uhn.fhir.model.dstu.composite.PeriodDt;
 import ca.uhn.fhir.model.dstu.composite.QuantityDt;
 import ca.uhn.fhir.model.dstu.composite.ResourceReferenceDt;
+import ca.uhn.fhir.model.dstu.resource.Binary;
 import ca.uhn.fhir.model.dstu.resource.Device;
 import ca.uhn.fhir.model.dstu.resource.DiagnosticReport;
 import ca.uhn.fhir.model.dstu.resource.Encounter;
@@ -64,22 +96,53 @@ import ca.uhn.fhir.rest.param.TokenOrListParam;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IBundleProvider;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
 
 public class FhirResourceDaoTest {
 
+	private static IFhirResourceDao<Binary> ourBinaryDao;
 	private static ClassPathXmlApplicationContext ourCtx;
 	private static IFhirResourceDao<Device> ourDeviceDao;
 	private static IFhirResourceDao<DiagnosticReport> ourDiagnosticReportDao;
 	private static IFhirResourceDao<Encounter> ourEncounterDao;
+	private static EntityManagerFactory ourEntityManagerFactory;
 	private static FhirContext ourFhirCtx;
 	private static IFhirResourceDao<Location> ourLocationDao;
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FhirResourceDaoTest.class);
 	private static IFhirResourceDao<Observation> ourObservationDao;
 	private static IFhirResourceDao<Organization> ourOrganizationDao;
 	private static IFhirResourceDao<Patient> ourPatientDao;
+	private static PlatformTransactionManager ourTxManager;
+
+	@Test
+	public void testBinaryStorage() throws Exception {
+		DaoConfig config = ourCtx.getBean(DaoConfig.class);
+		config.setBinaryStorage(new FilesystemBinaryStorage(new File("target/binary-storage")));
+		try {
+			byte[] content = RandomStringUtils.randomAlphanumeric(10000).getBytes("UTF-8");
+			Binary binary = new Binary();
+			binary.setContentType("application/octet-stream");
+			binary.setContentSource(BinaryContentSources.fromStream(new ByteArrayInputStream(content), content.length));
+			IdDt id = ourBinaryDao.create(binary).getId();
+
+			Binary read = ourBinaryDao.read(id.toUnqualifiedVersionless());
+			assertEquals("application/octet-stream", read.getContentType());
+			assertEquals(content.length, read.getContentSource().getLength());
+			assertArrayEquals(content, IOUtils.toByteArray(read.getContentSource().openStream()));
+
+			// Each version is stored in its own file, so older versions can still be read
+			read.setContent(new byte[] { 1, 2, 3 });
+			IdDt id2 = ourBinaryDao.update(read, id.toUnqualifiedVersionless()).getId();
+			assertArrayEquals(new byte[] { 1, 2, 3 }, ourBinaryDao.read(id2).getContent());
+			assertArrayEquals(content, ourBinaryDao.read(id).getContent());
+		} finally {
+			config.setBinaryStorage(null);
+		}
+	}
 
 	@Test
 	public void testChoiceParamConcept() {
@@ -137,6 +200,64 @@ public class FhirResourceDaoTest {
 		}
 	}
 
+	@Test
+	public void testChoiceParamQuantityUcumNormalized() {
+		Observation o1 = new Observation();
+		o1.setValue(new QuantityDt(QuantityCompararatorEnum.GREATERTHAN, 5.4321, BaseFhirDao.UCUM_NS, "mmol/L"));
+		IdDt id1 = ourObservationDao.create(o1).getId().toUnqualifiedVersionless();
+
+		Observation o2 = new Observation();
+		o2.setValue(new QuantityDt(QuantityCompararatorEnum.GREATERTHAN, 0.0054321, BaseFhirDao.UCUM_NS, "mol/L"));
+		IdDt id2 = ourObservationDao.create(o2).getId().toUnqualifiedVersionless();
+
+		Observation o3 = new Observation();
+		o3.setValue(new QuantityDt(QuantityCompararatorEnum.GREATERTHAN, 5.4321, BaseFhirDao.UCUM_NS, "mg/L"));
+		IdDt id3 = ourObservationDao.create(o3).getId().toUnqualifiedVersionless();
+
+		{
+			List<IdDt> found = toUnqualifiedVersionlessIds(ourObservationDao.search(Observation.SP_VALUE_QUANTITY, new QuantityParam("5.4321", BaseFhirDao.UCUM_NS, "mmol/L")));
+			assertThat(found, hasItems(id1, id2));
+			assertThat(found, not(hasItem(id3)));
+		}
+		{
+			List<IdDt> found = toUnqualifiedVersionlessIds(ourObservationDao.search(Observation.SP_VALUE_QUANTITY, new QuantityParam("5432.1", BaseFhirDao.UCUM_NS, "umol/L")));
+			assertThat(found, hasItems(id1, id2));
+		}
+		{
+			List<IdDt> found = toUnqualifiedVersionlessIds(ourObservationDao.search(Observation.SP_VALUE_QUANTITY, new QuantityParam(">5", BaseFhirDao.UCUM_NS, "g/m3")));
+			assertThat(found, hasItem(id3));
+			assertThat(found, not(hasItem(id1)));
+		}
+	}
+
+	@Test
+	public void testChoiceParamQuantityUcumNormalizedSmallVolume() {
+		Observation o1 = new Observation();
+		o1.setValue(new QuantityDt(QuantityCompararatorEnum.GREATERTHAN, 90, BaseFhirDao.UCUM_NS, "fL"));
+		IdDt id1 = ourObservationDao.create(o1).getId().toUnqualifiedVersionless();
+
+		Observation o2 = new Observation();
+		o2.setValue(new QuantityDt(QuantityCompararatorEnum.GREATERTHAN, 80, BaseFhirDao.UCUM_NS, "fL"));
+		IdDt id2 = ourObservationDao.create(o2).getId().toUnqualifiedVersionless();
+
+		// Too small to be normalized, so this must only match on its original units
+		Observation o3 = new Observation();
+		o3.setValue(new QuantityDt(QuantityCompararatorEnum.GREATERTHAN, 90, BaseFhirDao.UCUM_NS, "aL"));
+		IdDt id3 = ourObservationDao.create(o3).getId().toUnqualifiedVersionless();
+
+		{
+			List<IdDt> found = toUnqualifiedVersionlessIds(ourObservationDao.search(Observation.SP_VALUE_QUANTITY, new QuantityParam("0.09", BaseFhirDao.UCUM_NS, "pL")));
+			assertThat(found, hasItem(id1));
+			assertThat(found, not(hasItem(id2)));
+			assertThat(found, not(hasItem(id3)));
+		}
+		{
+			List<IdDt> found = toUnqualifiedVersionlessIds(ourObservationDao.search(Observation.SP_VALUE_QUANTITY, new QuantityParam("90", BaseFhirDao.UCUM_NS, "aL")));
+			assertThat(found, hasItem(id3));
+			assertThat(found, not(hasItem(id1)));
+		}
+	}
+
 	@Test
 	public void testChoiceParamString() {
 
@@ -152,6 +273,160 @@ public class FhirResourceDaoTest {
 		}
 	}
 
+	@Test
+	public void testCreateConditional() {
+		Patient p = new Patient();
+		p.addIdentifier("urn:system", "testCreateConditional01");
+		p.addName().addFamily("Tester").addGiven("testCreateConditional");
+		MethodOutcome outcome = ourPatientDao.create(p, "Patient?identifier=urn%3Asystem%7CtestCreateConditional01");
+		assertTrue(outcome.getCreated());
+		IdDt id = outcome.getId();
+
+		p = new Patient();
+		p.addIdentifier("urn:system", "testCreateConditional01");
+		p.addName().addFamily("Tester").addGiven("testCreateConditional2");
+		outcome = ourPatientDao.create(p, "identifier=urn:system|testCreateConditional01");
+		assertFalse(outcome.getCreated());
+		assertEquals(id.toUnqualifiedVersionless(), outcome.getId().toUnqualifiedVersionless());
+
+		Patient read = ourPatientDao.read(id.toVersionless());
+		assertEquals("testCreateConditional", read.getNameFirstRep().getGivenFirstRep().getValue());
+
+		IBundleProvider found = ourPatientDao.search(Patient.SP_IDENTIFIER, new IdentifierDt("urn:system", "testCreateConditional01"));
+		assertEquals(1, found.size());
+	}
+
+	/**
+	 * Two conditional creates for the same URL run in overlapping transactions: whichever order their searches
+	 * and commits happen in, only one resource may be created
+	 */
+	@Test
+	public void testCreateConditionalConcurrently() throws Exception {
+		final String matchUrl = "Patient?identifier=urn:system|testCreateConditionalConcurrently01";
+		final CyclicBarrier startBarrier = new CyclicBarrier(2);
+		final CountDownLatch createdLatch = new CountDownLatch(2);
+		final TransactionTemplate template = new TransactionTemplate(ourTxManager);
+
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < 2; i++) {
+				final String given = "testCreateConditionalConcurrently" + i;
+				futures.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						startBarrier.await();
+						try {
+							return template.execute(new TransactionCallback<Object>() {
+								@Override
+								public Object doInTransaction(TransactionStatus theStatus) {
+									Patient p = new Patient();
+									p.addIdentifier("urn:system", "testCreateConditionalConcurrently01");
+									p.addName().addFamily("Tester").addGiven(given);
+									MethodOutcome outcome;
+									try {
+										outcome = ourPatientDao.create(p, matchUrl);
+									} finally {
+										createdLatch.countDown();
+									}
+									// Hold the transaction open so that the other request runs before this one commits
+									try {
+										createdLatch.await(2, TimeUnit.SECONDS);
+									} catch (InterruptedException e) {
+										throw new IllegalStateException(e);
+									}
+									return outcome;
+								}
+							});
+						} catch (ResourceVersionConflictException e) {
+							return e;
+						}
+					}
+				}));
+			}
+
+			int created = 0;
+			for (Future<Object> next : futures) {
+				Object result = next.get(60, TimeUnit.SECONDS);
+				if (result instanceof MethodOutcome && ((MethodOutcome) result).getCreated()) {
+					created++;
+				} else if (result instanceof MethodOutcome) {
+					assertFalse(((MethodOutcome) result).getCreated());
+				} else {
+					assertThat(result, instanceOf(ResourceVersionConflictException.class));
+				}
+			}
+			assertEquals(1, created);
+		} finally {
+			executor.shutdown();
+		}
+
+		IBundleProvider found = ourPatientDao.search(Patient.SP_IDENTIFIER, new IdentifierDt("urn:system", "testCreateConditionalConcurrently01"));
+		assertEquals(1, found.size());
+	}
+
+	/**
+	 * Simulates the request which loses a race: another transaction has committed a resource for the same match
+	 * URL after this request's search ran, so the search finds nothing but the URL has already been claimed
+	 */
+	@Test
+	public void testCreateConditionalWhenMatchUrlAlreadyClaimed() {
+		Patient other = new Patient();
+		other.addIdentifier("urn:system", "testCreateConditionalWhenMatchUrlAlreadyClaimed02");
+		IdDt otherId = ourPatientDao.create(other).getId();
+
+		String normalizedUrl = "identifier=urn%3Asystem%7CtestCreateConditionalWhenMatchUrlAlreadyClaimed01";
+		EntityManager em = ourEntityManagerFactory.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			ResourceTable owner = em.find(ResourceTable.class, otherId.getIdPartAsLong());
+			em.persist(new ResourceMatchUrl(owner, "Patient", normalizedUrl));
+			em.getTransaction().commit();
+		} finally {
+			em.close();
+		}
+
+		Patient p = new Patient();
+		p.addIdentifier("urn:system", "testCreateConditionalWhenMatchUrlAlreadyClaimed01");
+		try {
+			ourPatientDao.create(p, "Patient?identifier=urn:system|testCreateConditionalWhenMatchUrlAlreadyClaimed01");
+			fail();
+		} catch (ResourceVersionConflictException e) {
+			// good
+		}
+
+		// The other transaction's claim must survive, and nothing may have been created
+		List<ResourceMatchUrl> rows = findMatchUrls(ResourceMatchUrl.hashMatchUrl("Patient", normalizedUrl));
+		assertEquals(1, rows.size());
+		assertEquals(otherId.getIdPartAsLong(), rows.get(0).getResource().getId());
+		assertEquals(0, ourPatientDao.search(Patient.SP_IDENTIFIER, new IdentifierDt("urn:system", "testCreateConditionalWhenMatchUrlAlreadyClaimed01")).size());
+	}
+
+	@Test
+	public void testCreateConditionalWithMultipleMatches() {
+		for (int i = 0; i < 2; i++) {
+			Patient p = new Patient();
+			p.addIdentifier("urn:system", "testCreateConditionalWithMultipleMatches01");
+			ourPatientDao.create(p);
+		}
+
+		Patient p = new Patient();
+		p.addIdentifier("urn:system", "testCreateConditionalWithMultipleMatches01");
+		try {
+			ourPatientDao.create(p, "Patient?identifier=urn:system|testCreateConditionalWithMultipleMatches01");
+			fail();
+		} catch (PreconditionFailedException e) {
+			// good
+		}
+
+		try {
+			ourPatientDao.create(p, "Patient?foo=bar");
+			fail();
+		} catch (InvalidRequestException e) {
+			// good
+		}
+	}
+
 	@Test
 	public void testCreateWithInvalidReferenceFailsGracefully() {
 		Patient patient = new Patient();
@@ -439,6 +714,32 @@ public class FhirResourceDaoTest {
 		}
 	}
 
+	@Test
+	public void testMetrics() throws Exception {
+		DaoMetrics metrics = ourCtx.getBean(DaoMetrics.class);
+		long reads = metrics.getOperationCount("Patient", "read");
+		long searches = metrics.getSearchCount();
+		long indexRows = metrics.getIndexRowsWritten();
+
+		Patient patient = new Patient();
+		patient.addIdentifier("urn:system", "testMetrics");
+		patient.addName().addFamily("testMetrics");
+		IdDt id = ourPatientDao.create(patient).getId();
+		ourPatientDao.read(id);
+
+		SearchParameterMap params = new SearchParameterMap();
+		params.add(Patient.SP_FAMILY, new StringParam("testMetrics"));
+		assertEquals(1, ourPatientDao.search(params).size());
+
+		assertEquals(reads + 1, metrics.getOperationCount("Patient", "read"));
+		assertEquals(searches + 1, metrics.getSearchCount());
+		assertThat(metrics.getIndexRowsWritten(), greaterThan(indexRows));
+		assertThat(metrics.getOperation("Patient", "search").getPercentileMillis(99), lessThanOrEqualTo(metrics.getOperation("Patient", "search").getMaxMillis()));
+		assertThat(Arrays.asList(metrics.getOperationSummaries()), hasItem(startsWith("Patient.create count=")));
+
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(DaoMetrics.OBJECT_NAME)));
+	}
+
 	@Test
 	public void testOrganizationName() {
 
@@ -751,6 +1052,27 @@ public class FhirResourceDaoTest {
 		}
 	}
 
+	@Test
+	public void testSearchCountOnly() {
+		for (int i = 0; i < 3; i++) {
+			Patient patient = new Patient();
+			patient.addName().addFamily("testSearchCountOnly");
+			ourPatientDao.create(patient);
+		}
+
+		SearchParameterMap params = new SearchParameterMap();
+		params.add(Patient.SP_FAMILY, new StringParam("testSearchCountOnly"));
+		params.setCountOnly(true);
+		IBundleProvider found = ourPatientDao.search(params);
+		assertEquals(3, found.size());
+		assertEquals(0, found.getResources(0, 3).size());
+
+		params = new SearchParameterMap();
+		params.setCountOnly(true);
+		int total = ourPatientDao.search(params).size();
+		assertEquals(ourPatientDao.search(new SearchParameterMap()).size(), total);
+	}
+
 	@Test
 	public void testSearchNameParam() {
 		IdDt id1;
@@ -1453,6 +1775,75 @@ public class FhirResourceDaoTest {
 
 	}
 
+	@Test
+	public void testUpdateConditional() {
+		Patient p = new Patient();
+		p.addIdentifier("urn:system", "testUpdateConditional01");
+		p.addName().addFamily("Tester").addGiven("testUpdateConditional");
+		MethodOutcome outcome = ourPatientDao.update(p, "Patient?identifier=urn:system|testUpdateConditional01");
+		assertTrue(outcome.getCreated());
+		IdDt id = outcome.getId();
+		assertEquals("1", id.getVersionIdPart());
+
+		p = new Patient();
+		p.addIdentifier("urn:system", "testUpdateConditional01");
+		p.addName().addFamily("Tester").addGiven("testUpdateConditional2");
+		outcome = ourPatientDao.update(p, "Patient?identifier=urn:system|testUpdateConditional01");
+		assertFalse(outcome.getCreated());
+		assertEquals(id.toUnqualifiedVersionless(), outcome.getId().toUnqualifiedVersionless());
+		assertEquals("2", outcome.getId().getVersionIdPart());
+
+		Patient read = ourPatientDao.read(id.toVersionless());
+		assertEquals("testUpdateConditional2", read.getNameFirstRep().getGivenFirstRep().getValue());
+	}
+
+	/**
+	 * Once a resource created by a conditional create no longer matches the URL, a new conditional create for the
+	 * URL must succeed rather than conflict with the old claim
+	 */
+	@Test
+	public void testUpdateReleasesMatchUrl() {
+		String matchUrl = "Patient?identifier=urn:system|testUpdateReleasesMatchUrl01";
+		Patient p = new Patient();
+		p.addIdentifier("urn:system", "testUpdateReleasesMatchUrl01");
+		IdDt id = ourPatientDao.create(p, matchUrl).getId().toUnqualifiedVersionless();
+
+		p = new Patient();
+		p.addIdentifier("urn:system", "testUpdateReleasesMatchUrl02");
+		ourPatientDao.update(p, id);
+		assertEquals(0, findMatchUrls(ResourceMatchUrl.hashMatchUrl("Patient", "identifier=urn%3Asystem%7CtestUpdateReleasesMatchUrl01")).size());
+
+		p = new Patient();
+		p.addIdentifier("urn:system", "testUpdateReleasesMatchUrl01");
+		MethodOutcome outcome = ourPatientDao.create(p, matchUrl);
+		assertTrue(outcome.getCreated());
+		assertNotEquals(id.getIdPart(), outcome.getId().getIdPart());
+	}
+
+	/**
+	 * An update which leaves the resource matching the URL keeps the claim, so a concurrent conditional create can
+	 * not add a duplicate
+	 */
+	@Test
+	public void testUpdateKeepsMatchUrlWhileStillMatching() {
+		String matchUrl = "Patient?identifier=urn:system|testUpdateKeepsMatchUrlWhileStillMatching01";
+		String hash = ResourceMatchUrl.hashMatchUrl("Patient", "identifier=urn%3Asystem%7CtestUpdateKeepsMatchUrlWhileStillMatching01");
+		Patient p = new Patient();
+		p.addIdentifier("urn:system", "testUpdateKeepsMatchUrlWhileStillMatching01");
+		IdDt id = ourPatientDao.create(p, matchUrl).getId().toUnqualifiedVersionless();
+
+		p = new Patient();
+		p.addIdentifier("urn:system", "testUpdateKeepsMatchUrlWhileStillMatching01");
+		p.addName().addFamily("testUpdateKeepsMatchUrlWhileStillMatching");
+		ourPatientDao.update(p, id);
+		List<ResourceMatchUrl> rows = findMatchUrls(hash);
+		assertEquals(1, rows.size());
+		assertEquals(id.getIdPartAsLong(), rows.get(0).getResource().getId());
+
+		ourPatientDao.delete(id);
+		assertEquals(0, findMatchUrls(hash).size());
+	}
+
 	@Test
 	public void testUpdateMaintainsSearchParams() throws InterruptedException {
 		Patient p1 = new Patient();
@@ -1580,6 +1971,21 @@ public class FhirResourceDaoTest {
 		return retVal;
 	}
 
+	private static List<ResourceMatchUrl> findMatchUrls(String theHash) {
+		EntityManager em = ourEntityManagerFactory.createEntityManager();
+		try {
+			TypedQuery<ResourceMatchUrl> q = em.createNamedQuery("Q_GET_MATCH_URL_BY_HASH", ResourceMatchUrl.class);
+			q.setParameter("HASH", theHash);
+			List<ResourceMatchUrl> retVal = q.getResultList();
+			for (ResourceMatchUrl next : retVal) {
+				next.getResource().getId();
+			}
+			return retVal;
+		} finally {
+			em.close();
+		}
+	}
+
 	@AfterClass
 	public static void afterClass() {
 		ourCtx.close();
@@ -1589,7 +1995,10 @@ public class FhirResourceDaoTest {
 	@BeforeClass
 	public static void beforeClass() {
 		ourCtx = new ClassPathXmlApplicationContext("fhir-jpabase-spring-test-config.xml");
+		ourEntityManagerFactory = ourCtx.getBean(EntityManagerFactory.class);
+		ourTxManager = ourCtx.getBean(PlatformTransactionManager.class);
 		ourPatientDao = ourCtx.getBean("myPatientDao", IFhirResourceDao.class);
+		ourBinaryDao = ourCtx.getBean("myBinaryDao", IFhirResourceDao.class);
 		ourObservationDao = ourCtx.getBean("myObservationDao", IFhirResourceDao.class);
 		ourDiagnosticReportDao = ourCtx.getBean("myDiagnosticReportDao", IFhirResourceDao.class);
 		ourDeviceDao = ourCtx.getBean("myDeviceDao", IFhirResourceDao.class);
@@ -3,6 +3,7 @@ package ca.uhn.fhir.jpa.dao;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
@@ -11,6 +12,11 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -24,18 +30,24 @@ import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.model.api.TagList;
 import ca.uhn.fhir.model.dstu.composite.IdentifierDt;
+import ca.uhn.fhir.model.dstu.composite.QuantityDt;
 import ca.uhn.fhir.model.dstu.composite.ResourceReferenceDt;
+import ca.uhn.fhir.model.dstu.resource.Binary;
 import ca.uhn.fhir.model.dstu.resource.Device;
 import ca.uhn.fhir.model.dstu.resource.DiagnosticReport;
 import ca.uhn.fhir.model.dstu.resource.Location;
 import ca.uhn.fhir.model.dstu.resource.Observation;
 import ca.uhn.fhir.model.dstu.resource.Organization;
 import ca.uhn.fhir.model.dstu.resource.Patient;
+import ca.uhn.fhir.model.dstu.valueset.QuantityCompararatorEnum;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.param.QuantityParam;
 import ca.uhn.fhir.rest.server.IBundleProvider;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 
 public class FhirSystemDaoTest {
 
@@ -43,12 +55,138 @@ public class FhirSystemDaoTest {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FhirSystemDaoTest.class);
 	private static IFhirResourceDao<Observation> ourObservationDao;
 	private static IFhirResourceDao<Patient> ourPatientDao;
+	private static IFhirResourceDao<Binary> ourBinaryDao;
 	private static IFhirResourceDao<Device> ourDeviceDao;
 	private static IFhirResourceDao<DiagnosticReport> ourDiagnosticReportDao;
 	private static IFhirResourceDao<Organization> ourOrganizationDao;
 	private static IFhirResourceDao<Location> ourLocationDao;
 	private static Date ourTestStarted;
 	private static IFhirSystemDao ourSystemDao;
+	private static DaoConfig ourDaoConfig;
+
+	@Test
+	public void testExpungeDeletedResources() {
+		Device device = new Device();
+		device.setModel("testExpungeDeletedResources");
+		IdDt id = ourDeviceDao.create(device).getId().toUnqualifiedVersionless();
+		ourDeviceDao.update(device, id);
+		ourDeviceDao.delete(id);
+
+		try {
+			ourDeviceDao.read(id);
+			fail();
+		} catch (ResourceGoneException e) {
+			// good
+		}
+
+		while (ourSystemDao.expungeDeletedResources(100) == 100) {
+			// keep going
+		}
+
+		try {
+			ourDeviceDao.read(id);
+			fail();
+		} catch (ResourceNotFoundException e) {
+			// good
+		}
+		assertEquals(0, ourDeviceDao.history(id.getIdPartAsLong(), null).size());
+	}
+
+	@Test
+	public void testExpungeHistory() {
+		Organization org = new Organization();
+		org.setName("testExpungeHistory");
+		IdDt id = ourOrganizationDao.create(org).getId().toUnqualifiedVersionless();
+		ourOrganizationDao.update(org, id);
+		ourOrganizationDao.update(org, id);
+		ourOrganizationDao.update(org, id);
+		assertEquals(4, ourOrganizationDao.history(id.getIdPartAsLong(), null).size());
+
+		// Nothing is configured, so nothing is removed
+		assertEquals(0, ourSystemDao.expungeHistory(100));
+		assertEquals(4, ourOrganizationDao.history(id.getIdPartAsLong(), null).size());
+
+		ourDaoConfig.getHistoryRetentionPolicies().put("Organization", new HistoryRetentionPolicy(2, null));
+		try {
+			while (ourSystemDao.expungeHistory(1) == 1) {
+				// keep going
+			}
+		} finally {
+			ourDaoConfig.getHistoryRetentionPolicies().clear();
+		}
+
+		IBundleProvider history = ourOrganizationDao.history(id.getIdPartAsLong(), null);
+		List<String> versionIds = new ArrayList<String>();
+		for (IResource next : history.getResources(0, history.size())) {
+			versionIds.add(next.getId().getVersionIdPart());
+		}
+		assertThat(versionIds, containsInAnyOrder("3", "4"));
+	}
+
+	@Test
+	public void testExpungeHistoryDeletesBinaryStorage() throws Exception {
+		File directory = new File("target/binary-storage-expunge");
+		FileUtils.deleteQuietly(directory);
+		ourDaoConfig.setBinaryStorage(new FilesystemBinaryStorage(directory));
+		try {
+			Binary binary = new Binary();
+			binary.setContentType("application/octet-stream");
+			binary.setContent(new byte[] { 1, 2, 3 });
+			IdDt id = ourBinaryDao.create(binary).getId().toUnqualifiedVersionless();
+			binary.setContent(new byte[] { 4, 5, 6 });
+			ourBinaryDao.update(binary, id);
+			assertEquals(2, FileUtils.listFiles(directory, null, true).size());
+
+			ourDaoConfig.getHistoryRetentionPolicies().put("Binary", new HistoryRetentionPolicy(1, null));
+			try {
+				while (ourSystemDao.expungeHistory(100) > 0) {
+					// keep going
+				}
+			} finally {
+				ourDaoConfig.getHistoryRetentionPolicies().clear();
+			}
+
+			// Only the file of the expunged version is removed
+			assertEquals(1, FileUtils.listFiles(directory, null, true).size());
+			assertArrayEquals(new byte[] { 4, 5, 6 }, ourBinaryDao.read(id).getContent());
+		} finally {
+			ourDaoConfig.setBinaryStorage(null);
+		}
+	}
+
+	@Test
+	public void testExpungeHistoryWithDefaultPolicy() {
+		TagList tags = new TagList();
+		tags.addTag("testExpungeHistoryWithDefaultPolicy", "term", "label");
+		Location loc = new Location();
+		loc.setName("testExpungeHistoryWithDefaultPolicy");
+		ResourceMetadataKeyEnum.TAG_LIST.put(loc, tags);
+		IdDt id = ourLocationDao.create(loc).getId().toUnqualifiedVersionless();
+		ourLocationDao.update(loc, id);
+		ourLocationDao.update(loc, id);
+
+		// Organizations have their own policy which retains everything, so only the default applies to locations
+		Organization org = new Organization();
+		org.setName("testExpungeHistoryWithDefaultPolicy");
+		IdDt orgId = ourOrganizationDao.create(org).getId().toUnqualifiedVersionless();
+		ourOrganizationDao.update(org, orgId);
+
+		ourDaoConfig.getHistoryRetentionPolicies().put("Organization", new HistoryRetentionPolicy());
+		ourDaoConfig.setDefaultHistoryRetentionPolicy(new HistoryRetentionPolicy(1, null));
+		try {
+			while (ourSystemDao.expungeHistory(100) > 0) {
+				// keep going
+			}
+		} finally {
+			ourDaoConfig.getHistoryRetentionPolicies().clear();
+			ourDaoConfig.setDefaultHistoryRetentionPolicy(new HistoryRetentionPolicy());
+		}
+
+		IBundleProvider history = ourLocationDao.history(id.getIdPartAsLong(), null);
+		assertEquals(1, history.size());
+		assertEquals("3", history.getResources(0, 1).get(0).getId().getVersionIdPart());
+		assertEquals(2, ourOrganizationDao.history(orgId.getIdPartAsLong(), null).size());
+	}
 
 	@Test
 	public void testHistory() throws Exception {
@@ -368,6 +506,49 @@ public class FhirSystemDaoTest {
 
 	}
 
+	/**
+	 * Quantities indexed before values were converted to canonical units are only found once they have been
+	 * reindexed, unless matching them is enabled in the config
+	 */
+	@Test
+	public void testReindexQuantities() {
+		Observation obs = new Observation();
+		obs.setValue(new QuantityDt(QuantityCompararatorEnum.GREATERTHAN, 7.77123, BaseFhirDao.UCUM_NS, "mmol/L"));
+		IdDt id = ourObservationDao.create(obs).getId().toUnqualifiedVersionless();
+
+		EntityManager em = ourCtx.getBean(EntityManagerFactory.class).createEntityManager();
+		try {
+			em.getTransaction().begin();
+			Query q = em.createQuery("UPDATE ResourceIndexedSearchParamQuantity q SET q.myUnitsNormalized = NULL, q.myValueNormalized = NULL WHERE q.myResourcePid = :RES_ID");
+			q.setParameter("RES_ID", id.getIdPartAsLong());
+			assertEquals(1, q.executeUpdate());
+			em.getTransaction().commit();
+		} finally {
+			em.close();
+		}
+
+		QuantityParam param = new QuantityParam("7771.23", BaseFhirDao.UCUM_NS, "umol/L");
+		assertEquals(0, ourObservationDao.search(Observation.SP_VALUE_QUANTITY, param).size());
+
+		ourDaoConfig.setMatchUnnormalizedQuantities(true);
+		try {
+			// Matched using the units as given
+			assertEquals(0, ourObservationDao.search(Observation.SP_VALUE_QUANTITY, param).size());
+			assertEquals(1, ourObservationDao.search(Observation.SP_VALUE_QUANTITY, new QuantityParam("7.77123", BaseFhirDao.UCUM_NS, "mmol/L")).size());
+		} finally {
+			ourDaoConfig.setMatchUnnormalizedQuantities(false);
+		}
+
+		Long lastId = null;
+		do {
+			lastId = ourSystemDao.reindexQuantities(lastId, 1);
+		} while (lastId != null);
+
+		IBundleProvider found = ourObservationDao.search(Observation.SP_VALUE_QUANTITY, param);
+		assertEquals(1, found.size());
+		assertEquals(id, found.getResources(0, 1).get(0).getId().toUnqualifiedVersionless());
+	}
+
 	@AfterClass
 	public static void afterClass() {
 		ourCtx.close();
@@ -382,9 +563,11 @@ public class FhirSystemDaoTest {
 		ourObservationDao = ourCtx.getBean("myObservationDao", IFhirResourceDao.class);
 		ourDiagnosticReportDao = ourCtx.getBean("myDiagnosticReportDao", IFhirResourceDao.class);
 		ourDeviceDao = ourCtx.getBean("myDeviceDao", IFhirResourceDao.class);
+		ourBinaryDao = ourCtx.getBean("myBinaryDao", IFhirResourceDao.class);
 		ourOrganizationDao = ourCtx.getBean("myOrganizationDao", IFhirResourceDao.class);
 		ourLocationDao = ourCtx.getBean("myLocationDao", IFhirResourceDao.class);
 		ourSystemDao = ourCtx.getBean("mySystemDao", IFhirSystemDao.class);
+		ourDaoConfig = ourCtx.getBean("myDaoConfig", DaoConfig.class);
 	}
 
 }
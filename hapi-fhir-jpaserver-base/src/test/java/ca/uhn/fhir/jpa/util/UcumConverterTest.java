@@ -0,0 +1,38 @@
+package ca.uhn.fhir.jpa.util;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+public class UcumConverterTest {
+
+	@Test
+	public void testEnzymeUnit() {
+		Pair<BigDecimal, String> units = UcumConverter.toCanonical(new BigDecimal("3"), "U");
+		Pair<BigDecimal, String> micromolesPerMinute = UcumConverter.toCanonical(new BigDecimal("3"), "umol/min");
+		assertEquals(micromolesPerMinute, units);
+		assertEquals("mol.s-1", units.getRight());
+		assertEquals(0, new BigDecimal("5E-8").compareTo(units.getLeft()));
+
+		assertEquals(UcumConverter.toCanonical(new BigDecimal("60"), "umol/min"), UcumConverter.toCanonical(new BigDecimal("60"), "U"));
+		assertEquals(UcumConverter.toCanonical(new BigDecimal("1"), "mU/L"), UcumConverter.toCanonical(new BigDecimal("1"), "nmol/min/L"));
+	}
+
+	@Test
+	public void testVolumesAreLitres() {
+		Pair<BigDecimal, String> volume = UcumConverter.toCanonical(new BigDecimal("90"), "fL");
+		assertEquals("L", volume.getRight());
+		assertEquals(0, new BigDecimal("9E-14").compareTo(volume.getLeft()));
+
+		assertEquals(UcumConverter.toCanonical(new BigDecimal("5"), "mL"), UcumConverter.toCanonical(new BigDecimal("5"), "cm3"));
+		assertEquals(UcumConverter.toCanonical(new BigDecimal("2000"), "L"), UcumConverter.toCanonical(new BigDecimal("2"), "m3"));
+
+		Pair<BigDecimal, String> concentration = UcumConverter.toCanonical(new BigDecimal("5"), "g/m3");
+		assertEquals("L-1.g", concentration.getRight());
+		assertEquals(UcumConverter.toCanonical(new BigDecimal("5"), "mg/L"), concentration);
+	}
+
+}
@@ -6,6 +6,7 @@ import static org.junit.Assert.*;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Random;
 import java.util.TimeZone;
 
 import org.apache.commons.lang3.time.FastDateFormat;
@@ -123,6 +124,75 @@ public class BaseDateTimeDtTest {
 		}
 	}
 
+	/**
+	 * Compares the direct parsing and formatting in {@link DateTimeFormatUtil} with the formatters which are otherwise
+	 * used, for random instants in a number of time zones
+	 */
+	@Test
+	public void testDirectParsingAndFormattingMatchesFormatters() throws Exception {
+		TimeZone gmt = TimeZone.getTimeZone("GMT");
+		String[] zoneIds = { "GMT", "America/New_York", "America/St_Johns", "Europe/Amsterdam", "Europe/London", "Asia/Kathmandu", "Australia/Lord_Howe", "Pacific/Apia" };
+		long min = myDateInstantParser.parse("1600-01-01 00:00:00.000").getTime();
+		long max = myDateInstantParser.parse("9999-12-31 00:00:00.000").getTime();
+
+		Random random = new Random(1234);
+		int parsedDirectly = 0;
+		int total = 0;
+		for (int i = 0; i < 20000; i++) {
+			Date date = new Date(min + (long) (random.nextDouble() * (max - min)));
+			TimeZone zone = TimeZone.getTimeZone(zoneIds[random.nextInt(zoneIds.length)]);
+
+			String[] patterns = { "yyyy", "yyyy-MM", "yyyy-MM-dd", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss.SSS" };
+			TemporalPrecisionEnum[] precisions = { TemporalPrecisionEnum.YEAR, TemporalPrecisionEnum.MONTH, TemporalPrecisionEnum.DAY, TemporalPrecisionEnum.SECOND, TemporalPrecisionEnum.MILLI };
+			for (int j = 0; j < patterns.length; j++) {
+				FastDateFormat local = FastDateFormat.getInstance(patterns[j], zone);
+				String expected = local.format(date);
+				assertEquals(expected, DateTimeFormatUtil.format(date, precisions[j], null, false, zone));
+
+				Date parsed = DateTimeFormatUtil.parseDate(expected, zone);
+				if (j >= 3) {
+					assertNull(parsed);
+					parsed = DateTimeFormatUtil.parseDateTime(expected, zone);
+				}
+				total++;
+				if (parsed != null) {
+					parsedDirectly++;
+					assertEquals(expected, local.parse(expected), parsed);
+				}
+
+				if (j >= 3) {
+					FastDateFormat withOffset = FastDateFormat.getInstance(patterns[j] + "ZZ", zone);
+					expected = withOffset.format(date);
+					assertEquals(expected, DateTimeFormatUtil.format(date, precisions[j], zone, false, gmt));
+					assertEquals(expected, withOffset.parse(expected), DateTimeFormatUtil.parseDateTime(expected, gmt));
+
+					expected = FastDateFormat.getInstance(patterns[j], gmt).format(date) + "Z";
+					assertEquals(expected, DateTimeFormatUtil.format(date, precisions[j], zone, true, zone));
+					assertEquals(expected, FastDateFormat.getInstance(patterns[j] + "'Z'", gmt).parse(expected), DateTimeFormatUtil.parseDateTime(expected, zone));
+				}
+			}
+		}
+
+		// Only local times close to a daylight saving transition should need the formatters
+		ourLog.info("Parsed {} of {} local values directly", parsedDirectly, total);
+		assertThat(parsedDirectly, greaterThan(total * 9 / 10));
+	}
+
+	@Test
+	public void testDirectParsingFallsBackToFormatters() throws Exception {
+		assertNull(DateTimeFormatUtil.parseDate("1500-01-01", TimeZone.getDefault()));
+		assertNull(DateTimeFormatUtil.parseDate("2013-13-01", TimeZone.getDefault()));
+		assertNull(DateTimeFormatUtil.parseDateTime("2013-02-03T11:22:33.2Z", TimeZone.getDefault()));
+		assertNull(DateTimeFormatUtil.parseDateTime("2013-02-03T11:22:33+0200", TimeZone.getDefault()));
+		assertNull(DateTimeFormatUtil.parseDateTime("2013-02-03T24:00:00Z", TimeZone.getDefault()));
+
+		assertEquals("1500-01-01", new DateDt("1500-01-01").getValueAsString());
+		assertEquals("1500-01-01", myDateInstantParser.format(new DateDt("1500-01-01").getValue()).substring(0, 10));
+		DateTimeDt dt = new DateTimeDt("2013-02-03T11:22:33+0200");
+		assertEquals(TimeZone.getTimeZone("GMT+0200"), dt.getTimeZone());
+		assertEquals(new InstantDt("2013-02-03T09:22:33Z").getValue(), dt.getValue());
+	}
+
 	@Test
 	public void testParseDay() throws DataFormatException {
 		DateTimeDt dt = new DateTimeDt();
@@ -1,9 +1,11 @@
 package ca.uhn.fhir.model.primitive;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import ca.uhn.fhir.parser.DataFormatException;
+
 public class XhtmlDtTest {
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(XhtmlDtTest.class);
@@ -44,6 +46,34 @@ public class XhtmlDtTest {
 
 	}
 
+	@Test
+	public void testTextIsOnlyParsedWhenEventsAreRequested() {
+		XhtmlDt x = new XhtmlDt();
+		x.setValueAsString("<div>hello <b>world</b></div>");
+		assertFalse(x.isValueParsed());
+		assertTrue(x.hasContent());
+		assertEquals("<div>hello <b>world</b></div>", x.getValueAsString());
+		assertFalse(x.isValueParsed());
+
+		assertEquals(6, x.getValue().size());
+		assertTrue(x.isValueParsed());
+		assertEquals("<div>hello <b>world</b></div>", x.getValueAsString());
+	}
+
+	@Test
+	public void testInvalidTextFailsWhenParsed() {
+		XhtmlDt x = new XhtmlDt();
+		x.setValueAsString("<div>hello");
+		assertEquals("<div>hello", x.getValueAsString());
+
+		try {
+			x.getValue();
+			fail();
+		} catch (DataFormatException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("<div>hello"));
+		}
+	}
+
 	@Test
 	public void testBasicCharacterEntity() {
 		String input = "amp &amp;";
@@ -5,6 +5,8 @@ import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.StringReader;
@@ -12,6 +14,7 @@ import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 import net.sf.json.JSON;
@@ -36,6 +39,7 @@ import ca.uhn.fhir.model.api.annotation.Child;
 import ca.uhn.fhir.model.api.annotation.Extension;
 import ca.uhn.fhir.model.api.annotation.ResourceDef;
 import ca.uhn.fhir.model.dstu.composite.AddressDt;
+import ca.uhn.fhir.model.dstu.composite.CodeableConceptDt;
 import ca.uhn.fhir.model.dstu.composite.HumanNameDt;
 import ca.uhn.fhir.model.dstu.composite.NarrativeDt;
 import ca.uhn.fhir.model.dstu.composite.ResourceReferenceDt;
@@ -55,6 +59,7 @@ import ca.uhn.fhir.model.dstu.resource.ValueSet;
 import ca.uhn.fhir.model.dstu.resource.ValueSet.Define;
 import ca.uhn.fhir.model.dstu.resource.ValueSet.DefineConcept;
 import ca.uhn.fhir.model.dstu.valueset.AddressUseEnum;
+import ca.uhn.fhir.model.dstu.valueset.AdministrativeGenderCodesEnum;
 import ca.uhn.fhir.model.dstu.valueset.NarrativeStatusEnum;
 import ca.uhn.fhir.model.primitive.DecimalDt;
 import ca.uhn.fhir.model.primitive.IdDt;
@@ -257,6 +262,23 @@ public class JsonParserTest {
 
 	}
 
+	@Test
+	public void testParseNarrativeIsCopiedToXmlWithoutBeingParsed() {
+		String text = "{\"resourceType\":\"Patient\",\"text\":{\"status\":\"generated\",\"div\":\"<div>Sect: &sect; <b class=\\\"c\\\">bold</b><!-- comment --></div>\"}}";
+
+		Patient res = ourCtx.newJsonParser().parseResource(Patient.class, text);
+		XhtmlDt div = res.getText().getDiv();
+		assertFalse(div.isValueParsed());
+
+		String encoded = ourCtx.newXmlParser().encodeResourceToString(res);
+		ourLog.info(encoded);
+		assertThat(encoded, containsString("<div xmlns=\"http://www.w3.org/1999/xhtml\">Sect: \u00a7 <b class=\"c\">bold</b><!-- comment --></div>"));
+		assertFalse(div.isValueParsed());
+
+		Patient reparsed = ourCtx.newXmlParser().parseResource(Patient.class, encoded);
+		assertEquals("<div xmlns=\"http://www.w3.org/1999/xhtml\">Sect: \u00a7 <b class=\"c\">bold</b><!-- comment --></div>", reparsed.getText().getDiv().getValueAsString());
+	}
+
 	@Test
 	public void testParseEmptyNarrative() throws ConfigurationException, DataFormatException, IOException {
 		//@formatter:off
@@ -905,6 +927,100 @@ public class JsonParserTest {
 		assertThat(str, StringContains.containsString(",\"text\":{\"status\":\"generated\",\"div\":\"<div>help</div>\"},"));
 	}
 
+	@Test
+	public void testEncodeAndParseSelectedElements() {
+		Patient patient = new Patient();
+		patient.addIdentifier("urn:system", "12345");
+		patient.addName().addFamily("Family");
+		patient.setGender(AdministrativeGenderCodesEnum.M);
+		patient.addUndeclaredExtension(false, "http://example.com/ext", new StringDt("ext"));
+		patient.addUndeclaredExtension(true, "http://example.com/mod", new StringDt("mod"));
+
+		IParser parser = ourCtx.newJsonParser().setEncodeElements(new HashSet<String>(Arrays.asList("name", "Observation.comments")));
+		String encoded = parser.encodeResourceToString(patient);
+		ourLog.info(encoded);
+		assertThat(encoded, containsString("Family"));
+		assertThat(encoded, containsString("http://example.com/mod"));
+		assertThat(encoded, not(containsString("urn:system")));
+		assertThat(encoded, not(containsString("http://example.com/ext")));
+		assertThat(encoded, not(containsString("gender")));
+
+		encoded = parser.encodeBundleToString(Bundle.withSingleResource(patient));
+		assertThat(encoded, containsString("Family"));
+		assertThat(encoded, not(containsString("urn:system")));
+
+		String full = ourCtx.newJsonParser().encodeResourceToString(patient);
+		Patient parsed = ourCtx.newJsonParser().setParseElements(new HashSet<String>(Arrays.asList("Patient.name", "extension"))).parseResource(Patient.class, full);
+		assertEquals("Family", parsed.getNameFirstRep().getFamilyAsSingleString());
+		assertTrue(parsed.getIdentifier().isEmpty());
+		assertTrue(parsed.getGender().isEmpty());
+		assertEquals(1, parsed.getUndeclaredExtensions().size());
+		assertEquals(1, parsed.getUndeclaredModifierExtensions().size());
+
+		parsed = ourCtx.newJsonParser().setParseElements(new HashSet<String>(Arrays.asList("gender"))).parseResource(Patient.class, full);
+		assertFalse(parsed.getGender().isEmpty());
+		assertTrue(parsed.getName().isEmpty());
+		assertEquals(0, parsed.getUndeclaredExtensions().size());
+		assertEquals(1, parsed.getUndeclaredModifierExtensions().size());
+
+		Observation obs = new Observation();
+		obs.setName(new CodeableConceptDt("urn:system", "code"));
+		obs.setValue(new StringDt("value"));
+		obs.setComments("comments");
+		full = ourCtx.newJsonParser().encodeResourceToString(obs);
+		Observation parsedObs = ourCtx.newJsonParser().setParseElements(new HashSet<String>(Arrays.asList("value", "Patient.comments"))).parseResource(Observation.class, full);
+		assertEquals("value", ((StringDt) parsedObs.getValue()).getValue());
+		assertTrue(parsedObs.getName().isEmpty());
+		assertTrue(parsedObs.getComments().isEmpty());
+	}
+
+	@Test
+	public void testEncodeAndParseUsingStreams() throws IOException {
+		Patient patient = new Patient();
+		patient.addName().addFamily("Gr\u00fcnwald").addGiven("\u00c5sa");
+		patient.getText().setDiv("<div>Gr\u00fcnwald</div>");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ourCtx.newJsonParser().encodeResourceToOutputStream(patient, bytes);
+		String encoded = new String(bytes.toByteArray(), "UTF-8");
+		assertEquals(ourCtx.newJsonParser().encodeResourceToString(patient), encoded);
+
+		Patient parsed = ourCtx.newJsonParser().parseResource(Patient.class, new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals("Gr\u00fcnwald", parsed.getNameFirstRep().getFamilyAsSingleString());
+		assertEquals("\u00c5sa", parsed.getNameFirstRep().getGivenAsSingleString());
+
+		Bundle bundle = Bundle.withSingleResource(patient);
+		bytes = new ByteArrayOutputStream();
+		ourCtx.newJsonParser().encodeBundleToOutputStream(bundle, bytes);
+		Bundle parsedBundle = ourCtx.newJsonParser().parseBundle(Patient.class, new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals("Gr\u00fcnwald", ((Patient) parsedBundle.getEntries().get(0).getResource()).getNameFirstRep().getFamilyAsSingleString());
+	}
+
+	@Test
+	public void testParseBundleIncrementally() throws DataFormatException, IOException {
+		String msg = IOUtils.toString(XmlParser.class.getResourceAsStream("/atom-document-large.json"));
+		Bundle expected = ourCtx.newJsonParser().parseBundle(msg);
+
+		IBundleReader reader = ourCtx.newJsonParser().parseBundleIncrementally(new StringReader(msg));
+		try {
+			Bundle bundle = reader.getBundle();
+			assertEquals("urn:uuid:0b754ff9-03cf-4322-a119-15019af8a3", bundle.getBundleId().getValue());
+			assertEquals(0, bundle.getEntries().size());
+
+			int count = 0;
+			while (reader.hasNext()) {
+				BundleEntry next = reader.next();
+				BundleEntry expectedEntry = expected.getEntries().get(count++);
+				assertEquals(expectedEntry.getId().getValue(), next.getId().getValue());
+				assertEquals(ourCtx.newJsonParser().encodeResourceToString(expectedEntry.getResource()), ourCtx.newJsonParser().encodeResourceToString(next.getResource()));
+			}
+			assertEquals(expected.getEntries().size(), count);
+			assertEquals(1, bundle.getCategories().size());
+		} finally {
+			reader.close();
+		}
+	}
+
 	@Test
 	public void testParseBundle() throws DataFormatException, IOException {
 
@@ -1085,6 +1201,31 @@ public class JsonParserTest {
 
 	}
 
+	/**
+	 * The parser streams JSON content, so make sure it still copes with properties in an unexpected order
+	 */
+	@Test
+	public void testParsePropertiesOutOfOrder() {
+		String input = "{" + 
+				"\"name\":[{\"_family\":[{\"extension\":[{\"url\":\"http://foo\",\"valueString\":\"FAMEXT\"}]}],\"given\":[\"GIVEN\"],\"family\":[\"FAMILY\"]}]," + 
+				"\"birthDate\":\"2011-01-02\"," + 
+				"\"resourceType\":\"Patient\"," + 
+				"\"gender\":{\"text\":\"F\"}," + 
+				"\"_birthDate\":{\"extension\":[{\"valueCode\":\"BDEXT\",\"url\":\"http://bar\"}]}" + 
+				"}";
+
+		Patient parsed = ourCtx.newJsonParser().parseResource(Patient.class, input);
+
+		assertEquals("GIVEN", parsed.getNameFirstRep().getGivenFirstRep().getValue());
+		assertEquals("FAMILY", parsed.getNameFirstRep().getFamilyFirstRep().getValue());
+		assertEquals(1, parsed.getNameFirstRep().getFamilyFirstRep().getUndeclaredExtensionsByUrl("http://foo").size());
+		assertEquals("FAMEXT", parsed.getNameFirstRep().getFamilyFirstRep().getUndeclaredExtensionsByUrl("http://foo").get(0).getValueAsPrimitive().getValueAsString());
+		assertEquals("2011-01-02", parsed.getBirthDate().getValueAsString());
+		assertEquals(1, parsed.getBirthDate().getUndeclaredExtensionsByUrl("http://bar").size());
+		assertEquals("BDEXT", parsed.getBirthDate().getUndeclaredExtensionsByUrl("http://bar").get(0).getValueAsPrimitive().getValueAsString());
+		assertEquals("F", parsed.getGender().getText().getValue());
+	}
+
 	@Test
 	public void testSimpleParse() throws DataFormatException, IOException {
 
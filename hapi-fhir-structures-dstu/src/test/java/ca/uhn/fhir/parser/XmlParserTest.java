@@ -5,6 +5,7 @@ import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.stringContainsInOrder;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -14,6 +15,8 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
@@ -21,6 +24,7 @@ import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
 
@@ -456,6 +460,42 @@ public class XmlParserTest {
 
 	}
 
+	@Test
+	public void testEncodeNestedContainedResourcesAndEmptyElements() {
+		Patient pat = new Patient();
+		pat.addName().addGiven("");
+		pat.addIdentifier("urn", "456");
+
+		Specimen spm = new Specimen();
+		spm.addIdentifier("urn", "123");
+		spm.getSubject().setResource(pat);
+
+		DiagnosticReport rpt = new DiagnosticReport();
+		rpt.addSpecimen().setResource(spm);
+		rpt.addResult();
+		rpt.getIdentifier().getPeriod().getStart();
+
+		IParser p = ourCtx.newXmlParser();
+		String str = p.encodeResourceToString(rpt);
+		ourLog.info(str);
+
+		assertThat(str, StringContains.containsString("<contained><Specimen xmlns=\"http://hl7.org/fhir\" id=\"1\">"));
+		assertThat(str, StringContains.containsString("<Patient xmlns=\"http://hl7.org/fhir\" id=\"2\">"));
+		assertThat(str, StringContains.containsString("<subject><reference value=\"#2\"/></subject>"));
+		assertThat(str, IsNot.not(StringContains.containsString("<name")));
+		assertThat(str, IsNot.not(StringContains.containsString("<result")));
+		assertThat(str, IsNot.not(StringContains.containsString("<period")));
+
+		// The same parser must not reuse the emptiness of elements from the previous encoding
+		pat.getNameFirstRep().getGivenFirstRep().setValue("Given");
+		str = p.encodeResourceToString(rpt);
+		ourLog.info(str);
+		assertThat(str, StringContains.containsString("<name><given value=\"Given\"/></name>"));
+
+		// Nothing from the encoding is retained by the parser afterward
+		assertNull(((BaseParser) p).getContainedResources());
+	}
+
 	@Test
 	public void testEncodeDeclaredExtensionWithAddressContent() {
 		IParser parser = ourCtx.newXmlParser();
@@ -1240,6 +1280,102 @@ public class XmlParserTest {
 
 	}
 
+	@Test
+	public void testEncodeAndParseSelectedElements() {
+		Patient patient = new Patient();
+		patient.addIdentifier("urn:system", "12345");
+		patient.addName().addFamily("Family");
+		patient.setGender(AdministrativeGenderCodesEnum.M);
+		patient.addUndeclaredExtension(false, "http://example.com/ext", new StringDt("ext"));
+		patient.addUndeclaredExtension(true, "http://example.com/mod", new StringDt("mod"));
+
+		IParser parser = ourCtx.newXmlParser().setEncodeElements(new HashSet<String>(Arrays.asList("name", "Observation.comments")));
+		String encoded = parser.encodeResourceToString(patient);
+		ourLog.info(encoded);
+		assertThat(encoded, containsString("Family"));
+		assertThat(encoded, containsString("http://example.com/mod"));
+		assertThat(encoded, not(containsString("urn:system")));
+		assertThat(encoded, not(containsString("http://example.com/ext")));
+		assertThat(encoded, not(containsString("gender")));
+
+		encoded = parser.encodeBundleToString(Bundle.withSingleResource(patient));
+		assertThat(encoded, containsString("Family"));
+		assertThat(encoded, not(containsString("urn:system")));
+
+		String full = ourCtx.newXmlParser().encodeResourceToString(patient);
+		Patient parsed = ourCtx.newXmlParser().setParseElements(new HashSet<String>(Arrays.asList("Patient.name", "extension"))).parseResource(Patient.class, full);
+		assertEquals("Family", parsed.getNameFirstRep().getFamilyAsSingleString());
+		assertTrue(parsed.getIdentifier().isEmpty());
+		assertTrue(parsed.getGender().isEmpty());
+		assertEquals(1, parsed.getUndeclaredExtensions().size());
+		assertEquals(1, parsed.getUndeclaredModifierExtensions().size());
+
+		parsed = ourCtx.newXmlParser().setParseElements(new HashSet<String>(Arrays.asList("gender"))).parseResource(Patient.class, full);
+		assertFalse(parsed.getGender().isEmpty());
+		assertTrue(parsed.getName().isEmpty());
+		assertEquals(0, parsed.getUndeclaredExtensions().size());
+		assertEquals(1, parsed.getUndeclaredModifierExtensions().size());
+
+		Observation obs = new Observation();
+		obs.setName(new CodeableConceptDt("urn:system", "code"));
+		obs.setValue(new StringDt("value"));
+		obs.setComments("comments");
+		full = ourCtx.newXmlParser().encodeResourceToString(obs);
+		Observation parsedObs = ourCtx.newXmlParser().setParseElements(new HashSet<String>(Arrays.asList("value", "Patient.comments"))).parseResource(Observation.class, full);
+		assertEquals("value", ((StringDt) parsedObs.getValue()).getValue());
+		assertTrue(parsedObs.getName().isEmpty());
+		assertTrue(parsedObs.getComments().isEmpty());
+	}
+
+	@Test
+	public void testEncodeAndParseUsingStreams() throws IOException {
+		Patient patient = new Patient();
+		patient.addName().addFamily("Gr\u00fcnwald").addGiven("\u00c5sa");
+		patient.getText().setDiv("<div>Gr\u00fcnwald</div>");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ourCtx.newXmlParser().encodeResourceToOutputStream(patient, bytes);
+		String encoded = new String(bytes.toByteArray(), "UTF-8");
+		assertEquals(ourCtx.newXmlParser().encodeResourceToString(patient), encoded);
+
+		Patient parsed = ourCtx.newXmlParser().parseResource(Patient.class, new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals("Gr\u00fcnwald", parsed.getNameFirstRep().getFamilyAsSingleString());
+		assertEquals("\u00c5sa", parsed.getNameFirstRep().getGivenAsSingleString());
+
+		Bundle bundle = Bundle.withSingleResource(patient);
+		bytes = new ByteArrayOutputStream();
+		ourCtx.newXmlParser().encodeBundleToOutputStream(bundle, bytes);
+		Bundle parsedBundle = ourCtx.newXmlParser().parseBundle(Patient.class, new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals("Gr\u00fcnwald", ((Patient) parsedBundle.getEntries().get(0).getResource()).getNameFirstRep().getFamilyAsSingleString());
+	}
+
+	@Test
+	public void testParseBundleIncrementally() throws IOException {
+		String msg = IOUtils.toString(XmlParser.class.getResourceAsStream("/atom-document-large.xml"));
+		Bundle expected = ourCtx.newXmlParser().parseBundle(msg);
+
+		IBundleReader reader = ourCtx.newXmlParser().parseBundleIncrementally(new StringReader(msg));
+		try {
+			Bundle bundle = reader.getBundle();
+			assertEquals("http://spark.furore.com/fhir/_snapshot?id=327d6bb9-83b0-4929-aa91-6dd9c41e587b&start=0&_count=20", bundle.getLinkSelf().getValue());
+			assertEquals(0, bundle.getEntries().size());
+
+			int count = 0;
+			while (reader.hasNext()) {
+				BundleEntry next = reader.next();
+				BundleEntry expectedEntry = expected.getEntries().get(count++);
+				assertEquals(expectedEntry.getId().getValue(), next.getId().getValue());
+				assertEquals(expectedEntry.getTitle().getValue(), next.getTitle().getValue());
+				assertEquals(expectedEntry.getResource().getId().getValue(), next.getResource().getId().getValue());
+			}
+			assertEquals(expected.getEntries().size(), count);
+			assertEquals(0, bundle.getEntries().size());
+			assertFalse(reader.hasNext());
+		} finally {
+			reader.close();
+		}
+	}
+
 	@Test
 	public void testParseBundleWithMixedReturnTypes() {
 		InputStreamReader str = new InputStreamReader(getClass().getResourceAsStream("/mixed-return-bundle.xml"));
@@ -1284,6 +1420,34 @@ public class XmlParserTest {
 
 	}
 
+	@Test
+	public void testParseNarrativeIsRetainedAsTextWithoutBeingParsed() {
+		String input = "<Patient xmlns=\"http://hl7.org/fhir\" xmlns:h=\"http://www.w3.org/1999/xhtml\"><text><status value=\"generated\"/><h:div><h:b>Duck</h:b></h:div></text></Patient>";
+		Patient res = ourCtx.newXmlParser().parseResource(Patient.class, input);
+
+		XhtmlDt div = res.getText().getDiv();
+		assertFalse(div.isValueParsed());
+		assertEquals("<h:div xmlns:h=\"http://www.w3.org/1999/xhtml\"><h:b>Duck</h:b></h:div>", div.getValueAsString());
+
+		String output = ourCtx.newXmlParser().encodeResourceToString(res);
+		assertThat(output, StringContains.containsString("<text><status value=\"generated\"/><h:div xmlns:h=\"http://www.w3.org/1999/xhtml\"><h:b>Duck</h:b></h:div></text>"));
+		assertFalse(div.isValueParsed());
+	}
+
+	@Test
+	public void testParseNarrativeWithEntitiesAndCommentsFollowedByResourceContent() {
+		String input = "<Patient xmlns=\"http://hl7.org/fhir\"><text><status value=\"generated\"/><div xmlns=\"http://www.w3.org/1999/xhtml\"><!-- a comment --><p class=\"a\" id=\"b\">Fish &amp; <b>Chips</b> &lt;3</p><![CDATA[<x>]]></div></text><name><family value=\"Duck\"/></name></Patient>";
+		Patient res = ourCtx.newXmlParser().parseResource(Patient.class, input);
+
+		assertEquals("Duck", res.getNameFirstRep().getFamilyAsSingleString());
+
+		String div = res.getText().getDiv().getValueAsString();
+		ourLog.info(div);
+		assertThat(div, StringContains.containsString("<p class=\"a\" id=\"b\">Fish &amp; <b>Chips</b> &lt;3</p>"));
+		assertThat(div, StringContains.containsString("a comment"));
+		assertThat(div, StringContains.containsString("<![CDATA[<x>]]>"));
+	}
+
 	/**
 	 * This sample has extra elements in <searchParam> that are not actually a part of the spec any more..
 	 */
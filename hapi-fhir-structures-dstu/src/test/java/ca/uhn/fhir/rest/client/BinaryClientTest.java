@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpResponse;
@@ -20,6 +21,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.internal.stubbing.defaultanswers.ReturnsDeepStubs;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.BinaryContentSources;
 import ca.uhn.fhir.model.api.Bundle;
 import ca.uhn.fhir.model.dstu.resource.Binary;
 import ca.uhn.fhir.model.dstu.resource.Conformance;
@@ -70,6 +72,49 @@ public class BinaryClientTest {
 		assertArrayEquals(new byte[] { 1, 2, 3, 4 }, resp.getContent());
 	}
 
+	@Test
+	public void testReadStreamed() throws Exception {
+		ArgumentCaptor<HttpUriRequest> capt = ArgumentCaptor.forClass(HttpUriRequest.class);
+		when(httpClient.execute(capt.capture())).thenReturn(httpResponse);
+		when(httpResponse.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK"));
+		when(httpResponse.getEntity().getContentType()).thenReturn(new BasicHeader("content-type", "foo/bar"));
+		when(httpResponse.getEntity().getContentLength()).thenReturn(4L);
+		when(httpResponse.getEntity().getContent()).thenReturn(new ByteArrayInputStream(new byte[] {1,2,3,4}));
+
+		IClient client = ctx.newRestfulClient(IClient.class, "http://foo");
+		client.setStreamBinaryResponses(true);
+		Binary resp = client.read(new IdDt("http://foo/Patient/123"));
+
+		assertEquals("foo/bar", resp.getContentType());
+		assertEquals(4, resp.getContentSource().getLength());
+		assertArrayEquals(new byte[] { 1, 2, 3, 4 }, IOUtils.toByteArray(resp.getContentSource().openStream()));
+	}
+
+	@Test
+	public void testCreateFromContentSource() throws Exception {
+		Binary res = new Binary();
+		res.setContentSource(BinaryContentSources.fromStream(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 }), 4));
+		res.setContentType("text/plain");
+
+		ArgumentCaptor<HttpUriRequest> capt = ArgumentCaptor.forClass(HttpUriRequest.class);
+		when(httpClient.execute(capt.capture())).thenReturn(httpResponse);
+		when(httpResponse.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 201, "OK"));
+		when(httpResponse.getEntity().getContentType()).thenReturn(new BasicHeader("content-type", Constants.CT_FHIR_XML));
+		when(httpResponse.getEntity().getContent()).thenReturn(new ByteArrayInputStream(new byte[] {}));
+
+		IClient client = ctx.newRestfulClient(IClient.class, "http://foo");
+		client.create(res);
+
+		HttpPost post = (HttpPost) capt.getValue();
+		assertEquals("text/plain", post.getEntity().getContentType().getValue());
+		assertEquals(4, post.getEntity().getContentLength());
+		assertFalse(post.getEntity().isRepeatable());
+
+		ByteArrayOutputStream sent = new ByteArrayOutputStream();
+		post.getEntity().writeTo(sent);
+		assertArrayEquals(new byte[] { 1, 2, 3, 4 }, sent.toByteArray());
+	}
+
 	@Test
 	public void testCreate() throws Exception {
 		Binary res = new Binary();
@@ -45,6 +45,7 @@ import ca.uhn.fhir.model.dstu.resource.Patient;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.model.primitive.UriDt;
+import ca.uhn.fhir.parser.IBundleReader;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.client.exceptions.NonFhirResponseException;
 import ca.uhn.fhir.rest.method.SearchStyleEnum;
@@ -478,6 +479,37 @@ public class GenericClientTest {
 
 	}
 
+	@Test
+	public void testSearchIncrementally() throws Exception {
+
+		String msg = getPatientFeedWithOneResult();
+
+		ArgumentCaptor<HttpUriRequest> capt = ArgumentCaptor.forClass(HttpUriRequest.class);
+		when(myHttpClient.execute(capt.capture())).thenReturn(myHttpResponse);
+		when(myHttpResponse.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK"));
+		when(myHttpResponse.getEntity().getContentType()).thenReturn(new BasicHeader("content-type", Constants.CT_FHIR_XML + "; charset=UTF-8"));
+		when(myHttpResponse.getEntity().getContent()).thenReturn(new ReaderInputStream(new StringReader(msg), Charset.forName("UTF-8")));
+
+		IGenericClient client = myCtx.newRestfulGenericClient("http://example.com/fhir");
+
+		//@formatter:off
+		IBundleReader reader = client.search()
+				.forResource(Patient.class)
+				.where(Patient.NAME.matches().value("james"))
+				.executeIncrementally();
+		//@formatter:on
+
+		try {
+			assertEquals("http://example.com/fhir/Patient?name=james", capt.getValue().getURI().toString());
+			assertEquals(1, reader.getBundle().getTotalResults().getValue().intValue());
+			assertTrue(reader.hasNext());
+			assertEquals(Patient.class, reader.next().getResource().getClass());
+			assertFalse(reader.hasNext());
+		} finally {
+			reader.close();
+		}
+	}
+
 	@SuppressWarnings("unused")
 	@Test
 	public void testSearchAutomaticallyUsesPost() throws Exception {
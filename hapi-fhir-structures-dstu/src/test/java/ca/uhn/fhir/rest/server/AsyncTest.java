@@ -0,0 +1,262 @@
+package ca.uhn.fhir.rest.server;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.Bundle;
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.dstu.resource.Patient;
+import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.rest.annotation.Create;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.RequiredParam;
+import ca.uhn.fhir.rest.annotation.ResourceParam;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import ca.uhn.fhir.util.PortUtil;
+
+/**
+ * Tests for server methods which return a {@link DeferredResult} or another {@link Future}
+ */
+public class AsyncTest {
+
+	private static CloseableHttpClient ourClient;
+	private static FhirContext ourCtx;
+	private static ExecutorService ourExecutor;
+	private static AtomicInteger ourPreProcessedCount = new AtomicInteger();
+	private static int ourPort;
+	private static Server ourServer;
+
+	@Before
+	public void before() {
+		ourPreProcessedCount.set(0);
+	}
+
+	@Test
+	public void testCreateWithDeferredResult() throws Exception {
+		Patient patient = new Patient();
+		patient.addIdentifier().setValue("001");
+
+		HttpPost httpPost = new HttpPost("http://localhost:" + ourPort + "/Patient");
+		httpPost.setEntity(new StringEntity(ourCtx.newXmlParser().encodeResourceToString(patient), ContentType.create(Constants.CT_FHIR_XML, "UTF-8")));
+		HttpResponse status = ourClient.execute(httpPost);
+		IOUtils.closeQuietly(status.getEntity().getContent());
+
+		assertEquals(201, status.getStatusLine().getStatusCode());
+		assertEquals("http://localhost:" + ourPort + "/Patient/001/_history/002", status.getFirstHeader(Constants.HEADER_LOCATION).getValue());
+		assertEquals(1, ourPreProcessedCount.get());
+	}
+
+	@Test
+	public void testAsyncContextErrorDoesNotDispatch() throws Exception {
+		AsyncContext asyncContext = mock(AsyncContext.class);
+		DeferredResult<Patient> result = new DeferredResult<Patient>();
+		RestfulServer.AsyncResultListener listener = new RestfulServer.AsyncResultListener(asyncContext, result);
+		result.addListener(listener);
+
+		listener.onError(new AsyncEvent(asyncContext, new IOException("Connection reset")));
+
+		assertTrue(result.isCancelled());
+		verify(asyncContext).complete();
+		verify(asyncContext, never()).dispatch();
+
+		// A result arriving after the error must not touch the context either
+		result.set(new Patient());
+		verify(asyncContext, never()).dispatch();
+	}
+
+	@Test
+	public void testAsyncContextCompletedDoesNotDispatch() throws Exception {
+		AsyncContext asyncContext = mock(AsyncContext.class);
+		DeferredResult<Patient> result = new DeferredResult<Patient>();
+		RestfulServer.AsyncResultListener listener = new RestfulServer.AsyncResultListener(asyncContext, result);
+		result.addListener(listener);
+
+		listener.onComplete(new AsyncEvent(asyncContext));
+		result.set(new Patient());
+
+		verify(asyncContext, never()).dispatch();
+	}
+
+	@Test
+	public void testReadWithDeferredResult() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/123");
+		HttpResponse status = ourClient.execute(httpGet);
+		String responseContent = IOUtils.toString(status.getEntity().getContent());
+		IOUtils.closeQuietly(status.getEntity().getContent());
+
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		Patient patient = ourCtx.newXmlParser().parseResource(Patient.class, responseContent);
+		assertEquals("123", patient.getIdentifierFirstRep().getValue().getValue());
+		assertEquals(1, ourPreProcessedCount.get());
+	}
+
+	@Test
+	public void testReadWithDeferredResultCompletedExceptionally() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/999");
+		HttpResponse status = ourClient.execute(httpGet);
+		String responseContent = IOUtils.toString(status.getEntity().getContent());
+		IOUtils.closeQuietly(status.getEntity().getContent());
+
+		assertEquals(404, status.getStatusLine().getStatusCode());
+		assertThat(responseContent, containsString("Patient/999 is not known"));
+	}
+
+	@Test
+	public void testSearchWithFuture() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?name=AAA");
+		HttpResponse status = ourClient.execute(httpGet);
+		String responseContent = IOUtils.toString(status.getEntity().getContent());
+		IOUtils.closeQuietly(status.getEntity().getContent());
+
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		Bundle bundle = ourCtx.newXmlParser().parseBundle(responseContent);
+		assertEquals(2, bundle.size());
+		assertEquals("AAA", ((Patient) bundle.getEntries().get(1).getResource()).getNameFirstRep().getFamilyAsSingleString());
+	}
+
+	@AfterClass
+	public static void afterClass() throws Exception {
+		ourServer.stop();
+		ourExecutor.shutdown();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourPort = PortUtil.findFreePort();
+		ourServer = new Server(ourPort);
+		ourExecutor = Executors.newCachedThreadPool();
+
+		ServletHandler proxyHandler = new ServletHandler();
+		RestfulServer servlet = new RestfulServer();
+		ourCtx = servlet.getFhirContext();
+		servlet.setResourceProviders(new DummyPatientResourceProvider());
+		servlet.registerInterceptor(new InterceptorAdapter() {
+			@Override
+			public boolean incomingRequestPreProcessed(HttpServletRequest theRequest, HttpServletResponse theResponse) {
+				ourPreProcessedCount.incrementAndGet();
+				return true;
+			}
+		});
+		ServletHolder servletHolder = new ServletHolder(servlet);
+		servletHolder.setAsyncSupported(true);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		ourServer.setHandler(proxyHandler);
+		ourServer.start();
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		ourClient = builder.build();
+	}
+
+	/**
+	 * Completes the given result from another thread, after a short delay
+	 */
+	private static <T> void completeLater(final DeferredResult<T> theResult, final T theValue, final Exception theException) {
+		ourExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				if (theException != null) {
+					theResult.setException(theException);
+				} else {
+					theResult.set(theValue);
+				}
+			}
+		});
+	}
+
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		@Create()
+		public DeferredResult<MethodOutcome> createPatient(@ResourceParam Patient thePatient) {
+			DeferredResult<MethodOutcome> retVal = new DeferredResult<MethodOutcome>();
+			IdDt id = new IdDt("Patient", thePatient.getIdentifierFirstRep().getValue().getValue(), "002");
+			completeLater(retVal, new MethodOutcome(id), null);
+			return retVal;
+		}
+
+		@Search()
+		public Future<List<Patient>> findPatients(@RequiredParam(name = Patient.SP_NAME) final StringParam theName) {
+			return ourExecutor.submit(new Callable<List<Patient>>() {
+				@Override
+				public List<Patient> call() throws Exception {
+					List<Patient> retVal = new ArrayList<Patient>();
+					for (String next : new String[] { "0", theName.getValue() }) {
+						Patient patient = new Patient();
+						patient.setId(next);
+						patient.addName().addFamily(next);
+						retVal.add(patient);
+					}
+					return retVal;
+				}
+			});
+		}
+
+		@Override
+		public Class<? extends IResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@Read()
+		public DeferredResult<Patient> readPatient(@IdParam IdDt theId) {
+			DeferredResult<Patient> retVal = new DeferredResult<Patient>();
+			if ("999".equals(theId.getIdPart())) {
+				completeLater(retVal, null, new ResourceNotFoundException(theId));
+			} else {
+				Patient patient = new Patient();
+				patient.setId(theId);
+				patient.addIdentifier().setValue(theId.getIdPart());
+				completeLater(retVal, patient, null);
+			}
+			return retVal;
+		}
+
+	}
+
+}
@@ -0,0 +1,244 @@
+package ca.uhn.fhir.rest.server;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.Bundle;
+import ca.uhn.fhir.model.api.BundleEntry;
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.dstu.resource.OperationOutcome;
+import ca.uhn.fhir.model.dstu.resource.Patient;
+import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.rest.annotation.Create;
+import ca.uhn.fhir.rest.annotation.Delete;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.ResourceParam;
+import ca.uhn.fhir.rest.annotation.Update;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.util.PortUtil;
+
+public class BatchTest {
+
+	private static CloseableHttpClient ourClient;
+	private static FhirContext ourCtx = new FhirContext();
+	private static AtomicInteger ourConcurrentReads = new AtomicInteger();
+	private static Set<String> ourDeletedIds = Collections.synchronizedSet(new HashSet<String>());
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BatchTest.class);
+	private static AtomicInteger ourMaxConcurrentReads = new AtomicInteger();
+	private static int ourPort;
+	private static Server ourServer;
+
+	@Before
+	public void before() {
+		ourMaxConcurrentReads.set(0);
+		ourDeletedIds.clear();
+	}
+
+	private Bundle executeBatch(Bundle theBatch) throws Exception {
+		String bundleString = ourCtx.newXmlParser().setPrettyPrint(true).encodeBundleToString(theBatch);
+		ourLog.info(bundleString);
+
+		HttpPost httpPost = new HttpPost("http://localhost:" + ourPort + "/_batch");
+		httpPost.setEntity(new StringEntity(bundleString, ContentType.create(Constants.CT_FHIR_XML, "UTF-8")));
+		HttpResponse status = ourClient.execute(httpPost);
+		String responseContent = IOUtils.toString(status.getEntity().getContent());
+		IOUtils.closeQuietly(status.getEntity().getContent());
+		ourLog.info(responseContent);
+
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		return ourCtx.newXmlParser().parseBundle(responseContent);
+	}
+
+	@Test
+	public void testBatchWithMixedEntries() throws Exception {
+		Bundle b = new Bundle();
+
+		BundleEntry entry = b.addEntry();
+		entry.getLinkSelf().setValue("Patient/1");
+
+		Patient created = new Patient();
+		created.addName().addFamily("Created");
+		entry = b.addEntry();
+		entry.getId().setValue("cid:1");
+		entry.setResource(created);
+
+		entry = b.addEntry();
+		entry.getLinkSelf().setValue("Patient/999");
+
+		Patient updated = new Patient();
+		updated.addName().addFamily("Updated");
+		entry = b.addEntry();
+		entry.getId().setValue("Patient/3");
+		entry.setResource(updated);
+
+		entry = b.addEntry();
+		entry.setId(new IdDt("Patient/4"));
+		entry.setDeleted(InstantDt.withCurrentTime());
+
+		entry = b.addEntry();
+		entry.getLinkSelf().setValue("http://otherserver/Patient/5");
+
+		List<BundleEntry> entries = executeBatch(b).getEntries();
+		assertEquals(6, entries.size());
+
+		Patient read = (Patient) entries.get(0).getResource();
+		assertEquals("Read1", read.getNameFirstRep().getFamilyAsSingleString());
+		assertEquals("http://localhost:" + ourPort + "/Patient/1/_history/2", entries.get(0).getLinkSelf().getValue());
+
+		assertEquals("Created", ((Patient) entries.get(1).getResource()).getNameFirstRep().getFamilyAsSingleString());
+		assertEquals("http://localhost:" + ourPort + "/Patient/100/_history/1", entries.get(1).getLinkSelf().getValue());
+		assertEquals("http://localhost:" + ourPort + "/Patient/cid:1", entries.get(1).getLinkAlternate().getValue());
+
+		OperationOutcome notFound = (OperationOutcome) entries.get(2).getResource();
+		assertThat(notFound.getIssueFirstRep().getDetails().getValue(), containsString("Patient/999"));
+
+		assertEquals("Updated", ((Patient) entries.get(3).getResource()).getNameFirstRep().getFamilyAsSingleString());
+		assertEquals("http://localhost:" + ourPort + "/Patient/3/_history/2", entries.get(3).getLinkSelf().getValue());
+
+		assertFalse(entries.get(4).getDeletedAt().isEmpty());
+		assertEquals("http://localhost:" + ourPort + "/Patient/4", entries.get(4).getId().getValue());
+		assertEquals(Collections.singleton("4"), ourDeletedIds);
+
+		OperationOutcome otherServer = (OperationOutcome) entries.get(5).getResource();
+		assertThat(otherServer.getIssueFirstRep().getDetails().getValue(), containsString("another server"));
+	}
+
+	@Test
+	public void testBatchEntriesProcessedInParallel() throws Exception {
+		Bundle b = new Bundle();
+		for (int i = 0; i < 8; i++) {
+			b.addEntry().getLinkSelf().setValue("Patient/" + i);
+		}
+
+		List<BundleEntry> entries = executeBatch(b).getEntries();
+		assertEquals(8, entries.size());
+		for (int i = 0; i < 8; i++) {
+			assertEquals("Read" + i, ((Patient) entries.get(i).getResource()).getNameFirstRep().getFamilyAsSingleString());
+		}
+		assertThat(ourMaxConcurrentReads.get(), greaterThan(1));
+	}
+
+	/**
+	 * More entries than there are worker threads and queue slots, so the thread handling the batch processes some
+	 * entries itself
+	 */
+	@Test
+	public void testBatchLargerThanWorkQueue() throws Exception {
+		Bundle b = new Bundle();
+		for (int i = 0; i < 20; i++) {
+			b.addEntry().getLinkSelf().setValue("Patient/" + i);
+		}
+
+		List<BundleEntry> entries = executeBatch(b).getEntries();
+		assertEquals(20, entries.size());
+		for (int i = 0; i < 20; i++) {
+			assertEquals("Read" + i, ((Patient) entries.get(i).getResource()).getNameFirstRep().getFamilyAsSingleString());
+		}
+	}
+
+	@Test
+	public void testBatchNotSupportedByDefault() throws Exception {
+		RestfulServer server = new RestfulServer();
+		assertEquals(0, server.getBatchThreadCount());
+	}
+
+	@AfterClass
+	public static void afterClass() throws Exception {
+		ourServer.stop();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourPort = PortUtil.findFreePort();
+		ourServer = new Server(ourPort);
+
+		ServletHandler proxyHandler = new ServletHandler();
+		RestfulServer servlet = new RestfulServer();
+		servlet.setResourceProviders(new DummyPatientResourceProvider());
+		servlet.setBatchThreadCount(4);
+		ServletHolder servletHolder = new ServletHolder(servlet);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		ourServer.setHandler(proxyHandler);
+		ourServer.start();
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		ourClient = builder.build();
+	}
+
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		@Create
+		public MethodOutcome create(@ResourceParam Patient thePatient) {
+			return new MethodOutcome(new IdDt("Patient/100/_history/1"));
+		}
+
+		@Delete
+		public void delete(@IdParam IdDt theId) {
+			ourDeletedIds.add(theId.getIdPart());
+		}
+
+		@Override
+		public Class<? extends IResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@Read
+		public Patient read(@IdParam IdDt theId) throws InterruptedException {
+			if ("999".equals(theId.getIdPart())) {
+				throw new ResourceNotFoundException(theId);
+			}
+
+			int concurrent = ourConcurrentReads.incrementAndGet();
+			synchronized (ourMaxConcurrentReads) {
+				ourMaxConcurrentReads.set(Math.max(ourMaxConcurrentReads.get(), concurrent));
+			}
+			try {
+				Thread.sleep(100);
+			} finally {
+				ourConcurrentReads.decrementAndGet();
+			}
+
+			Patient retVal = new Patient();
+			retVal.setId(new IdDt("Patient", theId.getIdPart(), "2"));
+			retVal.addName().addFamily("Read" + theId.getIdPart());
+			return retVal;
+		}
+
+		@Update
+		public MethodOutcome update(@IdParam IdDt theId, @ResourceParam Patient thePatient) {
+			return new MethodOutcome(new IdDt("Patient", theId.getIdPart(), "2"));
+		}
+
+	}
+
+}
@@ -2,10 +2,16 @@ package ca.uhn.fhir.rest.server;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
@@ -25,7 +31,9 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.BinaryContentSources;
 import ca.uhn.fhir.model.api.Bundle;
+import ca.uhn.fhir.model.api.IBinaryContentSource;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.dstu.resource.Binary;
 import ca.uhn.fhir.model.primitive.IdDt;
@@ -45,6 +53,7 @@ public class BinaryTest {
 	private static CloseableHttpClient ourClient;
 	private static FhirContext ourCtx = new FhirContext();
 	private static Binary ourLast;
+	private static byte[] ourLastContent;
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BinaryTest.class);
 
@@ -55,6 +64,134 @@ public class BinaryTest {
 	@Before
 	public void before() {
 		ourLast=null;
+		ourLastContent=null;
+	}
+
+	@Test
+	public void testCreateStreamed() throws Exception {
+		byte[] content = new byte[5000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+
+		HttpPost http = new HttpPost("http://localhost:" + ourPort + "/Binary");
+		http.setEntity(new ByteArrayEntity(content, ContentType.create("foo/bar")));
+
+		HttpResponse status = ourClient.execute(http);
+		IOUtils.closeQuietly(status.getEntity().getContent());
+		assertEquals(201, status.getStatusLine().getStatusCode());
+
+		assertEquals("foo/bar", ourLast.getContentType());
+		assertArrayEquals(content, ourLastContent);
+
+		// The content was read from the request by the server method, so it can't be read again
+		try {
+			ourLast.getContentSource().openStream();
+			fail();
+		} catch (IOException e) {
+			// good
+		}
+	}
+
+	@Test
+	public void testParseByteRange() {
+		assertArrayEquals(new long[] { 0, 9 }, RestfulServer.parseByteRange("bytes=0-9", 100));
+		assertArrayEquals(new long[] { 90, 99 }, RestfulServer.parseByteRange("bytes=90-", 100));
+		assertArrayEquals(new long[] { 90, 99 }, RestfulServer.parseByteRange("bytes=-10", 100));
+		assertArrayEquals(new long[] { 0, 99 }, RestfulServer.parseByteRange("bytes=-1000", 100));
+		assertArrayEquals(new long[] { 50, 99 }, RestfulServer.parseByteRange("bytes=50-1000", 100));
+		assertArrayEquals(new long[0], RestfulServer.parseByteRange("bytes=100-", 100));
+		assertArrayEquals(new long[0], RestfulServer.parseByteRange("bytes=-0", 100));
+		assertNull(RestfulServer.parseByteRange(null, 100));
+		assertNull(RestfulServer.parseByteRange("bytes=0-1,5-6", 100));
+		assertNull(RestfulServer.parseByteRange("bytes=9-0", 100));
+		assertNull(RestfulServer.parseByteRange("bytes=a-b", 100));
+		assertNull(RestfulServer.parseByteRange("lines=0-9", 100));
+	}
+
+	@Test
+	public void testReadFromContentSource() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Binary/stream");
+		HttpResponse status = ourClient.execute(httpGet);
+		byte[] responseContent = IOUtils.toByteArray(status.getEntity().getContent());
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		assertEquals("bytes", status.getFirstHeader(Constants.HEADER_ACCEPT_RANGES).getValue());
+		assertArrayEquals(new byte[] { 1, 2, 3, 4 }, responseContent);
+	}
+
+	@Test
+	public void testReadRange() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Binary/stream");
+		httpGet.addHeader(Constants.HEADER_RANGE, "bytes=1-2");
+		HttpResponse status = ourClient.execute(httpGet);
+		byte[] responseContent = IOUtils.toByteArray(status.getEntity().getContent());
+		assertEquals(206, status.getStatusLine().getStatusCode());
+		assertEquals("bytes 1-2/4", status.getFirstHeader(Constants.HEADER_CONTENT_RANGE).getValue());
+		assertArrayEquals(new byte[] { 2, 3 }, responseContent);
+	}
+
+	@Test
+	public void testReadRangeFromFile() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Binary/file");
+		httpGet.addHeader(Constants.HEADER_RANGE, "bytes=2-");
+		HttpResponse status = ourClient.execute(httpGet);
+		byte[] responseContent = IOUtils.toByteArray(status.getEntity().getContent());
+		assertEquals(206, status.getStatusLine().getStatusCode());
+		assertEquals("bytes 2-3/4", status.getFirstHeader(Constants.HEADER_CONTENT_RANGE).getValue());
+		assertArrayEquals(new byte[] { 3, 4 }, responseContent);
+	}
+
+	@Test
+	public void testFileContentSourceOpensAtOffset() throws Exception {
+		File file = File.createTempFile("hapi-binary", ".bin");
+		try {
+			FileUtils.writeByteArrayToFile(file, new byte[] { 1, 2, 3, 4, 5 });
+			IBinaryContentSource source = BinaryContentSources.fromFile(file);
+			InputStream stream = source.openStream(3);
+			try {
+				assertTrue(stream instanceof FileInputStream);
+				assertEquals(3, ((FileInputStream) stream).getChannel().position());
+				assertArrayEquals(new byte[] { 4, 5 }, IOUtils.toByteArray(stream));
+			} finally {
+				stream.close();
+			}
+			assertArrayEquals(new byte[] { 3, 4, 5 }, IOUtils.toByteArray(BinaryContentSources.fromBytes(new byte[] { 1, 2, 3, 4, 5 }).openStream(2)));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testReadRangeIgnoredWithIfRange() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Binary/foo");
+		httpGet.addHeader(Constants.HEADER_RANGE, "bytes=1-2");
+		httpGet.addHeader(Constants.HEADER_IF_RANGE, "W/\"1\"");
+		HttpResponse status = ourClient.execute(httpGet);
+		byte[] responseContent = IOUtils.toByteArray(status.getEntity().getContent());
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		assertNull(status.getFirstHeader(Constants.HEADER_CONTENT_RANGE));
+		assertArrayEquals(new byte[] { 1, 2, 3, 4 }, responseContent);
+	}
+
+	@Test
+	public void testReadRangeNotSatisfiable() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Binary/foo");
+		httpGet.addHeader(Constants.HEADER_RANGE, "bytes=10-");
+		HttpResponse status = ourClient.execute(httpGet);
+		IOUtils.closeQuietly(status.getEntity().getContent());
+		assertEquals(416, status.getStatusLine().getStatusCode());
+		assertEquals("bytes */4", status.getFirstHeader(Constants.HEADER_CONTENT_RANGE).getValue());
+	}
+
+	@Test
+	public void testReadRangeSuffix() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Binary/foo");
+		httpGet.addHeader(Constants.HEADER_RANGE, "bytes=-1");
+		HttpResponse status = ourClient.execute(httpGet);
+		byte[] responseContent = IOUtils.toByteArray(status.getEntity().getContent());
+		assertEquals(206, status.getStatusLine().getStatusCode());
+		assertEquals("bytes 3-3/4", status.getFirstHeader(Constants.HEADER_CONTENT_RANGE).getValue());
+		assertArrayEquals(new byte[] { 4 }, responseContent);
 	}
 
 	@Test
@@ -130,6 +267,7 @@ public class BinaryTest {
 		ServletHandler proxyHandler = new ServletHandler();
 		RestfulServer servlet = new RestfulServer();
 		servlet.setResourceProviders(patientProvider);
+		servlet.setBinaryStreamingThreshold(1000);
 		ServletHolder servletHolder = new ServletHolder(servlet);
 		proxyHandler.addServletWithMapping(servletHolder, "/*");
 		ourServer.setHandler(proxyHandler);
@@ -148,8 +286,9 @@ public class BinaryTest {
 	public static class ResourceProvider implements IResourceProvider {
 
 		@Create
-		public MethodOutcome create(@ResourceParam Binary theBinary) {
+		public MethodOutcome create(@ResourceParam Binary theBinary) throws IOException {
 			ourLast = theBinary;
+			ourLastContent = IOUtils.toByteArray(theBinary.getContentSource().openStream());
 			return new MethodOutcome(new IdDt("1"));
 		}
 
@@ -162,7 +301,20 @@ public class BinaryTest {
 		public Binary read(@IdParam IdDt theId) {
 			Binary retVal = new Binary();
 			retVal.setId("1");
-			retVal.setContent(new byte[] { 1, 2, 3, 4 });
+			if ("stream".equals(theId.getIdPart())) {
+				retVal.setContentSource(BinaryContentSources.fromStream(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 }), 4));
+			} else if ("file".equals(theId.getIdPart())) {
+				try {
+					File file = File.createTempFile("hapi-binary", ".bin");
+					file.deleteOnExit();
+					FileUtils.writeByteArrayToFile(file, new byte[] { 1, 2, 3, 4 });
+					retVal.setContentSource(BinaryContentSources.fromFile(file));
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			} else {
+				retVal.setContent(new byte[] { 1, 2, 3, 4 });
+			}
 			retVal.setContentType(theId.getIdPart());
 			return retVal;
 		}
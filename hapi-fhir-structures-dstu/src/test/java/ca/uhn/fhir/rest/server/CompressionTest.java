@@ -1,17 +1,26 @@
 package ca.uhn.fhir.rest.server;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
@@ -28,8 +37,13 @@ import ca.uhn.fhir.model.dstu.composite.IdentifierDt;
 import ca.uhn.fhir.model.dstu.resource.Patient;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.rest.annotation.Create;
 import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.ResourceParam;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.client.IGenericClient;
+import ca.uhn.fhir.rest.client.interceptor.GZipContentInterceptor;
 import ca.uhn.fhir.util.PortUtil;
 
 /**
@@ -42,6 +56,8 @@ public class CompressionTest {
 	private static int ourPort;
 	private static Server ourServer;
 	private static FhirContext ourCtx;
+	private static String ourLastFamily;
+	private static RestfulServer ourServlet;
 
 	public static String decompress(byte[] theResource) {
 		GZIPInputStream is;
@@ -69,6 +85,7 @@ public class CompressionTest {
 			String enc = c.getContentEncoding();
 			
 			assertEquals("gzip", enc);
+			assertEquals(Constants.HEADER_ACCEPT_ENCODING, c.getHeaderField(Constants.HEADER_VARY));
 			
 			byte[] responseContentBytes = IOUtils.toByteArray(c.getInputStream());
 			String responseContent = decompress(responseContentBytes);
@@ -80,6 +97,141 @@ public class CompressionTest {
 		
 	}
 
+	@Test
+	public void testCreateWithGzipBody() throws Exception {
+		Patient patient = new Patient();
+		patient.addName().addFamily("GZIP");
+		byte[] body = ourCtx.newXmlParser().encodeResourceToString(patient).getBytes("UTF-8");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream gzipStream = new GZIPOutputStream(bytes);
+		gzipStream.write(body);
+		gzipStream.close();
+
+		HttpPost httpPost = new HttpPost("http://localhost:" + ourPort + "/Patient");
+		httpPost.setEntity(new ByteArrayEntity(bytes.toByteArray(), ContentType.create(Constants.CT_FHIR_XML, "UTF-8")));
+		httpPost.addHeader(Constants.HEADER_CONTENT_ENCODING, "gzip");
+		HttpResponse status = ourClient.execute(httpPost);
+		IOUtils.closeQuietly(status.getEntity().getContent());
+
+		assertEquals(201, status.getStatusLine().getStatusCode());
+		assertEquals("GZIP", ourLastFamily);
+	}
+
+	@Test
+	public void testCreateWithDeflateBody() throws Exception {
+		Patient patient = new Patient();
+		patient.addName().addFamily("DEFLATE");
+		byte[] body = ourCtx.newXmlParser().encodeResourceToString(patient).getBytes("UTF-8");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DeflaterOutputStream deflateStream = new DeflaterOutputStream(bytes);
+		deflateStream.write(body);
+		deflateStream.close();
+
+		HttpPost httpPost = new HttpPost("http://localhost:" + ourPort + "/Patient");
+		httpPost.setEntity(new ByteArrayEntity(bytes.toByteArray(), ContentType.create(Constants.CT_FHIR_XML, "UTF-8")));
+		httpPost.addHeader(Constants.HEADER_CONTENT_ENCODING, "deflate");
+		HttpResponse status = ourClient.execute(httpPost);
+		IOUtils.closeQuietly(status.getEntity().getContent());
+
+		assertEquals(201, status.getStatusLine().getStatusCode());
+		assertEquals("DEFLATE", ourLastFamily);
+	}
+
+	@Test
+	public void testCreateWithGzipBodyLargerThanMaximumDecompressedSize() throws Exception {
+		Patient patient = new Patient();
+		patient.addName().addFamily(StringUtils.repeat('A', 100000));
+		byte[] body = ourCtx.newXmlParser().encodeResourceToString(patient).getBytes("UTF-8");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream gzipStream = new GZIPOutputStream(bytes);
+		gzipStream.write(body);
+		gzipStream.close();
+		assertTrue(bytes.size() < 1000);
+
+		ourServlet.setMaximumDecompressedRequestSize(10000);
+		try {
+			ourLastFamily = null;
+			HttpPost httpPost = new HttpPost("http://localhost:" + ourPort + "/Patient");
+			httpPost.setEntity(new ByteArrayEntity(bytes.toByteArray(), ContentType.create(Constants.CT_FHIR_XML, "UTF-8")));
+			httpPost.addHeader(Constants.HEADER_CONTENT_ENCODING, "gzip");
+			HttpResponse status = ourClient.execute(httpPost);
+			String responseContent = IOUtils.toString(status.getEntity().getContent());
+			IOUtils.closeQuietly(status.getEntity().getContent());
+			ourLog.info(responseContent);
+
+			assertEquals(413, status.getStatusLine().getStatusCode());
+			assertThat(responseContent, containsString("maximum size of 10000 bytes"));
+			assertEquals(null, ourLastFamily);
+		} finally {
+			ourServlet.setMaximumDecompressedRequestSize(RestfulServer.DEFAULT_MAXIMUM_DECOMPRESSED_REQUEST_SIZE);
+		}
+	}
+
+	@Test
+	public void testCreateWithUnsupportedContentEncoding() throws Exception {
+		Patient patient = new Patient();
+		patient.addName().addFamily("BROTLI");
+		byte[] body = ourCtx.newXmlParser().encodeResourceToString(patient).getBytes("UTF-8");
+
+		ourLastFamily = null;
+		HttpPost httpPost = new HttpPost("http://localhost:" + ourPort + "/Patient");
+		httpPost.setEntity(new ByteArrayEntity(body, ContentType.create(Constants.CT_FHIR_XML, "UTF-8")));
+		httpPost.addHeader(Constants.HEADER_CONTENT_ENCODING, "br");
+		HttpResponse status = ourClient.execute(httpPost);
+		String responseContent = IOUtils.toString(status.getEntity().getContent());
+		IOUtils.closeQuietly(status.getEntity().getContent());
+
+		assertEquals(415, status.getStatusLine().getStatusCode());
+		assertThat(responseContent, containsString("Unsupported Content-Encoding: br"));
+		assertEquals(null, ourLastFamily);
+	}
+
+	@Test
+	public void testCreateWithGZipContentInterceptor() throws Exception {
+		IGenericClient client = ourCtx.newRestfulGenericClient("http://localhost:" + ourPort);
+		client.registerInterceptor(new GZipContentInterceptor());
+
+		Patient patient = new Patient();
+		patient.addName().addFamily("INTERCEPTOR");
+		MethodOutcome outcome = client.create().resource(patient).execute();
+
+		assertEquals("2", outcome.getId().getIdPart());
+		assertEquals("INTERCEPTOR", ourLastFamily);
+	}
+
+	@Test
+	public void testReadDeflate() throws Exception {
+		URLConnection c = new URL("http://localhost:" + ourPort + "/Patient/1").openConnection();
+		c.addRequestProperty(Constants.HEADER_ACCEPT_ENCODING, "gzip;q=0.5, deflate");
+
+		assertEquals("deflate", c.getContentEncoding());
+
+		String responseContent = IOUtils.toString(new InflaterInputStream(c.getInputStream()), "UTF-8");
+		IdentifierDt dt = ourCtx.newXmlParser().parseResource(Patient.class, responseContent).getIdentifierFirstRep();
+		assertEquals("1", dt.getSystem().getValueAsString());
+	}
+
+	@Test
+	public void testReadBelowMinimumCompressionSize() throws Exception {
+		ourServlet.setMinimumCompressionSize(100000);
+		try {
+			URLConnection c = new URL("http://localhost:" + ourPort + "/Patient/1").openConnection();
+			c.addRequestProperty(Constants.HEADER_ACCEPT_ENCODING, "gzip");
+
+			assertEquals(null, c.getContentEncoding());
+
+			String responseContent = IOUtils.toString(c.getInputStream(), "UTF-8");
+			assertEquals(responseContent.getBytes("UTF-8").length, c.getContentLength());
+			IdentifierDt dt = ourCtx.newXmlParser().parseResource(Patient.class, responseContent).getIdentifierFirstRep();
+			assertEquals("1", dt.getSystem().getValueAsString());
+		} finally {
+			ourServlet.setMinimumCompressionSize(0);
+		}
+	}
+
 	@Test
 	public void testVRead() throws Exception {
 		{
@@ -108,6 +260,7 @@ public class CompressionTest {
 
 		ServletHandler proxyHandler = new ServletHandler();
 		RestfulServer servlet = new RestfulServer();
+		ourServlet = servlet;
 		ourCtx = servlet.getFhirContext();
 		servlet.setResourceProviders(patientProvider);
 		ServletHolder servletHolder = new ServletHolder(servlet);
@@ -133,6 +286,12 @@ public class CompressionTest {
 	 */
 	public static class DummyProvider implements IResourceProvider {
 
+		@Create
+		public MethodOutcome createPatient(@ResourceParam Patient thePatient) {
+			ourLastFamily = thePatient.getNameFirstRep().getFamilyAsSingleString();
+			return new MethodOutcome(new IdDt("Patient/2/_history/1"));
+		}
+
 		@Read(version = true)
 		public Patient findPatient(@IdParam IdDt theId) {
 			Patient patient = new Patient();
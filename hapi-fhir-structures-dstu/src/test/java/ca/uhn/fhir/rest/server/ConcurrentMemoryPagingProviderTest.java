@@ -0,0 +1,200 @@
+package ca.uhn.fhir.rest.server;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.dstu.resource.Patient;
+
+public class ConcurrentMemoryPagingProviderTest {
+
+	private long myNow;
+	private ConcurrentMemoryPagingProvider myProvider;
+
+	@Before
+	public void before() {
+		myNow = 1000000L;
+		myProvider = new ConcurrentMemoryPagingProvider(3) {
+			@Override
+			protected long now() {
+				return myNow;
+			}
+		};
+	}
+
+	@Test
+	public void testStoreAndRetrieve() {
+		IBundleProvider list = createList(5);
+		String id = myProvider.storeResultList(list);
+
+		assertSame(list, myProvider.retrieveResultList(id));
+		assertNull(myProvider.retrieveResultList("FOO"));
+		assertEquals(1, myProvider.getHitCount());
+		assertEquals(1, myProvider.getMissCount());
+		assertEquals(1, myProvider.getSize());
+		assertEquals(5, myProvider.getWeight());
+	}
+
+	@Test
+	public void testTimeToLive() {
+		myProvider.setTimeToLive(10, TimeUnit.MINUTES);
+		myProvider.setIdleTimeout(0, TimeUnit.MINUTES);
+		String id = myProvider.storeResultList(createList(5));
+
+		myNow += TimeUnit.MINUTES.toMillis(9);
+		assertNotNull(myProvider.retrieveResultList(id));
+
+		myNow += TimeUnit.MINUTES.toMillis(2);
+		assertNull(myProvider.retrieveResultList(id));
+		assertEquals(1, myProvider.getExpiryCount());
+		assertEquals(0, myProvider.getSize());
+		assertEquals(0, myProvider.getWeight());
+	}
+
+	@Test
+	public void testTimeToLiveSweptWhenRecentlyAccessed() {
+		myProvider.setTimeToLive(10, TimeUnit.MINUTES);
+		myProvider.setIdleTimeout(0, TimeUnit.MINUTES);
+		String id1 = myProvider.storeResultList(createList(5));
+		myNow += TimeUnit.MINUTES.toMillis(5);
+		String id2 = myProvider.storeResultList(createList(5));
+		myNow += TimeUnit.MINUTES.toMillis(1);
+		assertNotNull(myProvider.retrieveResultList(id1));
+
+		// id1 is the most recently accessed list, so only the periodic sweep finds that it has expired
+		myNow += TimeUnit.MINUTES.toMillis(5);
+		myProvider.storeResultList(createList(5));
+		assertEquals(1, myProvider.getExpiryCount());
+		assertEquals(2, myProvider.getSize());
+		assertEquals(10, myProvider.getWeight());
+		assertNotNull(myProvider.retrieveResultList(id2));
+	}
+
+	@Test
+	public void testIdleTimeout() {
+		myProvider.setTimeToLive(0, TimeUnit.MINUTES);
+		myProvider.setIdleTimeout(5, TimeUnit.MINUTES);
+		String id1 = myProvider.storeResultList(createList(5));
+		String id2 = myProvider.storeResultList(createList(5));
+
+		// Retrieving a list keeps it alive
+		for (int i = 0; i < 5; i++) {
+			myNow += TimeUnit.MINUTES.toMillis(4);
+			assertNotNull(myProvider.retrieveResultList(id1));
+		}
+
+		// Expired lists are also swept when another list is stored
+		myProvider.storeResultList(createList(5));
+		assertEquals(1, myProvider.getExpiryCount());
+		assertEquals(2, myProvider.getSize());
+		assertNull(myProvider.retrieveResultList(id2));
+	}
+
+	@Test
+	public void testEvictLeastRecentlyAccessedWhenFull() {
+		String id1 = myProvider.storeResultList(createList(1));
+		myNow++;
+		String id2 = myProvider.storeResultList(createList(1));
+		myNow++;
+		String id3 = myProvider.storeResultList(createList(1));
+		myNow++;
+		assertNotNull(myProvider.retrieveResultList(id1));
+		myNow++;
+
+		String id4 = myProvider.storeResultList(createList(1));
+		assertEquals(3, myProvider.getSize());
+		assertEquals(1, myProvider.getEvictionCount());
+		assertNotNull(myProvider.retrieveResultList(id1));
+		assertNull(myProvider.retrieveResultList(id2));
+		assertNotNull(myProvider.retrieveResultList(id3));
+		assertNotNull(myProvider.retrieveResultList(id4));
+	}
+
+	@Test
+	public void testEvictByWeight() {
+		myProvider.setMaximumEntries(100);
+		myProvider.setMaximumWeight(20);
+		String id1 = myProvider.storeResultList(createList(8));
+		myNow++;
+		String id2 = myProvider.storeResultList(createList(8));
+		myNow++;
+		String id3 = myProvider.storeResultList(createList(8));
+
+		assertEquals(16, myProvider.getWeight());
+		assertEquals(1, myProvider.getEvictionCount());
+		assertNull(myProvider.retrieveResultList(id1));
+		assertNotNull(myProvider.retrieveResultList(id2));
+		assertNotNull(myProvider.retrieveResultList(id3));
+	}
+
+	@Test
+	public void testListHeavierThanMaximumWeightIsNotStored() {
+		myProvider.setMaximumWeight(20);
+		String id1 = myProvider.storeResultList(createList(8));
+		String id2 = myProvider.storeResultList(createList(21));
+
+		assertNull(id2);
+		assertNotNull(myProvider.retrieveResultList(id1));
+		assertEquals(1, myProvider.getRejectedCount());
+		assertEquals(0, myProvider.getEvictionCount());
+		assertEquals(8, myProvider.getWeight());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		final ConcurrentMemoryPagingProvider provider = new ConcurrentMemoryPagingProvider(50);
+		provider.setMaximumWeight(1000);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int thread = 0; thread < 8; thread++) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						for (int i = 0; i < 500; i++) {
+							IBundleProvider list = createList(1 + (i % 20));
+							String id = provider.storeResultList(list);
+							IBundleProvider retrieved = provider.retrieveResultList(id);
+							if (retrieved != null) {
+								assertSame(list, retrieved);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> next : futures) {
+				next.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// Trigger a final eviction pass now that no other thread holds the eviction lock
+		provider.storeResultList(createList(1));
+
+		assertTrue(provider.getSize() <= 50);
+		assertTrue(provider.getWeight() <= 1000);
+		assertEquals(4001, provider.getSize() + provider.getEvictionCount());
+	}
+
+	private static IBundleProvider createList(int theSize) {
+		List<IResource> resources = new ArrayList<IResource>();
+		for (int i = 0; i < theSize; i++) {
+			resources.add(new Patient());
+		}
+		return new SimpleBundleProvider(resources);
+	}
+
+}
@@ -1,5 +1,6 @@
 package ca.uhn.fhir.rest.server;
 
+import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
@@ -27,6 +28,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mockito.InOrder;
 
+import ca.uhn.fhir.model.api.Bundle;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.dstu.composite.HumanNameDt;
 import ca.uhn.fhir.model.dstu.composite.IdentifierDt;
@@ -40,6 +42,8 @@ import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.method.RequestDetails;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import ca.uhn.fhir.rest.server.interceptor.MetricsInterceptor;
 import ca.uhn.fhir.util.PortUtil;
 
 /**
@@ -54,6 +58,27 @@ public class InterceptorTest {
 	private IServerInterceptor myInterceptor1;
 	private IServerInterceptor myInterceptor2;
 
+	@Test
+	public void testBundleInterceptorRegistered() {
+		RestfulServer server = new RestfulServer();
+		assertFalse(server.isBundleInterceptorRegistered());
+
+		// Metrics only need the request details, so search results can still be streamed
+		server.registerInterceptor(new MetricsInterceptor());
+		assertFalse(server.isBundleInterceptorRegistered());
+
+		server.registerInterceptor(new InterceptorAdapter() {
+			@Override
+			public boolean outgoingResponse(RequestDetails theRequestDetails, Bundle theResponseObject, HttpServletRequest theServletRequest, HttpServletResponse theServletResponse) {
+				return true;
+			}
+		});
+		assertTrue(server.isBundleInterceptorRegistered());
+
+		server.setInterceptors(myInterceptor1);
+		assertTrue(server.isBundleInterceptorRegistered());
+	}
+
 	@Test
 	public void testInterceptorFires() throws Exception {
 		when(myInterceptor1.incomingRequestPreProcessed(any(HttpServletRequest.class), any(HttpServletResponse.class))).thenReturn(true);
@@ -67,6 +92,9 @@ public class InterceptorTest {
 		HttpResponse status = ourClient.execute(httpGet);
 		IOUtils.closeQuietly(status.getEntity().getContent());
 
+		// Completion is reported after the response has been sent to the client
+		verify(myInterceptor1, timeout(5000)).processingCompleted(any(RequestDetails.class), any(HttpServletRequest.class), any(HttpServletResponse.class));
+
 		InOrder order = inOrder(myInterceptor1, myInterceptor2);
 		order.verify(myInterceptor1, times(1)).incomingRequestPreProcessed(any(HttpServletRequest.class), any(HttpServletResponse.class));
 		order.verify(myInterceptor2, times(1)).incomingRequestPreProcessed(any(HttpServletRequest.class), any(HttpServletResponse.class));
@@ -75,6 +103,8 @@ public class InterceptorTest {
 		
 		order.verify(myInterceptor2, times(1)).outgoingResponse(any(RequestDetails.class), any(IResource.class), any(HttpServletRequest.class), any(HttpServletResponse.class));
 		order.verify(myInterceptor1, times(1)).outgoingResponse(any(RequestDetails.class), any(IResource.class), any(HttpServletRequest.class), any(HttpServletResponse.class));
+		order.verify(myInterceptor2, times(1)).processingCompleted(any(RequestDetails.class), any(HttpServletRequest.class), any(HttpServletResponse.class));
+		order.verify(myInterceptor1, times(1)).processingCompleted(any(RequestDetails.class), any(HttpServletRequest.class), any(HttpServletResponse.class));
 		verifyNoMoreInteractions(myInterceptor1);
 		verifyNoMoreInteractions(myInterceptor2);
 	}
@@ -26,7 +26,9 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.model.api.Bundle;
 import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.dstu.resource.Patient;
+import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.util.PortUtil;
 
 /**
@@ -40,6 +42,7 @@ public class PagingTest {
 	private static FhirContext ourContext;
 	private static RestfulServer myRestfulServer;
 	private static SimpleBundleProvider ourBundleProvider;
+	private static IBundleProvider ourLargeBundleProvider;
 	private IPagingProvider myPagingProvider;
 
 	@Test
@@ -84,6 +87,35 @@ public class PagingTest {
 		}
 	}
 
+	/**
+	 * A paging provider which does not store the result list can't serve the later pages, so the first page must not
+	 * link to them
+	 */
+	@Test
+	public void testSearchResultListNotStored() throws Exception {
+		ConcurrentMemoryPagingProvider pagingProvider = new ConcurrentMemoryPagingProvider(10);
+		pagingProvider.setDefaultPageSize(5);
+		pagingProvider.setMaximumWeight(9);
+		myRestfulServer.setPagingProvider(pagingProvider);
+
+		for (EncodingEnum nextEncoding : EncodingEnum.values()) {
+			HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?_format=" + nextEncoding.getFormatContentType());
+			HttpResponse status = ourClient.execute(httpGet);
+			String responseContent = IOUtils.toString(status.getEntity().getContent());
+			IOUtils.closeQuietly(status.getEntity().getContent());
+
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			Bundle bundle = nextEncoding.newParser(ourContext).parseBundle(responseContent);
+			assertEquals(5, bundle.getEntries().size());
+			assertEquals(10, bundle.getTotalResults().getValue().intValue());
+			assertNull(bundle.getLinkNext().getValue());
+			assertNull(bundle.getLinkPrevious().getValue());
+		}
+
+		assertEquals(2, pagingProvider.getRejectedCount());
+		assertEquals(0, pagingProvider.getSize());
+	}
+
 	@Test
 	public void testSearchInexactOffset() throws Exception {
 		when(myPagingProvider.getDefaultPageSize()).thenReturn(5);
@@ -152,6 +184,43 @@ public class PagingTest {
 
 	}
 
+	@Test
+	public void testSearchLargePageIsLoadedInChunks() throws Exception {
+		when(myPagingProvider.getDefaultPageSize()).thenReturn(500);
+		when(myPagingProvider.getMaximumPageSize()).thenReturn(500);
+
+		final List<String> requestedRanges = new ArrayList<String>();
+		List<IResource> resources = new ArrayList<IResource>();
+		for (int i = 0; i < 250; i++) {
+			Patient patient = new Patient();
+			patient.setId("" + i);
+			patient.addName().addFamily("" + i);
+			resources.add(patient);
+		}
+		ourLargeBundleProvider = new SimpleBundleProvider(resources) {
+			@Override
+			public List<IResource> getResources(int theFromIndex, int theToIndex) {
+				requestedRanges.add(theFromIndex + "-" + theToIndex);
+				return super.getResources(theFromIndex, theToIndex);
+			}
+		};
+
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?large=true&_format=json");
+		HttpResponse status = ourClient.execute(httpGet);
+		String responseContent = IOUtils.toString(status.getEntity().getContent());
+		IOUtils.closeQuietly(status.getEntity().getContent());
+
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		Bundle bundle = ourContext.newJsonParser().parseBundle(responseContent);
+		assertEquals(250, bundle.getEntries().size());
+		assertEquals(250, bundle.getTotalResults().getValue().intValue());
+		for (int i = 0; i < 250; i++) {
+			assertEquals("" + i, bundle.getEntries().get(i).getId().getIdPart());
+		}
+		assertNull(bundle.getLinkNext().getValue());
+		assertEquals("[0-100, 100-200, 200-250]", requestedRanges.toString());
+	}
+
 	@AfterClass
 	public static void afterClass() throws Exception {
 		ourServer.stop();
@@ -205,6 +274,11 @@ public class PagingTest {
 			return ourBundleProvider;
 		}
 
+		@Search
+		public IBundleProvider findPatientLarge(@RequiredParam(name = "large") StringParam theLarge) {
+			return ourLargeBundleProvider;
+		}
+
 		@Override
 		public Class<? extends IResource> getResourceType() {
 			return Patient.class;
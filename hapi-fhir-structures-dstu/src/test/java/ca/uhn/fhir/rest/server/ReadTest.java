@@ -21,11 +21,13 @@ import org.junit.Test;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.model.api.BaseResource;
 import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.model.dstu.composite.IdentifierDt;
 import ca.uhn.fhir.model.dstu.resource.Binary;
 import ca.uhn.fhir.model.dstu.resource.Organization;
 import ca.uhn.fhir.model.dstu.resource.Patient;
 import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.util.PortUtil;
@@ -39,6 +41,7 @@ public class ReadTest {
 	private static int ourPort;
 	private static Server ourServer;
 	private static FhirContext ourCtx;
+	private static int ourOrganizationReads;
 
 	@Test
 	public void testRead() throws Exception {
@@ -114,6 +117,80 @@ public class ReadTest {
 		
 	}
 
+	@Test
+	public void testReadWithElements() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/1?_elements=name");
+		HttpResponse status = ourClient.execute(httpGet);
+		String responseContent = IOUtils.toString(status.getEntity().getContent());
+		IOUtils.closeQuietly(status.getEntity().getContent());
+
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		Patient patient = ourCtx.newXmlParser().parseResource(Patient.class, responseContent);
+		assertEquals("Family", patient.getNameFirstRep().getFamilyAsSingleString());
+		assertTrue(patient.getIdentifier().isEmpty());
+
+		httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/1?_elements=identifier,Organization.name&_format=json");
+		status = ourClient.execute(httpGet);
+		responseContent = IOUtils.toString(status.getEntity().getContent());
+		IOUtils.closeQuietly(status.getEntity().getContent());
+
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		patient = ourCtx.newJsonParser().parseResource(Patient.class, responseContent);
+		assertEquals("1", patient.getIdentifierFirstRep().getSystem().getValueAsString());
+		assertTrue(patient.getName().isEmpty());
+	}
+
+	@Test
+	public void testReadIfNoneMatch() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/1");
+		httpGet.addHeader(Constants.HEADER_IF_NONE_MATCH, "W/\"1\"");
+		HttpResponse status = ourClient.execute(httpGet);
+		assertEquals(304, status.getStatusLine().getStatusCode());
+		assertNull(status.getEntity());
+		assertEquals("W/\"1\"", status.getFirstHeader(Constants.HEADER_ETAG).getValue());
+
+		httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/1");
+		httpGet.addHeader(Constants.HEADER_IF_NONE_MATCH, "W/\"2\"");
+		status = ourClient.execute(httpGet);
+		IOUtils.closeQuietly(status.getEntity().getContent());
+		assertEquals(200, status.getStatusLine().getStatusCode());
+	}
+
+	@Test
+	public void testReadIfModifiedSince() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/1");
+		httpGet.addHeader(Constants.HEADER_IF_MODIFIED_SINCE, "Wed, 01 Jan 2014 10:00:00 GMT");
+		HttpResponse status = ourClient.execute(httpGet);
+		assertEquals(304, status.getStatusLine().getStatusCode());
+		assertNull(status.getEntity());
+		assertEquals("Wed, 01 Jan 2014 10:00:00 GMT", status.getFirstHeader(Constants.HEADER_LAST_MODIFIED).getValue());
+
+		httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient/1");
+		httpGet.addHeader(Constants.HEADER_IF_MODIFIED_SINCE, "Wed, 01 Jan 2014 09:59:59 GMT");
+		status = ourClient.execute(httpGet);
+		IOUtils.closeQuietly(status.getEntity().getContent());
+		assertEquals(200, status.getStatusLine().getStatusCode());
+	}
+
+	@Test
+	public void testReadIfNoneMatchUsingVersionProvider() throws Exception {
+		int reads = ourOrganizationReads;
+
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Organization/1");
+		httpGet.addHeader(Constants.HEADER_IF_NONE_MATCH, "W/\"1\"");
+		HttpResponse status = ourClient.execute(httpGet);
+		assertEquals(304, status.getStatusLine().getStatusCode());
+		assertEquals("W/\"1\"", status.getFirstHeader(Constants.HEADER_ETAG).getValue());
+		assertEquals(reads, ourOrganizationReads);
+
+		httpGet = new HttpGet("http://localhost:" + ourPort + "/Organization/1");
+		httpGet.addHeader(Constants.HEADER_IF_NONE_MATCH, "W/\"0\"");
+		status = ourClient.execute(httpGet);
+		IOUtils.closeQuietly(status.getEntity().getContent());
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		assertEquals(reads + 1, ourOrganizationReads);
+	}
+
 	@Test
 	public void testVRead() throws Exception {
 		{
@@ -170,7 +247,9 @@ public class ReadTest {
 		public Patient findPatient(@IdParam IdDt theId) {
 			Patient patient = new Patient();
 			patient.addIdentifier(theId.getIdPart(), theId.getVersionIdPart());
+			patient.addName().addFamily("Family");
 			patient.setId("Patient/1/_history/1");
+			ResourceMetadataKeyEnum.UPDATED.put(patient, new InstantDt("2014-01-01T10:00:00Z"));
 			return patient;
 		}
 
@@ -185,10 +264,11 @@ public class ReadTest {
 	/**
 	 * Created by dsotnikov on 2/25/2014.
 	 */
-	public static class OrganizationProviderWithAbstractReturnType implements IResourceProvider {
+	public static class OrganizationProviderWithAbstractReturnType implements IResourceProvider, IResourceVersionProvider {
 
 		@Read(version = true)
 		public BaseResource findPatient(@IdParam IdDt theId) {
+			ourOrganizationReads++;
 			Organization org = new Organization();
 			org.addIdentifier(theId.getIdPart(), theId.getVersionIdPart());
 			org.setId("Organization/1/_history/1");
@@ -200,6 +280,11 @@ public class ReadTest {
 			return Organization.class;
 		}
 
+		@Override
+		public ResourceVersionInfo getCurrentVersion(IdDt theId) {
+			return new ResourceVersionInfo("1", null);
+		}
+
 	}
 
 	
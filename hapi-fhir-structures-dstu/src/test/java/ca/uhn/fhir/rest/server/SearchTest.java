@@ -111,6 +111,18 @@ public class SearchTest {
 		assertEquals("IDAAA (identifier123)", bundle.getEntries().get(0).getTitle().getValue());
 	}
 
+	@Test
+	public void testSearchCountOnly() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?_id=aaa&_summary=count");
+		HttpResponse status = ourClient.execute(httpGet);
+		String responseContent = IOUtils.toString(status.getEntity().getContent());
+		IOUtils.closeQuietly(status.getEntity().getContent());
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		Bundle bundle = ourCtx.newXmlParser().parseBundle(responseContent);
+		assertEquals(0, bundle.getEntries().size());
+		assertEquals(1, bundle.getTotalResults().getValue().intValue());
+	}
+
 	@Test
 	public void testSearchWithOrList() throws Exception {
 		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?findPatientWithOrList=aaa,bbb");
@@ -231,6 +243,32 @@ public class SearchTest {
 		assertEquals("AAANamed", p.getIdentifierFirstRep().getValue().getValue());
 	}
 
+	@Test
+	public void testRepeatedRequestsDispatchToSameMethod() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?AAA=" + i);
+			HttpResponse status = ourClient.execute(httpGet);
+			String responseContent = IOUtils.toString(status.getEntity().getContent());
+			IOUtils.closeQuietly(status.getEntity().getContent());
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			Patient p = ourCtx.newXmlParser().parseBundle(responseContent).getResources(Patient.class).get(0);
+			assertEquals("AAA", p.getIdentifierFirstRep().getValue().getValue());
+
+			httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?_query=findPatientByAAA&AAA=" + i);
+			status = ourClient.execute(httpGet);
+			responseContent = IOUtils.toString(status.getEntity().getContent());
+			IOUtils.closeQuietly(status.getEntity().getContent());
+			assertEquals(200, status.getStatusLine().getStatusCode());
+			p = ourCtx.newXmlParser().parseBundle(responseContent).getResources(Patient.class).get(0);
+			assertEquals("AAANamed", p.getIdentifierFirstRep().getValue().getValue());
+
+			httpGet = new HttpGet("http://localhost:" + ourPort + "/Patient?_query=findPatientByUnknown&AAA=" + i);
+			status = ourClient.execute(httpGet);
+			IOUtils.closeQuietly(status.getEntity().getContent());
+			assertEquals(400, status.getStatusLine().getStatusCode());
+		}
+	}
+
 	@AfterClass
 	public static void afterClass() throws Exception {
 		ourServer.stop();
@@ -0,0 +1,213 @@
+package ca.uhn.fhir.rest.server.interceptor;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.dstu.resource.Patient;
+import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.method.RequestPhaseEnum;
+import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.interceptor.MetricsInterceptor.OperationMetrics;
+import ca.uhn.fhir.util.PortUtil;
+
+public class MetricsInterceptorTest {
+
+	private static CloseableHttpClient ourClient;
+	private static int ourPort;
+	private static Server ourServer;
+	private static RestfulServer ourServlet;
+	private MetricsInterceptor myInterceptor;
+
+	@Before
+	public void before() {
+		myInterceptor = new MetricsInterceptor();
+		ourServlet.setInterceptors(Collections.singletonList((IServerInterceptor) myInterceptor));
+	}
+
+	/**
+	 * The response is sent to the client before the server records it, so the count is polled
+	 */
+	private OperationMetrics waitForCount(String theResourceType, String theOperation, long theCount) throws InterruptedException {
+		for (int i = 0; i < 500; i++) {
+			if (myInterceptor.getOperationCount(theResourceType, theOperation) >= theCount) {
+				break;
+			}
+			Thread.sleep(10);
+		}
+		assertEquals(theCount, myInterceptor.getOperationCount(theResourceType, theOperation));
+		return myInterceptor.getOperation(theResourceType, theOperation);
+	}
+
+	private void get(String thePath, int theExpectedStatus) throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + thePath);
+		HttpResponse status = ourClient.execute(httpGet);
+		IOUtils.closeQuietly(status.getEntity().getContent());
+		assertEquals(theExpectedStatus, status.getStatusLine().getStatusCode());
+	}
+
+	@Test
+	public void testRead() throws Exception {
+		get("/Patient/1", 200);
+		get("/Patient/1", 200);
+
+		OperationMetrics metrics = waitForCount("Patient", "read", 2);
+		assertEquals(0, metrics.getErrorCount());
+		assertEquals(0, metrics.getInFlightCount());
+		assertTrue(metrics.getMaxResponseSize() > 0);
+		assertTrue(metrics.getTotalResponseSize() >= 2 * metrics.getMaxResponseSize() - 1);
+		assertTrue(metrics.getMeanPhaseMillis(RequestPhaseEnum.ENCODE) > 0);
+		assertEquals(2, sum(metrics.getBucketCounts()));
+		assertEquals(2, myInterceptor.getRequestCount());
+		assertEquals(0, myInterceptor.getInFlightCount());
+	}
+
+	@Test
+	public void testReadNotFound() throws Exception {
+		get("/Patient/2", 404);
+
+		OperationMetrics metrics = waitForCount("Patient", "read", 1);
+		assertEquals(1, metrics.getErrorCount());
+		assertEquals(0, metrics.getInFlightCount());
+	}
+
+	@Test
+	public void testSearch() throws Exception {
+		get("/Patient", 200);
+
+		OperationMetrics metrics = waitForCount("Patient", "search-type", 1);
+		assertTrue(metrics.getMeanPhaseMillis(RequestPhaseEnum.INVOKE) > 0);
+		// This interceptor does not need the complete bundle, so the results are loaded while they are encoded
+		assertEquals(0, metrics.getMeanPhaseMillis(RequestPhaseEnum.BUNDLE), 0);
+		assertTrue(metrics.getMeanPhaseMillis(RequestPhaseEnum.ENCODE) > 0);
+
+		String[] summaries = myInterceptor.getOperationSummaries();
+		assertEquals(1, summaries.length);
+		assertTrue(summaries[0], summaries[0].startsWith("Patient.search-type count=1 errors=0 inFlight=0"));
+	}
+
+	@Test
+	public void testUnknownOperation() throws Exception {
+		get("/Foo", 400);
+
+		OperationMetrics metrics = waitForCount(null, "unknown", 1);
+		assertEquals(1, metrics.getErrorCount());
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		myInterceptor.setObjectName("ca.uhn.fhir:type=MetricsInterceptor,name=MetricsInterceptorTest");
+		myInterceptor.registerMBean();
+		try {
+			get("/Patient/1", 200);
+			waitForCount("Patient", "read", 1);
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("ca.uhn.fhir:type=MetricsInterceptor,name=MetricsInterceptorTest");
+			assertEquals(1L, server.getAttribute(name, "RequestCount"));
+			assertEquals(0L, server.getAttribute(name, "InFlightCount"));
+			Object count = server.invoke(name, "getOperationCount", new Object[] { "Patient", "read" }, new String[] { String.class.getName(), String.class.getName() });
+			assertEquals(1L, count);
+
+			server.invoke(name, "reset", null, null);
+			assertEquals(0L, server.getAttribute(name, "RequestCount"));
+		} finally {
+			myInterceptor.unregisterMBean();
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName("ca.uhn.fhir:type=MetricsInterceptor,name=MetricsInterceptorTest")));
+	}
+
+	private static long sum(long[] theValues) {
+		long retVal = 0;
+		for (long next : theValues) {
+			retVal += next;
+		}
+		return retVal;
+	}
+
+	@AfterClass
+	public static void afterClass() throws Exception {
+		ourServer.stop();
+	}
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		ourPort = PortUtil.findFreePort();
+		ourServer = new Server(ourPort);
+
+		ServletHandler proxyHandler = new ServletHandler();
+		ourServlet = new RestfulServer();
+		ourServlet.setResourceProviders(new DummyPatientResourceProvider());
+		ServletHolder servletHolder = new ServletHolder(ourServlet);
+		proxyHandler.addServletWithMapping(servletHolder, "/*");
+		ourServer.setHandler(proxyHandler);
+		ourServer.start();
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(5000, TimeUnit.MILLISECONDS);
+		HttpClientBuilder builder = HttpClientBuilder.create();
+		builder.setConnectionManager(connectionManager);
+		ourClient = builder.build();
+	}
+
+	public static class DummyPatientResourceProvider implements IResourceProvider {
+
+		@Override
+		public Class<? extends IResource> getResourceType() {
+			return Patient.class;
+		}
+
+		@Read
+		public Patient read(@IdParam IdDt theId) {
+			if (!"1".equals(theId.getIdPart())) {
+				throw new ResourceNotFoundException(theId);
+			}
+			Patient retVal = new Patient();
+			retVal.setId("Patient/1");
+			retVal.addName().addFamily("FAMILY");
+			return retVal;
+		}
+
+		@Search
+		public List<Patient> search() throws InterruptedException {
+			// Make sure the invocation takes a measurable amount of time
+			Thread.sleep(5);
+			List<Patient> retVal = new ArrayList<Patient>();
+			for (int i = 0; i < 10; i++) {
+				Patient patient = new Patient();
+				patient.setId("Patient/" + i);
+				patient.addName().addFamily("FAMILY" + i);
+				retVal.add(patient);
+			}
+			return retVal;
+		}
+
+	}
+
+}